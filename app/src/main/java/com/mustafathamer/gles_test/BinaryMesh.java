@@ -0,0 +1,456 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A mesh that is ready to upload, in a compact binary file that is loaded by memory mapping it,
+ * with no parsing: the vertex and index blobs are handed to GL straight from the mapping.
+ * <p>
+ * File layout, all values in native byte order:
+ * <pre>
+ * header    magic, version, source stamp (long), payload length, payload CRC32
+ * metadata  num verts, num elements, index size (0, 2 or 4), per VertexLayout slot: components,
+ *           component type and the decode scale and offset of each component, bounding box
+ *           (6 floats), bounding sphere (center, radius), ranges (material, first, count),
+ *           material table (with the texture map paths)
+ * vertices  interleaved as described by the layout, 16 byte aligned
+ * indices   16 byte aligned
+ * </pre>
+ * A file is only accepted if its magic, version and source stamp match and the payload checksum
+ * is good, otherwise Load() returns null and the caller rebuilds it from the text OBJ.
+ * The magic is read in native order, so a file written on a machine of the other endianness is
+ * rejected too.
+ * <p>
+ * MeshCompiler writes the same files at build time, into the APK assets.
+ */
+
+public class BinaryMesh
+{
+    public static final int MAGIC = 0x4D534831;    // "MSH1"
+    public static final int VERSION = 7;           // bump whenever the layout or the builder output changes
+
+    // source stamp of the meshes compiled into the APK by MeshCompiler, they can't go stale
+    public static final long APK_SOURCE_STAMP = 0;
+
+    public static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int BLOB_ALIGNMENT = 16;
+    private static final int CRC_CHUNK_SIZE = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private VertexLayout mLayout;
+    private ByteBuffer mVertices;
+    private Buffer mIndices;            // ShortBuffer or IntBuffer, null when not indexed
+    private boolean mIntIndices;
+    private int mNumVerts;
+    private int mNumElements;
+    private List<MeshRange> mRanges;
+    private ObjMaterial[] mMaterials;   // may be null, or contain nulls
+    private Bounds mBounds;
+
+    //
+    // CTOR
+    //
+    public BinaryMesh(VertexLayout layout, ByteBuffer vertices, Buffer indices, boolean intIndices,
+                      int numVerts, int numElements, List<MeshRange> ranges, ObjMaterial[] materials,
+                      Bounds bounds)
+    {
+        mLayout = layout;
+        mVertices = vertices;
+        mIndices = indices;
+        mIntIndices = intIndices;
+        mNumVerts = numVerts;
+        mNumElements = numElements;
+        mRanges = ranges;
+        mMaterials = materials;
+        mBounds = bounds;
+    }
+
+    public VertexLayout GetLayout()     { return mLayout; }
+    public ByteBuffer GetVertices()     { return mVertices; }
+    public Buffer GetIndices()          { return mIndices; }
+    public boolean UsesIntIndices()     { return mIntIndices; }
+    public int GetNumVerts()            { return mNumVerts; }
+    public int GetNumElements()         { return mNumElements; }
+    public List<MeshRange> GetRanges()  { return mRanges; }
+    public ObjMaterial[] GetMaterials() { return mMaterials; }
+    public Bounds GetBounds()           { return mBounds; }
+
+    //
+    // Write the mesh to file. It is written to a temporary file first and renamed, so a reader
+    // never sees a half written file.
+    //
+    public void Write(File file, long sourceStamp) throws IOException
+    {
+        byte[][] names = EncodeMaterialNames();
+        int indexSize = mIndices == null ? 0 : (mIntIndices ? 4 : 2);
+        int vertexBytes = mNumVerts * mLayout.GetStride();
+        int indexBytes = mIndices == null ? 0 : mNumElements * indexSize;
+
+        int vertexOffset = Align(HEADER_SIZE + MetadataSize(names));
+        int indexOffset = Align(vertexOffset + vertexBytes);
+        int fileSize = indexOffset + indexBytes;
+
+        ByteBuffer out = ByteBuffer.allocate(fileSize).order(ByteOrder.nativeOrder());
+        out.position(HEADER_SIZE);
+
+        //
+        // METADATA
+        //
+        out.putInt(mNumVerts);
+        out.putInt(mNumElements);
+        out.putInt(indexSize);
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+        {
+            int size = mLayout.GetSize(attrib);
+            out.putInt(size);
+            out.putInt(mLayout.GetType(attrib));
+            for (int c = 0; c < size; c++)
+                out.putFloat(mLayout.GetDecodeScale(attrib)[c]);
+            for (int c = 0; c < size; c++)
+                out.putFloat(mLayout.GetDecodeOffset(attrib)[c]);
+        }
+        out.putFloat(mBounds.GetMinX());
+        out.putFloat(mBounds.GetMinY());
+        out.putFloat(mBounds.GetMinZ());
+        out.putFloat(mBounds.GetMaxX());
+        out.putFloat(mBounds.GetMaxY());
+        out.putFloat(mBounds.GetMaxZ());
+        out.putFloat(mBounds.GetCenterX());
+        out.putFloat(mBounds.GetCenterY());
+        out.putFloat(mBounds.GetCenterZ());
+        out.putFloat(mBounds.GetRadius());
+
+        out.putInt(mRanges.size());
+        for (MeshRange range : mRanges)
+        {
+            out.putInt(range.GetMaterial());
+            out.putInt(range.GetFirstElement());
+            out.putInt(range.GetNumElements());
+        }
+
+        out.putInt(mMaterials == null ? -1 : mMaterials.length);
+        for (int i = 0; names != null && i < names.length; i++)
+        {
+            ObjMaterial mat = mMaterials[i];
+            out.putInt(mat == null ? 0 : 1);
+            if (mat == null)
+                continue;
+            out.putInt(names[i].length);
+            out.put(names[i]);
+            out.position(out.position() + Pad4(names[i].length));
+            out.putInt(mat.GetSharpness());
+            out.putFloat(mat.GetNs());
+            PutFloats(out, mat.GetKa());
+            PutFloats(out, mat.GetKd());
+            PutFloats(out, mat.GetKs());
+            PutFloats(out, mat.GetKe());
+            PutFloats(out, mat.GetTf());
+            out.putFloat(mat.GetNi());
+            out.putFloat(mat.GetD());
+            out.putInt(mat.GetIllum());
+            PutString(out, mat.GetMapKd());
+            PutString(out, mat.GetMapKa());
+        }
+
+        //
+        // BLOBS
+        //
+        out.position(vertexOffset);
+        ByteBuffer vertices = mVertices.duplicate();
+        vertices.clear();
+        vertices.limit(vertexBytes);
+        out.put(vertices);
+
+        if (mIndices != null)
+        {
+            out.position(indexOffset);
+            if (mIntIndices)
+            {
+                IntBuffer indices = (IntBuffer) ((IntBuffer) mIndices).duplicate().clear();
+                out.asIntBuffer().put(indices);
+            } else
+            {
+                ShortBuffer indices = (ShortBuffer) ((ShortBuffer) mIndices).duplicate().clear();
+                out.asShortBuffer().put(indices);
+            }
+        }
+
+        //
+        // HEADER
+        //
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), HEADER_SIZE, fileSize - HEADER_SIZE);
+        out.position(0);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(sourceStamp);
+        out.putInt(fileSize - HEADER_SIZE);
+        out.putInt((int) crc.getValue());
+        out.position(0);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            while (out.hasRemaining())
+                channel.write(out);
+        } finally
+        {
+            stream.close();
+        }
+        if (!tmp.renameTo(file))
+        {
+            file.delete();
+            if (!tmp.renameTo(file))
+            {
+                tmp.delete();
+                throw new IOException("Can't rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    //
+    // Map a file written by Write(). Returns null if the file doesn't exist, was written by another
+    // version or for another source, or is corrupt.
+    //
+    public static BinaryMesh Load(File file, long sourceStamp) throws IOException
+    {
+        if (!file.isFile())
+            return null;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            // the mapping stays valid after the file is closed
+            return Load(raf.getChannel(), 0, raf.length(), sourceStamp);
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    public static BinaryMesh Load(FileChannel channel, long offset, long length, long sourceStamp) throws IOException
+    {
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+            return null;
+
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.nativeOrder());
+        if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getLong() != sourceStamp)
+            return null;
+        int payloadLength = data.getInt();
+        int payloadCrc = data.getInt();
+        if (payloadLength != length - HEADER_SIZE || payloadCrc != Checksum(data))
+            return null;
+
+        try
+        {
+            return ReadPayload(data);
+        } catch (BufferUnderflowException e)
+        {
+            return null;
+        } catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static BinaryMesh ReadPayload(ByteBuffer data)
+    {
+        data.position(HEADER_SIZE);
+        int numVerts = data.getInt();
+        int numElements = data.getInt();
+        int indexSize = data.getInt();
+
+        VertexLayout layout = new VertexLayout();
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+        {
+            int size = data.getInt();
+            int type = data.getInt();
+            if (size == 0)
+                continue;
+            layout.Add(attrib, size, type);
+            layout.SetDecode(attrib, GetFloats(data, size), GetFloats(data, size));
+        }
+
+        Bounds bounds = new Bounds();
+        bounds.SetBox(data.getFloat(), data.getFloat(), data.getFloat(),
+                data.getFloat(), data.getFloat(), data.getFloat());
+        bounds.SetSphere(data.getFloat(), data.getFloat(), data.getFloat(), data.getFloat());
+
+        int numRanges = data.getInt();
+        List<MeshRange> ranges = new ArrayList<>(numRanges);
+        for (int i = 0; i < numRanges; i++)
+            ranges.add(new MeshRange(data.getInt(), data.getInt(), data.getInt()));
+
+        int numMaterials = data.getInt();
+        ObjMaterial[] materials = numMaterials < 0 ? null : new ObjMaterial[numMaterials];
+        for (int i = 0; i < numMaterials; i++)
+        {
+            if (data.getInt() == 0)
+                continue;
+            ObjMaterial mat = new ObjMaterial();
+            byte[] name = new byte[data.getInt()];
+            data.get(name);
+            data.position(data.position() + Pad4(name.length));
+            mat.setName(new String(name, UTF8));
+            mat.setSharpness(data.getInt());
+            mat.setNs(data.getFloat());
+            mat.setKa(GetFloats(data, 3));
+            mat.setKd(GetFloats(data, 3));
+            mat.setKs(GetFloats(data, 3));
+            mat.setKe(GetFloats(data, 3));
+            mat.setTf(GetFloats(data, 3));
+            mat.setNi(data.getFloat());
+            mat.setD(data.getFloat());
+            mat.setIllum(data.getInt());
+            mat.setMapKd(GetString(data));
+            mat.setMapKa(GetString(data));
+            materials[i] = mat;
+        }
+
+        int vertexOffset = Align(data.position());
+        ByteBuffer vertices = Slice(data, vertexOffset, numVerts * layout.GetStride());
+
+        Buffer indices = null;
+        if (indexSize != 0)
+        {
+            ByteBuffer indexBytes = Slice(data, Align(vertexOffset + vertices.capacity()), numElements * indexSize);
+            if (indexSize == 4)
+                indices = indexBytes.asIntBuffer();
+            else
+                indices = indexBytes.asShortBuffer();
+        }
+
+        return new BinaryMesh(layout, vertices, indices, indexSize == 4, numVerts, numElements, ranges,
+                materials, bounds);
+    }
+
+    //
+    // CRC32 of everything after the header. Copies through a small scratch array, CRC32 only takes
+    // byte[] on older Androids.
+    //
+    private static int Checksum(ByteBuffer data)
+    {
+        CRC32 crc = new CRC32();
+        byte[] scratch = new byte[CRC_CHUNK_SIZE];
+        ByteBuffer payload = data.duplicate();
+        payload.position(HEADER_SIZE);
+        while (payload.hasRemaining())
+        {
+            int n = Math.min(scratch.length, payload.remaining());
+            payload.get(scratch, 0, n);
+            crc.update(scratch, 0, n);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer Slice(ByteBuffer data, int offset, int length)
+    {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private byte[][] EncodeMaterialNames()
+    {
+        if (mMaterials == null)
+            return null;
+        byte[][] names = new byte[mMaterials.length][];
+        for (int i = 0; i < mMaterials.length; i++)
+            names[i] = mMaterials[i] == null ? null : mMaterials[i].GetName().getBytes(UTF8);
+        return names;
+    }
+
+    private int MetadataSize(byte[][] names)
+    {
+        int size = 4 * 3 + 4 * (6 + 4);
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+            size += 4 * 2 + 4 * 2 * mLayout.GetSize(attrib);
+        size += 4 + mRanges.size() * 4 * 3;
+        size += 4;
+        for (int i = 0; names != null && i < names.length; i++)
+        {
+            size += 4;
+            if (names[i] != null)
+            {
+                size += 4 + names[i].length + Pad4(names[i].length) + 4 * (1 + 1 + 3 * 5 + 1 + 1 + 1);
+                size += StringSize(mMaterials[i].GetMapKd()) + StringSize(mMaterials[i].GetMapKa());
+            }
+        }
+        return size;
+    }
+
+    //
+    // Optional strings: byte length (-1 for null), UTF-8 bytes, padded to 4
+    //
+    private static int StringSize(String value)
+    {
+        int length = value == null ? 0 : value.getBytes(UTF8).length;
+        return 4 + length + Pad4(length);
+    }
+
+    private static void PutString(ByteBuffer out, String value)
+    {
+        if (value == null)
+        {
+            out.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+        out.position(out.position() + Pad4(bytes.length));
+    }
+
+    private static String GetString(ByteBuffer data)
+    {
+        int length = data.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        data.position(data.position() + Pad4(length));
+        return new String(bytes, UTF8);
+    }
+
+    private static void PutFloats(ByteBuffer out, float[] values)
+    {
+        for (int i = 0; i < 3; i++)
+            out.putFloat(values != null ? values[i] : 0.0f);
+    }
+
+    private static float[] GetFloats(ByteBuffer data, int count)
+    {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++)
+            values[i] = data.getFloat();
+        return values;
+    }
+
+    private static int Align(int offset)
+    {
+        return (offset + BLOB_ALIGNMENT - 1) & ~(BLOB_ALIGNMENT - 1);
+    }
+
+    private static int Pad4(int length)
+    {
+        return (4 - (length & 3)) & 3;
+    }
+}
@@ -0,0 +1,109 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Bounding volumes of a mesh in object space: an axis aligned box, and a sphere around it.
+ * The box is grown point by point with Add() (ObjParser does it while it reads the "v" records),
+ * the sphere is then fitted with ComputeSphere(): centered on the box, just big enough for the
+ * farthest point. That is tighter than the sphere through the box corners for most meshes, and
+ * is what frustum culling tests, since a sphere is the cheapest volume to test against a plane.
+ */
+
+public class Bounds
+{
+    private float mMinX = Float.POSITIVE_INFINITY, mMinY = Float.POSITIVE_INFINITY, mMinZ = Float.POSITIVE_INFINITY;
+    private float mMaxX = Float.NEGATIVE_INFINITY, mMaxY = Float.NEGATIVE_INFINITY, mMaxZ = Float.NEGATIVE_INFINITY;
+    private float mCenterX, mCenterY, mCenterZ;
+    private float mRadius;
+
+    public float GetMinX()      { return mMinX; }
+    public float GetMinY()      { return mMinY; }
+    public float GetMinZ()      { return mMinZ; }
+    public float GetMaxX()      { return mMaxX; }
+    public float GetMaxY()      { return mMaxY; }
+    public float GetMaxZ()      { return mMaxZ; }
+    public float GetCenterX()   { return mCenterX; }
+    public float GetCenterY()   { return mCenterY; }
+    public float GetCenterZ()   { return mCenterZ; }
+    public float GetRadius()    { return mRadius; }
+
+    public boolean IsEmpty()    { return mMinX > mMaxX; }
+
+    public void Add(float x, float y, float z)
+    {
+        if (x < mMinX) mMinX = x;
+        if (x > mMaxX) mMaxX = x;
+        if (y < mMinY) mMinY = y;
+        if (y > mMaxY) mMaxY = y;
+        if (z < mMinZ) mMinZ = z;
+        if (z > mMaxZ) mMaxZ = z;
+    }
+
+    //
+    // Grow the box to contain other's box (the sphere has to be computed again after)
+    //
+    public void Add(Bounds other)
+    {
+        if (other.IsEmpty())
+            return;
+        Add(other.mMinX, other.mMinY, other.mMinZ);
+        Add(other.mMaxX, other.mMaxY, other.mMaxZ);
+    }
+
+    public void SetBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        mMinX = minX;
+        mMinY = minY;
+        mMinZ = minZ;
+        mMaxX = maxX;
+        mMaxY = maxY;
+        mMaxZ = maxZ;
+    }
+
+    public void SetSphere(float centerX, float centerY, float centerZ, float radius)
+    {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        mCenterZ = centerZ;
+        mRadius = radius;
+    }
+
+    //
+    // Fit the sphere to the points (x,y,z triples) the box was built from
+    //
+    public void ComputeSphere(FloatArray positions)
+    {
+        if (IsEmpty())
+        {
+            SetSphere(0, 0, 0, 0);
+            return;
+        }
+
+        float cx = (mMinX + mMaxX) * 0.5f;
+        float cy = (mMinY + mMaxY) * 0.5f;
+        float cz = (mMinZ + mMaxZ) * 0.5f;
+        float[] p = positions.GetData();
+        int numFloats = positions.Size();
+        float maxDistSq = 0;
+        for (int i = 0; i < numFloats; i += 3)
+        {
+            float dx = p[i] - cx, dy = p[i + 1] - cy, dz = p[i + 2] - cz;
+            float distSq = dx * dx + dy * dy + dz * dz;
+            if (distSq > maxDistSq)
+                maxDistSq = distSq;
+        }
+        SetSphere(cx, cy, cz, (float) Math.sqrt(maxDistSq));
+    }
+
+    //
+    // Bounds of all the points in positions (x,y,z triples)
+    //
+    public static Bounds Of(FloatArray positions)
+    {
+        Bounds bounds = new Bounds();
+        float[] p = positions.GetData();
+        for (int i = 0; i < positions.Size(); i += 3)
+            bounds.Add(p[i], p[i + 1], p[i + 2]);
+        bounds.ComputeSphere(positions);
+        return bounds;
+    }
+}
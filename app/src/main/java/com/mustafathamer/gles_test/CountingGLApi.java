@@ -0,0 +1,436 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * GLApi decorator that counts the calls going through it, to see the GL traffic each frame.
+ * Bracket every frame with BeginFrame() / EndFrame(); GetCallsLastFrame() then holds the number
+ * of calls the last complete frame made, GetDrawCallsLastFrame() how many of them were draws,
+ * GetTrianglesLastFrame() how many triangles they drew, and GetBytesUploadedLastFrame() how many
+ * bytes went into buffer objects and textures (not the client side arrays copied at draw time).
+ * Calls outside of a frame (setup) are not included.
+ * Only counts, so it costs an int increment per call and can stay on in release builds.
+ */
+
+public class CountingGLApi implements GLApi
+{
+    private final GLApi mGL;
+    private int mNumCalls;
+    private int mCallsLastFrame;
+    private int mNumDrawCalls;
+    private int mDrawCallsLastFrame;
+    private long mNumTriangles;
+    private long mTrianglesLastFrame;
+    private long mBytesUploaded;
+    private long mBytesUploadedLastFrame;
+
+    //
+    // CTOR
+    //
+    public CountingGLApi(GLApi gl)
+    {
+        mGL = gl;
+    }
+
+    // calls made since the last BeginFrame()
+    public int GetNumCalls()            { return mNumCalls; }
+    public int GetCallsLastFrame()      { return mCallsLastFrame; }
+    public int GetNumDrawCalls()        { return mNumDrawCalls; }
+    public int GetDrawCallsLastFrame()  { return mDrawCallsLastFrame; }
+    public long GetTrianglesLastFrame()         { return mTrianglesLastFrame; }
+    public long GetBytesUploadedLastFrame()     { return mBytesUploadedLastFrame; }
+
+    public void BeginFrame()
+    {
+        mNumCalls = 0;
+        mNumDrawCalls = 0;
+        mNumTriangles = 0;
+        mBytesUploaded = 0;
+    }
+
+    public void EndFrame()
+    {
+        mCallsLastFrame = mNumCalls;
+        mDrawCallsLastFrame = mNumDrawCalls;
+        mTrianglesLastFrame = mNumTriangles;
+        mBytesUploadedLastFrame = mBytesUploaded;
+    }
+
+    private static int SizeInBytes(Buffer buffer)
+    {
+        if (buffer instanceof ByteBuffer)
+            return buffer.remaining();
+        return buffer.remaining() * (buffer instanceof ShortBuffer ? 2 : 4);
+    }
+
+    private static int NumTriangles(int mode, int count)
+    {
+        switch (mode)
+        {
+            case GLES20.GL_TRIANGLES:       return count / 3;
+            case GLES20.GL_TRIANGLE_STRIP:
+            case GLES20.GL_TRIANGLE_FAN:    return Math.max(0, count - 2);
+            default:                        return 0;
+        }
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        mNumCalls++;
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        mNumCalls++;
+        mGL.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        mNumCalls++;
+        mGL.glDisable(cap);
+    }
+
+    @Override
+    public String glGetString(int name)
+    {
+        mNumCalls++;
+        return mGL.glGetString(name);
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        mNumCalls++;
+        return mGL.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source)
+    {
+        mNumCalls++;
+        mGL.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        mNumCalls++;
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        mNumCalls++;
+        mGL.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        mNumCalls++;
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        mNumCalls++;
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        mNumCalls++;
+        return mGL.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        mNumCalls++;
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name)
+    {
+        mNumCalls++;
+        mGL.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        mNumCalls++;
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        mNumCalls++;
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value)
+    {
+        mNumCalls++;
+        mGL.glProgramParameteri(program, pname, value);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary)
+    {
+        mNumCalls++;
+        mGL.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length)
+    {
+        mNumCalls++;
+        mGL.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        mNumCalls++;
+        return mGL.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        mNumCalls++;
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        mNumCalls++;
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        mNumCalls++;
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        mNumCalls++;
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        mNumCalls++;
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        mNumCalls++;
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        mNumCalls++;
+        mGL.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        mNumCalls++;
+        mBytesUploaded += size;
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        mNumCalls++;
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        mNumCalls++;
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        mNumCalls++;
+        mGL.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        mNumCalls++;
+        mGL.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        mNumCalls++;
+        mGL.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                             int type, Buffer pixels)
+    {
+        mNumCalls++;
+        if (pixels != null)
+            mBytesUploaded += SizeInBytes(pixels);
+        mGL.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                       int imageSize, Buffer data)
+    {
+        mNumCalls++;
+        mBytesUploaded += imageSize;
+        mGL.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        mNumCalls++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        mNumCalls++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        mNumCalls++;
+        mGL.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        mNumCalls++;
+        mGL.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int index, float x, float y, float z)
+    {
+        mNumCalls++;
+        mGL.glVertexAttrib3f(index, x, y, z);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        mNumCalls++;
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        mNumCalls++;
+        mGL.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y)
+    {
+        mNumCalls++;
+        mGL.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z)
+    {
+        mNumCalls++;
+        mGL.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        mNumCalls++;
+        mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] value, int offset)
+    {
+        mNumCalls++;
+        mGL.glUniform4fv(location, count, value, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        mNumCalls++;
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count)
+    {
+        mNumCalls++;
+        mNumDrawCalls++;
+        mNumTriangles += NumTriangles(mode, count);
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset)
+    {
+        mNumCalls++;
+        mNumDrawCalls++;
+        mNumTriangles += NumTriangles(mode, count);
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices)
+    {
+        mNumCalls++;
+        mNumDrawCalls++;
+        mNumTriangles += NumTriangles(mode, count);
+        mGL.glDrawElements(mode, count, type, indices);
+    }
+}
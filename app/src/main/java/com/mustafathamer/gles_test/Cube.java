@@ -1,17 +1,18 @@
 package com.mustafathamer.gles_test;
 
 import android.opengl.GLES20;
-import android.opengl.Matrix;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by moose-home on 11/6/2017.
  */
 
-public class Cube
+public class Cube implements Renderable, StaticGeometry
 {
     /**
      * Store our model data in a float buffer.
@@ -19,6 +20,7 @@ public class Cube
     private final FloatBuffer mCubePositions;
     private final FloatBuffer mCubeColors;
     private final FloatBuffer mCubeNormals;
+    private final Bounds mBounds;
 
     public final int COORDS_PER_VERTEX = 3;
     public final int COORDS_PER_NORMAL = 3;
@@ -34,6 +36,17 @@ public class Cube
     }
     public int GetNumVerts() { return 36; }
 
+    // just one color for now
+    private static final float[] COLOR = {0.63671875f, 0.76953125f, 0.22265625f, 1.0f};
+
+    // the same color, for cubes merged into a StaticBatcher mesh
+    private static final ObjMaterial MATERIAL = new ObjMaterial();
+    static
+    {
+        MATERIAL.setKd(new float[] {COLOR[0], COLOR[1], COLOR[2]});
+        MATERIAL.setKa(new float[] {0, 0, 0});
+    }
+
 
     // Define points for a cube.
 
@@ -210,6 +223,10 @@ public class Cube
         mCubePositions = ByteBuffer.allocateDirect(cubePositionData.length * bytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
         mCubePositions.put(cubePositionData).position(0);
 
+        FloatArray positions = new FloatArray(cubePositionData.length);
+        positions.AddAll(cubePositionData, 0, cubePositionData.length);
+        mBounds = Bounds.Of(positions);
+
         mCubeColors = ByteBuffer.allocateDirect(cubeColorData.length * bytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
         mCubeColors.put(cubeColorData).position(0);
 
@@ -217,65 +234,78 @@ public class Cube
         mCubeNormals.put(cubeNormalData).position(0);
     }
 
-    public void Draw(MyGLRenderer renderer)
+    @Override
+    public boolean HasStaticMesh()
+    {
+        return true;
+    }
+
+    @Override
+    public MeshData GetStaticMesh()
+    {
+        FloatArray positions = new FloatArray(cubePositionData.length);
+        positions.AddAll(cubePositionData, 0, cubePositionData.length);
+        FloatArray normals = new FloatArray(cubeNormalData.length);
+        normals.AddAll(cubeNormalData, 0, cubeNormalData.length);
+        FloatArray uvs = new FloatArray(GetNumVerts() * 2);
+        uvs.Resize(GetNumVerts() * 2);
+
+        // the vertices in order, all in one range
+        IntArray indices = new IntArray(GetNumVerts());
+        for (int i = 0; i < GetNumVerts(); i++)
+            indices.Add(i);
+        List<MeshRange> ranges = new ArrayList<>();
+        ranges.add(new MeshRange(0, 0, GetNumVerts()));
+
+        return new MeshData(positions, normals, uvs, indices, false, ranges, new ObjMaterial[] {MATERIAL});
+    }
+
+    @Override
+    public Bounds GetBounds()
     {
+        return mBounds;
+    }
+
+    @Override
+    public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+    {
+        GLApi gl = renderer.GetGL();
+
         //
         // POSITIONS
         //
         // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(renderer.GetPositionHandle(), COORDS_PER_VERTEX,
+        gl.glVertexAttribPointer(renderer.GetPositionHandle(), COORDS_PER_VERTEX,
                 GLES20.GL_FLOAT, false,
                 0, GetVerticesBuffer());
-        GLES20.glEnableVertexAttribArray(renderer.GetPositionHandle());
+        gl.glEnableVertexAttribArray(renderer.GetPositionHandle());
 
         //
         // COLORS - just one for now
         //
-        // Set color for drawing the triangle
-
-        float color[] = {0.63671875f, 0.76953125f, 0.22265625f, 1.0f};
-        GLES20.glUniform4fv(renderer.GetDifColorHandle(), 1, color, 0);
+        gl.glUniform4fv(renderer.GetDifColorHandle(), 1, COLOR, 0);
+        renderer.SetMaterialTextures(null, false);
 
         //
         // NORMALS
         //
         // Pass in the normal information
-        GLES20.glVertexAttribPointer(renderer.GetNormalHandle(), COORDS_PER_NORMAL,
+        gl.glVertexAttribPointer(renderer.GetNormalHandle(), COORDS_PER_NORMAL,
                 GLES20.GL_FLOAT, false,
                 0, GetNormalsBuffer());
 
-        GLES20.glEnableVertexAttribArray(renderer.GetNormalHandle());
+        gl.glEnableVertexAttribArray(renderer.GetNormalHandle());
 
         //
         // MATRIX
         //
-        float[] mvpMatrix = new float[16];
-        float[] modelMatrix = new float[16];
-
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, 0.0f, 0.0f, 0.0f);       // no translation for now
-        Matrix.rotateM(modelMatrix, 0, renderer.GetYAngle(), 0, 1.0f, 0);
-        Matrix.rotateM(modelMatrix, 0, renderer.GetXAngle(), 1.0f, 0, 0);
-
-        Matrix.multiplyMM(mvpMatrix, 0, renderer.GetViewMatrix(), 0, modelMatrix, 0);  // so far just model and view
-
-        // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(renderer.GetMVMatrixHandle(), 1, false, mvpMatrix, 0);
-
-        // Combine the rotation matrix with the projection and camera view
-        // Note that the mMVPMatrix factor *must be first* in order
-        // for the matrix multiplication product to be correct.
-
-        Matrix.multiplyMM(mvpMatrix, 0, renderer.GetProjectionMatrix(), 0, mvpMatrix, 0);
-
-        // Pass the projection and view transformation to the shader
-        GLES20.glUniformMatrix4fv(renderer.GetMVPMatrixHandle(), 1, false, mvpMatrix, 0);
+        renderer.SetModelMatrix(modelMatrix);
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, GetNumVerts());
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, GetNumVerts());
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(renderer.GetPositionHandle());
-        GLES20.glDisableVertexAttribArray(renderer.GetNormalHandle());
+        gl.glDisableVertexAttribArray(renderer.GetPositionHandle());
+        gl.glDisableVertexAttribArray(renderer.GetNormalHandle());
     }
 
 /*
@@ -0,0 +1,387 @@
+package com.mustafathamer.gles_test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * ETC1 texture compression, the compressed format of every ES 2 GPU (OES_compressed_ETC1_RGB8_texture):
+ * each 4x4 block of texels takes 8 bytes, 4 bits per texel, 1/8 of RGBA. No alpha.
+ * <p>
+ * A block is two 2x4 or 4x2 halves (the flip bit), each with a base color and one of 8 tables
+ * of intensity modifiers; every texel picks one of the 4 modifiers of its half's table. The base
+ * colors are 4 bits per channel each, or 5 bits with the second one a 3 bit difference from the
+ * first (the diff bit).
+ * <p>
+ * The encoder tries both flips and both base color modes with the average color of each half,
+ * and keeps the least squared error. Not the best quality an exhaustive search would give, but
+ * fast, and fine for the diffuse maps. It runs on the build machine (see TextureCompiler), the
+ * decoder is for checking its output.
+ * <p>
+ * Pixels are ARGB ints as Bitmap.getPixels() returns them, blocks are stored row by row, texels
+ * past the edges of the image repeat the last row or column.
+ */
+
+public class Etc1
+{
+    // GLES20 has no constant for the extension's format
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final String EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+
+    public static final int BLOCK_SIZE = 4;
+    public static final int ENCODED_BLOCK_BYTES = 8;
+
+    // the small (a) and large (b) modifier of each table, a texel adds +a, +b, -a or -b
+    private static final int[][] MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}};
+
+    public static int EncodedSize(int width, int height)
+    {
+        return ((width + BLOCK_SIZE - 1) / BLOCK_SIZE) * ((height + BLOCK_SIZE - 1) / BLOCK_SIZE) * ENCODED_BLOCK_BYTES;
+    }
+
+    public static byte[] Encode(int[] pixels, int width, int height)
+    {
+        try
+        {
+            return EncodeParallel(pixels, width, height, null, 1);
+        } catch (InterruptedIOException e)
+        {
+            // can't happen without an executor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //
+    // Same as Encode(), the rows of blocks split into numChunks pieces run at the same time on
+    // executor. Blocks are independent, so the output is the same.
+    //
+    public static byte[] EncodeParallel(final int[] pixels, final int width, final int height,
+                                        ExecutorService executor, int numChunks) throws InterruptedIOException
+    {
+        final byte[] out = new byte[EncodedSize(width, height)];
+        int blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        numChunks = Math.max(1, Math.min(numChunks, blocksY));
+        if (executor == null || numChunks == 1)
+        {
+            new BlockEncoder().EncodeRows(pixels, width, height, 0, blocksY, out);
+            return out;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++)
+        {
+            final int first = (int) ((long) blocksY * i / numChunks);
+            final int end = (int) ((long) blocksY * (i + 1) / numChunks);
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    new BlockEncoder().EncodeRows(pixels, width, height, first, end, out);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+        {
+            try
+            {
+                future.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("ETC1 encoding interrupted");
+            } catch (ExecutionException e)
+            {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return out;
+    }
+
+    //
+    // The width x height image of data (EncodedSize() bytes from offset), opaque ARGB
+    //
+    public static int[] Decode(byte[] data, int offset, int width, int height)
+    {
+        int[] pixels = new int[width * height];
+        int[] block = new int[BLOCK_SIZE * BLOCK_SIZE];
+        int blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int by = 0; by < blocksY; by++)
+        {
+            for (int bx = 0; bx < blocksX; bx++)
+            {
+                DecodeBlock(data, offset + (by * blocksX + bx) * ENCODED_BLOCK_BYTES, block);
+                for (int y = 0; y < BLOCK_SIZE && by * BLOCK_SIZE + y < height; y++)
+                {
+                    for (int x = 0; x < BLOCK_SIZE && bx * BLOCK_SIZE + x < width; x++)
+                        pixels[(by * BLOCK_SIZE + y) * width + bx * BLOCK_SIZE + x] = block[y * BLOCK_SIZE + x];
+                }
+            }
+        }
+        return pixels;
+    }
+
+    //
+    // The 16 texels of the block at data[offset], row by row
+    //
+    public static void DecodeBlock(byte[] data, int offset, int[] block)
+    {
+        int high = ReadInt(data, offset);
+        int low = ReadInt(data, offset + 4);
+        boolean flip = (high & 1) != 0;
+        int[] base1 = new int[3];
+        int[] base2 = new int[3];
+        for (int c = 0; c < 3; c++)
+        {
+            int shift = 24 - c * 8;
+            if ((high & 2) != 0)
+            {
+                int c5 = (high >>> (shift + 3)) & 0x1F;
+                int delta = ((high >>> shift) << 29) >> 29;     // signed 3 bits
+                base1[c] = Expand5(c5);
+                base2[c] = Expand5(c5 + delta);
+            } else
+            {
+                base1[c] = Expand4((high >>> (shift + 4)) & 0xF);
+                base2[c] = Expand4((high >>> shift) & 0xF);
+            }
+        }
+        int table1 = (high >>> 5) & 7;
+        int table2 = (high >>> 2) & 7;
+
+        for (int y = 0; y < BLOCK_SIZE; y++)
+        {
+            for (int x = 0; x < BLOCK_SIZE; x++)
+            {
+                boolean second = flip ? y >= 2 : x >= 2;
+                int[] modifiers = MODIFIERS[second ? table2 : table1];
+                int[] base = second ? base2 : base1;
+                int index = x * BLOCK_SIZE + y;     // texel indices go down the columns
+                int m = ((low >>> (index + 16)) & 1) << 1 | ((low >>> index) & 1);
+                int modifier = (m & 1) == 0 ? modifiers[0] : modifiers[1];
+                if (m >= 2)
+                    modifier = -modifier;
+                block[y * BLOCK_SIZE + x] = 0xFF000000 | Clamp(base[0] + modifier) << 16
+                        | Clamp(base[1] + modifier) << 8 | Clamp(base[2] + modifier);
+            }
+        }
+    }
+
+    private static int Expand4(int c)   { return (c << 4) | c; }
+    private static int Expand5(int c)   { return (c << 3) | (c >> 2); }
+    private static int Clamp(int c)     { return c < 0 ? 0 : (c > 255 ? 255 : c); }
+
+    private static int ReadInt(byte[] data, int offset)
+    {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    //
+    // The scratch space of one thread
+    //
+    private static class BlockEncoder
+    {
+        // the block being encoded, per channel, row by row
+        private final int[] mRed = new int[16];
+        private final int[] mGreen = new int[16];
+        private final int[] mBlue = new int[16];
+
+        // texels of each half, per flip
+        private static final int[][][] HALVES = {
+                {{0, 1, 4, 5, 8, 9, 12, 13}, {2, 3, 6, 7, 10, 11, 14, 15}},     // left, right
+                {{0, 1, 2, 3, 4, 5, 6, 7}, {8, 9, 10, 11, 12, 13, 14, 15}}};    // top, bottom
+
+        // best table and modifier indices found for a half by HalfError()
+        private int mTable;
+        private final int[] mIndices = new int[8];
+        private final int[] mCandidate = new int[8];
+
+        // the chosen encoding of the block
+        private int mBestHigh;
+        private int mBestLow;
+        private long mBestError;
+
+        void EncodeRows(int[] pixels, int width, int height, int firstRow, int endRow, byte[] out)
+        {
+            int blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            for (int by = firstRow; by < endRow; by++)
+            {
+                for (int bx = 0; bx < blocksX; bx++)
+                {
+                    for (int y = 0; y < BLOCK_SIZE; y++)
+                    {
+                        int row = Math.min(by * BLOCK_SIZE + y, height - 1) * width;
+                        for (int x = 0; x < BLOCK_SIZE; x++)
+                        {
+                            int argb = pixels[row + Math.min(bx * BLOCK_SIZE + x, width - 1)];
+                            mRed[y * BLOCK_SIZE + x] = (argb >> 16) & 0xFF;
+                            mGreen[y * BLOCK_SIZE + x] = (argb >> 8) & 0xFF;
+                            mBlue[y * BLOCK_SIZE + x] = argb & 0xFF;
+                        }
+                    }
+                    EncodeBlock();
+                    int offset = (by * blocksX + bx) * ENCODED_BLOCK_BYTES;
+                    WriteInt(out, offset, mBestHigh);
+                    WriteInt(out, offset + 4, mBestLow);
+                }
+            }
+        }
+
+        private void EncodeBlock()
+        {
+            mBestError = Long.MAX_VALUE;
+            int[] avg1 = new int[3];
+            int[] avg2 = new int[3];
+            for (int flip = 0; flip < 2; flip++)
+            {
+                Average(HALVES[flip][0], avg1);
+                Average(HALVES[flip][1], avg2);
+
+                // 5 bit base colors, if the second is close enough to the first
+                boolean fits = true;
+                int high = 2 | flip;
+                for (int c = 0; c < 3; c++)
+                {
+                    int c1 = Quantize(avg1[c], 31);
+                    int c2 = Quantize(avg2[c], 31);
+                    fits &= c2 - c1 >= -4 && c2 - c1 <= 3;
+                    high |= c1 << (27 - c * 8) | ((c2 - c1) & 7) << (24 - c * 8);
+                }
+                if (fits)
+                    TryBlock(high, flip, true);
+
+                // 4 bit base colors
+                high = flip;
+                for (int c = 0; c < 3; c++)
+                    high |= Quantize(avg1[c], 15) << (28 - c * 8) | Quantize(avg2[c], 15) << (24 - c * 8);
+                TryBlock(high, flip, false);
+            }
+        }
+
+        //
+        // Complete the block with the base colors of high: the best table and modifiers of each
+        // half, keep it if it beats the best so far
+        //
+        private void TryBlock(int high, int flip, boolean differential)
+        {
+            int low = 0;
+            long error = 0;
+            for (int half = 0; half < 2 && error < mBestError; half++)
+            {
+                int r, g, b;
+                int shift = half == 0 ? 4 : 0;
+                if (differential)
+                {
+                    int r5 = (high >>> 27) & 0x1F, g5 = (high >>> 19) & 0x1F, b5 = (high >>> 11) & 0x1F;
+                    if (half == 1)
+                    {
+                        r5 += ((high >>> 24) << 29) >> 29;
+                        g5 += ((high >>> 16) << 29) >> 29;
+                        b5 += ((high >>> 8) << 29) >> 29;
+                    }
+                    r = Expand5(r5);
+                    g = Expand5(g5);
+                    b = Expand5(b5);
+                } else
+                {
+                    r = Expand4((high >>> (24 + shift)) & 0xF);
+                    g = Expand4((high >>> (16 + shift)) & 0xF);
+                    b = Expand4((high >>> (8 + shift)) & 0xF);
+                }
+
+                int[] texels = HALVES[flip][half];
+                error += HalfError(texels, r, g, b);
+                high |= mTable << (half == 0 ? 5 : 2);
+                for (int i = 0; i < texels.length; i++)
+                {
+                    int x = texels[i] % BLOCK_SIZE, y = texels[i] / BLOCK_SIZE;
+                    int index = x * BLOCK_SIZE + y;
+                    low |= (mIndices[i] >> 1) << (index + 16) | (mIndices[i] & 1) << index;
+                }
+            }
+            if (error < mBestError)
+            {
+                mBestError = error;
+                mBestHigh = high;
+                mBestLow = low;
+            }
+        }
+
+        //
+        // Least squared error of the texels around base color r, g, b over the tables, the table
+        // in mTable and the modifier of each texel in mIndices
+        //
+        private long HalfError(int[] texels, int r, int g, int b)
+        {
+            long best = Long.MAX_VALUE;
+            for (int table = 0; table < MODIFIERS.length; table++)
+            {
+                long error = 0;
+                for (int i = 0; i < texels.length && error < best; i++)
+                {
+                    int t = texels[i];
+                    int bestTexel = Integer.MAX_VALUE;
+                    for (int m = 0; m < 4; m++)
+                    {
+                        int modifier = MODIFIERS[table][m & 1];
+                        if (m >= 2)
+                            modifier = -modifier;
+                        int dr = Clamp(r + modifier) - mRed[t];
+                        int dg = Clamp(g + modifier) - mGreen[t];
+                        int db = Clamp(b + modifier) - mBlue[t];
+                        int e = dr * dr + dg * dg + db * db;
+                        if (e < bestTexel)
+                        {
+                            bestTexel = e;
+                            mCandidate[i] = m;
+                        }
+                    }
+                    error += bestTexel;
+                }
+                if (error < best)
+                {
+                    best = error;
+                    mTable = table;
+                    System.arraycopy(mCandidate, 0, mIndices, 0, texels.length);
+                }
+            }
+            return best;
+        }
+
+        private void Average(int[] texels, int[] rgb)
+        {
+            int r = 0, g = 0, b = 0;
+            for (int t : texels)
+            {
+                r += mRed[t];
+                g += mGreen[t];
+                b += mBlue[t];
+            }
+            rgb[0] = (r + texels.length / 2) / texels.length;
+            rgb[1] = (g + texels.length / 2) / texels.length;
+            rgb[2] = (b + texels.length / 2) / texels.length;
+        }
+
+        // 0..255 to 0..max, rounded
+        private static int Quantize(int c, int max)
+        {
+            return (c * max + 127) / 255;
+        }
+
+        private static void WriteInt(byte[] out, int offset, int value)
+        {
+            out[offset] = (byte) (value >>> 24);
+            out[offset + 1] = (byte) (value >>> 16);
+            out[offset + 2] = (byte) (value >>> 8);
+            out[offset + 3] = (byte) value;
+        }
+    }
+}
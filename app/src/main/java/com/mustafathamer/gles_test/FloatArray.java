@@ -0,0 +1,124 @@
+package com.mustafathamer.gles_test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Growable array of primitive floats, used instead of List<Float> so that loading a model
+ * doesn't box every coordinate into its own Float object.
+ * The backing array is exposed through GetData() for fast indexed reads, only the first Size()
+ * entries are valid.
+ */
+
+public class FloatArray
+{
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int BYTES_PER_FLOAT = 4;
+
+    private float[] mData;
+    private int mSize;
+
+    //
+    // CTOR
+    //
+    public FloatArray()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FloatArray(int capacity)
+    {
+        mData = new float[Math.max(capacity, 1)];
+        mSize = 0;
+    }
+
+    public float[] GetData()    { return mData; }
+    public int Size()           { return mSize; }
+    public boolean IsEmpty()    { return mSize == 0; }
+    public void Clear()         { mSize = 0; }
+
+    public float Get(int index)
+    {
+        return mData[index];
+    }
+
+    public void Set(int index, float value)
+    {
+        mData[index] = value;
+    }
+
+    public void Add(float value)
+    {
+        if (mSize == mData.length)
+            EnsureCapacity(mSize + 1);
+        mData[mSize++] = value;
+    }
+
+    public void Add(float x, float y, float z)
+    {
+        if (mSize + 3 > mData.length)
+            EnsureCapacity(mSize + 3);
+        mData[mSize++] = x;
+        mData[mSize++] = y;
+        mData[mSize++] = z;
+    }
+
+    public void AddAll(float[] values, int offset, int count)
+    {
+        EnsureCapacity(mSize + count);
+        System.arraycopy(values, offset, mData, mSize, count);
+        mSize += count;
+    }
+
+    //
+    // Grow the array, at least doubling it, to hold a total of capacity floats
+    //
+    public void EnsureCapacity(int capacity)
+    {
+        if (capacity <= mData.length)
+            return;
+        float[] bigger = new float[Math.max(capacity, mData.length * 2)];
+        System.arraycopy(mData, 0, bigger, 0, mSize);
+        mData = bigger;
+    }
+
+    //
+    // Set the size, growing if needed. New entries are zero.
+    //
+    public void Resize(int size)
+    {
+        EnsureCapacity(size);
+        if (size > mSize)
+            java.util.Arrays.fill(mData, mSize, size, 0.0f);
+        mSize = size;
+    }
+
+    public float[] ToArray()
+    {
+        float[] array = new float[mSize];
+        System.arraycopy(mData, 0, array, 0, mSize);
+        return array;
+    }
+
+    //
+    // Bulk copy the contents into a buffer at its current position
+    //
+    public void CopyTo(FloatBuffer buffer)
+    {
+        buffer.put(mData, 0, mSize);
+    }
+
+    //
+    // Create a native order direct buffer (what GL wants) holding a copy of the contents,
+    // positioned at 0
+    //
+    public FloatBuffer ToDirectBuffer()
+    {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(mSize * BYTES_PER_FLOAT)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        CopyTo(buffer);
+        buffer.position(0);
+        return buffer;
+    }
+}
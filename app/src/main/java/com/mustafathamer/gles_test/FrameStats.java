@@ -0,0 +1,281 @@
+package com.mustafathamer.gles_test;
+
+import java.util.Arrays;
+
+/**
+ * Per frame measurements of the last frames: CPU time of the frame and of its phases (update,
+ * cull, draw submit), time between frames, draw calls, triangles and bytes uploaded. Each metric
+ * keeps its last values in a ring buffer, with a histogram of the same values for percentiles
+ * (p50 / p95 / p99 over the window, within 1/32 of the true value).
+ * <p>
+ * Phases nest: a phase begun inside another (ex: CULL, from Frustum, inside DRAW) pauses the
+ * outer one, so each phase counts only its own time. Time outside of any phase is in FRAME only.
+ * <p>
+ * Nothing is allocated after construction, so it can stay on in release builds and in the JVM
+ * benchmarks. One thread writes (the GL thread, or the benchmark); any thread can read without
+ * blocking it: the values are plain arrays published by a volatile counter, a read racing with
+ * EndFrame() can see that frame half added.
+ */
+
+public class FrameStats
+{
+    // metrics, times in ns
+    public static final int FRAME = 0;              // from BeginFrame() to EndFrame()
+    public static final int INTERVAL = 1;           // from the last BeginFrame(), 0 for the first frame
+    public static final int UPDATE = 2;             // phases
+    public static final int CULL = 3;
+    public static final int DRAW = 4;
+    public static final int DRAW_CALLS = 5;         // counts
+    public static final int TRIANGLES = 6;
+    public static final int BYTES_UPLOADED = 7;
+    public static final int NUM_METRICS = 8;
+
+    public static final String[] NAMES = {"frame", "interval", "update", "cull", "draw", "draw calls",
+            "triangles", "uploaded"};
+
+    private static final int MAX_NESTED_PHASES = 8;
+
+    public interface Clock
+    {
+        long NanoTime();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock()
+    {
+        @Override
+        public long NanoTime()
+        {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * The last values of one metric, and their histogram. Values are >= 0 (negative ones count as 0).
+     * Buckets are exact below 64, then 32 per power of two.
+     */
+    public static class Metric
+    {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        public static final int NUM_BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        private final long[] mValues;
+        private final int[] mHistogram = new int[NUM_BUCKETS];
+        private int mNext;
+        private volatile long mTotal;       // values ever added, written last
+
+        public Metric(int capacity)
+        {
+            mValues = new long[capacity];
+        }
+
+        public int GetCapacity()    { return mValues.length; }
+        public long GetTotal()      { return mTotal; }
+
+        // number of values in the window
+        public int Size()
+        {
+            return (int) Math.min(mTotal, mValues.length);
+        }
+
+        public void Add(long value)
+        {
+            if (value < 0)
+                value = 0;
+            long total = mTotal;
+            if (total >= mValues.length)
+                mHistogram[Bucket(mValues[mNext])]--;       // leaves the window
+            mValues[mNext] = value;
+            mHistogram[Bucket(value)]++;
+            mNext = mNext + 1 == mValues.length ? 0 : mNext + 1;
+            mTotal = total + 1;
+        }
+
+        public void Clear()
+        {
+            Arrays.fill(mHistogram, 0);
+            mNext = 0;
+            mTotal = 0;
+        }
+
+        //
+        // The value age frames ago, 0 for the last one. age must be < Size().
+        //
+        public long Get(int age)
+        {
+            int index = (int) ((mTotal - 1 - age) % mValues.length);
+            return mValues[index];
+        }
+
+        public long GetLast()
+        {
+            return Size() == 0 ? 0 : Get(0);
+        }
+
+        public long GetMax()
+        {
+            long max = 0;
+            for (int i = 0, size = Size(); i < size; i++)
+                max = Math.max(max, mValues[i]);
+            return max;
+        }
+
+        public double GetMean()
+        {
+            int size = Size();
+            if (size == 0)
+                return 0;
+            long sum = 0;
+            for (int i = 0; i < size; i++)
+                sum += mValues[i];
+            return (double) sum / size;
+        }
+
+        //
+        // The value fraction (0..1) of the window is at or below, 0 if empty. It's the top of
+        // its histogram bucket, never more than the largest value.
+        //
+        public long Percentile(double fraction)
+        {
+            int size = Size();
+            if (size == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * size));
+            long count = 0;
+            for (int bucket = 0; bucket < NUM_BUCKETS; bucket++)
+            {
+                count += mHistogram[bucket];
+                if (count >= rank)
+                    return Math.min(BucketTop(bucket), GetMax());
+            }
+            return GetMax();
+        }
+
+        // exact below 2 * SUB_BUCKETS, then SUB_BUCKETS buckets per power of two
+        static int Bucket(long value)
+        {
+            if (value < 2 * SUB_BUCKETS)
+                return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        // the largest value of a bucket
+        static long BucketTop(int bucket)
+        {
+            if (bucket < 2 * SUB_BUCKETS)
+                return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long mantissa = bucket - shift * SUB_BUCKETS;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    private final Clock mClock;
+    private final Metric[] mMetrics = new Metric[NUM_METRICS];
+
+    private long mFrameStart = -1;
+    private long mPhaseStart;
+    private final int[] mPhases = new int[MAX_NESTED_PHASES];
+    private int mNumPhases;
+    private final long[] mPhaseNanos = new long[NUM_METRICS];
+
+    //
+    // CTOR
+    // capacity: the number of frames kept
+    //
+    public FrameStats(int capacity)
+    {
+        this(capacity, SYSTEM_CLOCK);
+    }
+
+    public FrameStats(int capacity, Clock clock)
+    {
+        mClock = clock;
+        for (int metric = 0; metric < NUM_METRICS; metric++)
+            mMetrics[metric] = new Metric(capacity);
+    }
+
+    public Metric Get(int metric)       { return mMetrics[metric]; }
+    public int GetNumFrames()           { return mMetrics[FRAME].Size(); }
+
+    public void BeginFrame()
+    {
+        long now = mClock.NanoTime();
+        mMetrics[INTERVAL].Add(mFrameStart < 0 ? 0 : now - mFrameStart);
+        mFrameStart = now;
+        mPhaseStart = now;
+        mNumPhases = 0;
+        mPhaseNanos[UPDATE] = mPhaseNanos[CULL] = mPhaseNanos[DRAW] = 0;
+    }
+
+    //
+    // Start timing phase (UPDATE, CULL or DRAW), pausing the phase it's nested in
+    //
+    public void BeginPhase(int phase)
+    {
+        long now = mClock.NanoTime();
+        if (mNumPhases > 0 && mNumPhases <= MAX_NESTED_PHASES)
+            mPhaseNanos[mPhases[mNumPhases - 1]] += now - mPhaseStart;
+        if (mNumPhases < MAX_NESTED_PHASES)
+            mPhases[mNumPhases] = phase;
+        mNumPhases++;
+        mPhaseStart = now;
+    }
+
+    //
+    // Stop timing the phase begun last, resuming the one it was nested in
+    //
+    public void EndPhase()
+    {
+        if (mNumPhases == 0)
+            return;
+        long now = mClock.NanoTime();
+        mNumPhases--;
+        if (mNumPhases < MAX_NESTED_PHASES)
+            mPhaseNanos[mPhases[mNumPhases]] += now - mPhaseStart;
+        mPhaseStart = now;
+    }
+
+    //
+    // Record the frame, with the counts of the GL calls it made
+    //
+    public void EndFrame(int drawCalls, long triangles, long bytesUploaded)
+    {
+        while (mNumPhases > 0)
+            EndPhase();
+        mMetrics[FRAME].Add(mClock.NanoTime() - mFrameStart);
+        mMetrics[UPDATE].Add(mPhaseNanos[UPDATE]);
+        mMetrics[CULL].Add(mPhaseNanos[CULL]);
+        mMetrics[DRAW].Add(mPhaseNanos[DRAW]);
+        mMetrics[DRAW_CALLS].Add(drawCalls);
+        mMetrics[TRIANGLES].Add(triangles);
+        mMetrics[BYTES_UPLOADED].Add(bytesUploaded);
+    }
+
+    public void Clear()
+    {
+        for (Metric metric : mMetrics)
+            metric.Clear();
+        mFrameStart = -1;
+    }
+
+    //
+    // One line per metric: last, mean, p50, p95, p99, max. Allocates, for logs and reports.
+    //
+    public String Report()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d frames %14s %10s %10s %10s %10s %10s", GetNumFrames(), "last", "mean",
+                "p50", "p95", "p99", "max"));
+        for (int metric = 0; metric < NUM_METRICS; metric++)
+        {
+            Metric values = mMetrics[metric];
+            double scale = metric < DRAW_CALLS ? 1e-6 : 1;      // ns to ms
+            report.append(String.format("\n%-12s %12.2f %10.2f %10.2f %10.2f %10.2f %10.2f", NAMES[metric],
+                    values.GetLast() * scale, values.GetMean() * scale, values.Percentile(0.50) * scale,
+                    values.Percentile(0.95) * scale, values.Percentile(0.99) * scale, values.GetMax() * scale));
+        }
+        return report.toString();
+    }
+}
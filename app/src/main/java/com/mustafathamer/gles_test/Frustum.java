@@ -0,0 +1,110 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * The 6 planes of the view frustum in world space, extracted from the view-projection matrix
+ * (Gribb / Hartmann), for skipping objects that can't be on screen.
+ * Objects are tested by their bounding sphere moved into world space; the test is conservative,
+ * a sphere that straddles a corner of the frustum is kept.
+ * <p>
+ * Counts the objects tested and culled since the last SetViewProjection(), ie per frame, and
+ * times the tests as the FrameStats.CULL phase when given a FrameStats.
+ * Plain Java, nothing here allocates.
+ */
+
+public class Frustum
+{
+    public static final int LEFT = 0, RIGHT = 1, BOTTOM = 2, TOP = 3, NEAR = 4, FAR = 5;
+
+    // a, b, c, d per plane, normalized, inside where a*x + b*y + c*z + d >= 0
+    private final float[] mPlanes = new float[6 * 4];
+
+    private int mNumTested;
+    private int mNumCulled;
+    private FrameStats mFrameStats;
+
+    public int GetNumTested()   { return mNumTested; }
+    public int GetNumCulled()   { return mNumCulled; }
+
+    // null to stop timing
+    public void SetFrameStats(FrameStats frameStats)
+    {
+        mFrameStats = frameStats;
+    }
+
+    //
+    // Extract the planes from projection * view (column major), and reset the counters
+    //
+    public void SetViewProjection(float[] m)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            // row 3 +/- row i
+            SetPlane(i * 2, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+            SetPlane(i * 2 + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+        }
+        mNumTested = 0;
+        mNumCulled = 0;
+    }
+
+    private void SetPlane(int plane, float a, float b, float c, float d)
+    {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        mPlanes[plane * 4] = a / length;
+        mPlanes[plane * 4 + 1] = b / length;
+        mPlanes[plane * 4 + 2] = c / length;
+        mPlanes[plane * 4 + 3] = d / length;
+    }
+
+    // signed distance from a plane to a point, positive inside
+    public float Distance(int plane, float x, float y, float z)
+    {
+        int p = plane * 4;
+        return mPlanes[p] * x + mPlanes[p + 1] * y + mPlanes[p + 2] * z + mPlanes[p + 3];
+    }
+
+    //
+    // True if the world space sphere is at least partly inside
+    //
+    public boolean IsSphereVisible(float x, float y, float z, float radius)
+    {
+        for (int plane = 0; plane < 6; plane++)
+        {
+            if (Distance(plane, x, y, z) < -radius)
+                return false;
+        }
+        return true;
+    }
+
+    //
+    // Test an object by its object space bounds and its model (object to world) matrix. The
+    // radius is scaled by the largest axis scale of the matrix. Counted.
+    //
+    public boolean IsVisible(Bounds bounds, float[] modelMatrix)
+    {
+        if (mFrameStats == null)
+            return TestVisible(bounds, modelMatrix);
+        mFrameStats.BeginPhase(FrameStats.CULL);
+        boolean visible = TestVisible(bounds, modelMatrix);
+        mFrameStats.EndPhase();
+        return visible;
+    }
+
+    private boolean TestVisible(Bounds bounds, float[] modelMatrix)
+    {
+        float[] m = modelMatrix;
+        float cx = bounds.GetCenterX(), cy = bounds.GetCenterY(), cz = bounds.GetCenterZ();
+        float x = m[0] * cx + m[4] * cy + m[8] * cz + m[12];
+        float y = m[1] * cx + m[5] * cy + m[9] * cz + m[13];
+        float z = m[2] * cx + m[6] * cy + m[10] * cz + m[14];
+
+        float scaleSq = Math.max(m[0] * m[0] + m[1] * m[1] + m[2] * m[2],
+                Math.max(m[4] * m[4] + m[5] * m[5] + m[6] * m[6], m[8] * m[8] + m[9] * m[9] + m[10] * m[10]));
+        float radius = bounds.GetRadius() * (float) Math.sqrt(scaleSq);
+
+        mNumTested++;
+        if (IsSphereVisible(x, y, z, radius))
+            return true;
+        mNumCulled++;
+        return false;
+    }
+}
@@ -0,0 +1,151 @@
+package com.mustafathamer.gles_test;
+
+import java.nio.Buffer;
+
+/**
+ * Thin interface over the GLES20 calls used by the renderer (programs, buffers, textures, drawing).
+ * GLES20Api forwards to the real GLES20 bindings, unit tests can swap in a fake that records the
+ * calls instead, since android.opengl isn't usable on the JVM.
+ */
+
+public interface GLApi
+{
+    //
+    // frame
+    //
+    void glClear(int mask);
+
+    //
+    // render state
+    //
+    // GL_CULL_FACE, GL_DEPTH_TEST, GL_BLEND...
+    void glEnable(int cap);
+
+    void glDisable(int cap);
+
+    //
+    // state queries
+    //
+    // GL_VENDOR, GL_RENDERER, GL_VERSION or GL_EXTENSIONS (space separated names)
+    String glGetString(int name);
+
+    //
+    // shaders and programs
+    //
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String source);
+
+    void glCompileShader(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glBindAttribLocation(int program, int index, String name);
+
+    void glLinkProgram(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glDeleteProgram(int program);
+
+    // program binaries, ES 3 only (see ShaderManager.SupportsProgramBinaries())
+    void glProgramParameteri(int program, int pname, int value);
+
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat,
+                            int binaryFormatOffset, Buffer binary);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    void glUseProgram(int program);
+
+    // these are slow driver queries, resolve once after linking (see ShaderProgram)
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    //
+    // buffer objects
+    //
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    //
+    // textures
+    //
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    // GL_TEXTURE0 + unit, the unit glBindTexture binds to
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                      int type, Buffer pixels);
+
+    void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                int imageSize, Buffer data);
+
+    //
+    // vertex attributes
+    //
+    // offset into the bound GL_ARRAY_BUFFER
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    // client side array, copied by the driver on every draw
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    // constant value, used when the array is disabled
+    void glVertexAttrib3f(int index, float x, float y, float z);
+
+    //
+    // uniforms
+    //
+    // sampler uniforms are set with this, to a texture unit
+    void glUniform1i(int location, int x);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform2f(int location, float x, float y);
+
+    void glUniform3f(int location, float x, float y, float z);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniform4fv(int location, int count, float[] value, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    //
+    // drawing
+    //
+    void glDrawArrays(int mode, int first, int count);
+
+    // offset into the bound GL_ELEMENT_ARRAY_BUFFER
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    // client side indices
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+}
@@ -0,0 +1,751 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+
+/**
+ * GLApi decorator that shadows the GL state and drops the calls that wouldn't change it:
+ * the program in use, the uniform values of each program, the enabled attribute arrays and their
+ * buffer pointers, the bound buffers, the active texture unit and its 2D texture, and the
+ * GL_CULL_FACE / GL_DEPTH_TEST / GL_BLEND flags. Everything else goes straight through.
+ * <p>
+ * The drawing code stays as it is, each object enables its arrays and binds its buffers, then
+ * disables and unbinds them. Enabling / disabling arrays and binding buffers only matter to the
+ * next draw (or pointer, upload), so those calls are deferred until then: a disable followed by
+ * the next object's enable of the same array, or an unbind followed by a bind of the same buffer,
+ * both cost nothing. Program, uniform, texture and flag changes are made right away.
+ * <p>
+ * Deleting a bound buffer or texture unbinds it, as GL does. State the cache can't know (a new
+ * context) starts unknown, so the first call of each is always made: Reset() when the context is
+ * created. All GL calls of the context must go through the cache, or the shadow goes stale.
+ * <p>
+ * Bracket every frame with BeginFrame() / EndFrame(), as CountingGLApi: GetIssuedLastFrame() is
+ * the number of state calls the last frame made to the driver, GetElidedLastFrame() how many it
+ * saved. Must only be used on the GL thread.
+ */
+
+public class GLStateCache implements GLApi
+{
+    private static final int UNKNOWN = -1;
+
+    // tracked range, calls outside of it go through and are counted as issued
+    private static final int MAX_ATTRIBS = 16;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_UNIFORM_LOCATION = 256;
+
+    private final GLApi mGL;
+    private int mNumIssued;
+    private int mNumElided;
+    private int mIssuedLastFrame;
+    private int mElidedLastFrame;
+
+    private int mProgram;
+
+    // uniform shadows per location: the number of values known (0 if none), then the values as raw
+    // bits. A slot is sized for the longest value set, shorter ones (the last batch of a uniform
+    // array) reuse it.
+    private int[][] mUniforms;              // of mProgram, null when it isn't known
+    private final HashMap<Integer, int[][]> mProgramUniforms = new HashMap<>();
+    private final float[] mScratch = new float[4];
+
+    // what the driver has, and what was asked for since (UNKNOWN if nothing): they differ while a
+    // call is deferred
+    private final int[] mArrayEnabled = new int[MAX_ATTRIBS];
+    private final int[] mArrayWanted = new int[MAX_ATTRIBS];
+    private int mArrayBuffer;
+    private int mArrayBufferWanted;
+    private int mElementBuffer;
+    private int mElementBufferWanted;
+
+    // the buffer pointer of each attribute, a client side pointer is never shadowed
+    private final boolean[] mPointerKnown = new boolean[MAX_ATTRIBS];
+    private final int[][] mPointers = new int[MAX_ATTRIBS][6];     // buffer, size, type, normalized, stride, offset
+
+    private int mActiveTexture;
+    private final int[] mTextures = new int[MAX_TEXTURE_UNITS];
+
+    // GL_CULL_FACE, GL_DEPTH_TEST, GL_BLEND
+    private final int[] mCaps = new int[3];
+
+    //
+    // CTOR
+    //
+    public GLStateCache(GLApi gl)
+    {
+        mGL = gl;
+        Reset();
+    }
+
+    // calls made since the last BeginFrame()
+    public int GetNumIssued()           { return mNumIssued; }
+    public int GetNumElided()           { return mNumElided; }
+    public int GetIssuedLastFrame()     { return mIssuedLastFrame; }
+    public int GetElidedLastFrame()     { return mElidedLastFrame; }
+
+    public void BeginFrame()
+    {
+        mNumIssued = 0;
+        mNumElided = 0;
+    }
+
+    public void EndFrame()
+    {
+        mIssuedLastFrame = mNumIssued;
+        mElidedLastFrame = mNumElided;
+    }
+
+    //
+    // Forget all the state, for a new context (or after GL calls that didn't go through the cache)
+    //
+    public void Reset()
+    {
+        mProgram = UNKNOWN;
+        mUniforms = null;
+        mProgramUniforms.clear();
+        for (int index = 0; index < MAX_ATTRIBS; index++)
+        {
+            mArrayEnabled[index] = UNKNOWN;
+            mArrayWanted[index] = UNKNOWN;
+            mPointerKnown[index] = false;
+        }
+        mArrayBuffer = mElementBuffer = UNKNOWN;
+        mArrayBufferWanted = mElementBufferWanted = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++)
+            mTextures[unit] = UNKNOWN;
+        for (int cap = 0; cap < mCaps.length; cap++)
+            mCaps[cap] = UNKNOWN;
+    }
+
+    //
+    // deferred state, made current before the calls that use it
+    //
+    private void FlushArrayBuffer()
+    {
+        if (mArrayBufferWanted != UNKNOWN && mArrayBuffer != mArrayBufferWanted)
+        {
+            mArrayBuffer = mArrayBufferWanted;
+            mNumIssued++;
+            mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mArrayBuffer);
+        }
+    }
+
+    private void FlushElementBuffer()
+    {
+        if (mElementBufferWanted != UNKNOWN && mElementBuffer != mElementBufferWanted)
+        {
+            mElementBuffer = mElementBufferWanted;
+            mNumIssued++;
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mElementBuffer);
+        }
+    }
+
+    private void FlushArrays()
+    {
+        for (int index = 0; index < MAX_ATTRIBS; index++)
+        {
+            if (mArrayWanted[index] == UNKNOWN || mArrayEnabled[index] == mArrayWanted[index])
+                continue;
+            mArrayEnabled[index] = mArrayWanted[index];
+            mNumIssued++;
+            if (mArrayEnabled[index] == 1)
+                mGL.glEnableVertexAttribArray(index);
+            else
+                mGL.glDisableVertexAttribArray(index);
+        }
+    }
+
+    //
+    // Ask for a deferred value: the call is elided if it's what the driver has, and so is an earlier
+    // call still waiting that it replaces. Returns the new wanted value.
+    //
+    private int Defer(int current, int wanted, int value)
+    {
+        if (wanted != UNKNOWN && wanted != current)
+            mNumElided++;       // replaced before it was made
+        if (value == current)
+            mNumElided++;
+        return value;
+    }
+
+    private void SetArray(int index, int enabled)
+    {
+        if (index < 0 || index >= MAX_ATTRIBS)
+        {
+            mNumIssued++;
+            if (enabled == 1)
+                mGL.glEnableVertexAttribArray(index);
+            else
+                mGL.glDisableVertexAttribArray(index);
+            return;
+        }
+        if (mArrayWanted[index] == enabled)
+        {
+            mNumElided++;       // already there, or already on its way
+            return;
+        }
+        mArrayWanted[index] = Defer(mArrayEnabled[index], mArrayWanted[index], enabled);
+    }
+
+    //
+    // The shadow of a uniform location of the program in use, for up to length values, null if not
+    // tracked
+    //
+    private int[] UniformSlot(int location, int length)
+    {
+        if (mUniforms == null || location < 0 || location >= MAX_UNIFORM_LOCATION)
+            return null;
+        if (location >= mUniforms.length)
+        {
+            int[][] uniforms = new int[Math.min(MAX_UNIFORM_LOCATION, Math.max(location + 1, mUniforms.length * 2))][];
+            System.arraycopy(mUniforms, 0, uniforms, 0, mUniforms.length);
+            mUniforms = uniforms;
+            mProgramUniforms.put(mProgram, uniforms);
+        }
+        int[] slot = mUniforms[location];
+        if (slot == null || slot.length < length + 1)
+        {
+            slot = new int[length + 1];         // nothing known
+            mUniforms[location] = slot;
+        }
+        return slot;
+    }
+
+    //
+    // Whether a uniform call would change the value of location, the shadow is updated if so.
+    // Location -1 (a uniform the shader optimized out) is ignored by GL, so never changes.
+    //
+    private boolean UniformChanged(int location, float[] values, int offset, int length)
+    {
+        if (location == -1)
+        {
+            mNumElided++;
+            return false;
+        }
+        int[] slot = UniformSlot(location, length);
+        if (slot != null)
+        {
+            boolean same = slot[0] == length;
+            for (int i = 0; i < length; i++)
+            {
+                int bits = Float.floatToRawIntBits(values[offset + i]);
+                same &= slot[i + 1] == bits;
+                slot[i + 1] = bits;
+            }
+            if (same)
+            {
+                mNumElided++;
+                return false;
+            }
+            slot[0] = length;
+        }
+        mNumIssued++;
+        return true;
+    }
+
+    private boolean UniformChanged(int location, int value)
+    {
+        if (location == -1)
+        {
+            mNumElided++;
+            return false;
+        }
+        int[] slot = UniformSlot(location, 1);
+        if (slot != null)
+        {
+            if (slot[0] == 1 && slot[1] == value)
+            {
+                mNumElided++;
+                return false;
+            }
+            slot[0] = 1;
+            slot[1] = value;
+        }
+        mNumIssued++;
+        return true;
+    }
+
+    // a relinked program loses its uniform values
+    private void ForgetUniforms(int program)
+    {
+        mProgramUniforms.remove(program);
+        if (program == mProgram)
+        {
+            mUniforms = new int[8][];
+            mProgramUniforms.put(program, mUniforms);
+        }
+    }
+
+    private static int CapIndex(int cap)
+    {
+        switch (cap)
+        {
+            case GLES20.GL_CULL_FACE:   return 0;
+            case GLES20.GL_DEPTH_TEST:  return 1;
+            case GLES20.GL_BLEND:       return 2;
+            default:                    return -1;
+        }
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        int index = CapIndex(cap);
+        if (index >= 0 && mCaps[index] == 1)
+        {
+            mNumElided++;
+            return;
+        }
+        if (index >= 0)
+            mCaps[index] = 1;
+        mNumIssued++;
+        mGL.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        int index = CapIndex(cap);
+        if (index >= 0 && mCaps[index] == 0)
+        {
+            mNumElided++;
+            return;
+        }
+        if (index >= 0)
+            mCaps[index] = 0;
+        mNumIssued++;
+        mGL.glDisable(cap);
+    }
+
+    @Override
+    public String glGetString(int name)
+    {
+        return mGL.glGetString(name);
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        return mGL.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source)
+    {
+        mGL.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        mGL.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        return mGL.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name)
+    {
+        mGL.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        ForgetUniforms(program);
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        return mGL.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        mProgramUniforms.remove(program);
+        if (program == mProgram)
+        {
+            // stays in use until the next glUseProgram, and its name can come back with another program
+            mProgram = UNKNOWN;
+            mUniforms = null;
+        }
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value)
+    {
+        mGL.glProgramParameteri(program, pname, value);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary)
+    {
+        mGL.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length)
+    {
+        ForgetUniforms(program);
+        mGL.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        if (program == mProgram)
+        {
+            mNumElided++;
+            return;
+        }
+        mProgram = program;
+        mUniforms = mProgramUniforms.get(program);
+        if (mUniforms == null)
+        {
+            mUniforms = new int[8][];
+            mProgramUniforms.put(program, mUniforms);
+        }
+        mNumIssued++;
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        // GL unbinds the deleted buffers, and their names can come back with other buffers
+        for (int i = offset; i < offset + n; i++)
+        {
+            int buffer = buffers[i];
+            if (buffer == 0)
+                continue;
+            if (mArrayBuffer == buffer)
+                mArrayBuffer = 0;
+            if (mArrayBufferWanted == buffer)
+                mArrayBufferWanted = mArrayBuffer;
+            if (mElementBuffer == buffer)
+                mElementBuffer = 0;
+            if (mElementBufferWanted == buffer)
+                mElementBufferWanted = mElementBuffer;
+            for (int index = 0; index < MAX_ATTRIBS; index++)
+            {
+                if (mPointerKnown[index] && mPointers[index][0] == buffer)
+                    mPointerKnown[index] = false;
+            }
+        }
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        if (target == GLES20.GL_ARRAY_BUFFER)
+        {
+            if (buffer == mArrayBufferWanted)
+                mNumElided++;
+            else
+                mArrayBufferWanted = Defer(mArrayBuffer, mArrayBufferWanted, buffer);
+        }
+        else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+        {
+            if (buffer == mElementBufferWanted)
+                mNumElided++;
+            else
+                mElementBufferWanted = Defer(mElementBuffer, mElementBufferWanted, buffer);
+        }
+        else
+        {
+            mNumIssued++;
+            mGL.glBindBuffer(target, buffer);
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        if (target == GLES20.GL_ARRAY_BUFFER)
+            FlushArrayBuffer();
+        else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+            FlushElementBuffer();
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        // GL binds 0 to the units the deleted textures were bound to
+        for (int i = offset; i < offset + n; i++)
+        {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++)
+            {
+                if (textures[i] != 0 && mTextures[unit] == textures[i])
+                    mTextures[unit] = 0;
+            }
+        }
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        if (texture == mActiveTexture)
+        {
+            mNumElided++;
+            return;
+        }
+        mActiveTexture = texture;
+        mNumIssued++;
+        mGL.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        int unit = mActiveTexture - GLES20.GL_TEXTURE0;
+        boolean tracked = target == GLES20.GL_TEXTURE_2D && mActiveTexture != UNKNOWN
+                && unit >= 0 && unit < MAX_TEXTURE_UNITS;
+        if (tracked && mTextures[unit] == texture)
+        {
+            mNumElided++;
+            return;
+        }
+        if (tracked)
+            mTextures[unit] = texture;
+        mNumIssued++;
+        mGL.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        mGL.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                             int type, Buffer pixels)
+    {
+        mGL.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                       int imageSize, Buffer data)
+    {
+        mGL.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        FlushArrayBuffer();
+        if (index >= 0 && index < MAX_ATTRIBS && mArrayBuffer != UNKNOWN)
+        {
+            int[] pointer = mPointers[index];
+            int norm = normalized ? 1 : 0;
+            if (mPointerKnown[index] && pointer[0] == mArrayBuffer && pointer[1] == size && pointer[2] == type
+                    && pointer[3] == norm && pointer[4] == stride && pointer[5] == offset)
+            {
+                mNumElided++;
+                return;
+            }
+            pointer[0] = mArrayBuffer;
+            pointer[1] = size;
+            pointer[2] = type;
+            pointer[3] = norm;
+            pointer[4] = stride;
+            pointer[5] = offset;
+            mPointerKnown[index] = true;
+        }
+        mNumIssued++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        // the memory behind a client pointer can change between draws, it's always set again
+        FlushArrayBuffer();
+        if (index >= 0 && index < MAX_ATTRIBS)
+            mPointerKnown[index] = false;
+        mNumIssued++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        SetArray(index, 1);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        SetArray(index, 0);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int index, float x, float y, float z)
+    {
+        mGL.glVertexAttrib3f(index, x, y, z);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        if (UniformChanged(location, x))
+            mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        mScratch[0] = x;
+        if (UniformChanged(location, mScratch, 0, 1))
+            mGL.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y)
+    {
+        mScratch[0] = x;
+        mScratch[1] = y;
+        if (UniformChanged(location, mScratch, 0, 2))
+            mGL.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z)
+    {
+        mScratch[0] = x;
+        mScratch[1] = y;
+        mScratch[2] = z;
+        if (UniformChanged(location, mScratch, 0, 3))
+            mGL.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        mScratch[0] = x;
+        mScratch[1] = y;
+        mScratch[2] = z;
+        mScratch[3] = w;
+        if (UniformChanged(location, mScratch, 0, 4))
+            mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] value, int offset)
+    {
+        if (UniformChanged(location, value, offset, 4 * count))
+            mGL.glUniform4fv(location, count, value, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        if (transpose)
+        {
+            // an error in ES 2, left to the driver
+            mNumIssued++;
+            mGL.glUniformMatrix4fv(location, count, true, value, offset);
+            return;
+        }
+        if (UniformChanged(location, value, offset, 16 * count))
+            mGL.glUniformMatrix4fv(location, count, false, value, offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count)
+    {
+        FlushArrays();
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset)
+    {
+        FlushArrays();
+        FlushElementBuffer();
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices)
+    {
+        FlushArrays();
+        FlushElementBuffer();
+        mGL.glDrawElements(mode, count, type, indices);
+    }
+}
@@ -0,0 +1,173 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * On screen graph of the last frames of a FrameStats, drawn over the scene along the bottom of
+ * the view: a bar per frame, newest on the right, its CPU time stacked by phase (update blue,
+ * cull yellow, draw green, the rest grey), under lines at the frame budget (white) and at the
+ * p50 (cyan), p95 (orange) and p99 (red) of the frame time. The graph is twice the budget high,
+ * taller bars are cut.
+ * <p>
+ * The vertices are rebuilt every frame into one preallocated client side array and drawn with a
+ * single draw call, nothing is allocated. Build() makes no GL calls, so the graph can be checked
+ * without a context.
+ */
+
+public class HudRenderer
+{
+    // the hud_vertex_shader.txt names, attributes in their bound location order
+    public static final String[] ATTRIBUTES = {"a_Position", "a_Color"};
+    public static final String[] UNIFORMS = {};
+
+    public static final long BUDGET_NANOS = 1000000000L / 60;
+    public static final int FLOATS_PER_VERTEX = 6;      // x, y, r, g, b, a
+    private static final int VERTICES_PER_QUAD = 6;
+    private static final int NUM_SEGMENTS = 4;          // per bar: the phases and the rest
+    private static final int NUM_LINES = 4;
+
+    // graph area, in normalized device coordinates
+    private static final float LEFT = -0.95f;
+    private static final float RIGHT = 0.95f;
+    private static final float BOTTOM = -0.95f;
+    private static final float TOP = -0.55f;
+    private static final float LINE_HEIGHT = 0.006f;
+
+    private static final int[] PHASES = {FrameStats.UPDATE, FrameStats.CULL, FrameStats.DRAW};
+    private static final float[][] SEGMENT_COLORS = {
+            {0.2f, 0.4f, 1.0f, 1}, {1.0f, 0.9f, 0.2f, 1}, {0.2f, 0.9f, 0.3f, 1}, {0.5f, 0.5f, 0.5f, 1}};
+    private static final float[][] LINE_COLORS = {
+            {1, 1, 1, 1}, {0.2f, 0.9f, 1.0f, 1}, {1.0f, 0.6f, 0.1f, 1}, {1.0f, 0.2f, 0.2f, 1}};
+    private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+    private final ShaderProgram mProgram;
+    private final int mNumBars;
+    private final FloatBuffer mVertices;
+    private final FloatBuffer mColors;          // the same vertices from their color
+    private int mNumVertices;
+
+    // locations, resolved once
+    private int mPositionHandle;
+    private int mColorHandle;
+
+    //
+    // CTOR
+    // program: linked from hud_vertex_shader.txt and hud_fragment_shader.txt with ATTRIBUTES, null
+    // to only build the vertices
+    // numBars: the frames shown, at most
+    //
+    public HudRenderer(ShaderProgram program, int numBars)
+    {
+        mProgram = program;
+        mNumBars = numBars;
+
+        int numVertices = (numBars * NUM_SEGMENTS + NUM_LINES) * VERTICES_PER_QUAD;
+        mVertices = ByteBuffer.allocateDirect(numVertices * FLOATS_PER_VERTEX * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVertices.position(2);
+        mColors = mVertices.slice();
+        mVertices.position(0);
+
+        if (program != null)
+        {
+            mPositionHandle = program.GetAttribLocation("a_Position");
+            mColorHandle = program.GetAttribLocation("a_Color");
+        }
+    }
+
+    public FloatBuffer GetVertices()    { return mVertices; }
+    public int GetNumVertices()         { return mNumVertices; }
+
+    //
+    // Fill the vertices with the graph of stats, returns their number
+    //
+    public int Build(FrameStats stats)
+    {
+        mVertices.clear();
+        float barWidth = (RIGHT - LEFT) / mNumBars;
+        float scale = (TOP - BOTTOM) / (2.0f * BUDGET_NANOS);
+        FrameStats.Metric frames = stats.Get(FrameStats.FRAME);
+
+        int numFrames = Math.min(frames.Size(), mNumBars);
+        for (int age = 0; age < numFrames; age++)
+        {
+            float right = RIGHT - age * barWidth;
+            float left = right - barWidth * 0.8f;
+            float y = BOTTOM;
+            long rest = frames.Get(age);
+            for (int segment = 0; segment < NUM_SEGMENTS; segment++)
+            {
+                long nanos = rest;
+                if (segment < PHASES.length)
+                {
+                    nanos = Math.min(rest, stats.Get(PHASES[segment]).Get(age));
+                    rest -= nanos;
+                }
+                float top = Math.min(TOP, y + nanos * scale);
+                if (top > y)
+                    AddQuad(left, y, right, top, SEGMENT_COLORS[segment]);
+                y = top;
+            }
+        }
+
+        AddLine(BUDGET_NANOS * scale, LINE_COLORS[0]);
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+            if (numFrames > 0)
+                AddLine(Math.min(TOP - BOTTOM, frames.Percentile(PERCENTILES[i]) * scale), LINE_COLORS[i + 1]);
+        }
+
+        mNumVertices = mVertices.position() / FLOATS_PER_VERTEX;
+        mVertices.position(0);
+        return mNumVertices;
+    }
+
+    private void AddLine(float height, float[] color)
+    {
+        float y = BOTTOM + height;
+        AddQuad(LEFT, y - LINE_HEIGHT / 2, RIGHT, y + LINE_HEIGHT / 2, color);
+    }
+
+    private void AddQuad(float left, float bottom, float right, float top, float[] color)
+    {
+        AddVertex(left, bottom, color);
+        AddVertex(right, bottom, color);
+        AddVertex(right, top, color);
+        AddVertex(left, bottom, color);
+        AddVertex(right, top, color);
+        AddVertex(left, top, color);
+    }
+
+    private void AddVertex(float x, float y, float[] color)
+    {
+        mVertices.put(x).put(y).put(color[0]).put(color[1]).put(color[2]).put(color[3]);
+    }
+
+    //
+    // Draw the graph of stats over what's on screen, with the HUD program
+    //
+    public void Draw(GLApi gl, FrameStats stats)
+    {
+        if (mProgram == null || stats.GetNumFrames() == 0)
+            return;
+        Build(stats);
+
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        mProgram.Use(gl);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);     // client side arrays
+        gl.glVertexAttribPointer(mPositionHandle, 2, GLES20.GL_FLOAT, false, FLOATS_PER_VERTEX * 4, mVertices);
+        gl.glEnableVertexAttribArray(mPositionHandle);
+        gl.glVertexAttribPointer(mColorHandle, 4, GLES20.GL_FLOAT, false, FLOATS_PER_VERTEX * 4, mColors);
+        gl.glEnableVertexAttribArray(mColorHandle);
+
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, mNumVertices);
+
+        gl.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(mColorHandle);
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+    }
+}
@@ -0,0 +1,66 @@
+package com.mustafathamer.gles_test;
+
+import java.util.Arrays;
+
+/**
+ * The copies of an InstancedMesh to draw this frame: the model matrix of every copy, packed as
+ * the 3 top rows of the matrix (12 floats), the layout of u_InstanceRows in the instanced vertex
+ * shader, so a whole batch of them is uploaded with one glUniform4fv.
+ * <p>
+ * The array only grows, so once it has reached the largest frame, adding copies doesn't allocate.
+ */
+
+public class InstanceBatch
+{
+    public static final int FLOATS_PER_INSTANCE = 12;       // 3 rows of 4
+    public static final int VECTORS_PER_INSTANCE = 3;
+
+    private final InstancedMesh mMesh;
+    private float[] mRows = new float[16 * FLOATS_PER_INSTANCE];
+    private int mNumInstances;
+
+    //
+    // CTOR
+    //
+    public InstanceBatch(InstancedMesh mesh)
+    {
+        mMesh = mesh;
+    }
+
+    public InstancedMesh GetMesh()      { return mMesh; }
+    public int GetNumInstances()        { return mNumInstances; }
+    public float[] GetRows()            { return mRows; }
+
+    //
+    // Add a copy drawn with modelMatrix (column major, affine)
+    //
+    public void Add(float[] modelMatrix)
+    {
+        int dst = mNumInstances * FLOATS_PER_INSTANCE;
+        if (dst + FLOATS_PER_INSTANCE > mRows.length)
+            mRows = Arrays.copyOf(mRows, mRows.length * 2);
+
+        for (int row = 0; row < 3; row++, dst += 4)
+        {
+            mRows[dst] = modelMatrix[row];
+            mRows[dst + 1] = modelMatrix[4 + row];
+            mRows[dst + 2] = modelMatrix[8 + row];
+            mRows[dst + 3] = modelMatrix[12 + row];
+        }
+        mNumInstances++;
+    }
+
+    public void Clear()
+    {
+        mNumInstances = 0;
+    }
+
+    //
+    // Number of draw calls the copies take: one per range per batch of copies
+    //
+    public int GetNumDrawCalls()
+    {
+        int perBatch = mMesh.GetInstancesPerBatch();
+        return (mNumInstances + perBatch - 1) / perBatch * mMesh.GetNumRanges();
+    }
+}
@@ -0,0 +1,132 @@
+package com.mustafathamer.gles_test;
+
+import java.util.ArrayList;
+
+/**
+ * Draws many copies of the same mesh with few draw calls, GLES 2.0 style (no instanced draws).
+ * <p>
+ * While the scene is drawn, instanced models only queue their model matrix in their
+ * InstanceBatch. Flush() then draws every queued batch with the instanced program: per group of up
+ * to InstancedMesh.GetInstancesPerBatch() copies, one glUniform4fv uploads their matrices and one
+ * draw call per material draws them all. The per object path instead binds the buffers, uploads
+ * two matrices and draws once per material, for every copy.
+ * <p>
+ * Without a program (the instanced shader failed to build) IsAvailable() is false and the models
+ * draw themselves one at a time.
+ */
+
+public class InstanceRenderer
+{
+    // the instanced_vertex_shader.txt names, attributes in their bound location order
+    public static final String[] ATTRIBUTES = {"a_Position", "a_Normal", "a_InstanceIndex"};
+    public static final String[] UNIFORMS = {"u_ViewMatrix", "u_ProjectionMatrix", "u_InstanceRows",
+            "u_LightPos", "u_DifColor", "u_AmbColor"};
+
+    private final ShaderProgram mProgram;
+
+    // locations, resolved once
+    private int mPositionHandle;
+    private int mNormalHandle;
+    private int mInstanceIndexHandle;
+    private int mViewMatrixHandle;
+    private int mProjectionMatrixHandle;
+    private int mInstanceRowsHandle;
+    private int mLightPosHandle;
+    private int mDifColorHandle;
+    private int mAmbColorHandle;
+
+    // batches with at least one copy queued this frame
+    private final ArrayList<InstanceBatch> mQueued = new ArrayList<>();
+
+    // the last Flush()
+    private int mNumInstances;
+    private int mNumDrawCalls;
+
+    //
+    // CTOR
+    // program: linked from instanced_vertex_shader.txt with ATTRIBUTES and UNIFORMS, or null if it
+    // couldn't be built
+    //
+    public InstanceRenderer(ShaderProgram program)
+    {
+        mProgram = program;
+        if (program == null)
+            return;
+
+        mPositionHandle = program.GetAttribLocation("a_Position");
+        mNormalHandle = program.GetAttribLocation("a_Normal");
+        mInstanceIndexHandle = program.GetAttribLocation("a_InstanceIndex");
+        mViewMatrixHandle = program.GetUniformLocation("u_ViewMatrix");
+        mProjectionMatrixHandle = program.GetUniformLocation("u_ProjectionMatrix");
+        mInstanceRowsHandle = program.GetUniformLocation("u_InstanceRows");
+        mLightPosHandle = program.GetUniformLocation("u_LightPos");
+        mDifColorHandle = program.GetUniformLocation("u_DifColor");
+        mAmbColorHandle = program.GetUniformLocation("u_AmbColor");
+    }
+
+    public boolean IsAvailable()            { return mProgram != null; }
+
+    // copies drawn, and draw calls made, by the last Flush()
+    public int GetNumInstances()            { return mNumInstances; }
+    public int GetNumDrawCalls()            { return mNumDrawCalls; }
+
+    //
+    // Queue a copy of batch's mesh, drawn with modelMatrix on the next Flush()
+    //
+    public void Add(InstanceBatch batch, float[] modelMatrix)
+    {
+        if (batch.GetNumInstances() == 0)
+            mQueued.add(batch);
+        batch.Add(modelMatrix);
+    }
+
+    //
+    // Draw everything queued since the last flush, and empty the batches. Leaves the instanced
+    // program in use if anything was drawn.
+    //
+    public void Flush(GLApi gl, float[] viewMatrix, float[] projectionMatrix, float[] lightPosInEyeSpace)
+    {
+        mNumInstances = 0;
+        mNumDrawCalls = 0;
+        if (mQueued.isEmpty())
+            return;
+
+        mProgram.Use(gl);
+        gl.glUniformMatrix4fv(mViewMatrixHandle, 1, false, viewMatrix, 0);
+        gl.glUniformMatrix4fv(mProjectionMatrixHandle, 1, false, projectionMatrix, 0);
+        gl.glUniform3f(mLightPosHandle, lightPosInEyeSpace[0], lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
+
+        // indexed loop, an iterator would be garbage every frame
+        for (int i = 0; i < mQueued.size(); i++)
+        {
+            InstanceBatch batch = mQueued.get(i);
+            Draw(gl, batch);
+            mNumInstances += batch.GetNumInstances();
+            batch.Clear();
+        }
+        mQueued.clear();
+    }
+
+    private void Draw(GLApi gl, InstanceBatch batch)
+    {
+        InstancedMesh mesh = batch.GetMesh();
+        int perBatch = mesh.GetInstancesPerBatch();
+        int numInstances = batch.GetNumInstances();
+        float[] rows = batch.GetRows();
+
+        mesh.Bind(gl, mPositionHandle, mNormalHandle, mInstanceIndexHandle);
+        for (int first = 0; first < numInstances; first += perBatch)
+        {
+            int count = Math.min(perBatch, numInstances - first);
+            gl.glUniform4fv(mInstanceRowsHandle, count * InstanceBatch.VECTORS_PER_INSTANCE, rows,
+                    first * InstanceBatch.FLOATS_PER_INSTANCE);
+            for (int range = 0; range < mesh.GetNumRanges(); range++)
+            {
+                mesh.SetRangeColors(gl, range, mDifColorHandle, mAmbColorHandle);
+                mesh.DrawRange(gl, range, count);
+                mNumDrawCalls++;
+            }
+        }
+        mesh.Unbind(gl, mPositionHandle, mNormalHandle, mInstanceIndexHandle);
+    }
+}
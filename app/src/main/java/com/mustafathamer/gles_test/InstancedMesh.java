@@ -0,0 +1,243 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+/**
+ * A mesh stored several times over in GL buffer objects, so that many copies of it can be drawn
+ * by one draw call per material, GLES 2.0 has no glDrawElementsInstanced.
+ * <p>
+ * Every vertex is stored once per copy, tagged with the copy number in an extra attribute the
+ * instanced vertex shader uses to pick that copy's model matrix from a uniform array. The indices
+ * of each material range are repeated once per copy, offset to that copy's vertices, so drawing
+ * the first n copies of a range is a single draw of n times its indices.
+ * <p>
+ * The copies share 16 bit indices, which bounds how many fit in one batch (and the memory it
+ * costs), see InstancesPerBatch(). All GL calls go through GLApi so this can be exercised on
+ * the JVM.
+ */
+
+public class InstancedMesh
+{
+    // the size of u_InstanceRows in instanced_vertex_shader.txt, 3 rows per copy
+    public static final int MAX_INSTANCES_PER_BATCH = 32;
+
+    // fewer copies than this per batch aren't worth storing the mesh several times
+    public static final int MIN_INSTANCES_PER_BATCH = 2;
+
+    private static final int MAX_VERTS = 65536;     // reachable with short indices
+    private static final int NO_BUFFER = 0;
+
+    // position, normal, instance index
+    private static final int FLOATS_PER_VERTEX = 7;
+    private static final int STRIDE = FLOATS_PER_VERTEX * 4;
+    private static final int NORMAL_OFFSET = 3 * 4;
+    private static final int INSTANCE_OFFSET = 6 * 4;
+
+    private final int mInstancesPerBatch;
+    private final int[] mRangeFirst;        // first index of each range's copies, in the repeated indices
+    private final int[] mRangeCount;        // indices in one copy of each range
+    private final float[] mDifColors;       // rgba per range
+    private final float[] mAmbColors;       // rgba per range
+
+    private ByteBuffer mVertices;           // CPU copy, released after upload
+    private ShortBuffer mIndices;           // CPU copy, released after upload
+    private int mNumIndices;
+
+    private final int[] mBufferIds = {NO_BUFFER, NO_BUFFER};   // VBO, IBO
+
+    //
+    // Number of copies of a mesh with numVerts vertices drawn per batch, 0 if the mesh is too big
+    // to be drawn instanced
+    //
+    public static int InstancesPerBatch(int numVerts)
+    {
+        if (numVerts == 0)
+            return 0;
+        int instances = Math.min(MAX_INSTANCES_PER_BATCH, MAX_VERTS / numVerts);
+        return instances >= MIN_INSTANCES_PER_BATCH ? instances : 0;
+    }
+
+    //
+    // CTOR
+    // vertices: interleaved with layout (positions and normals are decoded from it), indices:
+    // ShortBuffer or IntBuffer of triangles grouped by ranges, difColors / ambColors: rgba per
+    // range. The mesh must have InstancesPerBatch(numVerts) > 0.
+    //
+    public InstancedMesh(VertexLayout layout, ByteBuffer vertices, Buffer indices, int numVerts,
+                         List<MeshRange> ranges, float[] difColors, float[] ambColors)
+    {
+        mInstancesPerBatch = InstancesPerBatch(numVerts);
+        if (mInstancesPerBatch == 0)
+            throw new IllegalArgumentException("Too many vertices to instance: " + numVerts);
+
+        int numRanges = ranges.size();
+        mRangeFirst = new int[numRanges];
+        mRangeCount = new int[numRanges];
+        mDifColors = difColors;
+        mAmbColors = ambColors;
+
+        //
+        // VERTICES
+        // the whole mesh once per copy, with the copy number
+        //
+        float[] packed = new float[numVerts * mInstancesPerBatch * FLOATS_PER_VERTEX];
+        for (int v = 0; v < numVerts; v++)
+        {
+            float px = layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 0);
+            float py = layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 1);
+            float pz = layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 2);
+            float nx = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 0);
+            float ny = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 1);
+            float nz = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 2);
+            for (int copy = 0; copy < mInstancesPerBatch; copy++)
+            {
+                int dst = (copy * numVerts + v) * FLOATS_PER_VERTEX;
+                packed[dst] = px;
+                packed[dst + 1] = py;
+                packed[dst + 2] = pz;
+                packed[dst + 3] = nx;
+                packed[dst + 4] = ny;
+                packed[dst + 5] = nz;
+                packed[dst + 6] = copy;
+            }
+        }
+        mVertices = ByteBuffer.allocateDirect(packed.length * 4).order(ByteOrder.nativeOrder());
+        mVertices.asFloatBuffer().put(packed);
+        mVertices.position(0);
+
+        //
+        // INDICES
+        // each range's indices once per copy, so the copies of a range are contiguous
+        //
+        int numSourceIndices = 0;
+        for (int r = 0; r < numRanges; r++)
+            numSourceIndices += ranges.get(r).GetNumElements();
+        mNumIndices = numSourceIndices * mInstancesPerBatch;
+        short[] repeated = new short[mNumIndices];
+        int dst = 0;
+        for (int r = 0; r < numRanges; r++)
+        {
+            MeshRange range = ranges.get(r);
+            mRangeFirst[r] = dst;
+            mRangeCount[r] = range.GetNumElements();
+            int first = range.GetFirstElement();
+            int end = first + range.GetNumElements();
+            for (int copy = 0; copy < mInstancesPerBatch; copy++)
+            {
+                int base = copy * numVerts;
+                for (int i = first; i < end; i++)
+                    repeated[dst++] = (short) (base + GetIndex(indices, i));
+            }
+        }
+        mIndices = ByteBuffer.allocateDirect(mNumIndices * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        mIndices.put(repeated);
+        mIndices.position(0);
+    }
+
+    private static int GetIndex(Buffer indices, int i)
+    {
+        if (indices instanceof IntBuffer)
+            return ((IntBuffer) indices).get(i);
+        return ((ShortBuffer) indices).get(i) & 0xffff;
+    }
+
+    public int GetInstancesPerBatch()       { return mInstancesPerBatch; }
+    public int GetNumRanges()               { return mRangeFirst.length; }
+    public int GetNumIndices()              { return mNumIndices; }
+    public boolean IsUploaded()             { return mBufferIds[0] != NO_BUFFER; }
+
+    // the CPU copies, null once uploaded
+    public ByteBuffer GetVertices()         { return mVertices; }
+    public ShortBuffer GetIndices()         { return mIndices; }
+
+    //
+    // Create the buffer objects and copy the data into them. Must be called on the GL thread.
+    //
+    public void Upload(GLApi gl)
+    {
+        if (IsUploaded())
+            return;
+
+        gl.glGenBuffers(2, mBufferIds, 0);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferIds[0]);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices.capacity(), mVertices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, NO_BUFFER);
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferIds[1]);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mNumIndices * 2, mIndices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, NO_BUFFER);
+
+        // the GL has its own copy now
+        mVertices = null;
+        mIndices = null;
+    }
+
+    //
+    // Bind the buffers and point the attributes at their offsets, uploading first if needed.
+    // Any number of DrawRange calls can follow, then Unbind.
+    //
+    public void Bind(GLApi gl, int positionLocation, int normalLocation, int instanceLocation)
+    {
+        Upload(gl);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferIds[0]);
+        gl.glVertexAttribPointer(positionLocation, 3, GLES20.GL_FLOAT, false, STRIDE, 0);
+        gl.glEnableVertexAttribArray(positionLocation);
+        gl.glVertexAttribPointer(normalLocation, 3, GLES20.GL_FLOAT, false, STRIDE, NORMAL_OFFSET);
+        gl.glEnableVertexAttribArray(normalLocation);
+        gl.glVertexAttribPointer(instanceLocation, 1, GLES20.GL_FLOAT, false, STRIDE, INSTANCE_OFFSET);
+        gl.glEnableVertexAttribArray(instanceLocation);
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferIds[1]);
+    }
+
+    //
+    // Set the material colors of a range
+    //
+    public void SetRangeColors(GLApi gl, int range, int difColorLocation, int ambColorLocation)
+    {
+        int c = range * 4;
+        gl.glUniform4f(difColorLocation, mDifColors[c], mDifColors[c + 1], mDifColors[c + 2], mDifColors[c + 3]);
+        gl.glUniform4f(ambColorLocation, mAmbColors[c], mAmbColors[c + 1], mAmbColors[c + 2], mAmbColors[c + 3]);
+    }
+
+    //
+    // Draw a range for copies 0 ... numInstances - 1, in one call
+    //
+    public void DrawRange(GLApi gl, int range, int numInstances)
+    {
+        gl.glDrawElements(GLES20.GL_TRIANGLES, mRangeCount[range] * numInstances, GLES20.GL_UNSIGNED_SHORT,
+                mRangeFirst[range] * 2);
+    }
+
+    public void Unbind(GLApi gl, int positionLocation, int normalLocation, int instanceLocation)
+    {
+        gl.glDisableVertexAttribArray(positionLocation);
+        gl.glDisableVertexAttribArray(normalLocation);
+        gl.glDisableVertexAttribArray(instanceLocation);
+
+        // unbind so client side arrays of other objects keep working
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, NO_BUFFER);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, NO_BUFFER);
+    }
+
+    //
+    // Delete the buffer objects. Must be called on the GL thread that owns them.
+    //
+    public void Release(GLApi gl)
+    {
+        if (!IsUploaded())
+            return;
+        gl.glDeleteBuffers(2, mBufferIds, 0);
+        mBufferIds[0] = NO_BUFFER;
+        mBufferIds[1] = NO_BUFFER;
+    }
+}
@@ -0,0 +1,139 @@
+package com.mustafathamer.gles_test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Growable array of primitive ints, the int counterpart of FloatArray.
+ * Used for face indices and index buffers while loading a model.
+ */
+
+public class IntArray
+{
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int BYTES_PER_INT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+
+    private int[] mData;
+    private int mSize;
+
+    //
+    // CTOR
+    //
+    public IntArray()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArray(int capacity)
+    {
+        mData = new int[Math.max(capacity, 1)];
+        mSize = 0;
+    }
+
+    public int[] GetData()      { return mData; }
+    public int Size()           { return mSize; }
+    public boolean IsEmpty()    { return mSize == 0; }
+    public void Clear()         { mSize = 0; }
+
+    public int Get(int index)
+    {
+        return mData[index];
+    }
+
+    public void Set(int index, int value)
+    {
+        mData[index] = value;
+    }
+
+    public void Add(int value)
+    {
+        if (mSize == mData.length)
+            EnsureCapacity(mSize + 1);
+        mData[mSize++] = value;
+    }
+
+    public void Add(int a, int b, int c)
+    {
+        if (mSize + 3 > mData.length)
+            EnsureCapacity(mSize + 3);
+        mData[mSize++] = a;
+        mData[mSize++] = b;
+        mData[mSize++] = c;
+    }
+
+    public void AddAll(int[] values, int offset, int count)
+    {
+        EnsureCapacity(mSize + count);
+        System.arraycopy(values, offset, mData, mSize, count);
+        mSize += count;
+    }
+
+    //
+    // Grow the array, at least doubling it, to hold a total of capacity ints
+    //
+    public void EnsureCapacity(int capacity)
+    {
+        if (capacity <= mData.length)
+            return;
+        int[] bigger = new int[Math.max(capacity, mData.length * 2)];
+        System.arraycopy(mData, 0, bigger, 0, mSize);
+        mData = bigger;
+    }
+
+    //
+    // Set the size, growing if needed. New entries are zero.
+    //
+    public void Resize(int size)
+    {
+        EnsureCapacity(size);
+        if (size > mSize)
+            java.util.Arrays.fill(mData, mSize, size, 0);
+        mSize = size;
+    }
+
+    public int[] ToArray()
+    {
+        int[] array = new int[mSize];
+        System.arraycopy(mData, 0, array, 0, mSize);
+        return array;
+    }
+
+    //
+    // Bulk copy the contents into a buffer at its current position
+    //
+    public void CopyTo(IntBuffer buffer)
+    {
+        buffer.put(mData, 0, mSize);
+    }
+
+    //
+    // Create a native order direct buffer holding a copy of the contents, positioned at 0
+    //
+    public IntBuffer ToDirectBuffer()
+    {
+        IntBuffer buffer = ByteBuffer.allocateDirect(mSize * BYTES_PER_INT)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        CopyTo(buffer);
+        buffer.position(0);
+        return buffer;
+    }
+
+    //
+    // Same as ToDirectBuffer, but narrowed to shorts (for GL_UNSIGNED_SHORT index buffers).
+    // Values must be below 65536.
+    //
+    public ShortBuffer ToDirectShortBuffer()
+    {
+        short[] shorts = new short[mSize];
+        for (int i = 0; i < mSize; i++)
+            shorts[i] = (short) mData[i];
+        ShortBuffer buffer = ByteBuffer.allocateDirect(mSize * BYTES_PER_SHORT)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(shorts);
+        buffer.position(0);
+        return buffer;
+    }
+}
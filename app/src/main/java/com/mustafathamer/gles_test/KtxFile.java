@@ -0,0 +1,168 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A compressed texture with its mip chain in a KTX 1.1 file, the Khronos container for GL
+ * textures: a 64 byte header (GL format, size, number of levels) then the size and data of each
+ * level, ready for glCompressedTexImage2D. Written by TextureCompiler, loaded by TextureManager.
+ * <p>
+ * Only what the app writes is read back: 2D compressed textures, no arrays or cube faces, any
+ * key/value data skipped. Levels are 4 byte aligned, which ETC1 levels always are.
+ */
+
+public class KtxFile
+{
+    private static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    private static final int ENDIANNESS = 0x04030201;
+    public static final int HEADER_SIZE = 64;
+
+    private final int mInternalFormat;
+    private final int mBaseInternalFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer[] mLevels;
+
+    //
+    // CTOR
+    // levels: the compressed data of each level, the full size one first
+    //
+    public KtxFile(int internalFormat, int baseInternalFormat, int width, int height, ByteBuffer[] levels)
+    {
+        mInternalFormat = internalFormat;
+        mBaseInternalFormat = baseInternalFormat;
+        mWidth = width;
+        mHeight = height;
+        mLevels = levels;
+    }
+
+    public int GetInternalFormat()      { return mInternalFormat; }
+    public int GetWidth()               { return mWidth; }
+    public int GetHeight()              { return mHeight; }
+    public int GetNumLevels()           { return mLevels.length; }
+    public ByteBuffer GetLevel(int level)   { return mLevels[level]; }
+
+    // the asset the compressed version of an image is written to, "earth_texture.jpg" -> "earth_texture.ktx"
+    public static String AssetName(String imagePath)
+    {
+        int dot = imagePath.lastIndexOf('.');
+        return (dot > imagePath.lastIndexOf('/') ? imagePath.substring(0, dot) : imagePath) + ".ktx";
+    }
+
+    // bytes of all the levels
+    public long GetDataSize()
+    {
+        long size = 0;
+        for (ByteBuffer level : mLevels)
+            size += level.remaining();
+        return size;
+    }
+
+    public void Write(File file) throws IOException
+    {
+        int fileSize = HEADER_SIZE;
+        for (ByteBuffer level : mLevels)
+            fileSize += 4 + Align(level.remaining());
+
+        ByteBuffer out = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(IDENTIFIER);
+        out.putInt(ENDIANNESS);
+        out.putInt(0);                      // glType, 0 for compressed
+        out.putInt(1);                      // glTypeSize
+        out.putInt(0);                      // glFormat, 0 for compressed
+        out.putInt(mInternalFormat);
+        out.putInt(mBaseInternalFormat);
+        out.putInt(mWidth);
+        out.putInt(mHeight);
+        out.putInt(0);                      // pixelDepth, 2D
+        out.putInt(0);                      // numberOfArrayElements
+        out.putInt(1);                      // numberOfFaces
+        out.putInt(mLevels.length);
+        out.putInt(0);                      // bytesOfKeyValueData
+        for (ByteBuffer level : mLevels)
+        {
+            out.putInt(level.remaining());
+            out.put(level.duplicate());
+            out.position(Align(out.position()));
+        }
+        out.position(0);
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            while (out.hasRemaining())
+                channel.write(out);
+        } finally
+        {
+            stream.close();
+        }
+    }
+
+    //
+    // The texture in data, from its position. The levels are slices of data, not copies.
+    // Throws if data isn't a KTX file this class can read.
+    //
+    public static KtxFile Read(ByteBuffer data) throws IOException
+    {
+        data = data.slice();
+        try
+        {
+            for (byte b : IDENTIFIER)
+            {
+                if (data.get() != b)
+                    throw new IOException("Not a KTX file");
+            }
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt() != ENDIANNESS)
+                data.order(ByteOrder.BIG_ENDIAN);
+
+            int glType = data.getInt();
+            data.getInt();                  // glTypeSize
+            int glFormat = data.getInt();
+            int internalFormat = data.getInt();
+            int baseInternalFormat = data.getInt();
+            int width = data.getInt();
+            int height = data.getInt();
+            int depth = data.getInt();
+            int arrayElements = data.getInt();
+            int faces = data.getInt();
+            int numLevels = Math.max(1, data.getInt());     // 0 asks GL to generate them
+            int keyValueBytes = data.getInt();
+            if (glType != 0 || glFormat != 0 || depth != 0 || arrayElements != 0 || faces != 1)
+                throw new IOException("Not a 2D compressed texture");
+            data.position(data.position() + keyValueBytes);
+
+            ByteBuffer[] levels = new ByteBuffer[numLevels];
+            for (int level = 0; level < numLevels; level++)
+            {
+                int size = data.getInt();
+                if (size < 0 || size > data.remaining())
+                    throw new IOException("Truncated level " + level);
+                ByteBuffer slice = data.slice();
+                slice.limit(size);
+                levels[level] = slice;
+                data.position(Math.min(Align(data.position() + size), data.limit()));
+            }
+            return new KtxFile(internalFormat, baseInternalFormat, width, height, levels);
+        } catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated KTX file");
+        } catch (IllegalArgumentException e)
+        {
+            throw new IOException("Truncated KTX file");
+        }
+    }
+
+    private static int Align(int offset)
+    {
+        return (offset + 3) & ~3;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Draws an ObjModel at the level of detail its size on screen calls for, see LodSelector.
+ * The selector remembers the current level, so use one LodModel per scene node (they can all
+ * share the same ObjModel).
+ */
+
+public class LodModel implements Renderable
+{
+    private final ObjModel mModel;
+    private final LodSelector mSelector;
+
+    //
+    // CTOR
+    //
+    public LodModel(ObjModel model, LodSelector selector)
+    {
+        mModel = model;
+        mSelector = selector;
+    }
+
+    public ObjModel GetModel()          { return mModel; }
+
+    // level drawn last, 0 is the full mesh
+    public int GetLevel()               { return Math.min(mSelector.GetLevel(), mModel.GetNumLods() - 1); }
+
+    @Override
+    public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+    {
+        if (!mModel.IsReady())
+            return;
+
+        float size = mSelector.ProjectedSize(mModel.GetBounds(), modelMatrix, renderer.GetViewMatrix(),
+                renderer.GetProjectionMatrix());
+        mSelector.Select(size);
+        mModel.Draw(renderer, modelMatrix, GetLevel());
+    }
+
+    @Override
+    public Bounds GetBounds()
+    {
+        return mModel.GetBounds();
+    }
+}
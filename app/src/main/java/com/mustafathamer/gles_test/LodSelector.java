@@ -0,0 +1,81 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Picks the level of detail of an object from how big it looks on screen: the fraction of the
+ * viewport height its bounding sphere covers. Level 0 (full detail) is used while the object is at
+ * least GetThreshold(0) of the screen, level 1 down to GetThreshold(1), and so on.
+ * <p>
+ * An object sitting right on a threshold would switch levels back and forth as the camera shakes,
+ * so a switch only happens once the size is past the threshold by the hysteresis fraction, in
+ * either direction. That keeps state: use one selector per drawn object.
+ */
+
+public class LodSelector
+{
+    private final float[] mThresholds;      // decreasing, one less than the levels
+    private final float mHysteresis;
+    private int mLevel;
+
+    // scratch
+    private final float[] mCenter = new float[4];
+    private final float[] mWorldCenter = new float[4];
+    private final float[] mEyeCenter = new float[4];
+
+    //
+    // CTOR
+    // thresholds: screen sizes (0..1 of the viewport height) below which each level switches to
+    // the next coarser one, decreasing. hysteresis: how far past a threshold (ex: 0.1 for 10%) the
+    // size has to go before the level changes.
+    //
+    public LodSelector(float[] thresholds, float hysteresis)
+    {
+        mThresholds = thresholds.clone();
+        mHysteresis = hysteresis;
+    }
+
+    public int GetNumLevels()               { return mThresholds.length + 1; }
+    public int GetLevel()                   { return mLevel; }
+    public float GetThreshold(int level)    { return mThresholds[level]; }
+
+    //
+    // Level to draw for the given screen size, see ProjectedSize()
+    //
+    public int Select(float screenSize)
+    {
+        while (mLevel < mThresholds.length && screenSize < mThresholds[mLevel] * (1 - mHysteresis))
+            mLevel++;
+        while (mLevel > 0 && screenSize > mThresholds[mLevel - 1] * (1 + mHysteresis))
+            mLevel--;
+        return mLevel;
+    }
+
+    //
+    // Fraction of the viewport height the bounding sphere of bounds covers when drawn with these
+    // matrices (perspective projection). Infinite when the eye is inside the sphere.
+    //
+    public float ProjectedSize(Bounds bounds, float[] modelMatrix, float[] viewMatrix, float[] projectionMatrix)
+    {
+        mCenter[0] = bounds.GetCenterX();
+        mCenter[1] = bounds.GetCenterY();
+        mCenter[2] = bounds.GetCenterZ();
+        mCenter[3] = 1;
+        MatrixMath.MultiplyMV(mWorldCenter, modelMatrix, mCenter);
+        MatrixMath.MultiplyMV(mEyeCenter, viewMatrix, mWorldCenter);
+        float distance = (float) Math.sqrt(mEyeCenter[0] * mEyeCenter[0] + mEyeCenter[1] * mEyeCenter[1]
+                + mEyeCenter[2] * mEyeCenter[2]);
+
+        // the largest axis scale of the model matrix
+        float scaleSq = 0;
+        for (int column = 0; column < 3; column++)
+        {
+            float x = modelMatrix[column * 4], y = modelMatrix[column * 4 + 1], z = modelMatrix[column * 4 + 2];
+            scaleSq = Math.max(scaleSq, x * x + y * y + z * z);
+        }
+        float radius = bounds.GetRadius() * (float) Math.sqrt(scaleSq);
+        if (distance <= radius)
+            return Float.POSITIVE_INFINITY;
+
+        // the sphere's diameter in NDC (2 units high) over 2
+        return radius * projectionMatrix[5] / distance;
+    }
+}
@@ -0,0 +1,102 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * The 4x4 matrix operations used per frame, in plain Java.
+ * Same conventions as android.opengl.Matrix: column major float[16], angles in degrees, and
+ * Rotate/Translate post multiply (m = m * R). Nothing here allocates, so it can run every frame,
+ * and it can be unit tested on the JVM, where android.opengl.Matrix isn't available.
+ * <p>
+ * Unlike android.opengl.Matrix, the result of Multiply must not be one of its inputs.
+ */
+
+public class MatrixMath
+{
+    public static void SetIdentity(float[] m)
+    {
+        for (int i = 0; i < 16; i++)
+            m[i] = 0;
+        m[0] = m[5] = m[10] = m[15] = 1;
+    }
+
+    //
+    // result = lhs * rhs, result must not be lhs or rhs
+    //
+    public static void Multiply(float[] result, float[] lhs, float[] rhs)
+    {
+        for (int col = 0; col < 4; col++)
+        {
+            float r0 = rhs[col * 4];
+            float r1 = rhs[col * 4 + 1];
+            float r2 = rhs[col * 4 + 2];
+            float r3 = rhs[col * 4 + 3];
+            for (int row = 0; row < 4; row++)
+            {
+                result[col * 4 + row] = lhs[row] * r0 + lhs[4 + row] * r1 + lhs[8 + row] * r2 + lhs[12 + row] * r3;
+            }
+        }
+    }
+
+    //
+    // resultVec = lhs * rhsVec, for 4 component vectors. resultVec must not be rhsVec
+    //
+    public static void MultiplyMV(float[] resultVec, float[] lhs, float[] rhsVec)
+    {
+        float x = rhsVec[0], y = rhsVec[1], z = rhsVec[2], w = rhsVec[3];
+        for (int row = 0; row < 4; row++)
+            resultVec[row] = lhs[row] * x + lhs[4 + row] * y + lhs[8 + row] * z + lhs[12 + row] * w;
+    }
+
+    //
+    // m = rotation of angle degrees around the axis (x, y, z)
+    //
+    public static void SetRotate(float[] m, float angle, float x, float y, float z)
+    {
+        SetIdentity(m);
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0)
+            return;
+        x /= length;
+        y /= length;
+        z /= length;
+
+        double radians = Math.toRadians(angle);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1 - c;
+
+        m[0] = x * x * nc + c;
+        m[1] = y * x * nc + z * s;
+        m[2] = x * z * nc - y * s;
+        m[4] = x * y * nc - z * s;
+        m[5] = y * y * nc + c;
+        m[6] = y * z * nc + x * s;
+        m[8] = x * z * nc + y * s;
+        m[9] = y * z * nc - x * s;
+        m[10] = z * z * nc + c;
+    }
+
+    //
+    // m = m * translation(x, y, z), in place
+    //
+    public static void Translate(float[] m, float x, float y, float z)
+    {
+        for (int i = 0; i < 4; i++)
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+    }
+
+    //
+    // m = perspective projection, same as android.opengl.Matrix.frustumM
+    //
+    public static void SetFrustum(float[] m, float left, float right, float bottom, float top, float near, float far)
+    {
+        for (int i = 0; i < 16; i++)
+            m[i] = 0;
+        m[0] = 2 * near / (right - left);
+        m[5] = 2 * near / (top - bottom);
+        m[8] = (right + left) / (right - left);
+        m[9] = (top + bottom) / (top - bottom);
+        m[10] = -(far + near) / (far - near);
+        m[11] = -1;
+        m[14] = -2 * far * near / (far - near);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Preallocated stack of 4x4 matrices, for building the modelview matrix of each object in a frame
+ * without allocating. The renderer loads the view matrix at the bottom at the start of a frame;
+ * objects Push, MultiplyTop their model matrix, upload the top, and Pop.
+ */
+
+public class MatrixStack
+{
+    private final float[][] mStack;
+    private final float[] mTemp = new float[16];
+    private int mTop;
+
+    //
+    // CTOR
+    // maxDepth matrices are allocated up front, pushing past it throws
+    //
+    public MatrixStack(int maxDepth)
+    {
+        mStack = new float[maxDepth][16];
+        MatrixMath.SetIdentity(mStack[0]);
+    }
+
+    public float[] GetTop()     { return mStack[mTop]; }
+    public int GetDepth()       { return mTop + 1; }
+
+    //
+    // Empty the stack down to a single matrix, a copy of m
+    //
+    public void Load(float[] m)
+    {
+        mTop = 0;
+        System.arraycopy(m, 0, mStack[0], 0, 16);
+    }
+
+    //
+    // Duplicate the top matrix
+    //
+    public void Push()
+    {
+        if (mTop + 1 == mStack.length)
+            throw new IllegalStateException("Matrix stack overflow, max depth " + mStack.length);
+        System.arraycopy(mStack[mTop], 0, mStack[mTop + 1], 0, 16);
+        mTop++;
+    }
+
+    public void Pop()
+    {
+        if (mTop == 0)
+            throw new IllegalStateException("Matrix stack underflow");
+        mTop--;
+    }
+
+    //
+    // top = top * m
+    //
+    public void MultiplyTop(float[] m)
+    {
+        MatrixMath.Multiply(mTemp, mStack[mTop], m);
+        System.arraycopy(mTemp, 0, mStack[mTop], 0, 16);
+    }
+}
@@ -0,0 +1,161 @@
+package com.mustafathamer.gles_test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CPU side vertex data of a mesh, as produced by ObjMeshBuilder.
+ * Each vertex has a position (3 floats), normal (3) and UV (2).
+ * Indexed meshes also have an index list, 3 indices per triangle. Expanded (non indexed) meshes
+ * have no index list and are drawn in vertex order.
+ * Triangles are grouped by material into ranges; material colors are not stored per vertex but
+ * set once per range when drawing.
+ * Meshes with more vertices than GL_UNSIGNED_SHORT indices reach need GL_UNSIGNED_INT ones, an
+ * ES 2 extension, or SplitForShortIndices() on GPUs without it.
+ */
+
+public class MeshData
+{
+    // GL_UNSIGNED_SHORT indices can address this many vertices
+    public static final int MAX_SHORT_INDEXED_VERTS = 65536;
+
+    private FloatArray mPositions;
+    private FloatArray mNormals;
+    private FloatArray mUVs;
+    private IntArray mIndices;      // null when not indexed
+    private boolean mHasUVs;        // false when the model has no UVs (mUVs is all zeros)
+    private List<MeshRange> mRanges;
+    private ObjMaterial[] mMaterials;   // may be null, or contain nulls for unknown materials
+
+    //
+    // CTOR
+    //
+    public MeshData(FloatArray positions, FloatArray normals, FloatArray uvs, IntArray indices, boolean hasUVs,
+                    List<MeshRange> ranges, ObjMaterial[] materials)
+    {
+        mPositions = positions;
+        mNormals = normals;
+        mUVs = uvs;
+        mIndices = indices;
+        mHasUVs = hasUVs;
+        mRanges = ranges;
+        mMaterials = materials;
+    }
+
+    public FloatArray GetPositions()    { return mPositions; }
+    public FloatArray GetNormals()      { return mNormals; }
+    public FloatArray GetUVs()          { return mUVs; }
+    public IntArray GetIndices()        { return mIndices; }
+    public List<MeshRange> GetRanges()  { return mRanges; }
+    public ObjMaterial[] GetMaterials() { return mMaterials; }
+
+    public boolean IsIndexed()          { return mIndices != null; }
+    public boolean HasUVs()             { return mHasUVs; }
+    public int GetNumVerts()            { return mPositions.Size() / 3; }
+
+    // number of vertices the GPU processes: the index count, or vertex count when not indexed
+    public int GetNumElements()         { return IsIndexed() ? mIndices.Size() : GetNumVerts(); }
+
+    public boolean NeedsIntIndices()    { return GetNumVerts() > MAX_SHORT_INDEXED_VERTS; }
+
+    //
+    // Bounding box and sphere of the positions
+    //
+    public Bounds ComputeBounds()
+    {
+        return Bounds.Of(mPositions);
+    }
+
+    //
+    // The mesh as meshes of at most MAX_SHORT_INDEXED_VERTS vertices each, so they can be drawn
+    // with short indices. Triangles keep their order, and each part has the ranges of the
+    // triangles it got. A mesh that doesn't need int indices is returned as is.
+    //
+    public List<MeshData> SplitForShortIndices()
+    {
+        return Split(MAX_SHORT_INDEXED_VERTS);
+    }
+
+    // with any limit, so tests don't need 65k vertices
+    List<MeshData> Split(int maxVerts)
+    {
+        List<MeshData> parts = new ArrayList<>();
+        if (!IsIndexed() || GetNumVerts() <= maxVerts)
+        {
+            parts.add(this);
+            return parts;
+        }
+
+        int numVerts = GetNumVerts();
+        int[] partOf = new int[numVerts];       // the part a vertex was last copied to
+        int[] newIndex = new int[numVerts];     // and its index there
+        for (int v = 0; v < numVerts; v++)
+            partOf[v] = -1;
+        int[] indices = mIndices.GetData();
+        float[] positions = mPositions.GetData();
+        float[] normals = mNormals.GetData();
+        float[] uvs = mUVs.GetData();
+
+        int part = 0;
+        int partVerts = 0;
+        FloatArray partPositions = new FloatArray(maxVerts * 3);
+        FloatArray partNormals = new FloatArray(maxVerts * 3);
+        FloatArray partUVs = new FloatArray(maxVerts * 2);
+        IntArray partIndices = new IntArray();
+        List<MeshRange> partRanges = new ArrayList<>();
+        for (int r = 0; r < mRanges.size(); r++)
+        {
+            MeshRange range = mRanges.get(r);
+            int rangeStart = partIndices.Size();
+            for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e += 3)
+            {
+                int a = indices[e], b = indices[e + 1], c = indices[e + 2];
+                int needed = (partOf[a] != part ? 1 : 0) + (partOf[b] != part && b != a ? 1 : 0)
+                        + (partOf[c] != part && c != a && c != b ? 1 : 0);
+                if (partVerts + needed > maxVerts)
+                {
+                    // full, the rest of the range goes in the next part
+                    if (partIndices.Size() > rangeStart)
+                        partRanges.add(new MeshRange(range.GetMaterial(), rangeStart, partIndices.Size() - rangeStart));
+                    parts.add(new MeshData(partPositions, partNormals, partUVs, partIndices, mHasUVs, partRanges, mMaterials));
+                    part++;
+                    partVerts = 0;
+                    partPositions = new FloatArray(maxVerts * 3);
+                    partNormals = new FloatArray(maxVerts * 3);
+                    partUVs = new FloatArray(maxVerts * 2);
+                    partIndices = new IntArray();
+                    partRanges = new ArrayList<>();
+                    rangeStart = 0;
+                }
+
+                for (int corner = 0; corner < 3; corner++)
+                {
+                    int v = indices[e + corner];
+                    if (partOf[v] != part)
+                    {
+                        partOf[v] = part;
+                        newIndex[v] = partVerts++;
+                        partPositions.Add(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+                        partNormals.Add(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]);
+                        partUVs.Add(uvs[v * 2]);
+                        partUVs.Add(uvs[v * 2 + 1]);
+                    }
+                    partIndices.Add(newIndex[v]);
+                }
+            }
+            if (partIndices.Size() > rangeStart)
+                partRanges.add(new MeshRange(range.GetMaterial(), rangeStart, partIndices.Size() - rangeStart));
+        }
+        parts.add(new MeshData(partPositions, partNormals, partUVs, partIndices, mHasUVs, partRanges, mMaterials));
+        return parts;
+    }
+
+    //
+    // The material of a range, or null if it has none
+    //
+    public ObjMaterial GetMaterial(MeshRange range)
+    {
+        int idx = range.GetMaterial();
+        return mMaterials != null && idx != ObjParser.NO_MATERIAL ? mMaterials[idx] : null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * A contiguous run of triangles in a mesh that all use the same material, so they can be drawn
+ * with a single draw call after setting the material colors once.
+ * Elements are indices for an indexed mesh, vertices otherwise.
+ */
+
+public class MeshRange
+{
+    private int mMaterial;          // index into MeshData.GetMaterials(), or ObjParser.NO_MATERIAL
+    private int mFirstElement;
+    private int mNumElements;
+
+    //
+    // CTOR
+    //
+    public MeshRange(int material, int firstElement, int numElements)
+    {
+        mMaterial = material;
+        mFirstElement = firstElement;
+        mNumElements = numElements;
+    }
+
+    public int GetMaterial()        { return mMaterial; }
+    public int GetFirstElement()    { return mFirstElement; }
+    public int GetNumElements()     { return mNumElements; }
+}
@@ -0,0 +1,562 @@
+package com.mustafathamer.gles_test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Quadric error metric mesh simplification (Garland and Heckbert, "Surface Simplification Using
+ * Quadric Error Metrics", 1997), to build lower levels of detail of a mesh at load time.
+ * <p>
+ * Vertices are welded by position first, so the normal / UV / material splits of the indexed
+ * mesh don't tear apart. Every position gets the sum of the (area weighted) quadrics of the planes
+ * of its triangles, and the edge whose collapse to the point of least error costs the least is
+ * collapsed first, until the triangle count reaches the target. Edges on open borders, material
+ * boundaries and attribute seams also add heavily weighted planes perpendicular to their
+ * triangles, so those outlines stay where they are. Collapses that would flip or squash a triangle
+ * are skipped.
+ * <p>
+ * Simplify() can be called with decreasing targets to build a whole LOD chain in one pass, see
+ * BuildLods(). Vertices keep their original normal and UV, only positions move, and the vertices
+ * of a collapsed position are replaced by the matching ones of the position it collapsed into.
+ * Plain Java (the offline tools and JVM tests can use it), doubles for the quadric math.
+ */
+
+public class MeshSimplifier
+{
+    // weight of the planes keeping borders, material boundaries and seams in place
+    private static final double BOUNDARY_WEIGHT = 1000;
+
+    // collapses turning a triangle's normal more than this (cosine of ~78 degrees) are rejected
+    private static final double MIN_NORMAL_DOT = 0.2;
+
+    // BuildLods() doesn't make levels with fewer triangles, small meshes gain nothing from them
+    public static final int MIN_LOD_TRIANGLES = 32;
+
+    private static final int QUADRIC_SIZE = 10;         // symmetric 4x4: aa ab ac ad bb bc bd cc cd dd
+
+    // a candidate edge collapse, b into a, only valid while neither changed since
+    private static class Collapse implements Comparable<Collapse>
+    {
+        double mCost;
+        int mA, mB;
+        int mVersionA, mVersionB;
+        double mX, mY, mZ;              // where a ends up
+
+        @Override
+        public int compareTo(Collapse other)
+        {
+            return Double.compare(mCost, other.mCost);
+        }
+    }
+
+    private final MeshData mMesh;
+
+    // welded positions
+    private final double[] mPositions;          // xyz
+    private final double[] mQuadrics;           // QUADRIC_SIZE per position
+    private final boolean[] mCollapsed;         // merged into another position
+    private final int[] mVersions;              // bumped when a position changes
+    private final IntArray[] mPositionTriangles;    // triangles using each position, may hold removed ones
+
+    // triangles
+    private final int[] mCornerPositions;       // 3 per triangle
+    private final int[] mCornerVerts;           // 3 per triangle, an original vertex (normal, uv)
+    private final int[] mTriangleRanges;
+    private final boolean[] mRemoved;
+    private final int mNumAllTriangles;         // before simplification
+    private int mNumTriangles;
+
+    private final PriorityQueue<Collapse> mQueue = new PriorityQueue<>();
+    private double mMaxCost;
+
+    // scratch
+    private final double[] mQuadric = new double[QUADRIC_SIZE];
+    private final double[] mNormal = new double[4];
+    private final double[] mMovedNormal = new double[4];
+    private final IntArray mVertMap = new IntArray();       // pairs, vertex at b -> vertex at a
+
+    //
+    // CTOR
+    // mesh: indexed, triangles grouped into ranges (the ranges are kept apart)
+    //
+    public MeshSimplifier(MeshData mesh)
+    {
+        mMesh = mesh;
+        int numVerts = mesh.GetNumVerts();
+        float[] positions = mesh.GetPositions().GetData();
+
+        //
+        // weld the vertices sharing a position
+        //
+        int[] vertPositions = new int[numVerts];
+        VertexHashMap welded = new VertexHashMap(numVerts);
+        for (int v = 0; v < numVerts; v++)
+        {
+            // + 0.0f turns -0 into 0, so they weld
+            int position = welded.PutIfAbsent(Float.floatToIntBits(positions[v * 3] + 0.0f),
+                    Float.floatToIntBits(positions[v * 3 + 1] + 0.0f),
+                    Float.floatToIntBits(positions[v * 3 + 2] + 0.0f), welded.Size());
+            vertPositions[v] = position == VertexHashMap.NOT_FOUND ? welded.Size() - 1 : position;
+        }
+        int numPositions = welded.Size();
+        mPositions = new double[numPositions * 3];
+        for (int v = 0; v < numVerts; v++)
+        {
+            for (int c = 0; c < 3; c++)
+                mPositions[vertPositions[v] * 3 + c] = positions[v * 3 + c];
+        }
+        mQuadrics = new double[numPositions * QUADRIC_SIZE];
+        mCollapsed = new boolean[numPositions];
+        mVersions = new int[numPositions];
+        mPositionTriangles = new IntArray[numPositions];
+        for (int p = 0; p < numPositions; p++)
+            mPositionTriangles[p] = new IntArray(8);
+
+        //
+        // triangles, without the degenerate ones
+        //
+        int maxTriangles = mesh.GetNumElements() / 3;
+        mCornerPositions = new int[maxTriangles * 3];
+        mCornerVerts = new int[maxTriangles * 3];
+        mTriangleRanges = new int[maxTriangles];
+        mRemoved = new boolean[maxTriangles];
+        int[] indices = mesh.GetIndices().GetData();
+        List<MeshRange> ranges = mesh.GetRanges();
+        for (int r = 0; r < ranges.size(); r++)
+        {
+            MeshRange range = ranges.get(r);
+            int end = range.GetFirstElement() + range.GetNumElements();
+            for (int e = range.GetFirstElement(); e < end; e += 3)
+            {
+                int t = mNumTriangles;
+                for (int c = 0; c < 3; c++)
+                {
+                    mCornerVerts[t * 3 + c] = indices[e + c];
+                    mCornerPositions[t * 3 + c] = vertPositions[indices[e + c]];
+                }
+                if (mCornerPositions[t * 3] == mCornerPositions[t * 3 + 1]
+                        || mCornerPositions[t * 3 + 1] == mCornerPositions[t * 3 + 2]
+                        || mCornerPositions[t * 3 + 2] == mCornerPositions[t * 3])
+                    continue;
+                mTriangleRanges[t] = r;
+                for (int c = 0; c < 3; c++)
+                    mPositionTriangles[mCornerPositions[t * 3 + c]].Add(t);
+                mNumTriangles++;
+            }
+        }
+        mNumAllTriangles = mNumTriangles;
+
+        //
+        // quadrics, then every edge as a candidate collapse
+        //
+        for (int t = 0; t < mNumTriangles; t++)
+        {
+            double area = FaceNormal(t, mNormal);
+            if (area == 0)
+                continue;
+            for (int c = 0; c < 3; c++)
+                AddPlane(mCornerPositions[t * 3 + c], mNormal[0], mNormal[1], mNormal[2], mNormal[3], area);
+        }
+        for (int t = 0; t < mNumTriangles; t++)
+            AddBoundaryPlanes(t);
+
+        for (int t = 0; t < mNumTriangles; t++)
+        {
+            for (int c = 0; c < 3; c++)
+            {
+                int a = mCornerPositions[t * 3 + c];
+                int b = mCornerPositions[t * 3 + (c + 1) % 3];
+                // interior edges are seen from both triangles, queue them once
+                if (a < b || FindOtherTriangle(t, a, b) < 0)
+                    QueueCollapse(a, b);
+            }
+        }
+    }
+
+    public int GetNumTriangles()    { return mNumTriangles; }
+
+    //
+    // Largest error of the collapses made so far: square root of the quadric cost, which is area
+    // weighted, so only comparable between levels of the same mesh
+    //
+    public double GetMaxError()
+    {
+        return Math.sqrt(mMaxCost);
+    }
+
+    //
+    // Collapse edges until at most targetTriangles are left, or no collapse is possible
+    //
+    public void Simplify(int targetTriangles)
+    {
+        while (mNumTriangles > targetTriangles && !mQueue.isEmpty())
+        {
+            Collapse collapse = mQueue.poll();
+            int a = collapse.mA;
+            int b = collapse.mB;
+            if (mCollapsed[a] || mCollapsed[b] || mVersions[a] != collapse.mVersionA || mVersions[b] != collapse.mVersionB)
+                continue;       // stale, a or b changed since it was queued
+            if (!IsValid(a, b, collapse.mX, collapse.mY, collapse.mZ) ||
+                    !IsValid(b, a, collapse.mX, collapse.mY, collapse.mZ))
+                continue;       // queued again if a neighbor changes
+
+            DoCollapse(a, b, collapse.mX, collapse.mY, collapse.mZ);
+            mMaxCost = Math.max(mMaxCost, collapse.mCost);
+        }
+    }
+
+    //
+    // The mesh as it is now: same ranges (empty ones dropped), only the vertices still used, with
+    // their moved positions and original normals and UVs
+    //
+    public MeshData BuildMesh()
+    {
+        int numVerts = mMesh.GetNumVerts();
+        int[] remap = new int[numVerts];
+        for (int v = 0; v < numVerts; v++)
+            remap[v] = -1;
+
+        float[] srcNormals = mMesh.GetNormals().GetData();
+        float[] srcUVs = mMesh.GetUVs().GetData();
+        FloatArray positions = new FloatArray();
+        FloatArray normals = new FloatArray();
+        FloatArray uvs = new FloatArray();
+        IntArray indices = new IntArray(mNumTriangles * 3);
+        List<MeshRange> ranges = new ArrayList<>();
+
+        List<MeshRange> srcRanges = mMesh.GetRanges();
+        for (int r = 0; r < srcRanges.size(); r++)
+        {
+            int first = indices.Size();
+            for (int t = 0; t < mNumAllTriangles; t++)
+            {
+                if (mRemoved[t] || mTriangleRanges[t] != r)
+                    continue;
+                for (int c = 0; c < 3; c++)
+                {
+                    int vert = mCornerVerts[t * 3 + c];
+                    if (remap[vert] < 0)
+                    {
+                        // every corner of an original vertex follows the same collapses
+                        int p = mCornerPositions[t * 3 + c];
+                        remap[vert] = positions.Size() / 3;
+                        positions.Add((float) mPositions[p * 3], (float) mPositions[p * 3 + 1], (float) mPositions[p * 3 + 2]);
+                        normals.Add(srcNormals[vert * 3], srcNormals[vert * 3 + 1], srcNormals[vert * 3 + 2]);
+                        uvs.Add(srcUVs[vert * 2]);
+                        uvs.Add(srcUVs[vert * 2 + 1]);
+                    }
+                    indices.Add(remap[vert]);
+                }
+            }
+            if (indices.Size() > first)
+                ranges.add(new MeshRange(srcRanges.get(r).GetMaterial(), first, indices.Size() - first));
+        }
+        return new MeshData(positions, normals, uvs, indices, mMesh.HasUVs(), ranges, mMesh.GetMaterials());
+    }
+
+    //
+    // Simplified copies of mesh with ratios (decreasing, ex: 0.5, 0.25, 0.1) of its triangles,
+    // built one after the other from the same simplifier. Levels that would be under
+    // MIN_LOD_TRIANGLES are left out, so there can be fewer than ratios.
+    //
+    public static List<MeshData> BuildLods(MeshData mesh, float[] ratios)
+    {
+        MeshSimplifier simplifier = new MeshSimplifier(mesh);
+        int numTriangles = simplifier.GetNumTriangles();
+        List<MeshData> lods = new ArrayList<>();
+        for (float ratio : ratios)
+        {
+            int target = (int) (numTriangles * ratio);
+            if (target < MIN_LOD_TRIANGLES)
+                break;
+            simplifier.Simplify(target);
+            lods.add(simplifier.BuildMesh());
+        }
+        return lods;
+    }
+
+    //
+    // Unit normal and plane offset (n . p + d = 0) of a triangle into normal, returns its area
+    //
+    private double FaceNormal(int t, double[] normal)
+    {
+        int p0 = mCornerPositions[t * 3] * 3;
+        int p1 = mCornerPositions[t * 3 + 1] * 3;
+        int p2 = mCornerPositions[t * 3 + 2] * 3;
+        return PlaneOf(mPositions[p0], mPositions[p0 + 1], mPositions[p0 + 2],
+                mPositions[p1], mPositions[p1 + 1], mPositions[p1 + 2],
+                mPositions[p2], mPositions[p2 + 1], mPositions[p2 + 2], normal);
+    }
+
+    private static double PlaneOf(double x0, double y0, double z0, double x1, double y1, double z1,
+                                  double x2, double y2, double z2, double[] normal)
+    {
+        double ux = x1 - x0, uy = y1 - y0, uz = z1 - z0;
+        double vx = x2 - x0, vy = y2 - y0, vz = z2 - z0;
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0)
+            return 0;
+        normal[0] = nx / length;
+        normal[1] = ny / length;
+        normal[2] = nz / length;
+        normal[3] = -(normal[0] * x0 + normal[1] * y0 + normal[2] * z0);
+        return length * 0.5;
+    }
+
+    private void AddPlane(int p, double a, double b, double c, double d, double weight)
+    {
+        int q = p * QUADRIC_SIZE;
+        mQuadrics[q] += weight * a * a;
+        mQuadrics[q + 1] += weight * a * b;
+        mQuadrics[q + 2] += weight * a * c;
+        mQuadrics[q + 3] += weight * a * d;
+        mQuadrics[q + 4] += weight * b * b;
+        mQuadrics[q + 5] += weight * b * c;
+        mQuadrics[q + 6] += weight * b * d;
+        mQuadrics[q + 7] += weight * c * c;
+        mQuadrics[q + 8] += weight * c * d;
+        mQuadrics[q + 9] += weight * d * d;
+    }
+
+    //
+    // The other live triangle on edge a-b, -1 if t is alone on it
+    //
+    private int FindOtherTriangle(int t, int a, int b)
+    {
+        IntArray triangles = mPositionTriangles[a];
+        for (int i = 0; i < triangles.Size(); i++)
+        {
+            int other = triangles.Get(i);
+            if (other != t && !mRemoved[other] && CornerOf(other, b) >= 0)
+                return other;
+        }
+        return -1;
+    }
+
+    // which corner of t is at position p, -1 if none
+    private int CornerOf(int t, int p)
+    {
+        for (int c = 0; c < 3; c++)
+        {
+            if (mCornerPositions[t * 3 + c] == p)
+                return c;
+        }
+        return -1;
+    }
+
+    //
+    // Pin the edges of t that are on a border, a material boundary or an attribute seam with a
+    // plane through the edge, perpendicular to t
+    //
+    private void AddBoundaryPlanes(int t)
+    {
+        double area = FaceNormal(t, mNormal);
+        if (area == 0)
+            return;
+        double fx = mNormal[0], fy = mNormal[1], fz = mNormal[2];
+
+        for (int c = 0; c < 3; c++)
+        {
+            int a = mCornerPositions[t * 3 + c];
+            int b = mCornerPositions[t * 3 + (c + 1) % 3];
+            int other = FindOtherTriangle(t, a, b);
+            if (other >= 0 && mTriangleRanges[other] == mTriangleRanges[t]
+                    && mCornerVerts[other * 3 + CornerOf(other, a)] == mCornerVerts[t * 3 + c]
+                    && mCornerVerts[other * 3 + CornerOf(other, b)] == mCornerVerts[t * 3 + (c + 1) % 3])
+                continue;       // smooth interior edge
+
+            double ex = mPositions[b * 3] - mPositions[a * 3];
+            double ey = mPositions[b * 3 + 1] - mPositions[a * 3 + 1];
+            double ez = mPositions[b * 3 + 2] - mPositions[a * 3 + 2];
+            double nx = ey * fz - ez * fy;
+            double ny = ez * fx - ex * fz;
+            double nz = ex * fy - ey * fx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0)
+                continue;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * mPositions[a * 3] + ny * mPositions[a * 3 + 1] + nz * mPositions[a * 3 + 2]);
+            double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+            AddPlane(a, nx, ny, nz, d, weight);
+            AddPlane(b, nx, ny, nz, d, weight);
+        }
+    }
+
+    //
+    // Queue the collapse of edge a-b to the point with the least error for the summed quadric:
+    // the minimum of the quadric when it has one near the edge, else the best of the ends and the
+    // middle (ex: on a flat area or a straight border any point on the edge is as good)
+    //
+    private void QueueCollapse(int a, int b)
+    {
+        double[] q = mQuadric;
+        int qa = a * QUADRIC_SIZE, qb = b * QUADRIC_SIZE;
+        for (int i = 0; i < QUADRIC_SIZE; i++)
+            q[i] = mQuadrics[qa + i] + mQuadrics[qb + i];
+
+        Collapse collapse = new Collapse();
+        collapse.mA = a;
+        collapse.mB = b;
+        collapse.mVersionA = mVersions[a];
+        collapse.mVersionB = mVersions[b];
+        collapse.mCost = Double.MAX_VALUE;
+
+        double ax = mPositions[a * 3], ay = mPositions[a * 3 + 1], az = mPositions[a * 3 + 2];
+        double bx = mPositions[b * 3], by = mPositions[b * 3 + 1], bz = mPositions[b * 3 + 2];
+        for (int i = 0; i < 3; i++)
+        {
+            double w = i * 0.5;
+            Consider(collapse, q, ax + (bx - ax) * w, ay + (by - ay) * w, az + (bz - az) * w);
+        }
+
+        // gradient of the quadric = 0, Cramer's rule on the upper 3x3
+        double det = q[0] * (q[4] * q[7] - q[5] * q[5]) - q[1] * (q[1] * q[7] - q[5] * q[2])
+                + q[2] * (q[1] * q[5] - q[4] * q[2]);
+        double scale = Math.abs(q[0]) + Math.abs(q[4]) + Math.abs(q[7]);
+        if (Math.abs(det) > 1e-9 * scale * scale * scale)
+        {
+            double rx = -q[3], ry = -q[6], rz = -q[8];
+            double x = (rx * (q[4] * q[7] - q[5] * q[5]) - q[1] * (ry * q[7] - q[5] * rz)
+                    + q[2] * (ry * q[5] - q[4] * rz)) / det;
+            double y = (q[0] * (ry * q[7] - q[5] * rz) - rx * (q[1] * q[7] - q[5] * q[2])
+                    + q[2] * (q[1] * rz - ry * q[2])) / det;
+            double z = (q[0] * (q[4] * rz - ry * q[5]) - q[1] * (q[1] * rz - ry * q[2])
+                    + rx * (q[1] * q[5] - q[4] * q[2])) / det;
+
+            // nearly singular quadrics can put it far away, keep it within an edge length of the middle
+            double dx = x - (ax + bx) * 0.5, dy = y - (ay + by) * 0.5, dz = z - (az + bz) * 0.5;
+            double ex = bx - ax, ey = by - ay, ez = bz - az;
+            if (dx * dx + dy * dy + dz * dz <= ex * ex + ey * ey + ez * ez)
+                Consider(collapse, q, x, y, z);
+        }
+        collapse.mCost = Math.max(collapse.mCost, 0);     // rounding
+        mQueue.add(collapse);
+    }
+
+    private static void Consider(Collapse collapse, double[] q, double x, double y, double z)
+    {
+        double cost = Error(q, x, y, z);
+        if (cost < collapse.mCost)
+        {
+            collapse.mCost = cost;
+            collapse.mX = x;
+            collapse.mY = y;
+            collapse.mZ = z;
+        }
+    }
+
+    // v^T Q v for v = (x, y, z, 1)
+    private static double Error(double[] q, double x, double y, double z)
+    {
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+                + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+                + q[7] * z * z + 2 * q[8] * z + q[9];
+    }
+
+    //
+    // Moving position p to (x, y, z) mustn't flip or squash the triangles around it that don't
+    // also use other (those disappear with the collapse)
+    //
+    private boolean IsValid(int p, int other, double x, double y, double z)
+    {
+        double[] normal = mNormal;
+        double[] moved = mMovedNormal;
+        IntArray triangles = mPositionTriangles[p];
+        for (int i = 0; i < triangles.Size(); i++)
+        {
+            int t = triangles.Get(i);
+            if (mRemoved[t] || CornerOf(t, other) >= 0)
+                continue;
+            if (FaceNormal(t, normal) == 0)
+                continue;
+
+            int c = CornerOf(t, p);
+            int p1 = mCornerPositions[t * 3 + (c + 1) % 3] * 3;
+            int p2 = mCornerPositions[t * 3 + (c + 2) % 3] * 3;
+            double area = PlaneOf(x, y, z, mPositions[p1], mPositions[p1 + 1], mPositions[p1 + 2],
+                    mPositions[p2], mPositions[p2 + 1], mPositions[p2 + 2], moved);
+            if (area == 0)
+                return false;
+            if (normal[0] * moved[0] + normal[1] * moved[1] + normal[2] * moved[2] < MIN_NORMAL_DOT)
+                return false;
+        }
+        return true;
+    }
+
+    //
+    // Collapse b into a, at (x, y, z), and queue the new collapses around a
+    //
+    private void DoCollapse(int a, int b, double x, double y, double z)
+    {
+        mPositions[a * 3] = x;
+        mPositions[a * 3 + 1] = y;
+        mPositions[a * 3 + 2] = z;
+        for (int i = 0; i < QUADRIC_SIZE; i++)
+            mQuadrics[a * QUADRIC_SIZE + i] += mQuadrics[b * QUADRIC_SIZE + i];
+        mCollapsed[b] = true;
+        mVersions[a]++;
+        mVersions[b]++;
+
+        // the triangles on the edge disappear, and tell which vertex of a replaces which of b
+        // (one per side of a seam or material boundary along the edge)
+        IntArray trianglesA = mPositionTriangles[a];
+        IntArray trianglesB = mPositionTriangles[b];
+        mVertMap.Clear();
+        for (int i = 0; i < trianglesB.Size(); i++)
+        {
+            int t = trianglesB.Get(i);
+            if (mRemoved[t] || CornerOf(t, a) < 0)
+                continue;
+            mRemoved[t] = true;
+            mNumTriangles--;
+            mVertMap.Add(mCornerVerts[t * 3 + CornerOf(t, b)]);
+            mVertMap.Add(mCornerVerts[t * 3 + CornerOf(t, a)]);
+        }
+
+        // the others of b move to a, vertices without a match keep their attributes
+        for (int i = 0; i < trianglesB.Size(); i++)
+        {
+            int t = trianglesB.Get(i);
+            if (mRemoved[t])
+                continue;
+            int corner = t * 3 + CornerOf(t, b);
+            mCornerPositions[corner] = a;
+            for (int m = 0; m < mVertMap.Size(); m += 2)
+            {
+                if (mVertMap.Get(m) == mCornerVerts[corner])
+                {
+                    mCornerVerts[corner] = mVertMap.Get(m + 1);
+                    break;
+                }
+            }
+            trianglesA.Add(t);
+        }
+        trianglesB.Clear();
+
+        // drop the removed triangles from a's list, and queue the edges to its neighbors
+        int kept = 0;
+        for (int i = 0; i < trianglesA.Size(); i++)
+        {
+            int t = trianglesA.Get(i);
+            if (!mRemoved[t])
+                trianglesA.Set(kept++, t);
+        }
+        trianglesA.Resize(kept);
+        for (int i = 0; i < trianglesA.Size(); i++)
+        {
+            // each neighbor is the next corner of one triangle, except across a border
+            int t = trianglesA.Get(i);
+            int c = CornerOf(t, a);
+            QueueCollapse(a, mCornerPositions[t * 3 + (c + 1) % 3]);
+            int previous = mCornerPositions[t * 3 + (c + 2) % 3];
+            if (FindOtherTriangle(t, a, previous) < 0)
+                QueueCollapse(a, previous);
+        }
+    }
+}
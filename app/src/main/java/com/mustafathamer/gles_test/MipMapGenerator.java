@@ -0,0 +1,160 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Builds the mipmap chain of a texture on the CPU, from ARGB pixels as Bitmap.getPixels() returns
+ * them: each level is half the size of the one above (rounded down, at least 1), each of its
+ * texels the average of the 2x2 texels above it, down to 1x1.
+ * <p>
+ * ES 2 can only mipmap textures whose sides are powers of two, Resize() brings other images to
+ * the nearest power of two first (see ToPowerOfTwo()). Channels are averaged as stored, not
+ * premultiplied by alpha and not linearized, which is fine for the opaque diffuse maps of the
+ * bundled models.
+ * <p>
+ * TextureCompiler builds the chains of the ETC1 textures with it at build time, so it works on int
+ * arrays rather than Bitmaps.
+ */
+
+public class MipMapGenerator
+{
+    public static final int BYTES_PER_TEXEL = 4;        // uploaded as GL_RGBA, GL_UNSIGNED_BYTE
+
+    //
+    // Number of levels of a width x height texture, including the full size one
+    //
+    public static int NumLevels(int width, int height)
+    {
+        int levels = 1;
+        while (width > 1 || height > 1)
+        {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            levels++;
+        }
+        return levels;
+    }
+
+    //
+    // GPU memory of the texture with all its levels, about 4/3 of the full size level
+    //
+    public static long ByteSize(int width, int height)
+    {
+        long bytes = 0;
+        for (int level = 0; level < NumLevels(width, height); level++)
+            bytes += (long) Math.max(1, width >> level) * Math.max(1, height >> level) * BYTES_PER_TEXEL;
+        return bytes;
+    }
+
+    //
+    // The power of two closest to size, no larger than maxSize (a power of two)
+    //
+    public static int ToPowerOfTwo(int size, int maxSize)
+    {
+        int below = Integer.highestOneBit(Math.max(1, size));
+        int result = size - below > below * 2 - size ? below * 2 : below;
+        return Math.min(result, maxSize);
+    }
+
+    //
+    // Every level of the texture, level 0 is pixels itself
+    //
+    public static int[][] Generate(int[] pixels, int width, int height)
+    {
+        int[][] levels = new int[NumLevels(width, height)][];
+        levels[0] = pixels;
+        for (int level = 1; level < levels.length; level++)
+        {
+            levels[level] = Downsample(levels[level - 1], width, height);
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+        return levels;
+    }
+
+    //
+    // The next level of a width x height level. With an odd size the last row or column is left
+    // out, a side of 1 is averaged with itself.
+    //
+    public static int[] Downsample(int[] src, int width, int height)
+    {
+        int dstWidth = Math.max(1, width / 2);
+        int dstHeight = Math.max(1, height / 2);
+        int[] dst = new int[dstWidth * dstHeight];
+        for (int y = 0; y < dstHeight; y++)
+        {
+            int row0 = Math.min(y * 2, height - 1) * width;
+            int row1 = Math.min(y * 2 + 1, height - 1) * width;
+            for (int x = 0; x < dstWidth; x++)
+            {
+                int x0 = Math.min(x * 2, width - 1);
+                int x1 = Math.min(x * 2 + 1, width - 1);
+                int a = src[row0 + x0], b = src[row0 + x1], c = src[row1 + x0], d = src[row1 + x1];
+
+                // two channels at a time, 16 bits each: a sum of 4 bytes can't overflow into the
+                // next one. +2 rounds to nearest.
+                int rb = (a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF) + 0x20002;
+                int ag = ((a >>> 8) & 0xFF00FF) + ((b >>> 8) & 0xFF00FF) + ((c >>> 8) & 0xFF00FF)
+                        + ((d >>> 8) & 0xFF00FF) + 0x20002;
+                dst[y * dstWidth + x] = (((ag >>> 2) & 0xFF00FF) << 8) | ((rb >>> 2) & 0xFF00FF);
+            }
+        }
+        return dst;
+    }
+
+    //
+    // The rows of the image in the other order. GL reads the first row as t = 0, the bottom of
+    // the image for OBJ texture coordinates, so images are flipped before they are uploaded.
+    //
+    public static int[] FlipRows(int[] pixels, int width, int height)
+    {
+        int[] flipped = new int[width * height];
+        for (int y = 0; y < height; y++)
+            System.arraycopy(pixels, y * width, flipped, (height - 1 - y) * width, width);
+        return flipped;
+    }
+
+    //
+    // The image scaled to newWidth x newHeight. Halved with Downsample() while it is at least
+    // twice as big as asked, then filtered bilinearly, so shrinking doesn't skip texels.
+    //
+    public static int[] Resize(int[] pixels, int width, int height, int newWidth, int newHeight)
+    {
+        while (width >= newWidth * 2 && height >= newHeight * 2)
+        {
+            pixels = Downsample(pixels, width, height);
+            width /= 2;
+            height /= 2;
+        }
+        if (width == newWidth && height == newHeight)
+            return pixels;
+
+        int[] dst = new int[newWidth * newHeight];
+        float scaleX = width / (float) newWidth;
+        float scaleY = height / (float) newHeight;
+        for (int y = 0; y < newHeight; y++)
+        {
+            // texel centers line up, clamped at the edges
+            float sy = Math.max(0, Math.min(height - 1, (y + 0.5f) * scaleY - 0.5f));
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, height - 1);
+            float fy = sy - y0;
+            for (int x = 0; x < newWidth; x++)
+            {
+                float sx = Math.max(0, Math.min(width - 1, (x + 0.5f) * scaleX - 0.5f));
+                int x0 = (int) sx;
+                int x1 = Math.min(x0 + 1, width - 1);
+                float fx = sx - x0;
+                int a = pixels[y0 * width + x0], b = pixels[y0 * width + x1];
+                int c = pixels[y1 * width + x0], d = pixels[y1 * width + x1];
+                int texel = 0;
+                for (int shift = 0; shift < 32; shift += 8)
+                {
+                    float top = ((a >>> shift) & 0xFF) * (1 - fx) + ((b >>> shift) & 0xFF) * fx;
+                    float bottom = ((c >>> shift) & 0xFF) * (1 - fx) + ((d >>> shift) & 0xFF) * fx;
+                    texel |= Math.round(top * (1 - fy) + bottom * fy) << shift;
+                }
+                dst[y * newWidth + x] = texel;
+            }
+        }
+        return dst;
+    }
+}
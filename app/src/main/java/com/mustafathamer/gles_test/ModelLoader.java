@@ -0,0 +1,140 @@
+package com.mustafathamer.gles_test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads models off the GL thread.
+ * <p>
+ * Jobs (parsing, building CPU side buffers) run on a worker executor. Their results are queued
+ * on a lock-free queue, and handed to their listeners by DeliverFinished(), which the renderer
+ * calls at the start of each frame on the GL thread. So listeners can upload to GL, and nothing
+ * GL related ever runs on the worker.
+ * Results are delivered in the order the jobs finished; with the default single worker thread
+ * that is the order they were submitted.
+ * <p>
+ * Plain Java, the executor can be swapped for tests.
+ */
+
+public class ModelLoader
+{
+    //
+    // Runs on the worker thread, must not touch GL
+    //
+    public interface Job<T>
+    {
+        T Load() throws Exception;
+    }
+
+    //
+    // Runs on the GL thread, from DeliverFinished()
+    //
+    public interface Listener<T>
+    {
+        void OnLoaded(GLApi gl, T result);
+        void OnFailed(Exception e);
+    }
+
+    private static class Finished<T>
+    {
+        private final Listener<T> mListener;
+        private final T mResult;
+        private final Exception mError;
+
+        Finished(Listener<T> listener, T result, Exception error)
+        {
+            mListener = listener;
+            mResult = result;
+            mError = error;
+        }
+
+        void Deliver(GLApi gl)
+        {
+            if (mError != null)
+                mListener.OnFailed(mError);
+            else
+                mListener.OnLoaded(gl, mResult);
+        }
+    }
+
+    private final Executor mWorker;
+    private final ConcurrentLinkedQueue<Finished<?>> mFinished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mNumPending = new AtomicInteger();
+
+    //
+    // CTOR
+    // one low priority daemon worker thread
+    //
+    public ModelLoader()
+    {
+        this(CreateWorker());
+    }
+
+    public ModelLoader(Executor worker)
+    {
+        mWorker = worker;
+    }
+
+    private static ExecutorService CreateWorker()
+    {
+        return Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "ModelLoader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    // jobs submitted but not delivered yet
+    public int GetNumPending()          { return mNumPending.get(); }
+
+    //
+    // Queue a job on the worker, returns immediately
+    //
+    public <T> void Submit(final Job<T> job, final Listener<T> listener)
+    {
+        mNumPending.incrementAndGet();
+        mWorker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Finished<T> finished;
+                try
+                {
+                    finished = new Finished<>(listener, job.Load(), null);
+                } catch (Exception e)
+                {
+                    finished = new Finished<>(listener, null, e);
+                }
+                mFinished.add(finished);
+            }
+        });
+    }
+
+    //
+    // Hand the finished jobs to their listeners. Call on the GL thread, at the start of a frame.
+    // Returns the number of jobs delivered.
+    //
+    public int DeliverFinished(GLApi gl)
+    {
+        int numDelivered = 0;
+        Finished<?> finished;
+        while ((finished = mFinished.poll()) != null)
+        {
+            mNumPending.decrementAndGet();
+            finished.Deliver(gl);
+            numDelivered++;
+        }
+        return numDelivered;
+    }
+}
@@ -4,14 +4,23 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.Build;
 import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 /**
@@ -23,9 +32,50 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     private Context mContext;
     private String mObjFileName = "fidget2";
 
-    // handles to programs
-    private int mObjectProgramHandle;
-    private int mPointProgramHandle;
+    // simplified levels of detail of the model (ratio of its triangles), and the screen sizes
+    // (fraction of the viewport height) below which each level switches to the next coarser one
+    private static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+    private static final float[] LOD_SCREEN_SIZES = {0.4f, 0.2f, 0.1f};
+    private static final float LOD_HYSTERESIS = 0.1f;
+
+    // keep the model's vertices as shorts and bytes instead of floats, compileMeshes in
+    // build.gradle compiles the meshes to match
+    private static final boolean QUANTIZE_VERTICES = true;
+
+    // all per frame GL calls go through this, so they can be faked off device, and counted; then
+    // through the state cache, which drops the ones that wouldn't change anything
+    private final GLStateCache mStateCache = new GLStateCache(new GLES20Api());
+    private final CountingGLApi mGL = new CountingGLApi(mStateCache);
+    private int mLoggedCallsPerFrame = -1;
+    private int mLoggedDrawCallsPerFrame = -1;
+    private int mLoggedElidedPerFrame = -1;
+
+    // frame times and counts of the last seconds, reported to the log every few seconds, and
+    // graphed over the scene while the HUD is shown (two finger tap)
+    private static final int FRAME_STATS_FRAMES = 240;
+    private static final int LOG_FRAME_STATS_EVERY = 600;
+    private final FrameStats mFrameStats = new FrameStats(FRAME_STATS_FRAMES);
+    private HudRenderer mHudRenderer;
+    private volatile boolean mShowHud;
+
+    // parses models on a worker thread, finished ones are uploaded at the start of a frame
+    private final ModelLoader mModelLoader = new ModelLoader();
+
+    // textures of the materials, decoded on the model loader's worker, kept under this much GPU memory
+    private static final long TEXTURE_BUDGET_BYTES = 32L * 1024 * 1024;
+    private TextureManager mTextureManager;
+    private int mLoggedTextureLoads = -1;
+
+    // programs, with their locations resolved once at link time
+    private ShaderProgram mObjectProgram;
+    private ShaderProgram mPointProgram;
+    private ShaderManager mShaderManager;
+
+    // draws the copies of instanced models, queued while drawing the scene, a few per draw call
+    private InstanceRenderer mInstanceRenderer;
+
+    // the static scene nodes, merged into one mesh in world space
+    private StaticBatcher mStaticBatcher;
 
     /** This will be used to pass in the transformation matrix. */
     private int mMVPMatrixHandle;
@@ -39,13 +89,40 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     /** This will be used to pass in model position information. */
     private int mPositionHandle;
 
-    /** This will be used to pass in model color information. */
+    /** This will be used to pass in the material colors (uniforms, set once per material). */
     private int mDifColorHandle;
     private int mAmbColorHandle;
 
     /** This will be used to pass in model normal information. */
     private int mNormalHandle;
 
+    /** This will be used to pass in model texture coordinates. */
+    private int mUVHandle;
+
+    /** Material textures: the texture units, and the uniforms telling whether each is used. */
+    private static final int DIF_TEXTURE_UNIT = 0;
+    private static final int AMB_TEXTURE_UNIT = 1;
+    private final int[] mUseTextureHandles = new int[2];
+
+    /** How quantized positions decode (scale and offset), and the values last set. */
+    private int mPositionScaleHandle;
+    private int mPositionOffsetHandle;
+    private final float[] mPositionScale = new float[3];
+    private final float[] mPositionOffset = new float[3];
+    private static final float[] IDENTITY_SCALE = {1, 1, 1};
+    private static final float[] IDENTITY_OFFSET = {0, 0, 0};
+
+    /** The same for quantized texture coordinates. */
+    private int mUVScaleHandle;
+    private int mUVOffsetHandle;
+    private final float[] mUVScale = new float[2];
+    private final float[] mUVOffset = new float[2];
+
+    /** Point program handles, for the light. */
+    private int mPointMVPMatrixHandle;
+    private int mPointPositionHandle;
+
+    public GLApi GetGL() { return mGL; }
     public int GetMVPMatrixHandle() { return mMVPMatrixHandle; }
     public int GetMVMatrixHandle() { return mMVMatrixHandle; }
     public int GetLightPosHandle() { return mLightPosHandle; }
@@ -53,15 +130,36 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     public int GetDifColorHandle() { return mDifColorHandle; }
     public int GetAmbColorHandle() { return mAmbColorHandle; }
     public int GetNormalHandle() { return mNormalHandle; }
+    public int GetUVHandle() { return mUVHandle; }
+    public TextureManager GetTextureManager() { return mTextureManager; }
+    public InstanceRenderer GetInstanceRenderer() { return mInstanceRenderer; }
+
+    // GL calls made by the last complete frame
+    public int GetGLCallsLastFrame() { return mGL.GetCallsLastFrame(); }
+    public int GetDrawCallsLastFrame() { return mGL.GetDrawCallsLastFrame(); }
+
+    // objects tested against the frustum / skipped, in the current or last frame
+    public int GetNumObjectsTested() { return mFrustum.GetNumTested(); }
+    public int GetNumObjectsCulled() { return mFrustum.GetNumCulled(); }
+
+    // times and counts of the last frames
+    public FrameStats GetFrameStats() { return mFrameStats; }
+
+    public boolean IsHudShown() { return mShowHud; }
+    public void SetHudShown(boolean showHud) { mShowHud = showHud; }
 
     //
     // objects to draw
+    // the scene root follows the user's drag angles, the loaded model hangs below it. Models can be
+    // shared between any number of nodes.
     //
-    private Triangle mTriangle;
-    private Square mSquare;
+    private SceneNode mScene;
     private ObjModel mObjModel;
     private Cube mCube;
 
+    public SceneNode GetScene()     { return mScene; }
+    public StaticBatcher GetStaticBatcher()     { return mStaticBatcher; }
+
     //
     // for projection
     //
@@ -72,6 +170,18 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     public float[] GetProjectionMatrix()    { return mProjectionMatrix;   }
     public float[] GetViewMatrix()          {return mViewMatrix;    }
 
+    // view matrix at the bottom, objects push their model matrix on it. Preallocated, so the
+    // per frame matrix work doesn't allocate
+    private final MatrixStack mMatrixStack = new MatrixStack(16);
+    private final float[] mMVPMatrix = new float[16];
+
+    // projection * view, and the frustum planes extracted from it, for culling
+    private final float[] mViewProjectionMatrix = new float[16];
+    private final Frustum mFrustum = new Frustum();
+    private int mLoggedNumCulled = -1;
+
+    public MatrixStack GetMatrixStack()     { return mMatrixStack; }
+
     /**
      * Stores a copy of the model matrix specifically for the light position.
      */
@@ -112,101 +222,78 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     }
 
     //
-    // Load the given text file (containing shader code), and return as a string
+    // Load a shader program through the ShaderManager, sources from the assets
     //
-    private String LoadShaderCode(String fileName)
+    private ShaderProgram LoadProgram(String name, String vertexFile, String fragmentFile, String[] defines,
+                                      String[] attributes, String[] uniforms)
     {
-        Scanner scanner = null;
         try
         {
-            scanner = new Scanner(mContext.getAssets().open(fileName));
+            return mShaderManager.Load(name, vertexFile, fragmentFile, defines, attributes, uniforms);
         } catch (IOException e)
         {
-            Log.e("MOOSE", "Exception opening assets file:" + fileName);
-            e.printStackTrace();
-        }
-
-        String shaderCode = "";
-        // Loop through all its lines
-        while (scanner.hasNextLine())
-        {
-            String line = scanner.nextLine();
-            shaderCode += line;
+            throw new RuntimeException("Can't read the shaders of " + name, e);
         }
-        scanner.close();
-
-        return shaderCode;
     }
 
     //
-    // utility func for loading shader code from string buffer
+    // Decode an image from the assets, for TextureManager (on its worker thread)
     //
-    private int CreateShader(int type, String shaderCode)
+    private int[] DecodeAsset(String path, int[] size) throws IOException
     {
-        // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-        // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
-
-        // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
-
-        return shader;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        Bitmap bitmap;
+        InputStream in = mContext.getAssets().open(path);
+        try
+        {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } finally
+        {
+            in.close();
+        }
+        if (bitmap == null)
+            throw new IOException("Can't decode image " + path);
+
+        size[0] = bitmap.getWidth();
+        size[1] = bitmap.getHeight();
+        int[] pixels = new int[size[0] * size[1]];
+        bitmap.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+        bitmap.recycle();
+        Log.d("MOOSE", "Decoded texture " + path + ": " + size[0] + "x" + size[1]);
+        return pixels;
     }
 
-    /**
-     * Helper function to compile and link a program.
-     *
-     * @param vertexShaderHandle   An OpenGL handle to an already-compiled vertex shader.
-     * @param fragmentShaderHandle An OpenGL handle to an already-compiled fragment shader.
-     * @param attributes           Attributes that need to be bound to the program.
-     * @return An OpenGL handle to the program.
-     */
-    private int CreateAndLinkProgram(final int vertexShaderHandle, final int fragmentShaderHandle, final String[] attributes)
+    //
+    // Map an asset stored uncompressed in the APK (see noCompress in app/build.gradle), null if
+    // there is none
+    //
+    private ByteBuffer MapAsset(String path) throws IOException
     {
-        int programHandle = GLES20.glCreateProgram();
-        if (programHandle != 0)
+        AssetFileDescriptor fd;
+        try
         {
-            // Bind the vertex shader to the program.
-            GLES20.glAttachShader(programHandle, vertexShaderHandle);
-
-            // Bind the fragment shader to the program.
-            GLES20.glAttachShader(programHandle, fragmentShaderHandle);
+            fd = mContext.getAssets().openFd(path);
+        } catch (FileNotFoundException e)
+        {
+            return null;
+        }
 
-            // Bind attributes
-            if (attributes != null)
+        try
+        {
+            FileInputStream stream = new FileInputStream(fd.getFileDescriptor());
+            try
             {
-                final int size = attributes.length;
-                for (int i = 0; i < size; i++)
-                {
-                    GLES20.glBindAttribLocation(programHandle, i, attributes[i]);
-                }
-            }
-
-            // Link the two shaders together into a program.
-            GLES20.glLinkProgram(programHandle);
-
-            // Get the link status.
-            final int[] linkStatus = new int[1];
-            GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
-
-            // If the link failed, delete the program.
-            if (linkStatus[0] == GLES20.GL_FALSE)
+                // the mapping stays valid after the file is closed
+                return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            } finally
             {
-                Log.e("MOOSE", "Error compiling program: ");
-                String result = GLES20.glGetProgramInfoLog(programHandle);
-                Log.e("MOOSE", result);
-                GLES20.glDeleteProgram(programHandle);
-                programHandle = 0;
+                stream.close();
             }
-        }
-
-        if (programHandle == 0)
+        } finally
         {
-            throw new RuntimeException("Error creating program.");
+            fd.close();
         }
-
-        return programHandle;
     }
 
     //
@@ -219,14 +306,17 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
     {
         Log.d("MOOSE", "Renderer: OnSurfaceCreated");
 
+        // a new context, none of the state of the last one
+        mStateCache.Reset();
+
         // Set the background frame color
         GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 
         // Use culling to remove back faces.
-        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        mGL.glEnable(GLES20.GL_CULL_FACE);
 
         // Enable depth testing
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        mGL.glEnable(GLES20.GL_DEPTH_TEST);
 
         // Set the camera position (View matrix)
         Matrix.setLookAtM(mViewMatrix, 0,
@@ -234,81 +324,334 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
                 0f, 0f, 0f,
                 0f, 1.0f, 0.0f);
 
-        String shaderCode;
+        // program binaries are kept across runs where the driver can give them
+        ProgramBinaryCache binaryCache = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && ShaderManager.SupportsProgramBinaries(mGL))
+            binaryCache = new ProgramBinaryCache(new File(mContext.getCacheDir(), "shaders"));
+        mShaderManager = new ShaderManager(mGL, new ShaderManager.Source()
+        {
+            @Override
+            public InputStream Open(String fileName) throws IOException
+            {
+                return mContext.getAssets().open(fileName);
+            }
+        }, binaryCache);
 
         //
         // Create shaders for objects
         //
-        shaderCode = LoadShaderCode("object_vertex_shader.txt");
-        final int objectVertexShaderHandle = CreateShader(GLES20.GL_VERTEX_SHADER, shaderCode);
+        mObjectProgram = LoadProgram("object", "object_vertex_shader.txt", "object_fragment_shader.txt",
+                new String[] {"TEXTURED"},
+                new String[] {"a_Position", "a_Normal", "a_UV"},        // attributes from object vertex shader
+                new String[] {"u_MVPMatrix", "u_MVMatrix", "u_LightPos", "u_DifColor", "u_AmbColor",
+                        "u_PositionScale", "u_PositionOffset", "u_UVScale", "u_UVOffset",
+                        "u_DifTexture", "u_AmbTexture", "u_UseDifTexture", "u_UseAmbTexture"});
+        Log.d("MOOSE", "Loaded object shaders");
 
-        shaderCode = LoadShaderCode("object_fragment_shader.txt");
-        final int objectFragmentShaderHandle = CreateShader(GLES20.GL_FRAGMENT_SHADER, shaderCode);
+        // Set program shader var handles for drawing, they don't change until the program is relinked
+        mMVPMatrixHandle = mObjectProgram.GetUniformLocation("u_MVPMatrix");
+        mMVMatrixHandle = mObjectProgram.GetUniformLocation("u_MVMatrix");
+        mLightPosHandle = mObjectProgram.GetUniformLocation("u_LightPos");
+        mPositionHandle = mObjectProgram.GetAttribLocation("a_Position");
+        mDifColorHandle = mObjectProgram.GetUniformLocation("u_DifColor");
+        mAmbColorHandle = mObjectProgram.GetUniformLocation("u_AmbColor");
+        mNormalHandle = mObjectProgram.GetAttribLocation("a_Normal");
+        mPositionScaleHandle = mObjectProgram.GetUniformLocation("u_PositionScale");
+        mPositionOffsetHandle = mObjectProgram.GetUniformLocation("u_PositionOffset");
+        mPositionScale[0] = Float.NaN;      // uniforms start at 0, set them with the first object
+        mUVHandle = mObjectProgram.GetAttribLocation("a_UV");
+        mUVScaleHandle = mObjectProgram.GetUniformLocation("u_UVScale");
+        mUVOffsetHandle = mObjectProgram.GetUniformLocation("u_UVOffset");
+        mUVScale[0] = Float.NaN;
+
+        // the samplers read fixed units, the textures of each material are bound to them
+        mObjectProgram.Use(mGL);
+        mGL.glUniform1i(mObjectProgram.GetUniformLocation("u_DifTexture"), DIF_TEXTURE_UNIT);
+        mGL.glUniform1i(mObjectProgram.GetUniformLocation("u_AmbTexture"), AMB_TEXTURE_UNIT);
+        mUseTextureHandles[DIF_TEXTURE_UNIT] = mObjectProgram.GetUniformLocation("u_UseDifTexture");
+        mUseTextureHandles[AMB_TEXTURE_UNIT] = mObjectProgram.GetUniformLocation("u_UseAmbTexture");
+
+        // a new context has none of the textures of the last one
+        mTextureManager = new TextureManager(mGL, mModelLoader, new TextureManager.Decoder()
+        {
+            @Override
+            public int[] Decode(String path, int[] size) throws IOException
+            {
+                return DecodeAsset(path, size);
+            }
 
-        mObjectProgramHandle = CreateAndLinkProgram(objectVertexShaderHandle, objectFragmentShaderHandle,
-                new String[] {"a_Position",  "a_AmbColor", "a_DifColor", "a_Normal"});       // attributes from object vertex shader
-        Log.d("MOOSE", "Loaded object shaders");
+            @Override
+            public ByteBuffer Read(String path) throws IOException
+            {
+                return MapAsset(path);
+            }
+        }, TEXTURE_BUDGET_BYTES);
+        Log.d("MOOSE", "ETC1 textures: " + (mTextureManager.UsesEtc1() ? "yes" : "no, decoding the images"));
 
         //
         // create shaders for point light
         //
-        shaderCode = LoadShaderCode("point_vertex_shader.txt");
-        int pointVertexShaderID = CreateShader(GLES20.GL_VERTEX_SHADER, shaderCode);
+        mPointProgram = LoadProgram("point", "point_vertex_shader.txt", "point_fragment_shader.txt", new String[0],
+                new String[] {"a_Position"},        // attributes from point vertex shader
+                new String[] {"u_MVPMatrix"});
+        mPointMVPMatrixHandle = mPointProgram.GetUniformLocation("u_MVPMatrix");
+        mPointPositionHandle = mPointProgram.GetAttribLocation("a_Position");
 
-        shaderCode = LoadShaderCode("point_fragment_shader.txt");
-        int pointFragmentShaderID = CreateShader(GLES20.GL_FRAGMENT_SHADER, shaderCode);
+        Log.d("MOOSE", "Loaded point shaders");
+
+        //
+        // create shaders for instanced objects, models are drawn one copy at a time without them
+        //
+        ShaderProgram instancedProgram = null;
+        try
+        {
+            instancedProgram = LoadProgram("instanced", "instanced_vertex_shader.txt", "object_fragment_shader.txt",
+                    new String[0], InstanceRenderer.ATTRIBUTES, InstanceRenderer.UNIFORMS);
+            Log.d("MOOSE", "Loaded instanced shaders");
+        } catch (RuntimeException e)
+        {
+            Log.w("MOOSE", "No instancing, drawing copies one at a time: " + e.getMessage());
+        }
+        mInstanceRenderer = new InstanceRenderer(instancedProgram);
 
-        mPointProgramHandle = CreateAndLinkProgram(pointVertexShaderID, pointFragmentShaderID,
-                new String[] {"a_Position"});       // attributes from point vertex shader
+        mHudRenderer = new HudRenderer(LoadProgram("hud", "hud_vertex_shader.txt", "hud_fragment_shader.txt",
+                new String[0], HudRenderer.ATTRIBUTES, HudRenderer.UNIFORMS), FRAME_STATS_FRAMES / 2);
+        mFrustum.SetFrameStats(mFrameStats);
 
-        Log.d("MOOSE", "Loaded point shaders");
+        long shaderNanos = 0;
+        for (ShaderManager.Stats stats : mShaderManager.GetStats())
+        {
+            Log.d("MOOSE", String.format("Shader program %s: %.2f ms, %s", stats.mName, stats.mNanos / 1e6,
+                    stats.mFromBinary ? "binary cache" : "compiled"));
+            shaderNanos += stats.mNanos;
+        }
+        Log.d("MOOSE", String.format("Shader programs: %.2f ms, binary cache %s", shaderNanos / 1e6,
+                binaryCache != null ? "on" : "off"));
 
         // initialize shapes
-        mTriangle = new Triangle();
-        mSquare = new Square();
-        mObjModel = new ObjModel(mContext, mObjFileName);
-        mCube = new Cube();
+        mObjModel = new ObjModel(mModelLoader, mContext, mObjFileName, true, QUANTIZE_VERTICES, LOD_RATIOS);
+        mObjModel.SetInstanced(true);       // for scenes with many copies of it
+        mCube = new Cube();     // drawn until the model is ready
+
+        // the buffers of the last merged mesh went with the last context, their names may belong
+        // to new buffers now, so they're forgotten rather than deleted
+        mStaticBatcher = new StaticBatcher();
+        mScene = new SceneNode();
+        final LodModel lodModel = new LodModel(mObjModel, new LodSelector(LOD_SCREEN_SIZES, LOD_HYSTERESIS));
+        mScene.AddChild(new SceneNode(new Renderable()
+        {
+            @Override
+            public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+            {
+                if (mObjModel.IsReady())
+                    lodModel.Draw(renderer, modelMatrix);
+                else
+                    mCube.Draw(renderer, modelMatrix);      // placeholder
+            }
+
+            @Override
+            public Bounds GetBounds()
+            {
+                return mObjModel.IsReady() ? mObjModel.GetBounds() : mCube.GetBounds();
+            }
+        }));
     }
 
     @Override
     public void onDrawFrame(GL10 unused)
     {
+        mFrameStats.BeginFrame();
+        mFrameStats.BeginPhase(FrameStats.UPDATE);
+        mGL.BeginFrame();
+        mStateCache.BeginFrame();
+
+        // upload the models and textures that finished loading since the last frame
+        mTextureManager.BeginFrame();
+        mModelLoader.DeliverFinished(mGL);
+
         // Redraw background color
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        GLES20.glUseProgram(mObjectProgramHandle);
+        mGL.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        mObjectProgram.Use(mGL);
 
         // Do a complete rotation every 10 seconds.
         long time = SystemClock.uptimeMillis() % 10000L;
         float timeAngleInDegrees = (360.0f / 10000.0f) * ((int) time);
 
-        // Set program shader var handles for drawing.
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mObjectProgramHandle, "u_MVPMatrix");
-        mMVMatrixHandle = GLES20.glGetUniformLocation(mObjectProgramHandle, "u_MVMatrix");
-        mLightPosHandle = GLES20.glGetUniformLocation(mObjectProgramHandle, "u_LightPos");
-        mPositionHandle = GLES20.glGetAttribLocation(mObjectProgramHandle, "a_Position");
-        mDifColorHandle = GLES20.glGetAttribLocation(mObjectProgramHandle, "a_DifColor");
-        mAmbColorHandle = GLES20.glGetAttribLocation(mObjectProgramHandle, "a_AmbColor");
-        mNormalHandle = GLES20.glGetAttribLocation(mObjectProgramHandle, "a_Normal");
+        mMatrixStack.Load(mViewMatrix);
 
         // Calculate position of the light. Rotate and then push into the distance.
-        Matrix.setIdentityM(mLightModelMatrix, 0);
-        Matrix.rotateM(mLightModelMatrix, 0, timeAngleInDegrees, 0.0f, 1.0f, 0.0f);
-        Matrix.translateM(mLightModelMatrix, 0, 0.0f, 0.0f, -2.0f);
+        MatrixMath.SetRotate(mLightModelMatrix, timeAngleInDegrees, 0.0f, 1.0f, 0.0f);
+        MatrixMath.Translate(mLightModelMatrix, 0.0f, 0.0f, -2.0f);
 
-        Matrix.multiplyMV(mLightPosInWorldSpace, 0, mLightModelMatrix, 0, mLightPosInModelSpace, 0);
-        Matrix.multiplyMV(mLightPosInEyeSpace, 0, mViewMatrix, 0, mLightPosInWorldSpace, 0);
+        MatrixMath.MultiplyMV(mLightPosInWorldSpace, mLightModelMatrix, mLightPosInModelSpace);
+        MatrixMath.MultiplyMV(mLightPosInEyeSpace, mViewMatrix, mLightPosInWorldSpace);
 
         // Pass in the light position in eye space.
-        GLES20.glUniform3f(mLightPosHandle, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1], mLightPosInEyeSpace[2]);
+        mGL.glUniform3f(mLightPosHandle, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1], mLightPosInEyeSpace[2]);
+
+        // only the nodes below a change get their world matrix recomputed
+        mScene.SetRotation(mXAngle, mYAngle);
+        mScene.UpdateWorldMatrices();
+
+        // remerge the static nodes, only when they changed
+        if (mStaticBatcher.Update(mGL, mScene))
+        {
+            Log.d("MOOSE", "Merged " + mStaticBatcher.GetNumMergedNodes() + " static objects into "
+                    + mStaticBatcher.GetNumDrawCalls() + " draw calls");
+        }
+
+        // draw submit, the frustum times its own tests as the cull phase
+        mFrameStats.EndPhase();
+        mFrameStats.BeginPhase(FrameStats.DRAW);
 
-        //mTriangle.draw(this);
-        //mSquare.draw(this);
-        mObjModel.draw(this);
-        //mCube.Draw(this);
+        // skip the objects that are entirely outside the view
+        MatrixMath.Multiply(mViewProjectionMatrix, mProjectionMatrix, mViewMatrix);
+        mFrustum.SetViewProjection(mViewProjectionMatrix);
+        mScene.Draw(this, mFrustum);
+        mStaticBatcher.Draw(this, mFrustum);
+
+        // the copies of instanced models were only queued by the scene, draw them together
+        mInstanceRenderer.Flush(mGL, mViewMatrix, mProjectionMatrix, mLightPosInEyeSpace);
 
         // Draw a point to indicate the light.
-        GLES20.glUseProgram(mPointProgramHandle);
+        mPointProgram.Use(mGL);
         DrawLight();
+
+        if (mShowHud)
+            mHudRenderer.Draw(mGL, mFrameStats);
+        mFrameStats.EndPhase();
+
+        // only log when it changes (ex: the model finished loading), not every frame
+        mGL.EndFrame();
+        mStateCache.EndFrame();
+        mFrameStats.EndFrame(mGL.GetDrawCallsLastFrame(), mGL.GetTrianglesLastFrame(),
+                mGL.GetBytesUploadedLastFrame());
+        if (mFrameStats.Get(FrameStats.FRAME).GetTotal() % LOG_FRAME_STATS_EVERY == 0)
+            Log.d("MOOSE", "Frame stats, times in ms:\n" + mFrameStats.Report());
+        if (mGL.GetCallsLastFrame() != mLoggedCallsPerFrame)
+        {
+            mLoggedCallsPerFrame = mGL.GetCallsLastFrame();
+            Log.d("MOOSE", "GL calls per frame: " + mLoggedCallsPerFrame);
+        }
+        if (mStateCache.GetElidedLastFrame() != mLoggedElidedPerFrame)
+        {
+            mLoggedElidedPerFrame = mStateCache.GetElidedLastFrame();
+            Log.d("MOOSE", "GL state changes per frame: " + mStateCache.GetIssuedLastFrame() + " made, "
+                    + mLoggedElidedPerFrame + " redundant ones dropped");
+        }
+        if (mGL.GetDrawCallsLastFrame() != mLoggedDrawCallsPerFrame)
+        {
+            mLoggedDrawCallsPerFrame = mGL.GetDrawCallsLastFrame();
+            Log.d("MOOSE", "Draw calls per frame: " + mLoggedDrawCallsPerFrame
+                    + " (" + mInstanceRenderer.GetNumInstances() + " instanced copies in "
+                    + mInstanceRenderer.GetNumDrawCalls() + ")");
+        }
+        TextureCache textures = mTextureManager.GetCache();
+        if (textures.GetNumMisses() != mLoggedTextureLoads)
+        {
+            mLoggedTextureLoads = textures.GetNumMisses();
+            Log.d("MOOSE", "Textures: " + textures.Size() + " using " + textures.GetUsedBytes() / 1024 + " of "
+                    + textures.GetBudgetBytes() / 1024 + " KB, " + textures.GetNumHits() + " hits, "
+                    + textures.GetNumMisses() + " misses, " + textures.GetNumEvictions() + " evictions, "
+                    + mTextureManager.GetNumFailed() + " failed, " + mTextureManager.GetNumCompressed() + " ETC1");
+        }
+        if (mFrustum.GetNumCulled() != mLoggedNumCulled)
+        {
+            mLoggedNumCulled = mFrustum.GetNumCulled();
+            Log.d("MOOSE", "Culled " + mLoggedNumCulled + " of " + mFrustum.GetNumTested() + " objects");
+        }
+    }
+
+    /**
+     * Upload the modelview and modelview-projection matrices of an object to the object program.
+     * Call during onDrawFrame, the modelview is the matrix stack top times modelMatrix.
+     */
+    public void SetModelMatrix(float[] modelMatrix)
+    {
+        SetModelMatrix(modelMatrix, null);
+    }
+
+    /**
+     * Same, for vertices packed with layout (null for floats): also sets how its positions decode,
+     * when that changed since the last object.
+     */
+    public void SetModelMatrix(float[] modelMatrix, VertexLayout layout)
+    {
+        if (layout != null)
+            SetPositionDecode(layout.GetDecodeScale(VertexLayout.ATTRIB_POSITION),
+                    layout.GetDecodeOffset(VertexLayout.ATTRIB_POSITION));
+        else
+            SetPositionDecode(IDENTITY_SCALE, IDENTITY_OFFSET);
+        if (layout != null && layout.Has(VertexLayout.ATTRIB_UV))
+            SetUVDecode(layout.GetDecodeScale(VertexLayout.ATTRIB_UV), layout.GetDecodeOffset(VertexLayout.ATTRIB_UV));
+        else
+            SetUVDecode(IDENTITY_SCALE, IDENTITY_OFFSET);
+
+        mMatrixStack.Push();
+        mMatrixStack.MultiplyTop(modelMatrix);
+
+        // Pass in the modelview matrix.
+        mGL.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMatrixStack.GetTop(), 0);
+
+        // Note that the projection factor *must be first* in order
+        // for the matrix multiplication product to be correct.
+        MatrixMath.Multiply(mMVPMatrix, mProjectionMatrix, mMatrixStack.GetTop());
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+
+        mMatrixStack.Pop();
+    }
+
+    private void SetPositionDecode(float[] scale, float[] offset)
+    {
+        if (mPositionScale[0] == scale[0] && mPositionScale[1] == scale[1] && mPositionScale[2] == scale[2]
+                && mPositionOffset[0] == offset[0] && mPositionOffset[1] == offset[1] && mPositionOffset[2] == offset[2])
+            return;
+        System.arraycopy(scale, 0, mPositionScale, 0, 3);
+        System.arraycopy(offset, 0, mPositionOffset, 0, 3);
+        mGL.glUniform3f(mPositionScaleHandle, scale[0], scale[1], scale[2]);
+        mGL.glUniform3f(mPositionOffsetHandle, offset[0], offset[1], offset[2]);
+    }
+
+    private void SetUVDecode(float[] scale, float[] offset)
+    {
+        if (mUVScale[0] == scale[0] && mUVScale[1] == scale[1] && mUVOffset[0] == offset[0] && mUVOffset[1] == offset[1])
+            return;
+        System.arraycopy(scale, 0, mUVScale, 0, 2);
+        System.arraycopy(offset, 0, mUVOffset, 0, 2);
+        mGL.glUniform2f(mUVScaleHandle, scale[0], scale[1]);
+        mGL.glUniform2f(mUVOffsetHandle, offset[0], offset[1]);
+    }
+
+    /**
+     * Bind the textures of material (map_Kd, map_Ka) for the next draws of the object program, or
+     * none: for a null material, one without textures, a mesh without texture coordinates, or
+     * while the textures load. Only the units and uniforms that change are touched.
+     */
+    public void SetMaterialTextures(ObjMaterial material, boolean hasUVs)
+    {
+        int difTexture = TextureManager.NO_TEXTURE;
+        int ambTexture = TextureManager.NO_TEXTURE;
+        if (material != null && hasUVs)
+        {
+            if (material.GetMapKd() != null)
+                difTexture = mTextureManager.GetTexture(material.GetMapKd());
+            if (material.GetMapKa() != null)
+                ambTexture = mTextureManager.GetTexture(material.GetMapKa());
+        }
+        BindTexture(DIF_TEXTURE_UNIT, difTexture);
+        BindTexture(AMB_TEXTURE_UNIT, ambTexture);
+    }
+
+    private void BindTexture(int unit, int texture)
+    {
+        // the state cache drops these when nothing changes
+        boolean used = texture != TextureManager.NO_TEXTURE;
+        mGL.glUniform1f(mUseTextureHandles[unit], used ? 1.0f : 0.0f);
+        if (used)
+        {
+            mGL.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+            mGL.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        }
     }
 
     /**
@@ -316,24 +659,21 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
      */
     private void DrawLight()
     {
-        final int pointMVPMatrixHandle = GLES20.glGetUniformLocation(mPointProgramHandle, "u_MVPMatrix");
-        final int pointPositionHandle = GLES20.glGetAttribLocation(mPointProgramHandle, "a_Position");
-
         // Pass in the position.
-        GLES20.glVertexAttrib3f(pointPositionHandle, mLightPosInModelSpace[0], mLightPosInModelSpace[1], mLightPosInModelSpace[2]);
+        mGL.glVertexAttrib3f(mPointPositionHandle, mLightPosInModelSpace[0], mLightPosInModelSpace[1], mLightPosInModelSpace[2]);
 
         // Since we are not using a buffer object, disable vertex arrays for this attribute.
-        GLES20.glDisableVertexAttribArray(pointPositionHandle);
-
-        float[] mvpMatrix = new float[16];
+        mGL.glDisableVertexAttribArray(mPointPositionHandle);
 
         // Pass in the transformation matrix.
-        Matrix.multiplyMM(mvpMatrix, 0, mViewMatrix, 0, mLightModelMatrix, 0);
-        Matrix.multiplyMM(mvpMatrix, 0, mProjectionMatrix, 0, mvpMatrix, 0);
-        GLES20.glUniformMatrix4fv(pointMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        mMatrixStack.Push();
+        mMatrixStack.MultiplyTop(mLightModelMatrix);
+        MatrixMath.Multiply(mMVPMatrix, mProjectionMatrix, mMatrixStack.GetTop());
+        mMatrixStack.Pop();
+        mGL.glUniformMatrix4fv(mPointMVPMatrixHandle, 1, false, mMVPMatrix, 0);
 
         // Draw the point.
-        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+        mGL.glDrawArrays(GLES20.GL_POINTS, 0, 1);
     }
 
     @Override
@@ -347,7 +687,7 @@ public class MyGLRenderer implements GLSurfaceView.Renderer
 
         // this projection matrix is applied to object coordinates
         // in the onDrawFrame() method
-        Matrix.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 3, 20);
+        MatrixMath.SetFrustum(mProjectionMatrix, -ratio, ratio, -1, 1, 3, 20);
     }
 
 }
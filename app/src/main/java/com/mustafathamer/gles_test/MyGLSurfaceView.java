@@ -48,8 +48,13 @@ class MyGLSurfaceView extends GLSurfaceView
         float x = e.getX();
         float y = e.getY();
 
-        switch (e.getAction())
+        switch (e.getActionMasked())
         {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // a second finger shows / hides the frame time graph
+                mRenderer.SetHudShown(!mRenderer.IsHudShown());
+                break;
+
             case MotionEvent.ACTION_MOVE:
 
                 float dx = x - mPreviousX;
@@ -0,0 +1,327 @@
+package com.mustafathamer.gles_test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Makes up smooth normals for the face corners of an OBJ file that have no vn, so models like
+ * torus.obj light correctly.
+ * <p>
+ * The normal of a corner is the sum of the normals of the faces around its position, each weighted
+ * by the angle of the face at that position (Thurmer and Wuthrich, "Computing vertex normals from
+ * polygonal meshes", 1998), which doesn't depend on how the faces were triangulated. Faces whose
+ * normal is more than the crease angle away from the corner's own face are left out, so the edges
+ * of a cube stay sharp while a sphere is smooth.
+ * <p>
+ * The normals are added to the parser as if they were vn records, and the corners refer to them:
+ * corners of one position that end up with the same normal share it, so ObjMeshBuilder shares
+ * their vertex, and splits the vertex along creases. Call it after parsing, before building.
+ * <p>
+ * Faces are processed in parallel on an executor for big meshes, the result is identical.
+ * MeshCompiler runs the same code at build time.
+ */
+
+public class NormalGenerator
+{
+    public static final float DEFAULT_CREASE_ANGLE = 60;    // degrees
+
+    private final float mCosCrease;
+
+    //
+    // shared by the passes, per face or corner of the parser
+    //
+    private int[] mCorners;
+    private float[] mPositions;
+    private int[] mFaceSizes;
+    private int[] mFaceFirstCorner;
+    private int[] mCornerFace;
+    private float[] mFaceNormals;       // unit, 0 for degenerate faces
+    private float[] mCornerAngles;      // angle of the face at the corner
+    private int[] mPositionFirst;       // into mPositionCorners, one more than positions
+    private int[] mPositionCorners;     // corners of each position
+    private float[] mCornerNormals;     // generated, for the corners without vn
+
+    //
+    // CTOR
+    // creaseAngle: in degrees, faces meeting at a larger angle get separate normals. 180 smooths
+    // everything.
+    //
+    public NormalGenerator(float creaseAngle)
+    {
+        mCosCrease = creaseAngle >= 180 ? -2 : (float) Math.cos(Math.toRadians(creaseAngle));
+    }
+
+    //
+    // Give a normal to every corner of parser without one, returns the number of normals added
+    //
+    public int Generate(ObjParser parser)
+    {
+        try
+        {
+            return GenerateParallel(parser, null, 1);
+        } catch (InterruptedIOException e)
+        {
+            // can't happen without an executor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //
+    // Same as Generate(), the faces split into numChunks pieces run at the same time on executor
+    //
+    public int GenerateParallel(ObjParser parser, ExecutorService executor, int numChunks)
+            throws InterruptedIOException
+    {
+        mCorners = parser.GetCorners().GetData();
+        int numCorners = parser.GetNumCorners();
+        int numMissing = 0;
+        for (int c = 0; c < numCorners; c++)
+        {
+            if (mCorners[c * 3 + 2] == ObjParser.NO_INDEX)
+                numMissing++;
+        }
+        if (numMissing == 0)
+            return 0;
+
+        mPositions = parser.GetPositions().GetData();
+        mFaceSizes = parser.GetFaceSizes().GetData();
+        int numFaces = parser.GetNumFaces();
+        int numPositions = parser.GetNumPositions();
+        mFaceFirstCorner = new int[numFaces];
+        mCornerFace = new int[numCorners];
+        int corner = 0;
+        for (int face = 0; face < numFaces; face++)
+        {
+            mFaceFirstCorner[face] = corner;
+            for (int j = 0; j < mFaceSizes[face]; j++)
+                mCornerFace[corner++] = face;
+        }
+
+        // corners of each position, counting sort
+        mPositionFirst = new int[numPositions + 1];
+        for (int c = 0; c < numCorners; c++)
+            mPositionFirst[mCorners[c * 3] + 1]++;
+        for (int p = 0; p < numPositions; p++)
+            mPositionFirst[p + 1] += mPositionFirst[p];
+        mPositionCorners = new int[numCorners];
+        int[] fill = new int[numPositions];
+        for (int c = 0; c < numCorners; c++)
+        {
+            int p = mCorners[c * 3];
+            mPositionCorners[mPositionFirst[p] + fill[p]++] = c;
+        }
+
+        mFaceNormals = new float[numFaces * 3];
+        mCornerAngles = new float[numCorners];
+        RunChunks(executor, numChunks, numFaces, new Chunk()
+        {
+            @Override
+            void Run(int first, int end)
+            {
+                for (int face = first; face < end; face++)
+                    ComputeFace(face);
+            }
+        });
+
+        mCornerNormals = new float[numCorners * 3];
+        RunChunks(executor, numChunks, numPositions, new Chunk()
+        {
+            @Override
+            void Run(int first, int end)
+            {
+                for (int p = first; p < end; p++)
+                    ComputePosition(p);
+            }
+        });
+
+        int numAdded = AddNormals(parser.GetNormals(), numPositions);
+        mPositions = null;
+        mFaceNormals = mCornerAngles = mCornerNormals = null;
+        mFaceSizes = mFaceFirstCorner = mCornerFace = mPositionFirst = mPositionCorners = mCorners = null;
+        return numAdded;
+    }
+
+    //
+    // Unit normal of a face (Newell's method, fine for polygons too) and its angle at each corner
+    //
+    private void ComputeFace(int face)
+    {
+        int first = mFaceFirstCorner[face];
+        int size = mFaceSizes[face];
+        float nx = 0, ny = 0, nz = 0;
+        for (int j = 0; j < size; j++)
+        {
+            int a = mCorners[(first + j) * 3] * 3;
+            int b = mCorners[(first + (j + 1) % size) * 3] * 3;
+            nx += (mPositions[a + 1] - mPositions[b + 1]) * (mPositions[a + 2] + mPositions[b + 2]);
+            ny += (mPositions[a + 2] - mPositions[b + 2]) * (mPositions[a] + mPositions[b]);
+            nz += (mPositions[a] - mPositions[b]) * (mPositions[a + 1] + mPositions[b + 1]);
+        }
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0)
+        {
+            mFaceNormals[face * 3] = nx / length;
+            mFaceNormals[face * 3 + 1] = ny / length;
+            mFaceNormals[face * 3 + 2] = nz / length;
+        }
+
+        for (int j = 0; j < size; j++)
+        {
+            int prev = mCorners[(first + (j + size - 1) % size) * 3] * 3;
+            int at = mCorners[(first + j) * 3] * 3;
+            int next = mCorners[(first + (j + 1) % size) * 3] * 3;
+            float ux = mPositions[prev] - mPositions[at], uy = mPositions[prev + 1] - mPositions[at + 1],
+                    uz = mPositions[prev + 2] - mPositions[at + 2];
+            float vx = mPositions[next] - mPositions[at], vy = mPositions[next + 1] - mPositions[at + 1],
+                    vz = mPositions[next + 2] - mPositions[at + 2];
+            float lengths = (float) Math.sqrt((ux * ux + uy * uy + uz * uz) * (vx * vx + vy * vy + vz * vz));
+            if (lengths > 0)
+                mCornerAngles[first + j] = (float) Math.acos(Math.max(-1, Math.min(1, (ux * vx + uy * vy + uz * vz) / lengths)));
+        }
+    }
+
+    //
+    // Normals of the corners of position p that have no vn
+    //
+    private void ComputePosition(int p)
+    {
+        for (int i = mPositionFirst[p]; i < mPositionFirst[p + 1]; i++)
+        {
+            int c = mPositionCorners[i];
+            if (mCorners[c * 3 + 2] != ObjParser.NO_INDEX)
+                continue;
+
+            int face = mCornerFace[c] * 3;
+            float nx = 0, ny = 0, nz = 0;
+            float sx = 0, sy = 0, sz = 0;       // without the crease, for corners of degenerate faces
+            for (int j = mPositionFirst[p]; j < mPositionFirst[p + 1]; j++)
+            {
+                int other = mPositionCorners[j];
+                int otherFace = mCornerFace[other] * 3;
+                float angle = mCornerAngles[other];
+                float x = mFaceNormals[otherFace] * angle, y = mFaceNormals[otherFace + 1] * angle,
+                        z = mFaceNormals[otherFace + 2] * angle;
+                sx += x;
+                sy += y;
+                sz += z;
+                float dot = mFaceNormals[face] * mFaceNormals[otherFace] + mFaceNormals[face + 1] * mFaceNormals[otherFace + 1]
+                        + mFaceNormals[face + 2] * mFaceNormals[otherFace + 2];
+                if (dot >= mCosCrease)
+                {
+                    nx += x;
+                    ny += y;
+                    nz += z;
+                }
+            }
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0)
+            {
+                nx = sx;
+                ny = sy;
+                nz = sz;
+                length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            }
+            if (length == 0)
+            {
+                // nothing around but degenerate faces, any direction will do
+                nz = 1;
+                length = 1;
+            }
+            mCornerNormals[c * 3] = nx / length;
+            mCornerNormals[c * 3 + 1] = ny / length;
+            mCornerNormals[c * 3 + 2] = nz / length;
+        }
+    }
+
+    //
+    // Append the distinct normals of each position to normals and point the corners at them.
+    // Corners that see the same faces sum them in the same order, so their normals are equal.
+    //
+    private int AddNormals(FloatArray normals, int numPositions)
+    {
+        int base = normals.Size() / 3;      // generated normals go after the vn records
+        int numAdded = 0;
+        for (int p = 0; p < numPositions; p++)
+        {
+            int first = mPositionFirst[p];
+            for (int i = first; i < mPositionFirst[p + 1]; i++)
+            {
+                int c = mPositionCorners[i];
+                if (mCorners[c * 3 + 2] != ObjParser.NO_INDEX)
+                    continue;
+
+                int index = ObjParser.NO_INDEX;
+                for (int j = first; j < i && index == ObjParser.NO_INDEX; j++)
+                {
+                    int other = mPositionCorners[j];
+                    if (mCornerNormals[other * 3] == mCornerNormals[c * 3]
+                            && mCornerNormals[other * 3 + 1] == mCornerNormals[c * 3 + 1]
+                            && mCornerNormals[other * 3 + 2] == mCornerNormals[c * 3 + 2]
+                            && mCorners[other * 3 + 2] >= base)
+                        index = mCorners[other * 3 + 2];
+                }
+                if (index == ObjParser.NO_INDEX)
+                {
+                    index = normals.Size() / 3;
+                    normals.Add(mCornerNormals[c * 3], mCornerNormals[c * 3 + 1], mCornerNormals[c * 3 + 2]);
+                    numAdded++;
+                }
+                mCorners[c * 3 + 2] = index;
+            }
+        }
+        return numAdded;
+    }
+
+    //
+    // Work on a range of faces or positions, the ranges of the chunks don't overlap
+    //
+    private abstract static class Chunk
+    {
+        abstract void Run(int first, int end);
+    }
+
+    private static void RunChunks(ExecutorService executor, int numChunks, int count, final Chunk chunk)
+            throws InterruptedIOException
+    {
+        if (executor == null || numChunks <= 1)
+        {
+            chunk.Run(0, count);
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++)
+        {
+            final int first = (int) ((long) count * i / numChunks);
+            final int end = (int) ((long) count * (i + 1) / numChunks);
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    chunk.Run(first, end);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures)
+        {
+            try
+            {
+                future.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Normal generation interrupted");
+            } catch (ExecutionException e)
+            {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
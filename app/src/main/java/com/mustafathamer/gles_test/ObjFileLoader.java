@@ -1,15 +1,25 @@
 package com.mustafathamer.gles_test;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Loads a wavefront OBJ file.
@@ -23,20 +33,13 @@ import java.util.Scanner;
 
 public class ObjFileLoader
 {
-    // holds face info and current material name
-    private class FaceInfo
-    {
-        public String mVertIndices;
-        public String mMatName;
-
-        FaceInfo(String v, String matName)
-        {
-            mVertIndices = v;
-            mMatName = matName;
-        }
-    }
+    // OBJ files at least this big are parsed on all cores (see ObjParser.ParseParallel)
+    private static final int PARALLEL_PARSE_MIN_BYTES = 256 * 1024;
+    private static final int NUM_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+    private static ExecutorService sParsePool;
 
-    ;
+    // FIFO post-transform cache size the loader logs the ACMR for, typical of mobile GPUs
+    private static final int ACMR_CACHE_SIZE = 16;
 
     private Context mContext;
 
@@ -44,22 +47,31 @@ public class ObjFileLoader
     private FloatBuffer mVerticesBuffer;    // vert positions
     private FloatBuffer mNormalsBuffer;     // vert  normals
     private FloatBuffer mUVsBuffer;         // vert UVs
-    private FloatBuffer mKdsBuffer;         // vert diffuse colors
-    private FloatBuffer mKasBuffer;         // vert ambient colors
+
+    // triangles grouped by material, each range is drawn with its material colors as uniforms
+    private List<MeshRange> mRanges;
+    private ObjMaterial[] mMaterials;
+
+    // when interleaved, all the vertex attributes are packed in one buffer instead
+    private boolean mInterleaved;
+    private boolean mQuantized;             // interleaved as shorts and bytes, see VertexLayout
+    private VertexLayout mVertexLayout;
+    private ByteBuffer mInterleavedBuffer;
+
+    private Buffer mIndexBuffer;            // triangle list indices, ShortBuffer or IntBuffer
+    private boolean mIntIndices;            // true if mIndexBuffer is an IntBuffer
+    private boolean mHasUVs;                // false if the OBJ had no vt, the UVs are 0 then
     private int mNumVerts;
+    private int mNumIndices;
+    private Bounds mBounds;                 // object space box and sphere, for culling
+    private boolean mLoadedFromCache;
 
-    private final int bytesPerFloat = 4;
-    private final int bytesPerShort = 2;
+    // simplified copies of the mesh, finest first, empty unless BuildLods() was called
+    private List<MeshData> mLods = new ArrayList<>();
 
     public final int COORDS_PER_VERTEX = 3;
     public final int COORDS_PER_NORMAL = 3;
-
-    private FloatBuffer CreateFloatBuffer(int size, int numFloats)
-    {
-        ByteBuffer buffer = ByteBuffer.allocateDirect(size * numFloats * bytesPerFloat);
-        buffer.order(ByteOrder.nativeOrder());
-        return buffer.asFloatBuffer();
-    }
+    public final int COORDS_PER_UV = 2;
 
     public ObjMtlLoader GetObjMtlLoader()
     {
@@ -81,14 +93,68 @@ public class ObjFileLoader
         return mUVsBuffer;
     }
 
-    public FloatBuffer GetKdsBuffer()
+    public List<MeshRange> GetRanges()
+    {
+        return mRanges;
+    }
+
+    // indexed by MeshRange.GetMaterial(), may be null
+    public ObjMaterial[] GetMaterials()
+    {
+        return mMaterials;
+    }
+
+    // the material of a range, or null if it has none
+    public ObjMaterial GetMaterial(MeshRange range)
+    {
+        int idx = range.GetMaterial();
+        return mMaterials != null && idx != ObjParser.NO_MATERIAL ? mMaterials[idx] : null;
+    }
+
+    public boolean IsInterleaved()
+    {
+        return mInterleaved;
+    }
+
+    // whether textures can be mapped on the mesh
+    public boolean HasUVs()
+    {
+        return mHasUVs;
+    }
+
+    //
+    // Pack the interleaved vertices quantized (VertexLayout.ForMeshQuantized), half the size of
+    // floats. Only for interleaved loaders, call before LoadObjFile(). Meshes compiled into the APK
+    // in the other format are skipped and the OBJ is parsed instead.
+    //
+    public void SetQuantized(boolean quantized)
+    {
+        mQuantized = quantized;
+    }
+
+    public boolean IsQuantized()
+    {
+        return mQuantized;
+    }
+
+    public VertexLayout GetVertexLayout()
+    {
+        return mVertexLayout;
+    }
+
+    public ByteBuffer GetInterleavedBuffer()
     {
-        return mKdsBuffer;
+        return mInterleavedBuffer;
     }
 
-    public FloatBuffer GetKasBuffer()
+    public Buffer GetIndexBuffer()
     {
-        return mKasBuffer;
+        return mIndexBuffer;
+    }
+
+    public boolean UsesIntIndices()
+    {
+        return mIntIndices;
     }
 
     public int GetNumVerts()
@@ -96,224 +162,356 @@ public class ObjFileLoader
         return mNumVerts;
     }
 
+    public int GetNumIndices()
+    {
+        return mNumIndices;
+    }
+
+    public Bounds GetBounds()
+    {
+        return mBounds;
+    }
+
+    public boolean IsLoadedFromCache()
+    {
+        return mLoadedFromCache;
+    }
+
+    public List<MeshData> GetLods()
+    {
+        return mLods;
+    }
+
     //
     // CTOR
     //
     public ObjFileLoader(Context context)
+    {
+        this(context, false);
+    }
+
+    // interleaved: pack the vertex attributes in a single buffer (see VertexLayout) rather than
+    // one FloatBuffer per attribute
+    public ObjFileLoader(Context context, boolean interleaved)
     {
         mContext = context;
         mObjMtlLoader = new ObjMtlLoader(mContext);
+        mInterleaved = interleaved;
     }
 
-    public void LoadObjFile(String fileName) throws IOException
+    //
+    // Binary copies of the parsed meshes are kept in the cache dir, and rebuilt when the app is
+    // updated (the assets can't change otherwise).
+    //
+    private File GetCacheFile(String fileName)
     {
-        List<String> verticesList = new ArrayList<>();
-        List<String> normalsList = new ArrayList<>();
-        List<FaceInfo> facesList = new ArrayList<>();
-        List<String> UVsList = new ArrayList<>();
+        return new File(mContext.getCacheDir(), fileName + (mQuantized ? ".q.mesh" : ".mesh"));
+    }
 
-        // Open the OBJ file with a Scanner
-        Scanner scanner = new Scanner(mContext.getAssets().open(fileName + ".obj"));
-        System.out.println("scanning OBJ file");
+    private long GetSourceStamp()
+    {
+        try
+        {
+            return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e)
+        {
+            return 0;
+        }
+    }
 
-        String curMatName = "None";
-        int numMats = 0;
-        // Loop through all its lines
-        while (scanner.hasNextLine())
+    //
+    // Map the mesh compiled into the APK at build time (see MeshCompiler), null if there is none.
+    // .mesh assets are stored uncompressed so they can be mapped in place.
+    //
+    private BinaryMesh LoadCompiledMesh(String fileName)
+    {
+        AssetFileDescriptor fd;
+        try
         {
-            String line = scanner.nextLine();
-            if (line.startsWith("mtllib "))
-            {
-                String tmp[] = line.split(" ");
-                // First parse the MTL file
-                try
-                {
-                    mObjMtlLoader.LoadMtlFile(tmp[1]);
-                } catch (IOException e)
-                {
-                    Log.i("MOOSE", "Failed loading: " + tmp[1]);
-                }
-            } else if (line.startsWith("usemtl "))
-            {
-                // set current material
-                String tmp[] = line.split(" ");
-                curMatName = tmp[1];
-                Log.d("MOOSE", "Set current material=" + curMatName);
-                numMats++;
-            } else if (line.startsWith("v "))
+            fd = mContext.getAssets().openFd(fileName + ".mesh");
+        } catch (FileNotFoundException e)
+        {
+            return null;
+        } catch (IOException e)
+        {
+            return null;
+        }
+
+        try
+        {
+            FileInputStream stream = new FileInputStream(fd.getFileDescriptor());
+            try
             {
-                // Add vertex line to list of vertices
-                verticesList.add(line);     // ex: v 0.2332653 -0.1349314 -0.7298675
-            } else if (line.startsWith("f "))
+                return BinaryMesh.Load(stream.getChannel(), fd.getStartOffset(), fd.getLength(),
+                        BinaryMesh.APK_SOURCE_STAMP);
+            } finally
             {
-                // Add face line to faces list
-                facesList.add(new FaceInfo(line, curMatName));    // ex: f 5164//7267 5037//7267 5035//7267 5163//7267
-            } else if (line.startsWith("vn "))
+                stream.close();
+            }
+        } catch (IOException e)
+        {
+            Log.i("MOOSE", "Failed mapping: " + fileName + ".mesh");
+            return null;
+        } finally
+        {
+            try
             {
-                // Add normals line to normals list
-                normalsList.add(line);      // ex: vn 0.0543038 0.9978414 -0.03692874
-            } else if (line.startsWith("vt "))
+                fd.close();
+            } catch (IOException e)
             {
-                // Add uvs line to uvs list
-                UVsList.add(line);
+                // nothing to do
             }
         }
+    }
 
-        // Close the scanner
-        scanner.close();
-
-        System.out.println("Found vertices:" + verticesList.size());
-        System.out.println("Found faces:" + facesList.size());
-        System.out.println("Found normals:" + normalsList.size());
-        System.out.println("Found uvs:" + UVsList.size());
-        System.out.println("Found mats:" + numMats);
+    //
+    // Whether a compiled mesh can be used as is. The build compiles one layout, it's parsed again
+    // for the other. Meshes compiled with --no-dedup have no indices, which the LODs, instancing
+    // and static batching all read, so they're parsed again too.
+    //
+    static boolean CanUseCompiled(BinaryMesh compiled, boolean quantized)
+    {
+        return compiled.GetIndices() != null && compiled.GetLayout().IsQuantized() == quantized;
+    }
 
-        // loop through all faces and check how many verts we have
-        mNumVerts = 0;
-        for (FaceInfo faceInfo : facesList)
+    private static synchronized ExecutorService GetParsePool()
+    {
+        if (sParsePool == null)
         {
-            String face = faceInfo.mVertIndices;
-            String tmp[];
-            String vertexIndices[] = face.split(" ");   // create a list of verts, each looks like a//b//c
-            mNumVerts += vertexIndices.length - 1;      // ignore the 'f' at the start of each line
+            sParsePool = Executors.newFixedThreadPool(NUM_PARSE_THREADS, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "ObjParser");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
+        return sParsePool;
+    }
 
-        Log.d("MOOSE", "NumVerts:" + mNumVerts);
-
-
-        // Create buffer for vertices
-        mVerticesBuffer = CreateFloatBuffer(mNumVerts, 3);
-        List<Float> origVerts = new ArrayList<>();
-
-        // Create buffer for normals
-        mNormalsBuffer = CreateFloatBuffer(mNumVerts, 3);
-        List<Float> origNormals = new ArrayList<>();
+    public void LoadObjFile(String fileName) throws IOException
+    {
+        // The binary meshes hold the interleaved buffers, so they are only used in that mode
+        File cacheFile = null;
+        long sourceStamp = 0;
+        if (mInterleaved)
+        {
+            BinaryMesh compiled = LoadCompiledMesh(fileName);
+            if (compiled != null && !CanUseCompiled(compiled, mQuantized))
+            {
+                Log.d("MOOSE", "Skipped compiled " + fileName + ", quantized: " + compiled.GetLayout().IsQuantized()
+                        + ", indexed: " + (compiled.GetIndices() != null));
+                compiled = null;
+            }
+            if (compiled != null)
+            {
+                Log.d("MOOSE", "Loaded " + fileName + " from compiled asset");
+                SetBinaryMesh(compiled);
+                mLoadedFromCache = true;
+                return;
+            }
 
-        // Create buffer for UVs
-        mUVsBuffer = CreateFloatBuffer(mNumVerts, 2);
-        List<Float> origUVs = new ArrayList<>();
+            cacheFile = GetCacheFile(fileName);
+            sourceStamp = GetSourceStamp();
+            BinaryMesh cached = null;
+            try
+            {
+                cached = BinaryMesh.Load(cacheFile, sourceStamp);
+            } catch (IOException e)
+            {
+                Log.i("MOOSE", "Failed mapping: " + cacheFile);
+            }
+            if (cached != null)
+            {
+                Log.d("MOOSE", "Loaded " + fileName + " from " + cacheFile);
+                SetBinaryMesh(cached);
+                mLoadedFromCache = true;
+                return;
+            }
+        }
 
-        if (mObjMtlLoader.GetMtlMap() != null && !mObjMtlLoader.GetMtlMap().isEmpty())
+        // Parse the OBJ file in a single pass over its bytes
+        ObjParser parser = new ObjParser();
+        InputStream in = mContext.getAssets().open(fileName + ".obj");
+        System.out.println("scanning OBJ file");
+        int[] length = new int[1];
+        byte[] data;
+        try
         {
-            // Create buffer for colors
-            mKdsBuffer = CreateFloatBuffer(mNumVerts, 3);
-            mKasBuffer = CreateFloatBuffer(mNumVerts, 3);
-        } else
+            data = ObjParser.ReadAll(in, length);
+        } finally
         {
-            mKdsBuffer = null;
-            mKasBuffer = null;
+            in.close();
         }
+        if (length[0] >= PARALLEL_PARSE_MIN_BYTES && NUM_PARSE_THREADS > 1)
+            parser.ParseParallel(data, 0, length[0], GetParsePool(), NUM_PARSE_THREADS);
+        else
+            parser.Parse(data, 0, length[0]);
 
-        // parse and save original verts
-        for (String vertex : verticesList)
+        if (parser.GetMtlLibName() != null)
         {
-            String coords[] = vertex.split(" "); // Split by space
-            for (int i = 1; i < 4; i++)
+            // First parse the MTL file
+            try
+            {
+                mObjMtlLoader.LoadMtlFile(parser.GetMtlLibName());
+            } catch (IOException e)
             {
-                float f = Float.parseFloat(coords[i]);      // string to float
-                origVerts.add(f);
+                Log.i("MOOSE", "Failed loading: " + parser.GetMtlLibName());
             }
         }
 
-        // parse and save original normals
-        for (String normal : normalsList)
+        System.out.println("Found vertices:" + parser.GetNumPositions());
+        System.out.println("Found faces:" + parser.GetNumFaces());
+        System.out.println("Found normals:" + parser.GetNumNormals());
+        System.out.println("Found uvs:" + parser.GetNumUVs());
+        System.out.println("Found mats:" + parser.GetMaterialNames().size());
+
+        if (parser.GetNumErrors() > 0)
+            Log.i("MOOSE", parser.GetNumErrors() + " malformed records, first at " + parser.GetFirstError());
+
+        // faces without vn would be lit with zero normals, smooth ones are made up for them
+        NormalGenerator normalGenerator = new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE);
+        int numGenerated;
+        if (length[0] >= PARALLEL_PARSE_MIN_BYTES && NUM_PARSE_THREADS > 1)
+            numGenerated = normalGenerator.GenerateParallel(parser, GetParsePool(), NUM_PARSE_THREADS);
+        else
+            numGenerated = normalGenerator.Generate(parser);
+        if (numGenerated > 0)
+            Log.d("MOOSE", "Generated normals:" + numGenerated);
+
+        // look up the material for each usemtl name once, faces refer to them by index
+        ObjMaterial[] materials = ObjMtlParser.LookUp(parser.GetMaterialNames(), mObjMtlLoader.GetMtlMap());
+
+        // share a single vertex between all face corners with the same v/vt/vn, and group the
+        // triangles by material
+        MeshData mesh = new ObjMeshBuilder(parser, materials).BuildIndexed();
+
+        // the OBJ triangle order is arbitrary, reorder triangles and vertices for the GPU caches
+        long optimizeStart = System.nanoTime();
+        float acmrBefore = VertexCacheOptimizer.ComputeAcmr(mesh, ACMR_CACHE_SIZE);
+        mesh = VertexCacheOptimizer.Optimize(mesh);
+        Log.d("MOOSE", "ACMR " + acmrBefore + " -> " + VertexCacheOptimizer.ComputeAcmr(mesh, ACMR_CACHE_SIZE)
+                + " in " + (System.nanoTime() - optimizeStart) / 1000000 + " ms");
+        mNumVerts = mesh.GetNumVerts();
+        mNumIndices = mesh.GetNumElements();
+        mRanges = mesh.GetRanges();
+        mMaterials = mesh.GetMaterials();
+        mHasUVs = mesh.HasUVs();
+        mBounds = parser.GetBounds();       // computed while parsing
+
+        Log.d("MOOSE", "NumVerts:" + mNumVerts + " (from " + parser.GetNumCorners() + " face corners)");
+
+        if (mInterleaved)
         {
-            String coords[] = normal.split(" "); // Split by space
-            for (int i = 1; i < 4; i++)
-            {
-                float f = Float.parseFloat(coords[i]);      // string to float
-                origNormals.add(f);
-            }
+            mVertexLayout = mQuantized ? VertexLayout.ForMeshQuantized(mesh) : VertexLayout.ForMesh(mesh);
+            mInterleavedBuffer = mVertexLayout.Interleave(mesh);
+        } else
+        {
+            mVerticesBuffer = mesh.GetPositions().ToDirectBuffer();
+            mNormalsBuffer = mesh.GetNormals().ToDirectBuffer();
+            mUVsBuffer = mesh.GetUVs().ToDirectBuffer();
         }
 
-        // parse and save original UVs
-        for (String uv : UVsList)
+        // short indices unless there are too many verts for them
+        mIntIndices = mesh.NeedsIntIndices();
+        if (mIntIndices)
+            mIndexBuffer = mesh.GetIndices().ToDirectBuffer();
+        else
+            mIndexBuffer = mesh.GetIndices().ToDirectShortBuffer();
+
+        if (cacheFile != null)
         {
-            String coords[] = uv.split(" "); // Split by space
-            for (int i = 1; i < 3; i++)
+            BinaryMesh binaryMesh = new BinaryMesh(mVertexLayout, mInterleavedBuffer, mIndexBuffer, mIntIndices,
+                    mNumVerts, mNumIndices, mRanges, mMaterials, mBounds);
+            try
+            {
+                binaryMesh.Write(cacheFile, sourceStamp);
+            } catch (IOException e)
             {
-                float f = Float.parseFloat(coords[i]);      // string to float
-                origUVs.add(f);
+                Log.i("MOOSE", "Failed writing: " + cacheFile);
             }
         }
+    }
 
-        Log.d("MOOSE", "OrigVerts:" + origVerts.size());
-        Log.d("MOOSE", "OrigNormals:" + origNormals.size());
-        Log.d("MOOSE", "OrigUVs:" + origUVs.size());
-
-        //
-        // populate faces buffer
-        //
-        for (FaceInfo faceInfo : facesList)
+    //
+    // Copy of the loaded mesh as MeshData, from whichever buffers it was loaded into (decoded if
+    // quantized)
+    //
+    public MeshData GetMeshData()
+    {
+        FloatArray positions = new FloatArray(mNumVerts * 3);
+        FloatArray normals = new FloatArray(mNumVerts * 3);
+        FloatArray uvs = new FloatArray(mNumVerts * 2);
+        boolean hasUVs;
+        if (mInterleaved)
         {
-            String face = faceInfo.mVertIndices;
-            ObjMaterial material = mObjMtlLoader.GetMtlMap() != null ? mObjMtlLoader.GetMtlMap().get(faceInfo.mMatName) : null;
-
-            String tmp[];
-            String vertexIndices[] = face.split(" ");   // each one looks like: a or a//b or a//b//c
-            int idx;
-            for (int i = 1; i < vertexIndices.length; i++)  // start at index of 1 to skip the 'f' at the start
+            VertexLayout layout = mVertexLayout;
+            ByteBuffer vertices = mInterleavedBuffer;
+            hasUVs = layout.Has(VertexLayout.ATTRIB_UV);
+            for (int v = 0; v < mNumVerts; v++)
             {
-                /*
-                    Using v, vt, and vn to represent geometric vertices, texture vertices,
-                    and vertex normals, the statement would read:
-                        f v/vt/vn v/vt/vn v/vt/vn v/vt/vn
-                    If there are only vertices and vertex normals for a face element (no
-                    texture vertices), you would enter two slashes (//)
-                  */
-                tmp = vertexIndices[i].split("//");
-                if (tmp.length == 1)    // if no split occurred
-                    tmp = vertexIndices[i].split("/");
-
-                // VERTS
-                idx = Short.parseShort(tmp[0]) - 1;     // convert each index to a short
-                mVerticesBuffer.put(origVerts.get(idx * 3));
-                mVerticesBuffer.put(origVerts.get(idx * 3 + 1));
-                mVerticesBuffer.put(origVerts.get(idx * 3 + 2));
-
-                if (material != null)
-                {
-                    // add the colors at each vertex from the face material
-                    mKdsBuffer.put(material.GetKd()[0]);
-                    mKdsBuffer.put(material.GetKd()[1]);
-                    mKdsBuffer.put(material.GetKd()[2]);
-
-                    mKasBuffer.put(material.GetKa()[0]);
-                    mKasBuffer.put(material.GetKa()[1]);
-                    mKasBuffer.put(material.GetKa()[2]);
-                }
-
-                if (tmp.length == 2)
-                {
-                    // NORMALS
-                    idx = Short.parseShort(tmp[1]) - 1;     // convert each index to a short
-                    mNormalsBuffer.put(origNormals.get(idx * 3));
-                    mNormalsBuffer.put(origNormals.get(idx * 3 + 1));
-                    mNormalsBuffer.put(origNormals.get(idx * 3 + 2));
-                }
-
-                if (tmp.length == 3)
-                {
-                    // UVs
-                    idx = Short.parseShort(tmp[1]) - 1;     // convert each index to a short
-                    mUVsBuffer.put(origUVs.get(idx * 2));
-                    mUVsBuffer.put(origUVs.get(idx * 2 + 1));
-
-                    // NORMALS
-                    idx = Short.parseShort(tmp[2]) - 1;     // convert each index to a short
-                    mNormalsBuffer.put(origNormals.get(idx * 3));
-                    mNormalsBuffer.put(origNormals.get(idx * 3 + 1));
-                    mNormalsBuffer.put(origNormals.get(idx * 3 + 2));
-                }
+                positions.Add(layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 0),
+                        layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 1),
+                        layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, 2));
+                normals.Add(layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 0),
+                        layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 1),
+                        layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 2));
+                uvs.Add(hasUVs ? layout.Read(vertices, v, VertexLayout.ATTRIB_UV, 0) : 0);
+                uvs.Add(hasUVs ? layout.Read(vertices, v, VertexLayout.ATTRIB_UV, 1) : 0);
             }
+        } else
+        {
+            hasUVs = mHasUVs;
+            positions.Resize(mNumVerts * 3);
+            normals.Resize(mNumVerts * 3);
+            uvs.Resize(mNumVerts * 2);
+            mVerticesBuffer.duplicate().get(positions.GetData(), 0, mNumVerts * 3);
+            mNormalsBuffer.duplicate().get(normals.GetData(), 0, mNumVerts * 3);
+            mUVsBuffer.duplicate().get(uvs.GetData(), 0, mNumVerts * 2);
         }
 
-        mVerticesBuffer.position(0);
-        mNormalsBuffer.position(0);
-        mUVsBuffer.position(0);
-        if (mKdsBuffer != null)
-            mKdsBuffer.position(0);
-        if (mKasBuffer != null)
-            mKasBuffer.position(0);
+        IntArray indices = new IntArray(mNumIndices);
+        for (int i = 0; i < mNumIndices; i++)
+        {
+            if (mIntIndices)
+                indices.Add(((IntBuffer) mIndexBuffer).get(i));
+            else
+                indices.Add(((ShortBuffer) mIndexBuffer).get(i) & 0xffff);
+        }
+        return new MeshData(positions, normals, uvs, indices, hasUVs, mRanges, mMaterials);
+    }
+
+    //
+    // Build simplified copies of the loaded mesh with ratios (decreasing, ex: 0.5, 0.25, 0.1) of
+    // its triangles, see MeshSimplifier. Slow for big meshes, call it off the GL thread.
+    //
+    public void BuildLods(float[] ratios)
+    {
+        long start = System.nanoTime();
+        mLods = MeshSimplifier.BuildLods(GetMeshData(), ratios);
+        for (int i = 0; i < mLods.size(); i++)
+            mLods.set(i, VertexCacheOptimizer.Optimize(mLods.get(i)));
+        StringBuilder triangles = new StringBuilder();
+        triangles.append(mNumIndices / 3);
+        for (int i = 0; i < mLods.size(); i++)
+            triangles.append(" / ").append(mLods.get(i).GetNumElements() / 3);
+        Log.d("MOOSE", "LOD triangles: " + triangles + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void SetBinaryMesh(BinaryMesh mesh)
+    {
+        mVertexLayout = mesh.GetLayout();
+        mInterleavedBuffer = mesh.GetVertices();
+        mIndexBuffer = mesh.GetIndices();
+        mIntIndices = mesh.UsesIntIndices();
+        mNumVerts = mesh.GetNumVerts();
+        mNumIndices = mesh.GetNumElements();
+        mRanges = mesh.GetRanges();
+        mMaterials = mesh.GetMaterials();
+        mHasUVs = mVertexLayout.Has(VertexLayout.ATTRIB_UV);
+        mBounds = mesh.GetBounds();
     }
 }
@@ -16,6 +16,7 @@ package com.mustafathamer.gles_test;
  * Ni 1.000000
  * d 1.000000
  * illum 2
+ * map_Kd caution.jpg
  */
 
 public class ObjMaterial
@@ -30,6 +31,8 @@ public class ObjMaterial
     private float[] Tf;     // transmission filter
     private float Ni;       // index of refraction, 0.001 to 10
     private float d;        // dissolve (0 is fully transparent, 1.0 is opaque)
+    private String map_Kd;  // diffuse texture, an asset path (multiplies Kd), null if none
+    private String map_Ka;  // ambient texture, an asset path (multiplies Ka), null if none
 
     /*
     Illumination    Properties that are turned on in the
@@ -108,6 +111,21 @@ public class ObjMaterial
         return illum;
     }
 
+    public String GetMapKd()
+    {
+        return map_Kd;
+    }
+
+    public String GetMapKa()
+    {
+        return map_Ka;
+    }
+
+    public boolean HasTextures()
+    {
+        return map_Kd != null || map_Ka != null;
+    }
+
     public void setName(String name)
     {
         mName = name;
@@ -163,6 +181,16 @@ public class ObjMaterial
         this.illum = illum;
     }
 
+    public void setMapKd(String path)
+    {
+        map_Kd = path;
+    }
+
+    public void setMapKa(String path)
+    {
+        map_Ka = path;
+    }
+
     public ObjMaterial()
     {
         mName = "";
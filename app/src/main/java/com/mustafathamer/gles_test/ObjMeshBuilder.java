@@ -0,0 +1,270 @@
+package com.mustafathamer.gles_test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the raw records from ObjParser into drawable vertex data.
+ * <p>
+ * Faces are first grouped by material (in usemtl order, keeping file order within a material),
+ * so each material becomes one contiguous MeshRange that can be drawn with one call.
+ * <p>
+ * Faces with more than 3 corners are split into triangles: a fan when the face is convex, ear
+ * clipping when it isn't (in the plane the face is most facing).
+ * <p>
+ * BuildExpanded() gives every face corner its own vertex.
+ * BuildIndexed() shares one vertex between all the corners that use the same (v, vt, vn) and
+ * emits an index list instead, which is usually well under half the vertices for smooth meshes.
+ */
+
+public class ObjMeshBuilder
+{
+    private ObjParser mParser;
+    private ObjMaterial[] mMaterials;   // per parser material index, may be null
+
+    private int[] mFaceOrder;           // faces sorted by material
+    private int[] mFaceFirstCorner;     // first corner of each face
+
+    // scratch for Triangulate()
+    private IntArray mTriangleCorners = new IntArray();
+    private float[] mPolygonX = new float[16];
+    private float[] mPolygonY = new float[16];
+    private int[] mPolygonLeft = new int[16];
+
+    //
+    // CTOR
+    // materials is indexed like parser.GetMaterialNames(), and may be null or contain nulls for
+    // unknown names.
+    //
+    public ObjMeshBuilder(ObjParser parser, ObjMaterial[] materials)
+    {
+        mParser = parser;
+        mMaterials = materials;
+    }
+
+    public MeshData BuildExpanded()
+    {
+        return Build(false);
+    }
+
+    public MeshData BuildIndexed()
+    {
+        return Build(true);
+    }
+
+    private MeshData Build(boolean indexed)
+    {
+        SortFacesByMaterial();
+
+        // a face of n corners makes n - 2 triangles, vertices are at most one per corner when indexed
+        int numCorners = mParser.GetNumCorners();
+        int numTriangleCorners = 3 * (numCorners - 2 * mParser.GetNumFaces());
+        int maxVerts = indexed ? numCorners : numTriangleCorners;
+        FloatArray positions = new FloatArray(maxVerts * 3);
+        FloatArray normals = new FloatArray(maxVerts * 3);
+        FloatArray uvs = new FloatArray(maxVerts * 2);
+        IntArray indices = indexed ? new IntArray(numTriangleCorners) : null;
+        List<MeshRange> ranges = new ArrayList<>();
+
+        VertexHashMap vertexMap = indexed ? new VertexHashMap(numCorners) : null;
+        int[] corners = mParser.GetCorners().GetData();
+        int[] faceSizes = mParser.GetFaceSizes().GetData();
+        int[] faceMaterials = mParser.GetFaceMaterials().GetData();
+
+        int numElements = 0;
+        int rangeStart = 0;
+        for (int i = 0; i < mFaceOrder.length; i++)
+        {
+            int face = mFaceOrder[i];
+            if (i > 0 && faceMaterials[face] != faceMaterials[mFaceOrder[i - 1]])
+            {
+                ranges.add(new MeshRange(faceMaterials[mFaceOrder[i - 1]], rangeStart, numElements - rangeStart));
+                rangeStart = numElements;
+            }
+
+            mTriangleCorners.Clear();
+            Triangulate(mFaceFirstCorner[face], faceSizes[face], mTriangleCorners);
+            int[] triangleCorners = mTriangleCorners.GetData();
+            for (int j = 0; j < mTriangleCorners.Size(); j++)
+            {
+                int corner = triangleCorners[j];
+                if (indexed)
+                {
+                    int c = corner * 3;
+                    int newIndex = positions.Size() / 3;
+                    int index = vertexMap.PutIfAbsent(corners[c], corners[c + 1], corners[c + 2], newIndex);
+                    if (index == VertexHashMap.NOT_FOUND)
+                    {
+                        AppendVertex(positions, normals, uvs, corner);
+                        index = newIndex;
+                    }
+                    indices.Add(index);
+                } else
+                {
+                    AppendVertex(positions, normals, uvs, corner);
+                }
+                numElements++;
+            }
+        }
+        if (mFaceOrder.length > 0)
+            ranges.add(new MeshRange(faceMaterials[mFaceOrder[mFaceOrder.length - 1]], rangeStart, numElements - rangeStart));
+
+        return new MeshData(positions, normals, uvs, indices, mParser.GetNumUVs() > 0, ranges, mMaterials);
+    }
+
+    //
+    // Counting sort of the faces by material index, stable so file order is kept within a material.
+    // Faces without a material come first.
+    //
+    private void SortFacesByMaterial()
+    {
+        int numFaces = mParser.GetNumFaces();
+        int numMaterials = mParser.GetMaterialNames().size();
+        int[] faceSizes = mParser.GetFaceSizes().GetData();
+        int[] faceMaterials = mParser.GetFaceMaterials().GetData();
+
+        mFaceFirstCorner = new int[numFaces];
+        int[] counts = new int[numMaterials + 2];    // slot 0 is NO_MATERIAL
+        int corner = 0;
+        for (int face = 0; face < numFaces; face++)
+        {
+            mFaceFirstCorner[face] = corner;
+            corner += faceSizes[face];
+            counts[faceMaterials[face] + 2]++;
+        }
+        for (int i = 1; i < counts.length; i++)
+            counts[i] += counts[i - 1];
+
+        mFaceOrder = new int[numFaces];
+        for (int face = 0; face < numFaces; face++)
+            mFaceOrder[counts[faceMaterials[face] + 1]++] = face;
+    }
+
+    //
+    // Append the corners of the triangles covering the face of size corners starting at firstCorner
+    //
+    private void Triangulate(int firstCorner, int size, IntArray triangles)
+    {
+        if (size == 3)
+        {
+            triangles.Add(firstCorner, firstCorner + 1, firstCorner + 2);
+            return;
+        }
+
+        // project on the plane the face is most facing (Newell normal), so it can be clipped in 2D
+        int[] corners = mParser.GetCorners().GetData();
+        float[] positions = mParser.GetPositions().GetData();
+        float nx = 0, ny = 0, nz = 0;
+        for (int j = 0; j < size; j++)
+        {
+            int a = corners[(firstCorner + j) * 3] * 3;
+            int b = corners[(firstCorner + (j + 1) % size) * 3] * 3;
+            nx += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+            ny += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+            nz += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+        }
+        int axis = Math.abs(nx) > Math.abs(ny) ? (Math.abs(nx) > Math.abs(nz) ? 0 : 2) : (Math.abs(ny) > Math.abs(nz) ? 1 : 2);
+        float normal = axis == 0 ? nx : axis == 1 ? ny : nz;
+        // flip one axis for faces facing down the dropped axis, so the polygon is counterclockwise
+        float flip = normal < 0 ? -1 : 1;
+        if (mPolygonX.length < size)
+        {
+            mPolygonX = new float[size];
+            mPolygonY = new float[size];
+            mPolygonLeft = new int[size];
+        }
+        boolean convex = true;
+        for (int j = 0; j < size; j++)
+        {
+            int p = corners[(firstCorner + j) * 3] * 3;
+            mPolygonX[j] = positions[p + (axis + 1) % 3];
+            mPolygonY[j] = positions[p + (axis + 2) % 3] * flip;
+        }
+        for (int j = 0; j < size && convex; j++)
+            convex = Cross(j, (j + 1) % size, (j + 2) % size) >= 0;
+
+        if (convex || normal == 0)
+        {
+            for (int j = 1; j < size - 1; j++)
+                triangles.Add(firstCorner, firstCorner + j, firstCorner + j + 1);
+            return;
+        }
+
+        // ear clipping: cut off a convex corner whose triangle holds no other corner, until 3 are left
+        int numLeft = size;
+        for (int j = 0; j < size; j++)
+            mPolygonLeft[j] = j;
+        int at = 0;
+        int tries = 0;
+        while (numLeft > 3)
+        {
+            int prev = mPolygonLeft[(at + numLeft - 1) % numLeft];
+            int cur = mPolygonLeft[at];
+            int next = mPolygonLeft[(at + 1) % numLeft];
+            if (IsEar(prev, cur, next, numLeft))
+            {
+                triangles.Add(firstCorner + prev, firstCorner + cur, firstCorner + next);
+                System.arraycopy(mPolygonLeft, at + 1, mPolygonLeft, at, numLeft - at - 1);
+                numLeft--;
+                at = at % numLeft;
+                tries = 0;
+            } else if (++tries > numLeft)
+            {
+                // no ear: self intersecting or degenerate, fan what's left
+                break;
+            } else
+            {
+                at = (at + 1) % numLeft;
+            }
+        }
+        for (int j = 1; j < numLeft - 1; j++)
+            triangles.Add(firstCorner + mPolygonLeft[0], firstCorner + mPolygonLeft[j], firstCorner + mPolygonLeft[j + 1]);
+    }
+
+    // twice the signed area of the projected triangle a b c, positive when counterclockwise
+    private float Cross(int a, int b, int c)
+    {
+        return (mPolygonX[b] - mPolygonX[a]) * (mPolygonY[c] - mPolygonY[a])
+                - (mPolygonY[b] - mPolygonY[a]) * (mPolygonX[c] - mPolygonX[a]);
+    }
+
+    private boolean IsEar(int prev, int cur, int next, int numLeft)
+    {
+        if (Cross(prev, cur, next) <= 0)
+            return false;
+        for (int j = 0; j < numLeft; j++)
+        {
+            int p = mPolygonLeft[j];
+            if (p == prev || p == cur || p == next)
+                continue;
+            if (Cross(prev, cur, p) >= 0 && Cross(cur, next, p) >= 0 && Cross(next, prev, p) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    //
+    // Add the attributes of one face corner as a new vertex. Missing normals or UVs are written
+    // as zeros so all the attribute arrays stay in step.
+    //
+    private void AppendVertex(FloatArray positions, FloatArray normals, FloatArray uvs, int corner)
+    {
+        int[] corners = mParser.GetCorners().GetData();
+        int c = corner * 3;
+
+        // VERTS
+        positions.AddAll(mParser.GetPositions().GetData(), corners[c] * 3, 3);
+
+        // UVs
+        if (corners[c + 1] != ObjParser.NO_INDEX)
+            uvs.AddAll(mParser.GetUVs().GetData(), corners[c + 1] * 2, 2);
+        else
+            uvs.Resize(uvs.Size() + 2);
+
+        // NORMALS
+        if (corners[c + 2] != ObjParser.NO_INDEX)
+            normals.AddAll(mParser.GetNormals().GetData(), corners[c + 2] * 3, 3);
+        else
+            normals.Resize(normals.Size() + 3);
+    }
+}
@@ -2,115 +2,421 @@ package com.mustafathamer.gles_test;
 
 import android.content.Context;
 import android.opengl.GLES20;
-import android.opengl.Matrix;
+import android.util.Log;
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.util.Collections;
+import java.util.List;
 
 
-public class ObjModel
+public class ObjModel implements Renderable, StaticGeometry
 {
    private ObjFileLoader objFileLoader;
 
-    /**
-     * Store the model matrix. This matrix is used to move models from object space (where each model can be thought
-     * of being located at the center of the universe) to world space.
-     */
-    private float[] mModelMatrix = new float[16];
+    // GPU side copies of the mesh, null when drawing from client side buffers or until built on
+    // the GL thread: level 0 is the loaded mesh, then its simplified copies (see MeshSimplifier),
+    // finest first. A level is one mesh, or several when it needs int indices and the GPU can't
+    // do them (see MeshData.SplitForShortIndices).
+    private MeshPart[][] mLevels;
+
+    // colors for triangles without a material
+    private static final float[] DEFAULT_KD = {0.8f, 0.8f, 0.8f};
+    private static final float[] DEFAULT_KA = {0.2f, 0.2f, 0.2f};
+
+    // shader attribute location per VertexLayout.ATTRIB_* slot
+    private final int[] mAttribLocations = new int[VertexLayout.NUM_ATTRIBS];
+
+    // copies are queued on the renderer's InstanceRenderer instead of drawn one at a time. The
+    // batch is built on the first instanced draw, and stays null if the mesh can't be instanced.
+    private boolean mInstanced;
+    private boolean mInstanceBatchBuilt;
+    private InstanceBatch mInstanceBatch;
+
+    // one VBO mesh of a level, and the material ranges drawn from it
+    private static class MeshPart
+    {
+        final VertexBufferMesh mMesh;
+        final List<MeshRange> mRanges;
+
+        MeshPart(VertexBufferMesh mesh, List<MeshRange> ranges)
+        {
+            mMesh = mesh;
+            mRanges = ranges;
+        }
+    }
 
     //
     // CTOR
     //
     public ObjModel(Context context, String fileName)
     {
-        objFileLoader = new ObjFileLoader(context);
+        this(context, fileName, true);
+    }
+
+    // useVBO: upload the mesh once into GL buffer objects instead of passing client side
+    // buffers on every draw
+    public ObjModel(Context context, String fileName, boolean useVBO)
+    {
+        ObjFileLoader loader = new ObjFileLoader(context, useVBO);
         try
         {
-            objFileLoader.LoadObjFile(fileName);
+            loader.LoadObjFile(fileName);
         } catch (IOException e)
         {
             System.out.println("Failed loading OBJ file");
             e.printStackTrace();
+            return;
         }
+        SetLoaded(loader);
     }
 
-    public void draw(MyGLRenderer renderer)
+    // Load the file on the model loader's worker thread. The model isn't ready, and draws nothing,
+    // until the loader hands it back on the GL thread, where it is uploaded.
+    public ObjModel(ModelLoader modelLoader, Context context, String fileName, boolean useVBO)
     {
-        //
-        // POSITIONS
-        //
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(renderer.GetPositionHandle(), objFileLoader.COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                0, objFileLoader.GetVerticesBuffer());
-        GLES20.glEnableVertexAttribArray(renderer.GetPositionHandle());
+        this(modelLoader, context, fileName, useVBO, false, null);
+    }
 
-        //
-        // COLORS
-        //
-        if (objFileLoader.GetKdsBuffer() != null)
+    // quantize: keep the VBOs as shorts and bytes, half the memory and bandwidth of floats (see
+    // VertexLayout.ForMeshQuantized), only with useVBO.
+    // lodRatios: also build simplified levels of detail on the worker thread, with these ratios
+    // (decreasing, ex: 0.5, 0.25, 0.1) of the triangles, null for none. Drawn with Draw(.., lod).
+    public ObjModel(ModelLoader modelLoader, final Context context, final String fileName, final boolean useVBO,
+                    final boolean quantize, final float[] lodRatios)
+    {
+        modelLoader.Submit(new ModelLoader.Job<ObjFileLoader>()
         {
-            // Set ambient and diffuse color for drawing the triangle
-            GLES20.glVertexAttribPointer(renderer.GetDifColorHandle(), objFileLoader.COORDS_PER_VERTEX,
-                    GLES20.GL_FLOAT, false,
-                    0, objFileLoader.GetKdsBuffer());
-            GLES20.glEnableVertexAttribArray(renderer.GetDifColorHandle());
+            @Override
+            public ObjFileLoader Load() throws Exception
+            {
+                ObjFileLoader loader = new ObjFileLoader(context, useVBO);
+                loader.SetQuantized(quantize && useVBO);
+                loader.LoadObjFile(fileName);
+                if (lodRatios != null && useVBO)        // levels are only drawn from VBOs
+                    loader.BuildLods(lodRatios);
+                return loader;
+            }
+        }, new ModelLoader.Listener<ObjFileLoader>()
+        {
+            @Override
+            public void OnLoaded(GLApi gl, ObjFileLoader loader)
+            {
+                SetLoaded(loader);
+                if (!loader.IsInterleaved())
+                    return;
+                BuildLevels(gl);
+                for (MeshPart[] level : mLevels)
+                {
+                    for (MeshPart part : level)
+                        part.mMesh.Upload(gl);
+                }
+            }
+
+            @Override
+            public void OnFailed(Exception e)
+            {
+                Log.e("MOOSE", "Failed loading OBJ file " + fileName);
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void SetLoaded(ObjFileLoader loader)
+    {
+        objFileLoader = loader;
+    }
+
+    //
+    // Create the VBO meshes of every level, on the GL thread since whether int indices can be
+    // used depends on the GPU. They are uploaded on their first draw if not before.
+    //
+    private void BuildLevels(GLApi gl)
+    {
+        boolean intIndices = VertexBufferMesh.SupportsIntIndices(gl);
+        List<MeshData> lods = objFileLoader.GetLods();
+        mLevels = new MeshPart[1 + lods.size()][];
+        if (objFileLoader.UsesIntIndices() && !intIndices)
+        {
+            Log.i("MOOSE", "No " + VertexBufferMesh.OES_ELEMENT_INDEX_UINT + ", splitting a mesh of "
+                    + objFileLoader.GetNumVerts() + " verts");
+            mLevels[0] = BuildParts(objFileLoader.GetMeshData(), false);
+        } else
+        {
+            VertexBufferMesh mesh = new VertexBufferMesh(objFileLoader.GetVertexLayout(),
+                    objFileLoader.GetInterleavedBuffer(), objFileLoader.GetIndexBuffer(),
+                    objFileLoader.UsesIntIndices() ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT,
+                    objFileLoader.GetNumIndices());
+            mLevels[0] = new MeshPart[] {new MeshPart(mesh, objFileLoader.GetRanges())};
         }
+        for (int i = 0; i < lods.size(); i++)
+            mLevels[i + 1] = BuildParts(lods.get(i), intIndices);
+    }
 
-        if (objFileLoader.GetKasBuffer() != null)
+    private MeshPart[] BuildParts(MeshData mesh, boolean intIndicesSupported)
+    {
+        List<MeshData> parts = intIndicesSupported ? Collections.singletonList(mesh) : mesh.SplitForShortIndices();
+        MeshPart[] result = new MeshPart[parts.size()];
+        for (int i = 0; i < parts.size(); i++)
         {
-            GLES20.glVertexAttribPointer(renderer.GetAmbColorHandle(), objFileLoader.COORDS_PER_VERTEX,
-                    GLES20.GL_FLOAT, false,
-                    0, objFileLoader.GetKasBuffer());
-            GLES20.glEnableVertexAttribArray(renderer.GetAmbColorHandle());
+            MeshData part = parts.get(i);
+            VertexLayout layout = objFileLoader.IsQuantized() ? VertexLayout.ForMeshQuantized(part) : VertexLayout.ForMesh(part);
+            boolean intIndices = part.NeedsIntIndices();
+            VertexBufferMesh vertexBufferMesh = new VertexBufferMesh(layout, layout.Interleave(part),
+                    intIndices ? part.GetIndices().ToDirectBuffer() : part.GetIndices().ToDirectShortBuffer(),
+                    intIndices ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT, part.GetNumElements());
+            result[i] = new MeshPart(vertexBufferMesh, part.GetRanges());
+        }
+        return result;
+    }
+
+    // false until the model is loaded (always false if loading failed)
+    public boolean IsReady()
+    {
+        return objFileLoader != null;
+    }
+
+    // levels of detail, including the full mesh (level 0)
+    public int GetNumLods()
+    {
+        return IsReady() ? 1 + objFileLoader.GetLods().size() : 1;
+    }
+
+    // draw copies through the renderer's InstanceRenderer when it and the mesh allow it
+    public void SetInstanced(boolean instanced)
+    {
+        mInstanced = instanced;
+    }
+
+    //
+    // The batch copies of this model are queued in, null if the mesh can't be instanced: not
+    // loaded, not interleaved, too many vertices, or textured (the instanced shader has colors only)
+    //
+    public InstanceBatch GetInstanceBatch()
+    {
+        if (mInstanceBatchBuilt || !IsReady())
+            return mInstanceBatch;
+        mInstanceBatchBuilt = true;
+
+        int numVerts = objFileLoader.GetNumVerts();
+        if (!objFileLoader.IsInterleaved() || InstancedMesh.InstancesPerBatch(numVerts) == 0)
+        {
+            Log.d("MOOSE", "Not instancing a mesh of " + numVerts + " verts, drawing copies one at a time");
+            return null;
+        }
+        if (objFileLoader.HasUVs() && HasTextures(objFileLoader.GetMaterials()))
+        {
+            Log.d("MOOSE", "Not instancing a textured mesh, drawing copies one at a time");
+            return null;
+        }
+
+        List<MeshRange> ranges = objFileLoader.GetRanges();
+        float[] difColors = new float[ranges.size() * 4];
+        float[] ambColors = new float[ranges.size() * 4];
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            ObjMaterial material = objFileLoader.GetMaterial(ranges.get(i));
+            System.arraycopy(material != null ? material.GetKd() : DEFAULT_KD, 0, difColors, i * 4, 3);
+            System.arraycopy(material != null ? material.GetKa() : DEFAULT_KA, 0, ambColors, i * 4, 3);
+            difColors[i * 4 + 3] = 1.0f;
+            ambColors[i * 4 + 3] = 1.0f;
+        }
+        mInstanceBatch = new InstanceBatch(new InstancedMesh(objFileLoader.GetVertexLayout(),
+                objFileLoader.GetInterleavedBuffer(), objFileLoader.GetIndexBuffer(), numVerts,
+                ranges, difColors, ambColors));
+        return mInstanceBatch;
+    }
+
+    private static boolean HasTextures(ObjMaterial[] materials)
+    {
+        if (materials == null)
+            return false;
+        for (ObjMaterial material : materials)
+        {
+            if (material != null && material.HasTextures())
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean HasStaticMesh()
+    {
+        return IsReady();
+    }
+
+    //
+    // Copy of the loaded mesh as MeshData, for merging into a StaticBatcher mesh
+    //
+    @Override
+    public MeshData GetStaticMesh()
+    {
+        return objFileLoader.GetMeshData();
+    }
+
+    // null until the model is loaded
+    @Override
+    public Bounds GetBounds()
+    {
+        return IsReady() ? objFileLoader.GetBounds() : null;
+    }
+
+    //
+    // Draw with the model matrix of a scene node, one loaded model can be drawn by many nodes
+    // When instanced, the copy is only queued, the renderer draws the copies together later.
+    //
+    @Override
+    public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+    {
+        if (!IsReady())
+            return;
+
+        // many copies: only queue the matrix, the InstanceRenderer draws them together
+        if (mInstanced && renderer.GetInstanceRenderer().IsAvailable())
+        {
+            InstanceBatch batch = GetInstanceBatch();
+            if (batch != null)
+            {
+                renderer.GetInstanceRenderer().Add(batch, modelMatrix);
+                return;
+            }
+        }
+
+        if (objFileLoader.IsInterleaved())
+        {
+            DrawLevel(renderer, modelMatrix, 0);
+            return;
         }
 
+        GLApi gl = renderer.GetGL();
+
+        //
+        // MATRIX
+        //
+        renderer.SetModelMatrix(modelMatrix, null);
+
+        //
+        // POSITIONS
+        //
+        // Prepare the triangle coordinate data
+        gl.glVertexAttribPointer(renderer.GetPositionHandle(), objFileLoader.COORDS_PER_VERTEX,
+                GLES20.GL_FLOAT, false,
+                0, objFileLoader.GetVerticesBuffer());
+        gl.glEnableVertexAttribArray(renderer.GetPositionHandle());
+
         //
         // NORMALS
         //
         // Pass in the normal information
-        GLES20.glVertexAttribPointer(renderer.GetNormalHandle(), objFileLoader.COORDS_PER_NORMAL,
+        gl.glVertexAttribPointer(renderer.GetNormalHandle(), objFileLoader.COORDS_PER_NORMAL,
                 GLES20.GL_FLOAT, false,
                 0, objFileLoader.GetNormalsBuffer());
 
-        GLES20.glEnableVertexAttribArray(renderer.GetNormalHandle());
+        gl.glEnableVertexAttribArray(renderer.GetNormalHandle());
 
         //
-        // MATRIX
+        // TEXTURE COORDINATES
         //
-        float[] mvpMatrix = new float[16];
+        boolean hasUVs = objFileLoader.HasUVs();
+        if (hasUVs)
+        {
+            gl.glVertexAttribPointer(renderer.GetUVHandle(), objFileLoader.COORDS_PER_UV,
+                    GLES20.GL_FLOAT, false,
+                    0, objFileLoader.GetUVsBuffer());
+            gl.glEnableVertexAttribArray(renderer.GetUVHandle());
+        }
 
-        Matrix.setIdentityM(mModelMatrix, 0);
+        // Draw the object one material at a time, vertices are shared between triangles through
+        // the index buffer
+        Buffer indexBuffer = objFileLoader.GetIndexBuffer();
+        List<MeshRange> ranges = objFileLoader.GetRanges();
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            MeshRange range = ranges.get(i);
+            //
+            // COLORS, TEXTURES
+            //
+            SetMaterial(gl, renderer, objFileLoader.GetMaterial(range), hasUVs);
 
-        float scale=.2f;
- //       Matrix.scaleM(mModelMatrix, 0, scale, scale, scale);   // TEMP SCALE
+            indexBuffer.position(range.GetFirstElement());
+            gl.glDrawElements(GLES20.GL_TRIANGLES, range.GetNumElements(),
+                    objFileLoader.UsesIntIndices() ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT,
+                    indexBuffer);
+        }
+        indexBuffer.position(0);
 
-        Matrix.translateM(mModelMatrix, 0, 0.0f, 0.0f, 0.0f);       // no translation for now
-        Matrix.rotateM(mModelMatrix, 0, renderer.GetYAngle(), 0, 1.0f, 0);
-        Matrix.rotateM(mModelMatrix, 0, renderer.GetXAngle(), 1.0f, 0, 0);
+        // Disable vertex array
+        gl.glDisableVertexAttribArray(renderer.GetPositionHandle());
+        gl.glDisableVertexAttribArray(renderer.GetNormalHandle());
+        if (hasUVs)
+            gl.glDisableVertexAttribArray(renderer.GetUVHandle());
+    }
 
-        Matrix.multiplyMM(mvpMatrix, 0, renderer.GetViewMatrix(), 0, mModelMatrix, 0);  // so far just model and view
+    //
+    // Draw a level of detail, 0 is the full mesh (drawn as by Draw(), instanced if enabled),
+    // higher levels are coarser. Levels past the last one draw the last one.
+    //
+    public void Draw(MyGLRenderer renderer, float[] modelMatrix, int lod)
+    {
+        if (lod <= 0 || GetNumLods() == 1)
+        {
+            Draw(renderer, modelMatrix);
+            return;
+        }
+        DrawLevel(renderer, modelMatrix, Math.min(lod, GetNumLods() - 1));
+    }
 
-        // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(renderer.GetMVMatrixHandle(), 1, false, mvpMatrix, 0);
+    private void DrawLevel(MyGLRenderer renderer, float[] modelMatrix, int level)
+    {
+        // loaded without a GL thread callback, see ObjModel(Context, String, boolean)
+        if (mLevels == null)
+            BuildLevels(renderer.GetGL());
 
-        // Combine the rotation matrix with the projection and camera view
-        // Note that the mMVPMatrix factor *must be first* in order
-        // for the matrix multiplication product to be correct.
+        MeshPart[] parts = mLevels[level];
+        for (int i = 0; i < parts.length; i++)
+        {
+            // matrix, and how to decode the positions when quantized, which differs per part
+            renderer.SetModelMatrix(modelMatrix, parts[i].mMesh.GetLayout());
+            DrawVertexBufferMesh(renderer, parts[i].mMesh, parts[i].mRanges, objFileLoader.GetMaterials());
+        }
+    }
 
-        Matrix.multiplyMM(mvpMatrix, 0, renderer.GetProjectionMatrix(), 0, mvpMatrix, 0);
+    private void DrawVertexBufferMesh(MyGLRenderer renderer, VertexBufferMesh mesh, List<MeshRange> ranges,
+                                      ObjMaterial[] materials)
+    {
+        GLApi gl = renderer.GetGL();
 
-        // Pass the projection and view transformation to the shader
-        GLES20.glUniformMatrix4fv(renderer.GetMVPMatrixHandle(), 1, false, mvpMatrix, 0);
+        // Bind the VBO/IBO and point the attributes at their offsets, nothing is copied per frame
+        mAttribLocations[VertexLayout.ATTRIB_POSITION] = renderer.GetPositionHandle();
+        mAttribLocations[VertexLayout.ATTRIB_NORMAL] = renderer.GetNormalHandle();
+        mAttribLocations[VertexLayout.ATTRIB_UV] = renderer.GetUVHandle();
+        mesh.Bind(gl, mAttribLocations);
+        boolean hasUVs = mesh.GetLayout().Has(VertexLayout.ATTRIB_UV);
 
-        // Draw the object
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, objFileLoader.GetNumVerts());
+        // one draw call per material, colors and textures are set once per range
+        // (indexed loop, an iterator would be garbage every frame)
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            MeshRange range = ranges.get(i);
+            int material = range.GetMaterial();
+            SetMaterial(gl, renderer,
+                    materials != null && material != ObjParser.NO_MATERIAL ? materials[material] : null, hasUVs);
+            mesh.DrawRange(gl, range.GetFirstElement(), range.GetNumElements());
+        }
 
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(renderer.GetPositionHandle());
-        GLES20.glDisableVertexAttribArray(renderer.GetNormalHandle());
-        if (objFileLoader.GetKdsBuffer() != null)
-            GLES20.glDisableVertexAttribArray(renderer.GetDifColorHandle());
-        if (objFileLoader.GetKasBuffer() != null)
-            GLES20.glDisableVertexAttribArray(renderer.GetAmbColorHandle());
+        mesh.Unbind(gl, mAttribLocations);
+    }
+
+    //
+    // Set the ambient and diffuse color uniforms for drawing the triangles of a material, and bind
+    // its textures when the mesh has texture coordinates
+    //
+    static void SetMaterial(GLApi gl, MyGLRenderer renderer, ObjMaterial material, boolean hasUVs)
+    {
+        renderer.SetMaterialTextures(material, hasUVs);
+        float[] kd = material != null ? material.GetKd() : DEFAULT_KD;
+        float[] ka = material != null ? material.GetKa() : DEFAULT_KA;
+        gl.glUniform4f(renderer.GetDifColorHandle(), kd[0], kd[1], kd[2], 1.0f);
+        gl.glUniform4f(renderer.GetAmbColorHandle(), ka[0], ka[1], ka[2], 1.0f);
     }
 }
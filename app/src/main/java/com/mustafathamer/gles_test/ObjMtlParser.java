@@ -0,0 +1,176 @@
+package com.mustafathamer.gles_test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Parses .mtl files (wavefront obj material files) into ObjMaterials, by name.
+ * See: http://paulbourke.net/dataformats/mtl/
+ * <p>
+ * No Android dependencies, so it is shared by ObjMtlLoader and the offline MeshCompiler.
+ */
+
+public class ObjMtlParser
+{
+    private HashMap<String, ObjMaterial> mMtlMap = new HashMap<String, ObjMaterial>();
+    private List<String> mUnsupportedLines = new ArrayList<>();
+
+    public HashMap<String, ObjMaterial> GetMtlMap() { return mMtlMap; }
+
+    // lines using color formats that aren't supported (spectral, xyz)
+    public List<String> GetUnsupportedLines() { return mUnsupportedLines; }
+
+    //
+    // assumes line is in the form of something like:
+    // Ka 1.000000 1.000000 1.000000
+    //
+    private float[] Read3Floats(String line)
+    {
+        String tmp[] = line.split(" ");
+        float vals[] = new float[3];
+        for (int i = 0; i < 3; i++)
+        {
+            if (i+1 >= tmp.length)
+            {
+                // the last 2 vals are optional
+                vals[i] = vals[0];
+            }
+            else
+            {
+                vals[i] = Float.parseFloat(tmp[i + 1]);
+            }
+        }
+        return vals;
+    }
+
+    //
+    // The file of a texture map statement, after its options:
+    // map_Kd -s 1 1 1 -o 0 0 0 caution.jpg
+    //
+    private String ReadMapPath(String line)
+    {
+        String tmp[] = line.split("\\s+");
+        return tmp[tmp.length - 1];
+    }
+
+    //
+    // Starts fresh on every call
+    //
+    public void Parse(InputStream in)
+    {
+        Scanner scanner = new Scanner(in);
+
+        mMtlMap = new HashMap<String, ObjMaterial>();
+        mUnsupportedLines.clear();
+        ObjMaterial objMat = null;
+
+        // Loop through all its lines
+        while (scanner.hasNextLine())
+        {
+            String line = scanner.nextLine().trim();       // some exporters indent the statements
+            if (line.startsWith("#"))
+                continue;               // skip comments
+            if (line.isEmpty() && objMat != null)
+            {
+                // store mat
+                mMtlMap.put(objMat.GetName(), objMat);
+                objMat = null;
+            }
+            else
+            if (line.startsWith("newmtl "))
+            {
+                assert(objMat==null);   // make sure last objMat was stored and nulled
+                String tmp[] = line.split(" ");
+                String matName = tmp[1];
+                objMat = new ObjMaterial();
+                objMat.setName(matName);
+            }
+            else
+            if (line.startsWith("illum "))
+            {
+                String tmp[] = line.split(" ");
+                objMat.setIllum(Integer.parseInt(tmp[1]));
+            }
+            else
+            if (line.contains(" spectral ") || line.contains(" xyz "))
+            {
+                mUnsupportedLines.add(line);
+            }
+            else
+            if (line.startsWith("Ns "))
+            {
+                String tmp[] = line.split(" ");
+                objMat.setNs(Float.parseFloat(tmp[1]));
+            }
+            else
+            if (line.startsWith("Ni "))
+            {
+                String tmp[] = line.split(" ");
+                objMat.setNi(Float.parseFloat(tmp[1]));
+            }
+            else
+            if (line.startsWith("d "))
+            {
+                String tmp[] = line.split(" ");
+                objMat.setD(Float.parseFloat(tmp[tmp.length-1]));   // skip optional -halo param
+            }
+            else
+            if (line.startsWith("Kd "))
+            {
+                objMat.setKd(Read3Floats(line));
+            }
+            else
+            if (line.startsWith("Ka "))
+            {
+                objMat.setKa(Read3Floats(line));
+            }
+            else
+            if (line.startsWith("Ks "))
+            {
+                objMat.setKs(Read3Floats(line));
+            }
+            else
+            if (line.startsWith("Ke "))
+            {
+                objMat.setKe(Read3Floats(line));
+            }
+            else
+            if (line.startsWith("map_Kd "))
+            {
+                objMat.setMapKd(ReadMapPath(line));
+            }
+            else
+            if (line.startsWith("map_Ka "))
+            {
+                objMat.setMapKa(ReadMapPath(line));
+            }
+        }
+
+        // store last mtl
+        if (objMat != null)
+        {
+            mMtlMap.put(objMat.GetName(), objMat);
+            objMat = null;
+        }
+    }
+
+    //
+    // The material for each usemtl name, in the same order, or null if there are no materials at
+    // all. Names missing from the MTL file get a null entry.
+    //
+    public static ObjMaterial[] LookUp(List<String> matNames, HashMap<String, ObjMaterial> mtlMap)
+    {
+        if (mtlMap == null || mtlMap.isEmpty())
+            return null;
+
+        ObjMaterial[] materials = new ObjMaterial[matNames.size()];
+        for (int i = 0; i < materials.length; i++)
+        {
+            materials[i] = mtlMap.get(matNames.get(i));
+        }
+        return materials;
+    }
+}
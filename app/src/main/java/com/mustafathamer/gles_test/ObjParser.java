@@ -0,0 +1,681 @@
+package com.mustafathamer.gles_test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Single pass, streaming tokenizer for wavefront OBJ files.
+ * <p>
+ * The whole asset is read once as raw bytes, and the "v", "vn", "vt", "f", "usemtl" and "mtllib"
+ * records are decoded directly from the byte array into growable primitive arrays. No String is
+ * created per line or per token (only for material and mtllib names), so parsing a large model
+ * doesn't churn the GC the way the old Scanner / String.split pipeline did.
+ * <p>
+ * Face corners are stored as (v, vt, vn) triplets of zero based indices, with -1 for a missing
+ * component. Negative (relative) OBJ indices, counting back from the last record read, are
+ * resolved to absolute ones. Each face also stores its corner count and the index of the active
+ * usemtl material (-1 when no material is active).
+ * <p>
+ * Malformed records don't stop the parse: bad numbers read as 0 and faces with fewer than 3
+ * corners are dropped. Errors are counted, and the first one is kept with its line number, so
+ * callers can decide whether to reject the file. Face indices are checked against the final
+ * record counts once the whole file is read, and faces with an index out of range are dropped
+ * too, so every index left refers to an existing record.
+ * <p>
+ * Large files can be parsed in parallel, see ParseParallel().
+ * <p>
+ * This class has no Android dependencies so it can be run and tested on the JVM.
+ */
+
+public class ObjParser
+{
+    public static final int NO_INDEX = -1;
+    public static final int NO_MATERIAL = -1;
+
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    // material of the faces of a parallel chunk that come before its first usemtl, resolved when
+    // the chunks are merged
+    private static final int INHERIT_MATERIAL = -2;
+
+    // stored for a relative index before the first record, caught by CheckIndices
+    private static final int BAD_INDEX = Integer.MAX_VALUE;
+
+    // exact powers of ten that fit in a double, used by the fast float path
+    private static final double[] POW10 =
+            {
+                    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+            };
+
+    private static final byte[] USEMTL = {'u', 's', 'e', 'm', 't', 'l'};
+    private static final byte[] MTLLIB = {'m', 't', 'l', 'l', 'i', 'b'};
+
+    //
+    // input, and the current read position in it
+    //
+    private byte[] mData;
+    private int mPos;
+    private int mEnd;
+    private int mLine;              // 1 based, for error messages
+
+    //
+    // parsed output
+    //
+    private FloatArray mPositions = new FloatArray(3 * 1024);  // x,y,z per "v" record
+    private FloatArray mNormals = new FloatArray(3 * 1024);    // x,y,z per "vn" record
+    private FloatArray mUVs = new FloatArray(2 * 1024);        // u,v per "vt" record
+    private Bounds mBounds = new Bounds();                     // grown with every "v" record
+
+    private IntArray mCorners = new IntArray(3 * 4096);        // v,vt,vn per face corner
+    private IntArray mFaceSizes = new IntArray();              // num corners per face
+    private IntArray mFaceMaterials = new IntArray();          // material index per face
+
+    private List<String> mMaterialNames = new ArrayList<>();
+    private HashMap<String, Integer> mMaterialIndices = new HashMap<>();
+    private int mCurMaterial = NO_MATERIAL;
+    private String mMtlLibName;
+
+    // parallel chunks only know their own records: relative indices are resolved against those,
+    // and the slots in mCorners holding them are shifted by the records of the previous chunks
+    // when the chunks are merged
+    private boolean mIsChunk;
+    private IntArray mRelativeSlots = new IntArray();
+
+    private int mNumErrors;
+    private int mFirstErrorLine;        // 0 if the first error isn't about a line
+    private String mFirstError;
+
+    public FloatArray GetPositions()    { return mPositions; }
+    public int GetNumPositions()        { return mPositions.Size() / 3; }
+    public Bounds GetBounds()           { return mBounds; }
+    public FloatArray GetNormals()      { return mNormals; }
+    public int GetNumNormals()          { return mNormals.Size() / 3; }
+    public FloatArray GetUVs()          { return mUVs; }
+    public int GetNumUVs()              { return mUVs.Size() / 2; }
+    public IntArray GetCorners()        { return mCorners; }
+    public int GetNumCorners()          { return mCorners.Size() / 3; }
+    public IntArray GetFaceSizes()      { return mFaceSizes; }
+    public IntArray GetFaceMaterials()  { return mFaceMaterials; }
+    public int GetNumFaces()            { return mFaceSizes.Size(); }
+    public List<String> GetMaterialNames() { return mMaterialNames; }
+    public String GetMtlLibName()       { return mMtlLibName; }
+    public int GetNumErrors()           { return mNumErrors; }
+
+    // ex: "line 12: bad number", null if there were no errors
+    public String GetFirstError()
+    {
+        if (mFirstError == null)
+            return null;
+        return mFirstErrorLine > 0 ? "line " + mFirstErrorLine + ": " + mFirstError : mFirstError;
+    }
+
+    //
+    // Read the entire stream into memory once, then parse it
+    //
+    public void Parse(InputStream in) throws IOException
+    {
+        int[] length = new int[1];
+        byte[] data = ReadAll(in, length);
+        Parse(data, 0, length[0]);
+    }
+
+    //
+    // Read a whole stream, returns the data and its length in length[0]
+    //
+    public static byte[] ReadAll(InputStream in, int[] lengthOut) throws IOException
+    {
+        byte[] data = new byte[Math.max(in.available() + 1, READ_CHUNK_SIZE)];
+        int length = 0;
+        int read;
+        while ((read = in.read(data, length, data.length - length)) != -1)
+        {
+            length += read;
+            if (length == data.length)
+            {
+                byte[] bigger = new byte[data.length * 2];
+                System.arraycopy(data, 0, bigger, 0, length);
+                data = bigger;
+            }
+        }
+        lengthOut[0] = length;
+        return data;
+    }
+
+    public void Parse(byte[] data, int offset, int length)
+    {
+        ParseRange(data, offset, length);
+        CheckIndices();
+        mBounds.ComputeSphere(mPositions);
+    }
+
+    //
+    // Split the data into numChunks pieces at line boundaries, parse them at the same time on the
+    // executor, then append them in order. The result is identical to Parse(): records keep their
+    // file order, so the (absolute) face indices are unchanged, and faces at the start of a chunk
+    // get the material that was active at the end of the previous one.
+    //
+    public void ParseParallel(final byte[] data, int offset, int length, ExecutorService executor, int numChunks)
+            throws IOException
+    {
+        if (numChunks <= 1)
+        {
+            Parse(data, offset, length);
+            return;
+        }
+
+        int end = offset + length;
+        int[] starts = new int[numChunks + 1];
+        starts[0] = offset;
+        starts[numChunks] = end;
+        for (int i = 1; i < numChunks; i++)
+        {
+            int pos = Math.max(offset + (int) ((long) length * i / numChunks), starts[i - 1]);
+            while (pos > offset && pos < end && data[pos - 1] != '\n')
+                pos++;
+            starts[i] = pos;
+        }
+
+        List<Future<ObjParser>> futures = new ArrayList<>(numChunks);
+        for (int i = 0; i < numChunks; i++)
+        {
+            final int chunkStart = starts[i];
+            final int chunkLength = starts[i + 1] - starts[i];
+            futures.add(executor.submit(new Callable<ObjParser>()
+            {
+                @Override
+                public ObjParser call()
+                {
+                    ObjParser chunk = new ObjParser();
+                    chunk.mCurMaterial = INHERIT_MATERIAL;
+                    chunk.mIsChunk = true;
+                    chunk.ParseRange(data, chunkStart, chunkLength);
+                    return chunk;
+                }
+            }));
+        }
+
+        int lineOffset = 0;
+        for (Future<ObjParser> future : futures)
+        {
+            ObjParser chunk;
+            try
+            {
+                chunk = future.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("OBJ parse interrupted");
+            } catch (ExecutionException e)
+            {
+                throw new RuntimeException(e.getCause());
+            }
+            Append(chunk, lineOffset);
+            lineOffset += chunk.mLine - 1;
+        }
+
+        CheckIndices();
+        mBounds.ComputeSphere(mPositions);
+    }
+
+    //
+    // Add the records of a chunk parsed after the ones already here
+    //
+    private void Append(ObjParser chunk, int lineOffset)
+    {
+        // records before the chunk, that its relative indices skip over
+        int[] numBefore = {GetNumPositions(), GetNumUVs(), GetNumNormals()};
+        int firstSlot = mCorners.Size();
+
+        mPositions.AddAll(chunk.mPositions.GetData(), 0, chunk.mPositions.Size());
+        mBounds.Add(chunk.mBounds);
+        mNormals.AddAll(chunk.mNormals.GetData(), 0, chunk.mNormals.Size());
+        mUVs.AddAll(chunk.mUVs.GetData(), 0, chunk.mUVs.Size());
+        mCorners.AddAll(chunk.mCorners.GetData(), 0, chunk.mCorners.Size());
+        mFaceSizes.AddAll(chunk.mFaceSizes.GetData(), 0, chunk.mFaceSizes.Size());
+
+        int[] corners = mCorners.GetData();
+        int[] relativeSlots = chunk.mRelativeSlots.GetData();
+        for (int i = 0; i < chunk.mRelativeSlots.Size(); i++)
+        {
+            int slot = firstSlot + relativeSlots[i];
+            int index = corners[slot] + numBefore[slot % 3];
+            corners[slot] = index >= 0 ? index : BAD_INDEX;
+        }
+
+        // chunk material index -> index here, new names are added in the order they appear
+        int[] remap = new int[chunk.mMaterialNames.size()];
+        for (int i = 0; i < remap.length; i++)
+        {
+            String matName = chunk.mMaterialNames.get(i);
+            Integer idx = mMaterialIndices.get(matName);
+            if (idx == null)
+            {
+                idx = mMaterialNames.size();
+                mMaterialNames.add(matName);
+                mMaterialIndices.put(matName, idx);
+            }
+            remap[i] = idx;
+        }
+
+        int[] faceMaterials = chunk.mFaceMaterials.GetData();
+        mFaceMaterials.EnsureCapacity(mFaceMaterials.Size() + chunk.mFaceMaterials.Size());
+        for (int face = 0; face < chunk.mFaceMaterials.Size(); face++)
+        {
+            int material = faceMaterials[face];
+            mFaceMaterials.Add(material == INHERIT_MATERIAL ? mCurMaterial : remap[material]);
+        }
+        if (chunk.mCurMaterial != INHERIT_MATERIAL)
+            mCurMaterial = remap[chunk.mCurMaterial];
+
+        if (chunk.mMtlLibName != null)
+            mMtlLibName = chunk.mMtlLibName;
+
+        if (mFirstError == null && chunk.mFirstError != null)
+        {
+            mFirstError = chunk.mFirstError;
+            mFirstErrorLine = chunk.mFirstErrorLine + lineOffset;
+        }
+        mNumErrors += chunk.mNumErrors;
+    }
+
+    private void ParseRange(byte[] data, int offset, int length)
+    {
+        mData = data;
+        mPos = offset;
+        mEnd = offset + length;
+        mLine = 1;
+
+        while (mPos < mEnd)
+        {
+            SkipSpaces();
+            if (mPos >= mEnd)
+                break;
+
+            byte c = mData[mPos];
+            byte c1 = mPos + 1 < mEnd ? mData[mPos + 1] : 0;
+            if (c == 'v')
+            {
+                if (IsSpace(c1))
+                {
+                    // ex: v 0.2332653 -0.1349314 -0.7298675
+                    mPos += 1;
+                    float x = ParseFloat();
+                    float y = ParseFloat();
+                    float z = ParseFloat();
+                    mPositions.Add(x, y, z);
+                    mBounds.Add(x, y, z);
+                } else if (c1 == 'n' && IsSpaceAt(mPos + 2))
+                {
+                    // ex: vn 0.0543038 0.9978414 -0.03692874
+                    mPos += 2;
+                    float x = ParseFloat();
+                    float y = ParseFloat();
+                    float z = ParseFloat();
+                    mNormals.Add(x, y, z);
+                } else if (c1 == 't' && IsSpaceAt(mPos + 2))
+                {
+                    // ex: vt 0.500000 0.250000 (v defaults to 0, optional w is ignored)
+                    mPos += 2;
+                    mUVs.Add(ParseFloat());
+                    SkipSpaces();
+                    mUVs.Add(mPos < mEnd && !IsEndOfLine(mData[mPos]) ? ParseFloat() : 0.0f);
+                }
+            } else if (c == 'f' && IsSpace(c1))
+            {
+                // ex: f 5164//7267 5037//7267 5035//7267 5163//7267
+                mPos += 1;
+                ParseFace();
+            } else if (StartsWith(USEMTL))
+            {
+                String matName = ReadName(USEMTL.length);
+                Integer idx = mMaterialIndices.get(matName);
+                if (idx == null)
+                {
+                    idx = mMaterialNames.size();
+                    mMaterialNames.add(matName);
+                    mMaterialIndices.put(matName, idx);
+                }
+                mCurMaterial = idx;
+            } else if (StartsWith(MTLLIB))
+            {
+                mMtlLibName = ReadName(MTLLIB.length);
+            }
+
+            SkipLine();
+        }
+
+        mData = null;
+    }
+
+    //
+    // Every corner must have a position, and its indices must refer to existing records. Faces
+    // with a bad corner are dropped, the steps after parsing index the records without checks.
+    //
+    private void CheckIndices()
+    {
+        int[] corners = mCorners.GetData();
+        int[] faceSizes = mFaceSizes.GetData();
+        int[] faceMaterials = mFaceMaterials.GetData();
+        int numPositions = GetNumPositions();
+        int numUVs = GetNumUVs();
+        int numNormals = GetNumNormals();
+
+        int numFaces = 0;
+        int numKept = 0;            // ints of mCorners kept
+        int c = 0;
+        for (int face = 0; face < mFaceSizes.Size(); face++)
+        {
+            int faceEnd = c + faceSizes[face] * 3;
+            boolean valid = true;
+            for (int corner = c; corner < faceEnd; corner += 3)
+            {
+                if (corners[corner] < 0 || corners[corner] >= numPositions
+                        || corners[corner + 1] < NO_INDEX || corners[corner + 1] >= numUVs
+                        || corners[corner + 2] < NO_INDEX || corners[corner + 2] >= numNormals)
+                {
+                    if (mFirstError == null)
+                        mFirstError = "face corner " + (corner / 3) + ": index out of range";
+                    mNumErrors++;
+                    valid = false;
+                }
+            }
+
+            if (valid)
+            {
+                if (numKept != c)
+                    System.arraycopy(corners, c, corners, numKept, faceEnd - c);
+                numKept += faceEnd - c;
+                faceSizes[numFaces] = faceSizes[face];
+                faceMaterials[numFaces] = faceMaterials[face];
+                numFaces++;
+            }
+            c = faceEnd;
+        }
+        mCorners.Resize(numKept);
+        mFaceSizes.Resize(numFaces);
+        mFaceMaterials.Resize(numFaces);
+    }
+
+    //
+    // Parse the corners of a face line, each looks like: v or v/vt or v//vn or v/vt/vn
+    //
+    private void ParseFace()
+    {
+        int firstCorner = mCorners.Size();
+        int numCorners = 0;
+        while (true)
+        {
+            SkipSpaces();
+            if (mPos >= mEnd || IsEndOfLine(mData[mPos]))
+                break;
+
+            int slot = mCorners.Size();
+            int v = ParseIndex(GetNumPositions(), slot);
+            int vt = NO_INDEX;
+            int vn = NO_INDEX;
+            if (mPos < mEnd && mData[mPos] == '/')
+            {
+                mPos++;
+                if (mPos < mEnd && mData[mPos] != '/')
+                    vt = ParseIndex(GetNumUVs(), slot + 1);
+                if (mPos < mEnd && mData[mPos] == '/')
+                {
+                    mPos++;
+                    vn = ParseIndex(GetNumNormals(), slot + 2);
+                }
+            }
+
+            mCorners.Add(v, vt, vn);
+            numCorners++;
+
+            // skip anything unexpected up to the next separator
+            while (mPos < mEnd && !IsSpace(mData[mPos]) && !IsEndOfLine(mData[mPos]))
+                mPos++;
+        }
+
+        if (numCorners < 3)
+        {
+            Error("face with less than 3 corners");
+            mCorners.Resize(firstCorner);
+            while (!mRelativeSlots.IsEmpty() && mRelativeSlots.Get(mRelativeSlots.Size() - 1) >= firstCorner)
+                mRelativeSlots.Resize(mRelativeSlots.Size() - 1);
+            return;
+        }
+
+        mFaceSizes.Add(numCorners);
+        mFaceMaterials.Add(mCurMaterial);
+    }
+
+    //
+    // OBJ indices are 1 based, convert to 0 based. Negative ones count back from the end of the
+    // numRecords records read so far, -1 is the last one. slot is where the index goes in mCorners.
+    // Returns NO_INDEX if there is no number here.
+    //
+    private int ParseIndex(int numRecords, int slot)
+    {
+        boolean relative = mPos < mEnd && mData[mPos] == '-';
+        if (relative)
+            mPos++;
+        int value = 0;
+        int start = mPos;
+        while (mPos < mEnd)
+        {
+            int d = mData[mPos] - '0';
+            if (d < 0 || d > 9)
+                break;
+            value = value * 10 + d;
+            mPos++;
+        }
+        if (mPos == start)
+            return NO_INDEX;
+        if (!relative)
+            return value - 1;
+
+        int index = numRecords - value;
+        if (mIsChunk)
+        {
+            mRelativeSlots.Add(slot);
+            return index;       // may be negative until the chunk is merged
+        }
+        return index >= 0 ? index : BAD_INDEX;
+    }
+
+    //
+    // Parse a decimal float straight from the bytes. Numbers with up to 15 significant digits and
+    // a small exponent (everything our exporters write) are converted exactly with one double
+    // multiply or divide. Anything else falls back to Float.parseFloat.
+    //
+    private float ParseFloat()
+    {
+        SkipSpaces();
+        int start = mPos;
+
+        boolean negative = false;
+        if (mPos < mEnd && (mData[mPos] == '-' || mData[mPos] == '+'))
+        {
+            negative = mData[mPos] == '-';
+            mPos++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;      // significant digits stored in mantissa
+        int exp10 = 0;
+        boolean anyDigits = false;
+
+        while (mPos < mEnd && IsDigit(mData[mPos]))
+        {
+            if (numDigits < 18)
+            {
+                mantissa = mantissa * 10 + (mData[mPos] - '0');
+                if (mantissa != 0)
+                    numDigits++;
+            } else
+            {
+                exp10++;
+            }
+            anyDigits = true;
+            mPos++;
+        }
+
+        if (mPos < mEnd && mData[mPos] == '.')
+        {
+            mPos++;
+            while (mPos < mEnd && IsDigit(mData[mPos]))
+            {
+                if (numDigits < 18)
+                {
+                    mantissa = mantissa * 10 + (mData[mPos] - '0');
+                    if (mantissa != 0)
+                        numDigits++;
+                    exp10--;
+                }
+                anyDigits = true;
+                mPos++;
+            }
+        }
+
+        if (anyDigits && mPos < mEnd && (mData[mPos] == 'e' || mData[mPos] == 'E'))
+        {
+            mPos++;
+            boolean expNegative = false;
+            if (mPos < mEnd && (mData[mPos] == '-' || mData[mPos] == '+'))
+            {
+                expNegative = mData[mPos] == '-';
+                mPos++;
+            }
+            int exp = 0;
+            while (mPos < mEnd && IsDigit(mData[mPos]))
+            {
+                if (exp < 10000)
+                    exp = exp * 10 + (mData[mPos] - '0');
+                mPos++;
+            }
+            exp10 += expNegative ? -exp : exp;
+        }
+
+        if (!anyDigits)
+        {
+            // not a plain number (nan, inf) or nothing at all, let the JDK sort it out
+            while (mPos < mEnd && !IsSpace(mData[mPos]) && !IsEndOfLine(mData[mPos]))
+                mPos++;
+            return SlowParseFloat(start, mPos);
+        }
+
+        double value;
+        if (numDigits <= 15 && exp10 >= -22 && exp10 <= 22)
+        {
+            value = exp10 < 0 ? mantissa / POW10[-exp10] : mantissa * POW10[exp10];
+        } else
+        {
+            return SlowParseFloat(start, mPos);
+        }
+
+        return (float) (negative ? -value : value);
+    }
+
+    private float SlowParseFloat(int start, int end)
+    {
+        if (end <= start)
+        {
+            Error("missing number");
+            return 0.0f;
+        }
+
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) mData[start + i];
+        try
+        {
+            return Float.parseFloat(new String(chars));
+        } catch (NumberFormatException e)
+        {
+            Error("bad number");
+            return 0.0f;
+        }
+    }
+
+    private void Error(String what)
+    {
+        if (mFirstError == null)
+        {
+            mFirstError = what;
+            mFirstErrorLine = mLine;
+        }
+        mNumErrors++;
+    }
+
+    //
+    // Read the rest of the line after the keyword, trimmed, as a name
+    //
+    private String ReadName(int keywordLength)
+    {
+        mPos += keywordLength;
+        SkipSpaces();
+        int start = mPos;
+        while (mPos < mEnd && !IsEndOfLine(mData[mPos]))
+            mPos++;
+        int end = mPos;
+        while (end > start && IsSpace(mData[end - 1]))
+            end--;
+
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) (mData[start + i] & 0xff);
+        return new String(chars);
+    }
+
+    private boolean StartsWith(byte[] keyword)
+    {
+        if (mPos + keyword.length >= mEnd)
+            return false;
+        for (int i = 0; i < keyword.length; i++)
+        {
+            if (mData[mPos + i] != keyword[i])
+                return false;
+        }
+        return IsSpace(mData[mPos + keyword.length]);
+    }
+
+    private void SkipSpaces()
+    {
+        while (mPos < mEnd && IsSpace(mData[mPos]))
+            mPos++;
+    }
+
+    private void SkipLine()
+    {
+        while (mPos < mEnd && mData[mPos] != '\n')
+            mPos++;
+        mPos++;
+        mLine++;
+    }
+
+    private boolean IsSpaceAt(int pos)
+    {
+        return pos < mEnd && IsSpace(mData[pos]);
+    }
+
+    private static boolean IsSpace(byte c)
+    {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean IsEndOfLine(byte c)
+    {
+        return c == '\n' || c == '\r' || c == '#';
+    }
+
+    private static boolean IsDigit(byte c)
+    {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,149 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Linked program binaries on disk, one file per program name, so a program doesn't have to be
+ * compiled and linked again on the next start or after the GL context is lost.
+ * <p>
+ * Each file is stored with the key it was made for (see ShaderManager.Key(), a hash of the
+ * sources and of the driver); a file made for another key is a miss, and is overwritten by the
+ * next Save(). File layout, native byte order:
+ * <pre>
+ * magic, key length, key, binary format, binary length, binary
+ * </pre>
+ */
+
+public class ProgramBinaryCache
+{
+    public static final int MAGIC = 0x50524731;     // "PRG1"
+
+    public static class Binary
+    {
+        public final int mFormat;
+        public final ByteBuffer mData;
+
+        Binary(int format, ByteBuffer data)
+        {
+            mFormat = format;
+            mData = data;
+        }
+    }
+
+    private final File mDir;
+
+    //
+    // CTOR
+    // dir: created on the first Save()
+    //
+    public ProgramBinaryCache(File dir)
+    {
+        mDir = dir;
+    }
+
+    private File GetFile(String name)
+    {
+        return new File(mDir, name + ".prog");
+    }
+
+    //
+    // The binary saved for name with this key, null if there is none, it was saved for another
+    // key, or the file is damaged
+    //
+    public Binary Load(String name, byte[] key)
+    {
+        File file = GetFile(name);
+        if (!file.isFile())
+            return null;
+
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                ByteBuffer data = ByteBuffer.allocateDirect((int) raf.length()).order(ByteOrder.nativeOrder());
+                FileChannel channel = raf.getChannel();
+                while (data.hasRemaining())
+                {
+                    if (channel.read(data) < 0)
+                        return null;
+                }
+                data.flip();
+
+                if (data.getInt() != MAGIC)
+                    return null;
+                int keyLength = data.getInt();
+                if (keyLength < 0 || keyLength > data.remaining())
+                    return null;
+                byte[] fileKey = new byte[keyLength];
+                data.get(fileKey);
+                if (!Arrays.equals(fileKey, key))
+                    return null;
+                int format = data.getInt();
+                int length = data.getInt();
+                if (length <= 0 || length != data.remaining())
+                    return null;
+                return new Binary(format, data.slice());
+            } finally
+            {
+                raf.close();
+            }
+        } catch (IOException e)
+        {
+            return null;
+        } catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+    }
+
+    //
+    // Save the binary of name for key, replacing any older one. Written to a temporary file
+    // first and renamed, so a reader never sees a half written file.
+    //
+    public void Save(String name, byte[] key, int format, ByteBuffer binary) throws IOException
+    {
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            throw new IOException("Can't create " + mDir);
+
+        ByteBuffer out = ByteBuffer.allocate(4 + 4 + key.length + 4 + 4 + binary.remaining())
+                .order(ByteOrder.nativeOrder());
+        out.putInt(MAGIC);
+        out.putInt(key.length);
+        out.put(key);
+        out.putInt(format);
+        out.putInt(binary.remaining());
+        out.put(binary.duplicate());
+        out.flip();
+
+        File file = GetFile(name);
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            while (out.hasRemaining())
+                channel.write(out);
+        } finally
+        {
+            stream.close();
+        }
+        if (!tmp.renameTo(file))
+        {
+            file.delete();
+            if (!tmp.renameTo(file))
+            {
+                tmp.delete();
+                throw new IOException("Can't rename " + tmp + " to " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Something a SceneNode can draw. The same Renderable can be referenced by any number of nodes,
+ * so instances share their mesh data and only differ by their model matrix.
+ */
+
+public interface Renderable
+{
+    //
+    // Draw with the given model (object to world) matrix, during onDrawFrame
+    //
+    void Draw(MyGLRenderer renderer, float[] modelMatrix);
+
+    //
+    // Object space bounds for culling, null if not known (never culled)
+    //
+    Bounds GetBounds();
+}
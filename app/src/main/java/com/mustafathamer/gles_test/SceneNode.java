@@ -0,0 +1,205 @@
+package com.mustafathamer.gles_test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Node of the scene graph: a local Transform relative to its parent, an optional Renderable, and
+ * child nodes.
+ * <p>
+ * The world matrix (parent world * local) is cached per node. Changing a transform marks the node,
+ * and its ancestors as having a dirty subtree, so UpdateWorldMatrices() on the root only walks
+ * down the branches that changed and only recomputes the matrices below a change. A static scene
+ * costs one flag check per frame.
+ * <p>
+ * Transforms must be changed through the node (SetPosition etc), not through GetTransform(),
+ * so the node knows about it.
+ * <p>
+ * Nodes flagged static are merged into a single mesh by a StaticBatcher, and aren't drawn on
+ * their own once merged. Flagging or moving a static node, and adding or removing nodes, marks
+ * the ancestors as having static changes the same way, so the batcher only rebuilds after one.
+ */
+
+public class SceneNode
+{
+    private final Transform mTransform = new Transform();
+    private final float[] mWorldMatrix = new float[16];
+    private final ArrayList<SceneNode> mChildren = new ArrayList<>();
+    private SceneNode mParent;
+    private Renderable mRenderable;
+
+    private boolean mWorldDirty = true;         // this node's world matrix has to be recomputed
+    private boolean mSubtreeDirty = true;       // this node or a node below it needs an update
+
+    private boolean mStatic;                    // never moves, can be merged with other static nodes
+    private boolean mMerged;                    // drawn as part of a StaticBatcher mesh
+    private boolean mStaticChanged;             // the static nodes at or below this one changed
+
+    //
+    // CTOR
+    //
+    public SceneNode()
+    {
+        this(null);
+    }
+
+    public SceneNode(Renderable renderable)
+    {
+        mRenderable = renderable;
+    }
+
+    public Transform GetTransform()             { return mTransform; }
+    public SceneNode GetParent()                { return mParent; }
+    public int GetNumChildren()                 { return mChildren.size(); }
+    public SceneNode GetChild(int index)        { return mChildren.get(index); }
+    public Renderable GetRenderable()           { return mRenderable; }
+    public boolean IsStatic()                   { return mStatic; }
+    public boolean IsMerged()                   { return mMerged; }
+    public boolean HasStaticChanges()           { return mStaticChanged; }
+
+    // only valid after UpdateWorldMatrices()
+    public float[] GetWorldMatrix()             { return mWorldMatrix; }
+
+    public void SetRenderable(Renderable renderable)
+    {
+        mRenderable = renderable;
+        if (mStatic)
+            MarkStaticChanged();
+    }
+
+    //
+    // Flag the node as never moving, so its renderable can be merged with the other static ones
+    //
+    public void SetStatic(boolean isStatic)
+    {
+        if (mStatic == isStatic)
+            return;
+        mStatic = isStatic;
+        MarkStaticChanged();
+    }
+
+    // set by the StaticBatcher
+    public void SetMerged(boolean merged)
+    {
+        mMerged = merged;
+    }
+
+    public void AddChild(SceneNode child)
+    {
+        if (child.mParent != null)
+            child.mParent.RemoveChild(child);
+        child.mParent = this;
+        mChildren.add(child);
+        child.MarkDirty();      // its world matrix now depends on a different parent
+        MarkStaticChanged();    // the subtree may hold static nodes
+    }
+
+    public void RemoveChild(SceneNode child)
+    {
+        if (mChildren.remove(child))
+        {
+            child.mParent = null;
+            MarkStaticChanged();
+        }
+    }
+
+    public void SetPosition(float x, float y, float z)
+    {
+        mTransform.SetPosition(x, y, z);
+        if (mTransform.IsDirty())
+            MarkDirty();
+    }
+
+    public void SetRotation(float xAngle, float yAngle)
+    {
+        mTransform.SetRotation(xAngle, yAngle);
+        if (mTransform.IsDirty())
+            MarkDirty();
+    }
+
+    public void SetScale(float scale)
+    {
+        mTransform.SetScale(scale);
+        if (mTransform.IsDirty())
+            MarkDirty();
+    }
+
+    private void MarkDirty()
+    {
+        mWorldDirty = true;
+        mSubtreeDirty = true;
+        // stop at the first ancestor already marked, the ones above it are marked too
+        for (SceneNode node = mParent; node != null && !node.mSubtreeDirty; node = node.mParent)
+            node.mSubtreeDirty = true;
+    }
+
+    private void MarkStaticChanged()
+    {
+        for (SceneNode node = this; node != null && !node.mStaticChanged; node = node.mParent)
+            node.mStaticChanged = true;
+    }
+
+    //
+    // Add the static nodes at and below this one to staticNodes, and clear the static changes
+    //
+    public void CollectStatic(List<SceneNode> staticNodes)
+    {
+        if (mStatic)
+            staticNodes.add(this);
+        mStaticChanged = false;
+        for (int i = 0; i < mChildren.size(); i++)
+            mChildren.get(i).CollectStatic(staticNodes);
+    }
+
+    //
+    // Bring the world matrices of this node and everything below it up to date, call on the root
+    // once per frame before drawing. Returns the number of matrices that were recomputed.
+    //
+    public int UpdateWorldMatrices()
+    {
+        return Update(mParent != null ? mParent.mWorldMatrix : null, false);
+    }
+
+    private int Update(float[] parentWorld, boolean parentChanged)
+    {
+        if (!parentChanged && !mSubtreeDirty)
+            return 0;
+
+        int numUpdated = 0;
+        boolean changed = parentChanged || mWorldDirty;
+        if (changed)
+        {
+            if (parentWorld == null)
+                System.arraycopy(mTransform.GetMatrix(), 0, mWorldMatrix, 0, 16);
+            else
+                MatrixMath.Multiply(mWorldMatrix, parentWorld, mTransform.GetMatrix());
+            numUpdated++;
+            if (mStatic)
+                MarkStaticChanged();    // the merged mesh has it in the old place
+        }
+
+        for (int i = 0; i < mChildren.size(); i++)
+            numUpdated += mChildren.get(i).Update(mWorldMatrix, changed);
+
+        mWorldDirty = false;
+        mSubtreeDirty = false;
+        return numUpdated;
+    }
+
+    //
+    // Draw the renderables of this node and everything below it, with their world matrices.
+    // Renderables whose bounds are outside frustum are skipped, pass null to draw everything.
+    // Merged static nodes are skipped too, the StaticBatcher draws them.
+    //
+    public void Draw(MyGLRenderer renderer, Frustum frustum)
+    {
+        if (mRenderable != null && !mMerged)
+        {
+            Bounds bounds = frustum != null ? mRenderable.GetBounds() : null;
+            if (bounds == null || frustum.IsVisible(bounds, mWorldMatrix))
+                mRenderable.Draw(renderer, mWorldMatrix);
+        }
+        for (int i = 0; i < mChildren.size(); i++)
+            mChildren.get(i).Draw(renderer, frustum);
+    }
+}
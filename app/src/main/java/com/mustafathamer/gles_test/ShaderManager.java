@@ -0,0 +1,220 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Creates the shader programs: reads their sources once, with their line breaks so the
+ * preprocessor works, builds variants of a source with #defines, and keeps the linked binaries
+ * in a ProgramBinaryCache when the driver can give them (ES 3), so later starts and lost contexts
+ * skip compiling and linking.
+ * <p>
+ * A binary is used only if it was made from the same sources, defines and attributes by the
+ * same driver (vendor, renderer, version): see Key(). Anything else, or a binary the driver
+ * rejects, compiles from the sources as without a cache.
+ * <p>
+ * The time each program took is kept (GetStats()), to see what the cache saves.
+ * <p>
+ * Must be used on the GL thread. Sources come from a Source, so this can be tested on the JVM.
+ */
+
+public class ShaderManager
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public interface Source
+    {
+        InputStream Open(String fileName) throws IOException;
+    }
+
+    // how long a program took to create, and whether it came from the binary cache
+    public static class Stats
+    {
+        public final String mName;
+        public final long mNanos;
+        public final boolean mFromBinary;
+
+        Stats(String name, long nanos, boolean fromBinary)
+        {
+            mName = name;
+            mNanos = nanos;
+            mFromBinary = fromBinary;
+        }
+    }
+
+    private final GLApi mGL;
+    private final Source mSource;
+    private final ProgramBinaryCache mBinaryCache;
+    private final String mDriver;
+    private final HashMap<String, String> mSources = new HashMap<>();
+    private final List<Stats> mStats = new ArrayList<>();
+    private final int[] mBinaryFormat = new int[1];
+
+    //
+    // CTOR
+    // binaryCache: null to always compile, and when the driver has no program binaries
+    //
+    public ShaderManager(GLApi gl, Source source, ProgramBinaryCache binaryCache)
+    {
+        mGL = gl;
+        mSource = source;
+        mBinaryCache = binaryCache;
+        mDriver = binaryCache == null ? "" : gl.glGetString(GLES20.GL_VENDOR) + "\n"
+                + gl.glGetString(GLES20.GL_RENDERER) + "\n" + gl.glGetString(GLES20.GL_VERSION);
+    }
+
+    public List<Stats> GetStats()       { return mStats; }
+
+    //
+    // Whether the context has program binaries: ES 3 has them, ES 2 only with
+    // OES_get_program_binary, which Android has no Java binding for
+    //
+    public static boolean SupportsProgramBinaries(GLApi gl)
+    {
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES 3");
+    }
+
+    //
+    // The program named name, of the vertex and fragment shader files with defines (names to
+    // #define, may be empty) added to both. Throws as ShaderProgram does if they don't compile.
+    //
+    public ShaderProgram Load(String name, String vertexFile, String fragmentFile, String[] defines,
+                              String[] attributes, String[] uniforms) throws IOException
+    {
+        long start = System.nanoTime();
+        String vertexCode = AddDefines(GetSource(vertexFile), defines);
+        String fragmentCode = AddDefines(GetSource(fragmentFile), defines);
+
+        ShaderProgram program = null;
+        byte[] key = null;
+        if (mBinaryCache != null)
+        {
+            key = Key(mDriver, vertexCode, fragmentCode, Join(attributes));
+            ProgramBinaryCache.Binary binary = mBinaryCache.Load(name, key);
+            if (binary != null)
+                program = ShaderProgram.FromBinary(mGL, binary.mFormat, binary.mData, attributes, uniforms);
+            if (program != null)
+            {
+                mStats.add(new Stats(name, System.nanoTime() - start, true));
+                return program;
+            }
+        }
+
+        program = new ShaderProgram(mGL, vertexCode, fragmentCode, attributes, uniforms, mBinaryCache != null);
+        if (mBinaryCache != null)
+        {
+            ByteBuffer binary = program.GetBinary(mGL, mBinaryFormat);
+            try
+            {
+                if (binary != null)
+                    mBinaryCache.Save(name, key, mBinaryFormat[0], binary);
+            } catch (IOException e)
+            {
+                // the program works, it will just be compiled again next time
+            }
+        }
+        mStats.add(new Stats(name, System.nanoTime() - start, false));
+        return program;
+    }
+
+    // sources are read once, a file can be used by many programs
+    private String GetSource(String fileName) throws IOException
+    {
+        String source = mSources.get(fileName);
+        if (source == null)
+        {
+            InputStream in = mSource.Open(fileName);
+            try
+            {
+                source = ReadSource(in);
+            } finally
+            {
+                in.close();
+            }
+            mSources.put(fileName, source);
+        }
+        return source;
+    }
+
+    //
+    // All of in as text, line breaks kept
+    //
+    public static String ReadSource(InputStream in) throws IOException
+    {
+        Reader reader = new InputStreamReader(in, UTF8);
+        StringBuilder source = new StringBuilder(4096);
+        char[] chunk = new char[4096];
+        int read;
+        while ((read = reader.read(chunk)) >= 0)
+            source.append(chunk, 0, read);
+        return source.toString();
+    }
+
+    //
+    // source with a #define line for each of defines, after its #version line if it has one
+    // (it must come first)
+    //
+    public static String AddDefines(String source, String[] defines)
+    {
+        if (defines == null || defines.length == 0)
+            return source;
+
+        StringBuilder lines = new StringBuilder();
+        for (String define : defines)
+            lines.append("#define ").append(define).append('\n');
+
+        int insert = 0;
+        String trimmed = source.trim();
+        if (trimmed.startsWith("#version"))
+        {
+            int version = source.indexOf("#version");
+            int end = source.indexOf('\n', version);
+            if (end < 0)
+                return source + "\n" + lines;
+            insert = end + 1;
+        }
+        return source.substring(0, insert) + lines + source.substring(insert);
+    }
+
+    //
+    // SHA-1 of parts, for telling programs apart in the binary cache
+    //
+    public static byte[] Key(String... parts)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);     // every Java and Android has it
+        }
+        for (String part : parts)
+        {
+            byte[] bytes = part.getBytes(UTF8);
+            digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());    // "ab"+"c" != "a"+"bc"
+            digest.update(bytes);
+        }
+        return digest.digest();
+    }
+
+    private static String Join(String[] names)
+    {
+        StringBuilder joined = new StringBuilder();
+        for (String name : names)
+            joined.append(name).append(',');
+        return joined.toString();
+    }
+}
@@ -0,0 +1,190 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * A compiled and linked GL program, with its attribute and uniform locations.
+ * The locations of the names given to the CTOR are looked up once, right after linking, so the
+ * draw code never has to call glGet*Location (a string lookup in the driver) per frame.
+ * Attributes are bound to locations 0..n-1 in the order they are given.
+ * <p>
+ * A program can also be created from the binary of an earlier link (see GetBinary() and
+ * ShaderManager), which skips compiling and linking.
+ * <p>
+ * Must be created on the GL thread.
+ */
+
+public class ShaderProgram
+{
+    // GLES30, not in GLES20
+    static final int GL_PROGRAM_BINARY_RETRIEVABLE_HINT = 0x8257;
+    static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+
+    private int mHandle;
+    private HashMap<String, Integer> mAttribLocations = new HashMap<>();
+    private HashMap<String, Integer> mUniformLocations = new HashMap<>();
+
+    //
+    // CTOR
+    // compile, link, then resolve all the locations. Throws if compiling or linking fails.
+    //
+    public ShaderProgram(GLApi gl, String vertexShaderCode, String fragmentShaderCode,
+                         String[] attributes, String[] uniforms)
+    {
+        this(gl, vertexShaderCode, fragmentShaderCode, attributes, uniforms, false);
+    }
+
+    //
+    // retrievable: ask the driver to keep the binary for GetBinary() (ES 3 only)
+    //
+    public ShaderProgram(GLApi gl, String vertexShaderCode, String fragmentShaderCode,
+                         String[] attributes, String[] uniforms, boolean retrievable)
+    {
+        int vertexShader = CreateShader(gl, GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = CreateShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        mHandle = gl.glCreateProgram();
+        if (mHandle == 0)
+            throw new RuntimeException("Error creating program.");
+
+        gl.glAttachShader(mHandle, vertexShader);
+        gl.glAttachShader(mHandle, fragmentShader);
+        for (int i = 0; i < attributes.length; i++)
+            gl.glBindAttribLocation(mHandle, i, attributes[i]);
+        if (retrievable)
+            gl.glProgramParameteri(mHandle, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        gl.glLinkProgram(mHandle);
+
+        // the program keeps the compiled code, the shader objects aren't needed anymore
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(mHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == GLES20.GL_FALSE)
+        {
+            String log = gl.glGetProgramInfoLog(mHandle);
+            gl.glDeleteProgram(mHandle);
+            mHandle = 0;
+            throw new RuntimeException("Error linking program: " + log);
+        }
+
+        ResolveLocations(gl, attributes, uniforms);
+    }
+
+    private ShaderProgram(int handle)
+    {
+        mHandle = handle;
+    }
+
+    //
+    // The program of a binary from GetBinary(), null if the driver rejects it (another driver
+    // version, or another GPU). The attributes are where they were bound when it was linked.
+    //
+    public static ShaderProgram FromBinary(GLApi gl, int binaryFormat, ByteBuffer binary,
+                                           String[] attributes, String[] uniforms)
+    {
+        int handle = gl.glCreateProgram();
+        if (handle == 0)
+            throw new RuntimeException("Error creating program.");
+        gl.glProgramBinary(handle, binaryFormat, binary, binary.remaining());
+
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == GLES20.GL_FALSE)
+        {
+            gl.glDeleteProgram(handle);
+            return null;
+        }
+
+        ShaderProgram program = new ShaderProgram(handle);
+        program.ResolveLocations(gl, attributes, uniforms);
+        return program;
+    }
+
+    //
+    // The linked program as the driver stores it, its format in binaryFormat[0], null if the
+    // driver doesn't give it (ES 3 only)
+    //
+    public ByteBuffer GetBinary(GLApi gl, int[] binaryFormat)
+    {
+        int[] length = new int[1];
+        gl.glGetProgramiv(mHandle, GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0)
+            return null;
+
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]);
+        gl.glGetProgramBinary(mHandle, length[0], length, 0, binaryFormat, 0, binary);
+        if (length[0] <= 0)
+            return null;
+        binary.limit(length[0]);
+        return binary;
+    }
+
+    private void ResolveLocations(GLApi gl, String[] attributes, String[] uniforms)
+    {
+        for (String attribute : attributes)
+            mAttribLocations.put(attribute, gl.glGetAttribLocation(mHandle, attribute));
+        for (String uniform : uniforms)
+            mUniformLocations.put(uniform, gl.glGetUniformLocation(mHandle, uniform));
+    }
+
+    private static int CreateShader(GLApi gl, int type, String shaderCode)
+    {
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, shaderCode);
+        gl.glCompileShader(shader);
+
+        final int[] compileStatus = new int[1];
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+        if (compileStatus[0] == GLES20.GL_FALSE)
+        {
+            String log = gl.glGetShaderInfoLog(shader);
+            gl.glDeleteShader(shader);
+            throw new RuntimeException("Error compiling " +
+                    (type == GLES20.GL_VERTEX_SHADER ? "vertex" : "fragment") + " shader: " + log);
+        }
+        return shader;
+    }
+
+    public int GetHandle()      { return mHandle; }
+
+    //
+    // Cached location of an attribute given to the CTOR, -1 if the linker dropped it as unused.
+    // Asking for a name that wasn't given is a bug, and throws instead of querying GL.
+    //
+    public int GetAttribLocation(String name)
+    {
+        return GetLocation(mAttribLocations, "attribute", name);
+    }
+
+    public int GetUniformLocation(String name)
+    {
+        return GetLocation(mUniformLocations, "uniform", name);
+    }
+
+    private static int GetLocation(HashMap<String, Integer> locations, String kind, String name)
+    {
+        Integer location = locations.get(name);
+        if (location == null)
+            throw new IllegalArgumentException("No " + kind + " named " + name + " was resolved");
+        return location;
+    }
+
+    public void Use(GLApi gl)
+    {
+        gl.glUseProgram(mHandle);
+    }
+
+    public void Release(GLApi gl)
+    {
+        if (mHandle != 0)
+        {
+            gl.glDeleteProgram(mHandle);
+            mHandle = 0;
+        }
+    }
+}
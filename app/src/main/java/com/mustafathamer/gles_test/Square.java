@@ -31,12 +31,6 @@ public class Square
     // Set color with red, green, blue and alpha (opacity) values
     float color[] = {0.63671875f, 0.76953125f, 0.22265625f, 1.0f};
 
-    //
-    // for drawing
-    //
-    private int mPositionHandle;
-    private int mColorHandle;
-
     private final int vertexCount = squareCoords.length / COORDS_PER_VERTEX;
     private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
@@ -66,40 +60,31 @@ public class Square
 
     }
 
-    public void draw(float[] mvpMatrix)
-    { // pass in the calculated transformation matrix
+    public void draw(MyGLRenderer renderer)
+    {
+        GLApi gl = renderer.GetGL();
+        int positionHandle = renderer.GetPositionHandle();
+
         // Add program to OpenGL ES environment
 //        GLES20.glUseProgram(mProgram);
 
-        // get handle to vertex shader's vPosition member
-  //      mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-
         // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        gl.glEnableVertexAttribArray(positionHandle);
 
         // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX,
+        gl.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX,
                 GLES20.GL_FLOAT, false,
                 vertexStride, vertexBuffer);
 
-        // get handle to fragment shader's vColor member
-//        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-
-        // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-
-        // get handle to shape's transformation matrix
-//        int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-
-        // Pass the projection and view transformation to the shader
-//        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        // Set color for drawing the triangle (handle resolved once by the renderer)
+        gl.glUniform4fv(renderer.GetDifColorHandle(), 1, color, 0);
 
         // Draw the square using the draw list buffer
-        GLES20.glDrawElements(
+        gl.glDrawElements(
                 GLES20.GL_TRIANGLES, drawOrder.length,
                 GLES20.GL_UNSIGNED_SHORT, drawListBuffer);
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(positionHandle);
     }
 }
@@ -0,0 +1,268 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the static scene nodes into one mesh, drawn with one draw call per material instead of
+ * one (or one per material) per object.
+ * <p>
+ * The vertices of every static node whose renderable is StaticGeometry are transformed into world
+ * space once and appended to a shared vertex buffer, and their triangles are regrouped by material
+ * in a shared index buffer. The merged nodes are then skipped by SceneNode.Draw().
+ * Everything is rebuilt when the static set changes (a node flagged or unflagged, moved, added or
+ * removed, or a mesh that finished loading), a frame without changes costs a flag check.
+ * <p>
+ * All the static geometry is drawn with the object program, the only one lit objects use, so
+ * grouping by material is grouping by material and shader.
+ */
+
+public class StaticBatcher
+{
+    private static final float[] IDENTITY = new float[16];
+    static
+    {
+        MatrixMath.SetIdentity(IDENTITY);
+    }
+
+    private final ArrayList<SceneNode> mStaticNodes = new ArrayList<>();
+    private final ArrayList<SceneNode> mMergedNodes = new ArrayList<>();
+    private final ArrayList<SceneNode> mPendingNodes = new ArrayList<>();   // waiting for their mesh
+
+    // the merged mesh, null when nothing is merged. In several parts, each with its ranges, when it
+    // needs int indices and the GPU can't do them (see MeshData.SplitForShortIndices).
+    private VertexBufferMesh[] mVertexBufferMeshes;
+    private List<List<MeshRange>> mPartRanges;
+    private ObjMaterial[] mMaterials;
+    private int mNumDrawCalls;
+    private Bounds mBounds;
+    private int mNumBuilds;
+
+    // shader attribute location per VertexLayout.ATTRIB_* slot
+    private final int[] mAttribLocations = new int[VertexLayout.NUM_ATTRIBS];
+
+    public int GetNumMergedNodes()      { return mMergedNodes.size(); }
+    public int GetNumBuilds()           { return mNumBuilds; }
+
+    // draw calls the merged mesh takes, one per material
+    public int GetNumDrawCalls()        { return mNumDrawCalls; }
+
+    //
+    // Rebuild the merged mesh if the static nodes below root changed. Call on the GL thread once
+    // per frame, after root.UpdateWorldMatrices(). Returns true if it was rebuilt.
+    //
+    public boolean Update(GLApi gl, SceneNode root)
+    {
+        if (!root.HasStaticChanges() && !IsPendingReady())
+            return false;
+        Rebuild(gl, root);
+        return true;
+    }
+
+    private boolean IsPendingReady()
+    {
+        for (int i = 0; i < mPendingNodes.size(); i++)
+        {
+            if (((StaticGeometry) mPendingNodes.get(i).GetRenderable()).HasStaticMesh())
+                return true;
+        }
+        return false;
+    }
+
+    private void Rebuild(GLApi gl, SceneNode root)
+    {
+        for (int i = 0; i < mMergedNodes.size(); i++)
+            mMergedNodes.get(i).SetMerged(false);
+        mMergedNodes.clear();
+        mPendingNodes.clear();
+        mStaticNodes.clear();
+        root.CollectStatic(mStaticNodes);
+
+        // shared meshes are only fetched once
+        Map<StaticGeometry, MeshData> meshes = new IdentityHashMap<>();
+        List<MeshData> nodeMeshes = new ArrayList<>();
+        List<float[]> worldMatrices = new ArrayList<>();
+        for (int i = 0; i < mStaticNodes.size(); i++)
+        {
+            SceneNode node = mStaticNodes.get(i);
+            if (!(node.GetRenderable() instanceof StaticGeometry))
+                continue;       // drawn on its own
+            StaticGeometry geometry = (StaticGeometry) node.GetRenderable();
+            if (!geometry.HasStaticMesh())
+            {
+                mPendingNodes.add(node);
+                continue;
+            }
+
+            MeshData mesh = meshes.get(geometry);
+            if (mesh == null)
+            {
+                mesh = geometry.GetStaticMesh();
+                meshes.put(geometry, mesh);
+            }
+            nodeMeshes.add(mesh);
+            worldMatrices.add(node.GetWorldMatrix());
+            mMergedNodes.add(node);
+            node.SetMerged(true);
+        }
+        mStaticNodes.clear();
+
+        if (mVertexBufferMeshes != null)
+        {
+            for (VertexBufferMesh mesh : mVertexBufferMeshes)
+                mesh.Release(gl);
+        }
+        mVertexBufferMeshes = null;
+        mPartRanges = null;
+        mMaterials = null;
+        mNumDrawCalls = 0;
+        mNumBuilds++;
+        if (nodeMeshes.isEmpty())
+            return;
+
+        MeshData merged = Merge(nodeMeshes, worldMatrices);
+        List<MeshData> parts;
+        if (merged.NeedsIntIndices() && !VertexBufferMesh.SupportsIntIndices(gl))
+            parts = merged.SplitForShortIndices();
+        else
+            parts = Collections.singletonList(merged);
+        mVertexBufferMeshes = new VertexBufferMesh[parts.size()];
+        mPartRanges = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++)
+        {
+            MeshData part = parts.get(i);
+            VertexLayout layout = VertexLayout.ForMesh(part);
+            boolean intIndices = part.NeedsIntIndices();
+            mVertexBufferMeshes[i] = new VertexBufferMesh(layout, layout.Interleave(part),
+                    intIndices ? part.GetIndices().ToDirectBuffer() : part.GetIndices().ToDirectShortBuffer(),
+                    intIndices ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT, part.GetNumElements());
+            mPartRanges.add(part.GetRanges());
+            mNumDrawCalls += part.GetRanges().size();
+        }
+        mMaterials = merged.GetMaterials();
+        mBounds = merged.ComputeBounds();
+    }
+
+    //
+    // Transform each mesh by its world matrix and merge them: the vertices one mesh after the
+    // other, the triangles grouped by material (in order of first use), one range per material.
+    // Normals are transformed by the upper 3x3 of the matrix and renormalized, which is exact for
+    // the uniform scales of Transform.
+    //
+    public static MeshData Merge(List<MeshData> meshes, List<float[]> worldMatrices)
+    {
+        int numVerts = 0;
+        boolean hasUVs = true;
+        for (int m = 0; m < meshes.size(); m++)
+        {
+            numVerts += meshes.get(m).GetNumVerts();
+            hasUVs &= meshes.get(m).HasUVs();
+        }
+
+        FloatArray positions = new FloatArray(numVerts * 3);
+        FloatArray normals = new FloatArray(numVerts * 3);
+        FloatArray uvs = new FloatArray(numVerts * 2);
+        Map<ObjMaterial, IntArray> trianglesByMaterial = new LinkedHashMap<>();
+
+        int base = 0;
+        for (int m = 0; m < meshes.size(); m++)
+        {
+            MeshData mesh = meshes.get(m);
+            float[] matrix = worldMatrices.get(m);
+            float[] srcPositions = mesh.GetPositions().GetData();
+            float[] srcNormals = mesh.GetNormals().GetData();
+            for (int v = 0; v < mesh.GetNumVerts(); v++)
+            {
+                float x = srcPositions[v * 3], y = srcPositions[v * 3 + 1], z = srcPositions[v * 3 + 2];
+                positions.Add(matrix[0] * x + matrix[4] * y + matrix[8] * z + matrix[12],
+                        matrix[1] * x + matrix[5] * y + matrix[9] * z + matrix[13],
+                        matrix[2] * x + matrix[6] * y + matrix[10] * z + matrix[14]);
+
+                float nx = srcNormals[v * 3], ny = srcNormals[v * 3 + 1], nz = srcNormals[v * 3 + 2];
+                float tx = matrix[0] * nx + matrix[4] * ny + matrix[8] * nz;
+                float ty = matrix[1] * nx + matrix[5] * ny + matrix[9] * nz;
+                float tz = matrix[2] * nx + matrix[6] * ny + matrix[10] * nz;
+                float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+                if (length > 0)
+                    normals.Add(tx / length, ty / length, tz / length);
+                else
+                    normals.Add(0, 0, 0);
+            }
+            if (hasUVs)
+                uvs.AddAll(mesh.GetUVs().GetData(), 0, mesh.GetNumVerts() * 2);
+            else
+                uvs.Resize(uvs.Size() + mesh.GetNumVerts() * 2);
+
+            List<MeshRange> ranges = mesh.GetRanges();
+            for (int r = 0; r < ranges.size(); r++)
+            {
+                MeshRange range = ranges.get(r);
+                ObjMaterial material = mesh.GetMaterial(range);
+                IntArray triangles = trianglesByMaterial.get(material);
+                if (triangles == null)
+                {
+                    triangles = new IntArray();
+                    trianglesByMaterial.put(material, triangles);
+                }
+                int end = range.GetFirstElement() + range.GetNumElements();
+                for (int e = range.GetFirstElement(); e < end; e++)
+                    triangles.Add(base + (mesh.IsIndexed() ? mesh.GetIndices().Get(e) : e));
+            }
+            base += mesh.GetNumVerts();
+        }
+
+        IntArray indices = new IntArray();
+        List<MeshRange> ranges = new ArrayList<>();
+        ObjMaterial[] materials = new ObjMaterial[trianglesByMaterial.size()];
+        for (Map.Entry<ObjMaterial, IntArray> entry : trianglesByMaterial.entrySet())
+        {
+            IntArray triangles = entry.getValue();
+            int material = ranges.size();
+            materials[material] = entry.getKey();
+            ranges.add(new MeshRange(material, indices.Size(), triangles.Size()));
+            indices.AddAll(triangles.GetData(), 0, triangles.Size());
+        }
+        return new MeshData(positions, normals, uvs, indices, hasUVs, ranges, materials);
+    }
+
+    //
+    // Draw the merged mesh with the object program, skipped when it's entirely outside frustum
+    // (null to always draw)
+    //
+    public void Draw(MyGLRenderer renderer, Frustum frustum)
+    {
+        if (mVertexBufferMeshes == null)
+            return;
+        if (frustum != null && !frustum.IsVisible(mBounds, IDENTITY))
+            return;
+
+        GLApi gl = renderer.GetGL();
+
+        // already in world space
+        renderer.SetModelMatrix(IDENTITY);
+
+        mAttribLocations[VertexLayout.ATTRIB_POSITION] = renderer.GetPositionHandle();
+        mAttribLocations[VertexLayout.ATTRIB_NORMAL] = renderer.GetNormalHandle();
+        mAttribLocations[VertexLayout.ATTRIB_UV] = renderer.GetUVHandle();
+        for (int p = 0; p < mVertexBufferMeshes.length; p++)
+        {
+            VertexBufferMesh mesh = mVertexBufferMeshes[p];
+            List<MeshRange> ranges = mPartRanges.get(p);
+            mesh.Bind(gl, mAttribLocations);
+            boolean hasUVs = mesh.GetLayout().Has(VertexLayout.ATTRIB_UV);
+            for (int i = 0; i < ranges.size(); i++)
+            {
+                MeshRange range = ranges.get(i);
+                ObjModel.SetMaterial(gl, renderer, mMaterials[range.GetMaterial()], hasUVs);
+                mesh.DrawRange(gl, range.GetFirstElement(), range.GetNumElements());
+            }
+            mesh.Unbind(gl, mAttribLocations);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * A Renderable whose triangles a StaticBatcher can merge with those of other static nodes: it
+ * hands out its object space mesh, and the batcher draws it from then on.
+ */
+
+public interface StaticGeometry
+{
+    //
+    // false while the mesh isn't available yet (ex: still loading)
+    //
+    boolean HasStaticMesh();
+
+    //
+    // Object space mesh: indexed, with normals, triangles grouped by material into ranges.
+    // Only called when HasStaticMesh(), and only when the static nodes changed.
+    //
+    MeshData GetStaticMesh();
+}
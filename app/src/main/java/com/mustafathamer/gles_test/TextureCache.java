@@ -0,0 +1,133 @@
+package com.mustafathamer.gles_test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The bookkeeping of TextureManager: GL textures by asset path, with the GPU memory they take,
+ * kept under a budget by evicting the least recently used ones.
+ * <p>
+ * Textures used in the current frame are never evicted, the cache goes over budget instead: with
+ * a budget smaller than what one frame draws, evicting them would reload every texture every
+ * frame. Call BeginFrame() once per frame.
+ * <p>
+ * Counts hits, misses and evictions for tuning the budget. It makes no GL calls itself, the
+ * listener deletes the evicted textures.
+ */
+
+public class TextureCache
+{
+    public static final int NOT_CACHED = -1;
+
+    public interface Listener
+    {
+        // texture was dropped from the cache, delete it
+        void OnEvicted(String path, int texture);
+    }
+
+    private static class Entry
+    {
+        final int mTexture;
+        final long mBytes;
+        int mLastUsedFrame;
+
+        Entry(int texture, long bytes, int frame)
+        {
+            mTexture = texture;
+            mBytes = bytes;
+            mLastUsedFrame = frame;
+        }
+    }
+
+    // in access order, least recently used first
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Listener mListener;
+    private long mBudgetBytes;
+    private long mUsedBytes;
+    private int mFrame;
+
+    private int mNumHits;
+    private int mNumMisses;
+    private int mNumEvictions;
+
+    //
+    // CTOR
+    //
+    public TextureCache(long budgetBytes, Listener listener)
+    {
+        mBudgetBytes = budgetBytes;
+        mListener = listener;
+    }
+
+    public long GetBudgetBytes()        { return mBudgetBytes; }
+    public long GetUsedBytes()          { return mUsedBytes; }
+    public int Size()                   { return mEntries.size(); }
+    public int GetNumHits()             { return mNumHits; }
+    public int GetNumMisses()           { return mNumMisses; }
+    public int GetNumEvictions()        { return mNumEvictions; }
+
+    public void BeginFrame()
+    {
+        mFrame++;
+    }
+
+    //
+    // The texture of path, marked as used this frame, or NOT_CACHED
+    //
+    public int Get(String path)
+    {
+        Entry entry = mEntries.get(path);
+        if (entry == null)
+        {
+            mNumMisses++;
+            return NOT_CACHED;
+        }
+        mNumHits++;
+        entry.mLastUsedFrame = mFrame;
+        return entry.mTexture;
+    }
+
+    //
+    // Add the texture of path, taking bytes of GPU memory, as used this frame. Evicts older
+    // textures if that goes over budget.
+    //
+    public void Put(String path, int texture, long bytes)
+    {
+        Entry old = mEntries.put(path, new Entry(texture, bytes, mFrame));
+        if (old != null)
+        {
+            mUsedBytes -= old.mBytes;
+            if (old.mTexture != texture)
+                mListener.OnEvicted(path, old.mTexture);
+        }
+        mUsedBytes += bytes;
+        Trim();
+    }
+
+    public void SetBudgetBytes(long budgetBytes)
+    {
+        mBudgetBytes = budgetBytes;
+        Trim();
+    }
+
+    //
+    // Evict least recently used textures until under budget, stopping at the first one used
+    // this frame (all the ones after it were used this frame too)
+    //
+    private void Trim()
+    {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        while (mUsedBytes > mBudgetBytes && it.hasNext())
+        {
+            Map.Entry<String, Entry> eldest = it.next();
+            Entry entry = eldest.getValue();
+            if (entry.mLastUsedFrame == mFrame)
+                break;
+            it.remove();
+            mUsedBytes -= entry.mBytes;
+            mNumEvictions++;
+            mListener.OnEvicted(eldest.getKey(), entry.mTexture);
+        }
+    }
+}
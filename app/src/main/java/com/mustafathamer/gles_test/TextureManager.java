@@ -0,0 +1,257 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+
+/**
+ * The GL textures of the material maps (map_Kd, map_Ka), by asset path, so materials and models
+ * that use the same image share one texture.
+ * <p>
+ * An image is loaded the first time it is asked for, on the model loader's worker: its ETC1
+ * version with all the mip levels (see TextureCompiler and KtxFile) when the GPU supports ETC1
+ * and there is one, otherwise the image itself, decoded, scaled to a power of two and mipmapped
+ * (see MipMapGenerator) into RGBA. It is uploaded at the start of a frame on the GL thread.
+ * Until then GetTexture() returns NO_TEXTURE and the material draws with its colors only.
+ * Images that fail to load are remembered as NO_TEXTURE, not retried.
+ * <p>
+ * The textures are kept under a GPU memory budget, least recently used ones are deleted first
+ * and reloaded if needed again (see TextureCache).
+ * <p>
+ * Must be used on the GL thread. Decoding is left to a Decoder, so this can be tested on the JVM.
+ */
+
+public class TextureManager implements TextureCache.Listener
+{
+    public static final int NO_TEXTURE = 0;
+
+    // larger images are scaled down, every ES 2 GPU in use can do 2048
+    public static final int MAX_SIZE = 2048;
+
+    public interface Decoder
+    {
+        //
+        // Runs on the worker thread: the pixels of the image at path, ARGB, top row first, and its
+        // width and height in size[0] and size[1]
+        //
+        int[] Decode(String path, int[] size) throws Exception;
+
+        //
+        // Runs on the worker thread: the bytes of the file at path, null if there is none
+        //
+        ByteBuffer Read(String path) throws Exception;
+    }
+
+    // what the worker hands to the GL thread: the data of each level, bottom row first. RGBA
+    // bytes, or compressed in internalFormat
+    private static class Image
+    {
+        int mWidth;
+        int mHeight;
+        int mInternalFormat = GLES20.GL_RGBA;
+        ByteBuffer[] mLevels;
+        long mBytes;
+    }
+
+    private final GLApi mGL;
+    private final ModelLoader mLoader;
+    private final Decoder mDecoder;
+    private final TextureCache mCache;
+    private final HashSet<String> mPending = new HashSet<>();
+    private int mNumFailed;
+    private final boolean mUseEtc1;
+    private int mNumCompressed;
+    private final int[] mTextureName = new int[1];
+
+    //
+    // CTOR
+    // loader: runs the decoding, and hands the images back from its DeliverFinished()
+    // Must be called on the GL thread, it checks for ETC1 support.
+    //
+    public TextureManager(GLApi gl, ModelLoader loader, Decoder decoder, long budgetBytes)
+    {
+        mGL = gl;
+        mLoader = loader;
+        mDecoder = decoder;
+        mCache = new TextureCache(budgetBytes, this);
+        mUseEtc1 = SupportsEtc1(gl);
+    }
+
+    public static boolean SupportsEtc1(GLApi gl)
+    {
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        if (extensions == null)
+            return false;
+        for (String extension : extensions.split(" "))
+        {
+            if (extension.equals(Etc1.EXTENSION))
+                return true;
+        }
+        return false;
+    }
+
+    public TextureCache GetCache()      { return mCache; }
+    public int GetNumPending()          { return mPending.size(); }
+    public int GetNumFailed()           { return mNumFailed; }
+    public int GetNumCompressed()       { return mNumCompressed; }      // loaded as ETC1
+    public boolean UsesEtc1()           { return mUseEtc1; }
+
+    public void BeginFrame()
+    {
+        mCache.BeginFrame();
+    }
+
+    //
+    // The texture of the image at path, or NO_TEXTURE while it loads (the first call starts
+    // loading it) or if it couldn't be loaded
+    //
+    public int GetTexture(String path)
+    {
+        if (mPending.contains(path))
+            return NO_TEXTURE;
+        int texture = mCache.Get(path);
+        if (texture != TextureCache.NOT_CACHED)
+            return texture;
+
+        Load(path);
+        return NO_TEXTURE;
+    }
+
+    private void Load(final String path)
+    {
+        final boolean useEtc1 = mUseEtc1;
+        mPending.add(path);
+        mLoader.Submit(new ModelLoader.Job<Image>()
+        {
+            @Override
+            public Image Load() throws Exception
+            {
+                return Prepare(mDecoder, path, useEtc1);
+            }
+        }, new ModelLoader.Listener<Image>()
+        {
+            @Override
+            public void OnLoaded(GLApi gl, Image image)
+            {
+                mPending.remove(path);
+                if (image.mInternalFormat != GLES20.GL_RGBA)
+                    mNumCompressed++;
+                mCache.Put(path, Upload(image), image.mBytes);
+            }
+
+            @Override
+            public void OnFailed(Exception e)
+            {
+                mPending.remove(path);
+                mNumFailed++;
+                mCache.Put(path, NO_TEXTURE, 0);
+            }
+        });
+    }
+
+    //
+    // Read the compressed version, or decode, scale and mipmap: everything but the upload. Runs
+    // on the worker.
+    //
+    private static Image Prepare(Decoder decoder, String path, boolean useEtc1) throws Exception
+    {
+        if (useEtc1)
+        {
+            ByteBuffer data = decoder.Read(KtxFile.AssetName(path));
+            if (data != null)
+                return FromKtx(KtxFile.Read(data), path);
+        }
+
+        int[] size = new int[2];
+        int[] pixels = decoder.Decode(path, size);
+        Image image = new Image();
+        image.mWidth = MipMapGenerator.ToPowerOfTwo(size[0], MAX_SIZE);
+        image.mHeight = MipMapGenerator.ToPowerOfTwo(size[1], MAX_SIZE);
+        pixels = MipMapGenerator.Resize(pixels, size[0], size[1], image.mWidth, image.mHeight);
+
+        int[][] levels = MipMapGenerator.Generate(pixels, image.mWidth, image.mHeight);
+        image.mLevels = new ByteBuffer[levels.length];
+        for (int level = 0; level < levels.length; level++)
+        {
+            image.mLevels[level] = ToRGBA(levels[level], Math.max(1, image.mWidth >> level),
+                    Math.max(1, image.mHeight >> level));
+        }
+        image.mBytes = MipMapGenerator.ByteSize(image.mWidth, image.mHeight);
+        return image;
+    }
+
+    private static Image FromKtx(KtxFile ktx, String path) throws IOException
+    {
+        if (ktx.GetInternalFormat() != Etc1.GL_ETC1_RGB8_OES)
+            throw new IOException(KtxFile.AssetName(path) + " isn't ETC1");
+        Image image = new Image();
+        image.mWidth = ktx.GetWidth();
+        image.mHeight = ktx.GetHeight();
+        image.mInternalFormat = ktx.GetInternalFormat();
+        image.mLevels = new ByteBuffer[ktx.GetNumLevels()];
+        for (int level = 0; level < image.mLevels.length; level++)
+            image.mLevels[level] = ktx.GetLevel(level);
+        image.mBytes = ktx.GetDataSize();
+        return image;
+    }
+
+    //
+    // ARGB ints to RGBA bytes, flipped: GL reads the first row as t = 0, which is the bottom of
+    // the image for OBJ texture coordinates
+    //
+    private static ByteBuffer ToRGBA(int[] pixels, int width, int height)
+    {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(width * height * MipMapGenerator.BYTES_PER_TEXEL)
+                .order(ByteOrder.BIG_ENDIAN);
+        for (int y = height - 1; y >= 0; y--)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int argb = pixels[y * width + x];
+                bytes.putInt((argb << 8) | (argb >>> 24));
+            }
+        }
+        bytes.position(0);
+        return bytes;
+    }
+
+    //
+    // Into a new texture, left bound on the active unit
+    //
+    private int Upload(Image image)
+    {
+        mGL.glGenTextures(1, mTextureName, 0);
+        int texture = mTextureName[0];
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        for (int level = 0; level < image.mLevels.length; level++)
+        {
+            int width = Math.max(1, image.mWidth >> level);
+            int height = Math.max(1, image.mHeight >> level);
+            if (image.mInternalFormat == GLES20.GL_RGBA)
+                mGL.glTexImage2D(GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA,
+                        GLES20.GL_UNSIGNED_BYTE, image.mLevels[level]);
+            else
+                mGL.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, image.mInternalFormat, width, height, 0,
+                        image.mLevels[level].remaining(), image.mLevels[level]);
+        }
+        // a file with the full size level only can't be mipmapped
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                image.mLevels.length > 1 ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+        mGL.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+        return texture;
+    }
+
+    @Override
+    public void OnEvicted(String path, int texture)
+    {
+        if (texture == NO_TEXTURE)
+            return;
+        mTextureName[0] = texture;
+        mGL.glDeleteTextures(1, mTextureName, 0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Position, rotation and scale of an object, with its model matrix cached.
+ * The matrix is translate * rotateY * rotateX * scale (same as translateM, rotateM y, rotateM x,
+ * scaleM on an identity matrix), and is only recomputed by GetMatrix() after a setter actually
+ * changed a value. So an object that isn't moving costs nothing per frame.
+ */
+
+public class Transform
+{
+    private float mX, mY, mZ;
+    private float mXAngle, mYAngle;       // degrees
+    private float mScale = 1;
+
+    private final float[] mMatrix = new float[16];
+    private boolean mDirty = true;
+
+    public float GetXAngle()    { return mXAngle; }
+    public float GetYAngle()    { return mYAngle; }
+    public float GetScale()     { return mScale; }
+    public boolean IsDirty()    { return mDirty; }
+
+    public void SetPosition(float x, float y, float z)
+    {
+        if (x != mX || y != mY || z != mZ)
+        {
+            mX = x;
+            mY = y;
+            mZ = z;
+            mDirty = true;
+        }
+    }
+
+    public void SetRotation(float xAngle, float yAngle)
+    {
+        if (xAngle != mXAngle || yAngle != mYAngle)
+        {
+            mXAngle = xAngle;
+            mYAngle = yAngle;
+            mDirty = true;
+        }
+    }
+
+    public void SetScale(float scale)
+    {
+        if (scale != mScale)
+        {
+            mScale = scale;
+            mDirty = true;
+        }
+    }
+
+    //
+    // The model matrix, recomputed only if something changed since the last call
+    //
+    public float[] GetMatrix()
+    {
+        if (mDirty)
+        {
+            Compute();
+            mDirty = false;
+        }
+        return mMatrix;
+    }
+
+    private void Compute()
+    {
+        double xRadians = Math.toRadians(mXAngle);
+        double yRadians = Math.toRadians(mYAngle);
+        float sx = (float) Math.sin(xRadians), cx = (float) Math.cos(xRadians);
+        float sy = (float) Math.sin(yRadians), cy = (float) Math.cos(yRadians);
+
+        // columns of rotateY * rotateX, times the scale
+        mMatrix[0] = cy * mScale;
+        mMatrix[1] = 0;
+        mMatrix[2] = -sy * mScale;
+        mMatrix[3] = 0;
+
+        mMatrix[4] = sy * sx * mScale;
+        mMatrix[5] = cx * mScale;
+        mMatrix[6] = cy * sx * mScale;
+        mMatrix[7] = 0;
+
+        mMatrix[8] = sy * cx * mScale;
+        mMatrix[9] = -sx * mScale;
+        mMatrix[10] = cy * cx * mScale;
+        mMatrix[11] = 0;
+
+        mMatrix[12] = mX;
+        mMatrix[13] = mY;
+        mMatrix[14] = mZ;
+        mMatrix[15] = 1;
+    }
+}
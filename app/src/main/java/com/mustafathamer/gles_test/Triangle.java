@@ -32,12 +32,6 @@ public class Triangle
     // Set color with red, green, blue and alpha (opacity) values
     float color[] = {0.63671875f, 0.76953125f, 0.22265625f, 1.0f};
 
-    //
-    // for drawing
-    //
-    private int mPositionHandle;
-    private int mColorHandle;
-
     private final int vertexCount = triangleCoords.length / COORDS_PER_VERTEX;
     private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
@@ -65,34 +59,26 @@ public class Triangle
     //
     //
     //
-    public void draw(float[] mvpMatrix)
-    { // pass in the calculated transformation matrix
-        // Add program to OpenGL ES environment
+    public void draw(MyGLRenderer renderer)
+    {
+        GLApi gl = renderer.GetGL();
+        int positionHandle = renderer.GetPositionHandle();
 
         // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        gl.glEnableVertexAttribArray(positionHandle);
 
         // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX,
+        gl.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX,
                 GLES20.GL_FLOAT, false,
                 vertexStride, vertexBuffer);
 
-        // get handle to fragment shader's vColor member
-//        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-
-        // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-
-        // get handle to shape's transformation matrix
-//        int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-
-        // Pass the projection and view transformation to the shader
- //       GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        // Set color for drawing the triangle (handle resolved once by the renderer)
+        gl.glUniform4fv(renderer.GetDifColorHandle(), 1, color, 0);
 
         // Draw the triangle
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(positionHandle);
     }
 }
\ No newline at end of file
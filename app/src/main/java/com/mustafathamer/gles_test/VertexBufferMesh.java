@@ -0,0 +1,170 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * A mesh living in GL buffer objects: one interleaved GL_STATIC_DRAW vertex buffer (VBO) and an
+ * optional index buffer (IBO).
+ * The data is uploaded once, on the first draw, after which drawing only binds the buffers and
+ * sets attribute offsets, nothing is copied from Java memory per frame.
+ * All GL calls go through GLApi so this can be exercised with a fake on the JVM.
+ */
+
+public class VertexBufferMesh
+{
+    private static final int NO_BUFFER = 0;
+
+    // ES 2 extension for GL_UNSIGNED_INT indices, without it meshes of more than 65536 vertices
+    // have to be split (see MeshData.SplitForShortIndices)
+    public static final String OES_ELEMENT_INDEX_UINT = "GL_OES_element_index_uint";
+
+    private VertexLayout mLayout;
+    // The data to upload. Only this mesh's references are dropped after the upload, the buffers
+    // are freed when the caller lets go of them too (ObjFileLoader keeps its own for the model's
+    // life, GetMeshData(), instancing and static batching read them).
+    private ByteBuffer mVertices;
+    private Buffer mIndices;            // null if not indexed
+    private int mIndexType;             // GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+    private int mIndexSize;             // bytes per index
+    private int mNumElements;           // index count, or vertex count if not indexed
+    private boolean mIndexed;
+
+    private final int[] mBufferIds = {NO_BUFFER, NO_BUFFER};   // VBO, IBO
+
+    //
+    // CTOR
+    // indices may be null to draw the vertices in order, indexType is then ignored
+    //
+    public VertexBufferMesh(VertexLayout layout, ByteBuffer vertices, Buffer indices, int indexType, int numElements)
+    {
+        mLayout = layout;
+        mVertices = vertices;
+        mIndices = indices;
+        mIndexType = indexType;
+        mIndexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+        mNumElements = numElements;
+        mIndexed = indices != null;
+    }
+
+    //
+    // Whether the GL can draw with GL_UNSIGNED_INT indices. Must be called on the GL thread.
+    //
+    public static boolean SupportsIntIndices(GLApi gl)
+    {
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        if (extensions == null)
+            return false;
+        for (String extension : extensions.split(" "))
+        {
+            if (extension.equals(OES_ELEMENT_INDEX_UINT))
+                return true;
+        }
+        return false;
+    }
+
+    public VertexLayout GetLayout()     { return mLayout; }
+    public int GetNumElements()         { return mNumElements; }
+    public boolean IsIndexed()          { return mIndexed; }
+    public boolean IsUploaded()         { return mBufferIds[0] != NO_BUFFER; }
+
+    //
+    // Create the buffer objects and copy the data into them. Must be called on the GL thread.
+    //
+    public void Upload(GLApi gl)
+    {
+        if (IsUploaded())
+            return;
+
+        gl.glGenBuffers(mIndexed ? 2 : 1, mBufferIds, 0);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferIds[0]);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices.capacity(), mVertices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, NO_BUFFER);
+
+        if (mIndexed)
+        {
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferIds[1]);
+            gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mNumElements * mIndexSize, mIndices, GLES20.GL_STATIC_DRAW);
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, NO_BUFFER);
+        }
+
+        // the GL has its own copy now, the caller may still hold the buffers
+        mVertices = null;
+        mIndices = null;
+    }
+
+    //
+    // Draw the whole mesh as triangles. attribLocations holds the shader attribute location for
+    // each VertexLayout.ATTRIB_* slot, or -1 for attributes the shader doesn't use.
+    //
+    public void Draw(GLApi gl, int[] attribLocations)
+    {
+        Bind(gl, attribLocations);
+        DrawRange(gl, 0, mNumElements);
+        Unbind(gl, attribLocations);
+    }
+
+    //
+    // Bind the buffers and point the attributes at their offsets, uploading first if needed.
+    // Any number of DrawRange calls can follow, then Unbind.
+    //
+    public void Bind(GLApi gl, int[] attribLocations)
+    {
+        Upload(gl);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferIds[0]);
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+        {
+            int location = attribLocations[attrib];
+            if (location < 0 || !mLayout.Has(attrib))
+                continue;
+            gl.glVertexAttribPointer(location, mLayout.GetSize(attrib), mLayout.GetType(attrib), false,
+                    mLayout.GetStride(), mLayout.GetOffset(attrib));
+            gl.glEnableVertexAttribArray(location);
+        }
+
+        if (mIndexed)
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferIds[1]);
+    }
+
+    //
+    // Draw numElements indices (or vertices if not indexed) starting at firstElement
+    //
+    public void DrawRange(GLApi gl, int firstElement, int numElements)
+    {
+        if (mIndexed)
+            gl.glDrawElements(GLES20.GL_TRIANGLES, numElements, mIndexType, firstElement * mIndexSize);
+        else
+            gl.glDrawArrays(GLES20.GL_TRIANGLES, firstElement, numElements);
+    }
+
+    public void Unbind(GLApi gl, int[] attribLocations)
+    {
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+        {
+            int location = attribLocations[attrib];
+            if (location >= 0 && mLayout.Has(attrib))
+                gl.glDisableVertexAttribArray(location);
+        }
+
+        // unbind so client side arrays of other objects keep working
+        if (mIndexed)
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, NO_BUFFER);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, NO_BUFFER);
+    }
+
+    //
+    // Delete the buffer objects. Must be called on the GL thread that owns them.
+    //
+    public void Release(GLApi gl)
+    {
+        if (!IsUploaded())
+            return;
+        gl.glDeleteBuffers(mIndexed ? 2 : 1, mBufferIds, 0);
+        mBufferIds[0] = NO_BUFFER;
+        mBufferIds[1] = NO_BUFFER;
+    }
+}
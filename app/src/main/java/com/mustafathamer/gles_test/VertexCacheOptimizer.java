@@ -0,0 +1,322 @@
+package com.mustafathamer.gles_test;
+
+import java.util.List;
+
+/**
+ * Reorders an indexed mesh for the GPU's vertex caches.
+ * <p>
+ * The triangles of each range are reordered with Tom Forsyth's "Linear-Speed Vertex Cache
+ * Optimisation" (2006): vertices score higher the more recently they were used (an LRU model of
+ * the post-transform cache) and the fewer triangles they have left, and the triangle with the best
+ * score among those touching the cache is emitted next. Ranges stay where they are, so materials
+ * draw as before. Then the vertices are renumbered in the order the triangles first use them, so
+ * vertex fetch walks the vertex buffer forward instead of jumping around (pre-transform cache).
+ * <p>
+ * ComputeAcmr() simulates a FIFO post-transform cache to measure the result without a GPU.
+ * Plain Java, used by the loader and by MeshCompiler.
+ */
+
+public class VertexCacheOptimizer
+{
+    // size of the LRU cache the scores model, bigger than most real caches works well on all
+    public static final int CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE_TABLE = 64;
+
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE_TABLE];
+    static
+    {
+        for (int i = 0; i < CACHE_SIZE; i++)
+        {
+            // the 3 vertices of the last triangle get a fixed score, so it isn't reused right away
+            if (i < 3)
+                CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+            else
+                CACHE_SCORES[i] = (float) Math.pow(1.0f - (i - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        for (int i = 1; i < MAX_VALENCE_TABLE; i++)
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+    }
+
+    //
+    // Copy of mesh with its triangles and vertices reordered, same ranges. Meshes that aren't
+    // indexed are returned as is.
+    //
+    public static MeshData Optimize(MeshData mesh)
+    {
+        if (!mesh.IsIndexed())
+            return mesh;
+
+        int numVerts = mesh.GetNumVerts();
+        int[] indices = mesh.GetIndices().ToArray();
+        VertexCacheOptimizer optimizer = new VertexCacheOptimizer(numVerts);
+        List<MeshRange> ranges = mesh.GetRanges();
+        for (int r = 0; r < ranges.size(); r++)
+            optimizer.OptimizeTriangles(indices, ranges.get(r).GetFirstElement(), ranges.get(r).GetNumElements());
+
+        return ReorderVertices(mesh, indices);
+    }
+
+    //
+    // Renumber the vertices in order of first use by indices, unused ones go last
+    //
+    static MeshData ReorderVertices(MeshData mesh, int[] indices)
+    {
+        int numVerts = mesh.GetNumVerts();
+        int[] newIndex = new int[numVerts];
+        for (int v = 0; v < numVerts; v++)
+            newIndex[v] = -1;
+        int[] order = new int[numVerts];        // old vertex of each new one
+        int next = 0;
+        for (int index : indices)
+        {
+            if (newIndex[index] < 0)
+            {
+                newIndex[index] = next;
+                order[next++] = index;
+            }
+        }
+        for (int v = 0; v < numVerts; v++)
+        {
+            if (newIndex[v] < 0)
+            {
+                newIndex[v] = next;
+                order[next++] = v;
+            }
+        }
+
+        float[] positions = mesh.GetPositions().GetData();
+        float[] normals = mesh.GetNormals().GetData();
+        float[] uvs = mesh.GetUVs().GetData();
+        FloatArray newPositions = new FloatArray(numVerts * 3);
+        FloatArray newNormals = new FloatArray(numVerts * 3);
+        FloatArray newUVs = new FloatArray(numVerts * 2);
+        for (int i = 0; i < numVerts; i++)
+        {
+            int v = order[i];
+            newPositions.Add(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]);
+            newNormals.Add(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]);
+            newUVs.Add(uvs[v * 2]);
+            newUVs.Add(uvs[v * 2 + 1]);
+        }
+        IntArray newIndices = new IntArray(indices.length);
+        for (int index : indices)
+            newIndices.Add(newIndex[index]);
+
+        return new MeshData(newPositions, newNormals, newUVs, newIndices, mesh.HasUVs(), mesh.GetRanges(),
+                mesh.GetMaterials());
+    }
+
+    //
+    // Average cache miss ratio: vertices transformed per triangle with a FIFO post-transform cache
+    // of cacheSize vertices. 3 is the worst, 0.5 the best a regular grid can do.
+    //
+    public static float ComputeAcmr(int[] indices, int first, int count, int numVerts, int cacheSize)
+    {
+        if (count == 0)
+            return 0;
+
+        // a vertex is in the FIFO if it was one of the last cacheSize misses
+        int[] insertedAt = new int[numVerts];
+        for (int v = 0; v < numVerts; v++)
+            insertedAt[v] = Integer.MIN_VALUE / 2;
+        int misses = 0;
+        for (int i = first; i < first + count; i++)
+        {
+            int v = indices[i];
+            if (misses - insertedAt[v] > cacheSize)
+                insertedAt[v] = misses++;
+        }
+        return misses / (count / 3.0f);
+    }
+
+    // ACMR of the whole mesh, all ranges drawn one after the other
+    public static float ComputeAcmr(MeshData mesh, int cacheSize)
+    {
+        int[] indices = mesh.GetIndices().GetData();
+        return ComputeAcmr(indices, 0, mesh.GetNumElements(), mesh.GetNumVerts(), cacheSize);
+    }
+
+    //
+    // per vertex state, sized for the whole mesh and reused by every range
+    //
+    private final int[] mNumActive;         // triangles not emitted yet
+    private final int[] mCachePosition;     // -1 when not in the cache
+    private final float[] mScores;
+    private final int[] mFirstTriangle;     // into the triangles of the range being optimized
+    private final int[] mTriangleCount;
+
+    private VertexCacheOptimizer(int numVerts)
+    {
+        mNumActive = new int[numVerts];
+        mCachePosition = new int[numVerts];
+        mScores = new float[numVerts];
+        mFirstTriangle = new int[numVerts];
+        mTriangleCount = new int[numVerts];
+        for (int v = 0; v < numVerts; v++)
+            mCachePosition[v] = -1;
+    }
+
+    private float Score(int v)
+    {
+        int active = mNumActive[v];
+        if (active == 0)
+            return -1;      // no triangles left, not worth anything
+        float score = mCachePosition[v] >= 0 ? CACHE_SCORES[mCachePosition[v]] : 0;
+        return score + (active < MAX_VALENCE_TABLE ? VALENCE_SCORES[active]
+                : VALENCE_BOOST_SCALE * (float) Math.pow(active, -VALENCE_BOOST_POWER));
+    }
+
+    //
+    // Reorder the count / 3 triangles at indices[first] in place
+    //
+    private void OptimizeTriangles(int[] indices, int first, int count)
+    {
+        int numTriangles = count / 3;
+        if (numTriangles < 2)
+            return;
+
+        //
+        // triangles of each vertex
+        //
+        for (int i = first; i < first + count; i++)
+            mNumActive[indices[i]]++;
+        int offset = 0;
+        for (int i = first; i < first + count; i++)
+        {
+            int v = indices[i];
+            if (mTriangleCount[v] == 0 && mNumActive[v] > 0)
+            {
+                mFirstTriangle[v] = offset;
+                offset += mNumActive[v];
+                mTriangleCount[v] = -1;     // placed, filled below
+            }
+        }
+        int[] triangles = new int[count];
+        for (int i = first; i < first + count; i++)
+            mTriangleCount[indices[i]] = 0;
+        for (int t = 0; t < numTriangles; t++)
+        {
+            for (int c = 0; c < 3; c++)
+            {
+                int v = indices[first + t * 3 + c];
+                triangles[mFirstTriangle[v] + mTriangleCount[v]++] = t;
+            }
+        }
+        for (int i = first; i < first + count; i++)
+            mScores[indices[i]] = Score(indices[i]);
+
+        float[] triangleScores = new float[numTriangles];
+        for (int t = 0; t < numTriangles; t++)
+        {
+            int e = first + t * 3;
+            triangleScores[t] = mScores[indices[e]] + mScores[indices[e + 1]] + mScores[indices[e + 2]];
+        }
+
+        //
+        // emit the best triangle, update the cache and the scores around it, repeat
+        //
+        boolean[] emitted = new boolean[numTriangles];
+        int[] output = new int[count];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheSize = 0;
+        int scanFrom = 0;           // no triangle before this one is left
+        int best = -1;
+        for (int n = 0; n < numTriangles; n++)
+        {
+            if (best < 0)
+            {
+                // nothing in the cache has triangles left (a new piece of the mesh): take the first
+                // triangle not emitted, scanning for the best one would be quadratic
+                while (emitted[scanFrom])
+                    scanFrom++;
+                best = scanFrom;
+            }
+
+            emitted[best] = true;
+            int e = first + best * 3;
+            System.arraycopy(indices, e, output, n * 3, 3);
+
+            // the triangle's vertices go to the front of the LRU cache
+            int newSize = 0;
+            for (int c = 0; c < 3; c++)
+            {
+                int v = indices[e + c];
+                mNumActive[v]--;
+                RemoveTriangle(triangles, v, best);
+                if (c == 0 || v != newCache[0] && (c == 1 || v != newCache[1]))
+                    newCache[newSize++] = v;        // degenerate triangles repeat a vertex
+            }
+            for (int i = 0; i < cacheSize; i++)
+            {
+                int v = cache[i];
+                if (v != indices[e] && v != indices[e + 1] && v != indices[e + 2])
+                    newCache[newSize++] = v;
+            }
+
+            // new positions and scores, the vertices pushed out of the cache drop theirs
+            for (int i = 0; i < newSize; i++)
+            {
+                int v = newCache[i];
+                mCachePosition[v] = i < CACHE_SIZE ? i : -1;
+                float score = Score(v);
+                float delta = score - mScores[v];
+                mScores[v] = score;
+                for (int j = 0; j < mTriangleCount[v]; j++)
+                    triangleScores[triangles[mFirstTriangle[v] + j]] += delta;
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheSize = Math.min(newSize, CACHE_SIZE);
+
+            // next: the best triangle touching the cache
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheSize; i++)
+            {
+                int v = cache[i];
+                for (int j = 0; j < mTriangleCount[v]; j++)
+                {
+                    int t = triangles[mFirstTriangle[v] + j];
+                    if (triangleScores[t] > bestScore)
+                    {
+                        bestScore = triangleScores[t];
+                        best = t;
+                    }
+                }
+            }
+        }
+        System.arraycopy(output, 0, indices, first, count);
+
+        // leave the per vertex state clean for the next range
+        for (int i = first; i < first + count; i++)
+        {
+            int v = indices[i];
+            mCachePosition[v] = -1;
+            mTriangleCount[v] = 0;
+        }
+    }
+
+    // drop triangle t from the not yet emitted triangles of v
+    private void RemoveTriangle(int[] triangles, int v, int t)
+    {
+        int start = mFirstTriangle[v];
+        int last = start + mTriangleCount[v] - 1;
+        for (int i = start; i <= last; i++)
+        {
+            if (triangles[i] == t)
+            {
+                triangles[i] = triangles[last];
+                mTriangleCount[v]--;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * Open addressing hash map from a (v, vt, vn) tuple of ints to an int vertex index,
+ * used to deduplicate face corners into an indexed vertex table.
+ * Keys and values live in flat int arrays, so lookups and inserts don't allocate (as long as the
+ * map was created big enough to not need to grow).
+ */
+
+public class VertexHashMap
+{
+    public static final int NOT_FOUND = -1;
+
+    private static final int KEY_INTS = 3;
+
+    private int[] mKeys;        // 3 ints per slot
+    private int[] mValues;      // NOT_FOUND marks an empty slot
+    private int mMask;
+    private int mSize;
+
+    //
+    // CTOR
+    // expectedSize is the max number of keys expected, the table is sized to stay at most half full
+    //
+    public VertexHashMap(int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        Allocate(capacity);
+    }
+
+    public int Size()
+    {
+        return mSize;
+    }
+
+    public int Get(int v, int vt, int vn)
+    {
+        int slot = Hash(v, vt, vn) & mMask;
+        while (mValues[slot] != NOT_FOUND)
+        {
+            if (KeyEquals(slot, v, vt, vn))
+                return mValues[slot];
+            slot = (slot + 1) & mMask;
+        }
+        return NOT_FOUND;
+    }
+
+    //
+    // Returns the value already stored for the key, or stores value and returns NOT_FOUND
+    //
+    public int PutIfAbsent(int v, int vt, int vn, int value)
+    {
+        int slot = Hash(v, vt, vn) & mMask;
+        while (mValues[slot] != NOT_FOUND)
+        {
+            if (KeyEquals(slot, v, vt, vn))
+                return mValues[slot];
+            slot = (slot + 1) & mMask;
+        }
+
+        int k = slot * KEY_INTS;
+        mKeys[k] = v;
+        mKeys[k + 1] = vt;
+        mKeys[k + 2] = vn;
+        mValues[slot] = value;
+        mSize++;
+
+        if (mSize * 2 > mValues.length)
+            Rehash(mValues.length * 2);
+        return NOT_FOUND;
+    }
+
+    private boolean KeyEquals(int slot, int v, int vt, int vn)
+    {
+        int k = slot * KEY_INTS;
+        return mKeys[k] == v && mKeys[k + 1] == vt && mKeys[k + 2] == vn;
+    }
+
+    private static int Hash(int v, int vt, int vn)
+    {
+        int h = v * 0x9E3779B1;
+        h = (h ^ (h >>> 15)) + vt * 0x85EBCA77;
+        h = (h ^ (h >>> 13)) + vn * 0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+
+    private void Allocate(int capacity)
+    {
+        mKeys = new int[capacity * KEY_INTS];
+        mValues = new int[capacity];
+        java.util.Arrays.fill(mValues, NOT_FOUND);
+        mMask = capacity - 1;
+        mSize = 0;
+    }
+
+    private void Rehash(int capacity)
+    {
+        int[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        Allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++)
+        {
+            if (oldValues[slot] != NOT_FOUND)
+            {
+                int k = slot * KEY_INTS;
+                PutIfAbsent(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldValues[slot]);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.mustafathamer.gles_test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Describes how vertex attributes are packed together in a single interleaved vertex buffer:
+ * which attributes are present, their number and type of components, their byte offset inside a
+ * vertex, and the stride from one vertex to the next.
+ * <p>
+ * Attributes are floats, or quantized to shorts or bytes (see ForMeshQuantized()). A quantized
+ * component q stands for q * scale + offset, with a scale and offset per attribute component that
+ * the shader applies (positions) or that don't matter (normals, renormalized). The integers are
+ * passed to GL as is, not normalized: ES 2 and 3 devices disagree on how normalized signed
+ * integers map to floats, plain integers convert exactly everywhere.
+ * <p>
+ * Plain Java, so layouts and the packed data can be checked off device.
+ */
+
+public class VertexLayout
+{
+    //
+    // attribute slots, in the order they are packed
+    //
+    public static final int ATTRIB_POSITION = 0;
+    public static final int ATTRIB_NORMAL = 1;
+    public static final int ATTRIB_UV = 2;
+    public static final int NUM_ATTRIBS = 3;
+
+    //
+    // component types, same values as GL_FLOAT, GL_SHORT and GL_BYTE
+    //
+    public static final int TYPE_FLOAT = 0x1406;
+    public static final int TYPE_SHORT = 0x1402;
+    public static final int TYPE_BYTE = 0x1400;
+
+    // largest quantized magnitude, symmetric so 0 is exact
+    private static final int MAX_SHORT = 32767;
+    private static final int MAX_BYTE = 127;
+
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int MAX_COMPONENTS = 4;
+
+    private int[] mSizes = new int[NUM_ATTRIBS];     // num components, 0 if absent
+    private int[] mTypes = new int[NUM_ATTRIBS];
+    private int[] mOffsets = new int[NUM_ATTRIBS];   // in bytes
+    private int mStride;
+
+    // decoded = quantized * scale + offset, per attribute component. 1 and 0 for floats.
+    private float[][] mDecodeScales = new float[NUM_ATTRIBS][MAX_COMPONENTS];
+    private float[][] mDecodeOffsets = new float[NUM_ATTRIBS][MAX_COMPONENTS];
+
+    //
+    // Append a float attribute after the ones already added
+    //
+    public VertexLayout Add(int attrib, int numComponents)
+    {
+        return Add(attrib, numComponents, TYPE_FLOAT);
+    }
+
+    //
+    // Append an attribute of TYPE_* components, padded to 4 bytes so the next one is aligned
+    //
+    public VertexLayout Add(int attrib, int numComponents, int type)
+    {
+        mSizes[attrib] = numComponents;
+        mTypes[attrib] = type;
+        mOffsets[attrib] = mStride;
+        mStride += (numComponents * TypeSize(type) + 3) & ~3;
+        for (int c = 0; c < MAX_COMPONENTS; c++)
+        {
+            mDecodeScales[attrib][c] = 1;
+            mDecodeOffsets[attrib][c] = 0;
+        }
+        return this;
+    }
+
+    //
+    // How the quantized components of attrib decode, scale and offset have one value per component
+    //
+    public void SetDecode(int attrib, float[] scale, float[] offset)
+    {
+        System.arraycopy(scale, 0, mDecodeScales[attrib], 0, mSizes[attrib]);
+        System.arraycopy(offset, 0, mDecodeOffsets[attrib], 0, mSizes[attrib]);
+    }
+
+    public boolean Has(int attrib)      { return mSizes[attrib] > 0; }
+    public int GetSize(int attrib)      { return mSizes[attrib]; }
+    public int GetType(int attrib)      { return mTypes[attrib]; }
+    public int GetOffset(int attrib)    { return mOffsets[attrib]; }
+    public int GetStride()              { return mStride; }
+
+    // MAX_COMPONENTS values, the first GetSize(attrib) are used
+    public float[] GetDecodeScale(int attrib)   { return mDecodeScales[attrib]; }
+    public float[] GetDecodeOffset(int attrib)  { return mDecodeOffsets[attrib]; }
+
+    public boolean IsQuantized()
+    {
+        for (int attrib = 0; attrib < NUM_ATTRIBS; attrib++)
+        {
+            if (Has(attrib) && mTypes[attrib] != TYPE_FLOAT)
+                return true;
+        }
+        return false;
+    }
+
+    public static int TypeSize(int type)
+    {
+        switch (type)
+        {
+            case TYPE_FLOAT:
+                return 4;
+            case TYPE_SHORT:
+                return 2;
+            case TYPE_BYTE:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unknown vertex component type " + type);
+        }
+    }
+
+    //
+    // Layout holding every attribute the mesh actually has
+    //
+    public static VertexLayout ForMesh(MeshData mesh)
+    {
+        VertexLayout layout = new VertexLayout();
+        layout.Add(ATTRIB_POSITION, 3);
+        layout.Add(ATTRIB_NORMAL, 3);
+        if (mesh.HasUVs())
+            layout.Add(ATTRIB_UV, 2);
+        return layout;
+    }
+
+    //
+    // Compact layout for the mesh: positions as shorts over its bounding box (1/65534 of the box
+    // per axis), normals as bytes (under half a degree off), UVs as shorts over their range.
+    // 16 bytes a vertex instead of 32.
+    //
+    public static VertexLayout ForMeshQuantized(MeshData mesh)
+    {
+        VertexLayout layout = new VertexLayout();
+        layout.Add(ATTRIB_POSITION, 3, TYPE_SHORT);
+        layout.SetRangeDecode(ATTRIB_POSITION, mesh.GetPositions(), mesh.GetNumVerts(), MAX_SHORT);
+
+        // only the direction matters, the shader normalizes
+        layout.Add(ATTRIB_NORMAL, 3, TYPE_BYTE);
+        float[] scale = {1.0f / MAX_BYTE, 1.0f / MAX_BYTE, 1.0f / MAX_BYTE};
+        layout.SetDecode(ATTRIB_NORMAL, scale, new float[3]);
+
+        if (mesh.HasUVs())
+        {
+            layout.Add(ATTRIB_UV, 2, TYPE_SHORT);
+            layout.SetRangeDecode(ATTRIB_UV, mesh.GetUVs(), mesh.GetNumVerts(), MAX_SHORT);
+        }
+        return layout;
+    }
+
+    // map the range of each component of the values onto -maxQuantized..maxQuantized
+    private void SetRangeDecode(int attrib, FloatArray values, int numVerts, int maxQuantized)
+    {
+        int size = mSizes[attrib];
+        float[] data = values.GetData();
+        float[] scale = new float[size];
+        float[] offset = new float[size];
+        for (int c = 0; c < size; c++)
+        {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int v = 0; v < numVerts; v++)
+            {
+                min = Math.min(min, data[v * size + c]);
+                max = Math.max(max, data[v * size + c]);
+            }
+            if (numVerts == 0)
+                min = max = 0;
+            offset[c] = (min + max) * 0.5f;
+            float halfRange = (max - min) * 0.5f;
+            scale[c] = halfRange > 0 ? halfRange / maxQuantized : 1;
+        }
+        SetDecode(attrib, scale, offset);
+    }
+
+    //
+    // Read component c of attrib of vertex v from an interleaved buffer, decoded
+    //
+    public float Read(ByteBuffer vertices, int v, int attrib, int c)
+    {
+        int at = v * mStride + mOffsets[attrib];
+        switch (mTypes[attrib])
+        {
+            case TYPE_SHORT:
+                return vertices.getShort(at + c * 2) * mDecodeScales[attrib][c] + mDecodeOffsets[attrib][c];
+            case TYPE_BYTE:
+                return vertices.get(at + c) * mDecodeScales[attrib][c] + mDecodeOffsets[attrib][c];
+            default:
+                return vertices.getFloat(at + c * BYTES_PER_FLOAT);
+        }
+    }
+
+    //
+    // Pack the mesh attributes into a native order direct buffer, one vertex after the other
+    //
+    public ByteBuffer Interleave(MeshData mesh)
+    {
+        if (IsQuantized())
+            return InterleaveQuantized(mesh);
+
+        int numVerts = mesh.GetNumVerts();
+        int floatsPerVertex = mStride / BYTES_PER_FLOAT;
+        float[] packed = new float[numVerts * floatsPerVertex];
+
+        FloatArray[] sources = new FloatArray[NUM_ATTRIBS];
+        sources[ATTRIB_POSITION] = mesh.GetPositions();
+        sources[ATTRIB_NORMAL] = mesh.GetNormals();
+        sources[ATTRIB_UV] = mesh.GetUVs();
+
+        for (int attrib = 0; attrib < NUM_ATTRIBS; attrib++)
+        {
+            int size = mSizes[attrib];
+            if (size == 0)
+                continue;
+            float[] src = sources[attrib].GetData();
+            int dst = mOffsets[attrib] / BYTES_PER_FLOAT;
+            for (int v = 0; v < numVerts; v++, dst += floatsPerVertex)
+            {
+                System.arraycopy(src, v * size, packed, dst, size);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(packed.length * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(packed);
+        buffer.position(0);
+        return buffer;
+    }
+
+    private ByteBuffer InterleaveQuantized(MeshData mesh)
+    {
+        int numVerts = mesh.GetNumVerts();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(numVerts * mStride).order(ByteOrder.nativeOrder());
+
+        FloatArray[] sources = new FloatArray[NUM_ATTRIBS];
+        sources[ATTRIB_POSITION] = mesh.GetPositions();
+        sources[ATTRIB_NORMAL] = mesh.GetNormals();
+        sources[ATTRIB_UV] = mesh.GetUVs();
+
+        for (int attrib = 0; attrib < NUM_ATTRIBS; attrib++)
+        {
+            int size = mSizes[attrib];
+            if (size == 0)
+                continue;
+            float[] src = sources[attrib].GetData();
+            float[] scale = mDecodeScales[attrib];
+            float[] offset = mDecodeOffsets[attrib];
+            for (int v = 0; v < numVerts; v++)
+            {
+                int dst = v * mStride + mOffsets[attrib];
+                float normalize = attrib == ATTRIB_NORMAL ? InverseLength(src, v * size, size) : 1;
+                for (int c = 0; c < size; c++)
+                {
+                    float value = src[v * size + c] * normalize;
+                    switch (mTypes[attrib])
+                    {
+                        case TYPE_SHORT:
+                            buffer.putShort(dst + c * 2, (short) Quantize(value, scale[c], offset[c], MAX_SHORT));
+                            break;
+                        case TYPE_BYTE:
+                            buffer.put(dst + c, (byte) Quantize(value, scale[c], offset[c], MAX_BYTE));
+                            break;
+                        default:
+                            buffer.putFloat(dst + c * BYTES_PER_FLOAT, value);
+                            break;
+                    }
+                }
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    // normals are made unit length first, so they use the whole quantized range
+    private static float InverseLength(float[] values, int first, int size)
+    {
+        float lengthSq = 0;
+        for (int c = 0; c < size; c++)
+            lengthSq += values[first + c] * values[first + c];
+        return lengthSq > 0 ? 1.0f / (float) Math.sqrt(lengthSq) : 1;
+    }
+
+    private static int Quantize(float value, float scale, float offset, int maxQuantized)
+    {
+        int q = Math.round((value - offset) / scale);
+        return Math.max(-maxQuantized, Math.min(maxQuantized, q));
+    }
+}
@@ -0,0 +1,86 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Helpers shared by the JVM benchmarks (the *Benchmark classes with a main()).
+ * They are run on the development machine from the app module directory, ex:
+ * java -cp ... com.mustafathamer.gles_test.ObjLoaderBenchmark [assetsDir]
+ */
+
+public class BenchmarkUtil
+{
+    public static final String DEFAULT_ASSETS_DIR = "src/main/assets";
+
+    // the bundled models, smallest to largest
+    public static final String[] MODELS = {"cube", "cube2", "caution_cube", "torus", "wt_teapot", "fidget2", "capsule", "bowser2"};
+
+    public static File AssetsDir(String[] args)
+    {
+        File dir = new File(args.length > 0 ? args[0] : DEFAULT_ASSETS_DIR);
+        if (!dir.isDirectory())
+            dir = new File("app/" + DEFAULT_ASSETS_DIR);   // run from the project root
+        return dir;
+    }
+
+    public static InputStream Open(File assetsDir, String fileName) throws IOException
+    {
+        return new FileInputStream(new File(assetsDir, fileName));
+    }
+
+    public static byte[] ReadAsset(File assetsDir, String fileName) throws IOException
+    {
+        File file = new File(assetsDir, fileName);
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int length = 0;
+            while (length < data.length)
+            {
+                int read = in.read(data, length, data.length - length);
+                if (read < 0)
+                    break;
+                length += read;
+            }
+        } finally
+        {
+            in.close();
+        }
+        return data;
+    }
+
+    //
+    // Bytes allocated so far by the calling thread (HotSpot only), -1 if unsupported
+    //
+    public static long AllocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public static long Median(long[] samples)
+    {
+        long[] sorted = samples.clone();
+        java.util.Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public static String Millis(long nanos)
+    {
+        return String.format("%.2f ms", nanos / 1e6);
+    }
+
+    public static String Kb(long bytes)
+    {
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * JVM benchmark comparing the text path (parse the OBJ, deduplicate, interleave) against mapping
+ * the binary mesh file written from it, on every bundled model.
+ * Both produce the direct buffers handed to VertexBufferMesh. The mapped load includes checking
+ * the payload CRC.
+ */
+
+public class BinaryMeshBenchmark
+{
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+    private static final long STAMP = 1;
+
+    private static BinaryMesh TextLoad(File assetsDir, String model) throws IOException
+    {
+        ObjParser parser = new ObjParser();
+        InputStream in = BenchmarkUtil.Open(assetsDir, model + ".obj");
+        try
+        {
+            parser.Parse(in);
+        } finally
+        {
+            in.close();
+        }
+
+        MeshData mesh = new ObjMeshBuilder(parser, null).BuildIndexed();
+        VertexLayout layout = VertexLayout.ForMesh(mesh);
+        ByteBuffer vertices = layout.Interleave(mesh);
+        boolean intIndices = mesh.NeedsIntIndices();
+        Buffer indices = intIndices ? mesh.GetIndices().ToDirectBuffer() : mesh.GetIndices().ToDirectShortBuffer();
+        return new BinaryMesh(layout, vertices, indices, intIndices, mesh.GetNumVerts(), mesh.GetNumElements(),
+                mesh.GetRanges(), null, mesh.ComputeBounds());
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+        File file = File.createTempFile("benchmark", ".mesh");
+        file.deleteOnExit();
+
+        System.out.println(String.format("%-14s %10s %10s %12s %12s %8s",
+                "model", "obj size", "mesh size", "text parse", "mapped load", "speedup"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            TextLoad(assetsDir, model).Write(file, STAMP);
+
+            long[] text = new long[TIMED_RUNS];
+            long[] mapped = new long[TIMED_RUNS];
+            for (int i = 0; i < WARMUP_RUNS + TIMED_RUNS; i++)
+            {
+                long start = System.nanoTime();
+                TextLoad(assetsDir, model);
+                long middle = System.nanoTime();
+                if (BinaryMesh.Load(file, STAMP) == null)
+                    throw new IllegalStateException("Rejected " + model);
+                long end = System.nanoTime();
+                if (i >= WARMUP_RUNS)
+                {
+                    text[i - WARMUP_RUNS] = middle - start;
+                    mapped[i - WARMUP_RUNS] = end - middle;
+                }
+            }
+
+            long t = BenchmarkUtil.Median(text);
+            long m = BenchmarkUtil.Median(mapped);
+            System.out.println(String.format("%-14s %10s %10s %12s %12s %7.1fx",
+                    model, BenchmarkUtil.Kb(new File(assetsDir, model + ".obj").length()), BenchmarkUtil.Kb(file.length()),
+                    BenchmarkUtil.Millis(t), BenchmarkUtil.Millis(m), (double) t / m));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips meshes through the binary mesh file, and checks that stale or damaged files are
+ * rejected, runs on the development machine (host).
+ */
+public class BinaryMeshTest
+{
+    private static final long STAMP = 1234567890123L;
+
+    // MeshTestUtil.QUAD_OBJ with a corner out of its plane, and a material the MTL doesn't have
+    private static final String QUAD_OBJ =
+            "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 -2\n" +
+            "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n" +
+            "vn 0 0 1\n" +
+            "usemtl red\n" +
+            "f 1/1/1 2/2/1 3/3/1\n" +
+            "usemtl unknown\n" +
+            "f 1/1/1 3/3/1 4/4/1\n";
+
+    private static BinaryMesh BuildQuad()
+    {
+        ObjMaterial red = new ObjMaterial();
+        red.setName("red");
+        red.setKd(new float[]{1, 0, 0});
+        red.setKa(new float[]{0.1f, 0, 0});
+        red.setNs(96.0f);
+        red.setIllum(2);
+        red.setMapKd("caution.jpg");
+        MeshData mesh = MeshTestUtil.Build(QUAD_OBJ, new ObjMaterial[]{red, null});
+
+        VertexLayout layout = VertexLayout.ForMesh(mesh);
+        return new BinaryMesh(layout, layout.Interleave(mesh), mesh.GetIndices().ToDirectShortBuffer(), false,
+                mesh.GetNumVerts(), mesh.GetNumElements(), mesh.GetRanges(), mesh.GetMaterials(),
+                mesh.ComputeBounds());
+    }
+
+    private static File TempFile() throws Exception
+    {
+        File file = File.createTempFile("binarymesh", ".mesh");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void load_returnsWhatWasWritten() throws Exception
+    {
+        BinaryMesh mesh = BuildQuad();
+        File file = TempFile();
+        mesh.Write(file, STAMP);
+
+        BinaryMesh loaded = BinaryMesh.Load(file, STAMP);
+        assertNotNull(loaded);
+        assertEquals(mesh.GetNumVerts(), loaded.GetNumVerts());
+        assertEquals(mesh.GetNumElements(), loaded.GetNumElements());
+        assertFalse(loaded.UsesIntIndices());
+        assertEquals(mesh.GetLayout().GetStride(), loaded.GetLayout().GetStride());
+        assertEquals(mesh.GetLayout().GetOffset(VertexLayout.ATTRIB_UV), loaded.GetLayout().GetOffset(VertexLayout.ATTRIB_UV));
+        Bounds bounds = loaded.GetBounds();
+        assertArrayEquals(new float[]{0, 0, -2, 1, 1, 0}, new float[]{bounds.GetMinX(), bounds.GetMinY(),
+                bounds.GetMinZ(), bounds.GetMaxX(), bounds.GetMaxY(), bounds.GetMaxZ()}, 0.0f);
+        assertEquals(mesh.GetBounds().GetCenterZ(), bounds.GetCenterZ(), 0.0f);
+        assertEquals(mesh.GetBounds().GetRadius(), bounds.GetRadius(), 0.0f);
+
+        ByteBuffer vertices = loaded.GetVertices();
+        assertTrue(vertices.isDirect());
+        assertEquals(mesh.GetVertices(), vertices);
+        ShortBuffer indices = (ShortBuffer) loaded.GetIndices();
+        assertEquals(mesh.GetIndices(), indices);
+
+        assertEquals(2, loaded.GetRanges().size());
+        assertEquals(1, loaded.GetRanges().get(1).GetMaterial());
+        assertEquals(3, loaded.GetRanges().get(1).GetFirstElement());
+
+        ObjMaterial red = loaded.GetMaterials()[0];
+        assertEquals("red", red.GetName());
+        assertArrayEquals(new float[]{1, 0, 0}, red.GetKd(), 0.0f);
+        assertArrayEquals(new float[]{0.1f, 0, 0}, red.GetKa(), 0.0f);
+        assertEquals(96.0f, red.GetNs(), 0.0f);
+        assertEquals(2, red.GetIllum());
+        assertEquals("caution.jpg", red.GetMapKd());
+        assertNull(red.GetMapKa());
+        assertNull(loaded.GetMaterials()[1]);
+    }
+
+    @Test
+    public void load_matchesTextParseOnBundledModels() throws Exception
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        File file = TempFile();
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            MeshData mesh = MeshTestUtil.Build(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"), null);
+            VertexLayout layout = VertexLayout.ForMesh(mesh);
+            ByteBuffer vertices = layout.Interleave(mesh);
+            boolean intIndices = mesh.NeedsIntIndices();
+            java.nio.Buffer indices = intIndices ? mesh.GetIndices().ToDirectBuffer() : mesh.GetIndices().ToDirectShortBuffer();
+
+            new BinaryMesh(layout, vertices, indices, intIndices, mesh.GetNumVerts(), mesh.GetNumElements(),
+                    mesh.GetRanges(), null, mesh.ComputeBounds()).Write(file, STAMP);
+            BinaryMesh loaded = BinaryMesh.Load(file, STAMP);
+
+            assertNotNull(model, loaded);
+            assertEquals(model, vertices, loaded.GetVertices());
+            assertEquals(model, indices, loaded.GetIndices());
+            assertNull(loaded.GetMaterials());
+        }
+    }
+
+    @Test
+    public void load_keepsQuantizedLayout() throws Exception
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        MeshData mesh = MeshTestUtil.Build(BenchmarkUtil.ReadAsset(assetsDir, "torus.obj"), null);
+        VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+        ByteBuffer vertices = layout.Interleave(mesh);
+
+        File file = TempFile();
+        new BinaryMesh(layout, vertices, mesh.GetIndices().ToDirectShortBuffer(), false, mesh.GetNumVerts(),
+                mesh.GetNumElements(), mesh.GetRanges(), null, mesh.ComputeBounds()).Write(file, STAMP);
+        BinaryMesh loaded = BinaryMesh.Load(file, STAMP);
+
+        assertNotNull(loaded);
+        assertEquals(vertices, loaded.GetVertices());
+        VertexLayout loadedLayout = loaded.GetLayout();
+        assertEquals(layout.GetStride(), loadedLayout.GetStride());
+        for (int attrib = 0; attrib < VertexLayout.NUM_ATTRIBS; attrib++)
+        {
+            assertEquals(layout.GetSize(attrib), loadedLayout.GetSize(attrib));
+            assertEquals(layout.GetType(attrib), loadedLayout.GetType(attrib));
+            assertEquals(layout.GetOffset(attrib), loadedLayout.GetOffset(attrib));
+            assertArrayEquals(layout.GetDecodeScale(attrib), loadedLayout.GetDecodeScale(attrib), 0);
+            assertArrayEquals(layout.GetDecodeOffset(attrib), loadedLayout.GetDecodeOffset(attrib), 0);
+        }
+    }
+
+    @Test
+    public void compiledMesh_onlyIndexedOnesOfTheLoadersLayoutAreUsed() throws Exception
+    {
+        // what MeshCompiler --no-dedup writes
+        ObjParser parser = new ObjParser();
+        byte[] obj = QUAD_OBJ.getBytes("US-ASCII");
+        parser.Parse(obj, 0, obj.length);
+        MeshData expanded = new ObjMeshBuilder(parser, null).BuildExpanded();
+        VertexLayout layout = VertexLayout.ForMesh(expanded);
+        File file = TempFile();
+        new BinaryMesh(layout, layout.Interleave(expanded), null, false, expanded.GetNumVerts(),
+                expanded.GetNumElements(), expanded.GetRanges(), null, expanded.ComputeBounds())
+                .Write(file, BinaryMesh.APK_SOURCE_STAMP);
+        BinaryMesh loaded = BinaryMesh.Load(file, BinaryMesh.APK_SOURCE_STAMP);
+
+        assertNotNull(loaded);
+        assertNull(loaded.GetIndices());
+        assertEquals(6, loaded.GetNumElements());
+        assertFalse(ObjFileLoader.CanUseCompiled(loaded, false));
+
+        File indexedFile = TempFile();
+        BuildQuad().Write(indexedFile, BinaryMesh.APK_SOURCE_STAMP);
+        BinaryMesh indexed = BinaryMesh.Load(indexedFile, BinaryMesh.APK_SOURCE_STAMP);
+        assertTrue(ObjFileLoader.CanUseCompiled(indexed, false));
+        assertFalse(ObjFileLoader.CanUseCompiled(indexed, true));
+    }
+
+    @Test
+    public void load_rejectsOtherSourceStamp() throws Exception
+    {
+        File file = TempFile();
+        BuildQuad().Write(file, STAMP);
+
+        assertNull(BinaryMesh.Load(file, STAMP + 1));
+    }
+
+    @Test
+    public void load_rejectsOtherVersion() throws Exception
+    {
+        File file = TempFile();
+        BuildQuad().Write(file, STAMP);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        ByteBuffer version = ByteBuffer.allocate(4).order(java.nio.ByteOrder.nativeOrder());
+        version.putInt(0, BinaryMesh.VERSION + 1);
+        raf.seek(4);
+        raf.write(version.array());
+        raf.close();
+
+        assertNull(BinaryMesh.Load(file, STAMP));
+    }
+
+    @Test
+    public void load_rejectsCorruptPayload() throws Exception
+    {
+        File file = TempFile();
+        BuildQuad().Write(file, STAMP);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - 1);
+        int last = raf.read();
+        raf.seek(raf.length() - 1);
+        raf.write(last ^ 0x40);
+        raf.close();
+
+        assertNull(BinaryMesh.Load(file, STAMP));
+    }
+
+    @Test
+    public void load_rejectsMissingAndTruncatedFiles() throws Exception
+    {
+        File file = TempFile();
+        file.delete();
+        assertNull(BinaryMesh.Load(file, STAMP));
+
+        BuildQuad().Write(file, STAMP);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+        assertNull(BinaryMesh.Load(file, STAMP));
+    }
+}
@@ -0,0 +1,157 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ETC1 block layout against the format, and that encoding then decoding stays close
+ * to the image, sequentially and in parallel. Runs on the development machine (host).
+ */
+public class Etc1Test
+{
+    private static int MaxChannelError(int[] a, int[] b)
+    {
+        int max = 0;
+        for (int i = 0; i < a.length; i++)
+        {
+            for (int shift = 0; shift < 24; shift += 8)
+                max = Math.max(max, Math.abs(((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF)));
+        }
+        return max;
+    }
+
+    // a smooth color gradient with some noise, like a photo
+    private static int[] Photo(int width, int height)
+    {
+        int[] pixels = new int[width * height];
+        int noise = 12345;
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                noise = noise * 1103515245 + 12345;
+                int n = (noise >>> 28) - 8;
+                int r = Math.min(255, Math.max(0, x * 255 / width + n));
+                int g = Math.min(255, Math.max(0, y * 255 / height + n));
+                int b = Math.min(255, Math.max(0, 128 + n));
+                pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void encodedSize_eightBytesPerStartedBlock() throws Exception
+    {
+        assertEquals(8, Etc1.EncodedSize(1, 1));
+        assertEquals(8, Etc1.EncodedSize(4, 4));
+        assertEquals(16, Etc1.EncodedSize(5, 4));
+        assertEquals(2048 * 1024 / 2, Etc1.EncodedSize(2048, 1024));
+    }
+
+    private static byte[] Block(int high, int low)
+    {
+        return new byte[] {(byte) (high >>> 24), (byte) (high >>> 16), (byte) (high >>> 8), (byte) high,
+                (byte) (low >>> 24), (byte) (low >>> 16), (byte) (low >>> 8), (byte) low};
+    }
+
+    @Test
+    public void decodeBlock_individualMode() throws Exception
+    {
+        // left half 0x11,0x22,0x33 with table 0, right half 0xFF,0x00,0x88 with table 7
+        int high = 1 << 28 | 0xF << 24 | 2 << 20 | 0 << 16 | 3 << 12 | 8 << 8 | 0 << 5 | 7 << 2;
+        // texel indices go down the columns, msb in the high 16 bits: (1,0) is -b, (2,3) is +b,
+        // the others +a
+        int low = 1 << (4 + 16) | 1 << 4 | 1 << 11;
+        int[] block = new int[16];
+
+        Etc1.DecodeBlock(Block(high, low), 0, block);
+
+        assertEquals(0xFF132435, block[0]);
+        assertEquals(0xFF091A2B, block[1]);
+        assertEquals(0xFFFF2FB7, block[2]);                             // 255, 47, 0x88 + 47
+        assertEquals(0xFFFFB7FF, block[3 * 4 + 2]);                     // clamped
+        assertEquals(block[0], block[3 * 4 + 1]);
+    }
+
+    @Test
+    public void decodeBlock_differentialFlipped() throws Exception
+    {
+        // top half 5 bit 16,8,4 -> 0x84,0x42,0x21; bottom half +3,-4,0 -> 19,4,4 -> 0x9C,0x21,0x21
+        int high = 16 << 27 | 3 << 24 | 8 << 19 | 4 << 16 | 4 << 11 | 0 << 8 | 1 << 5 | 2 << 2 | 2 | 1;
+        int[] block = new int[16];
+
+        Etc1.DecodeBlock(Block(high, 0), 0, block);
+
+        assertEquals(0xFF894726, block[0]);         // +5, table 1
+        assertEquals(0xFF894726, block[7]);
+        assertEquals(0xFFA52A2A, block[8]);         // +9, table 2
+        assertEquals(0xFFA52A2A, block[15]);
+    }
+
+    @Test
+    public void encode_uniformBlocksAreNearlyExact() throws Exception
+    {
+        int[] colors = {0xFF000000, 0xFFFFFFFF, 0xFF808080, 0xFF3366CC, 0xFFE01020};
+        for (int color : colors)
+        {
+            int[] pixels = new int[16];
+            Arrays.fill(pixels, color);
+            int[] decoded = Etc1.Decode(Etc1.Encode(pixels, 4, 4), 0, 4, 4);
+            assertTrue(Integer.toHexString(color), MaxChannelError(pixels, decoded) <= 4);
+        }
+    }
+
+    @Test
+    public void encode_photoStaysClose() throws Exception
+    {
+        int[] pixels = Photo(64, 32);
+        int[] decoded = Etc1.Decode(Etc1.Encode(pixels, 64, 32), 0, 64, 32);
+
+        double sum = 0;
+        for (int i = 0; i < pixels.length; i++)
+        {
+            for (int shift = 0; shift < 24; shift += 8)
+            {
+                int d = ((pixels[i] >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+                sum += d * d;
+            }
+        }
+        double psnr = 10 * Math.log10(255.0 * 255.0 / (sum / (pixels.length * 3)));
+        assertTrue("PSNR " + psnr, psnr > 30);
+        for (int texel : decoded)
+            assertEquals(0xFF000000, texel & 0xFF000000);
+    }
+
+    @Test
+    public void encode_partialBlocksRepeatTheEdge() throws Exception
+    {
+        // 2x1, the mip levels below 4 texels
+        int[] pixels = {0xFF204060, 0xFF204060};
+        byte[] encoded = Etc1.Encode(pixels, 2, 1);
+
+        assertEquals(8, encoded.length);
+        assertTrue(MaxChannelError(pixels, Etc1.Decode(encoded, 0, 2, 1)) <= 4);
+    }
+
+    @Test
+    public void encodeParallel_sameAsSequential() throws Exception
+    {
+        int[] pixels = Photo(64, 60);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            assertArrayEquals(Etc1.Encode(pixels, 64, 60), Etc1.EncodeParallel(pixels, 64, 60, executor, 7));
+            // more chunks than block rows
+            assertArrayEquals(Etc1.Encode(pixels, 64, 8), Etc1.EncodeParallel(pixels, 64, 8, executor, 16));
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the frame measurements: histogram buckets and percentiles over the ring window, nested
+ * phase timing on a fake clock, that recording allocates nothing, and the triangle and upload
+ * counts of CountingGLApi they're fed with. Runs on the development machine (host).
+ */
+public class FrameStatsTest
+{
+    // a clock moved by hand
+    private static class FakeClock implements FrameStats.Clock
+    {
+        long mNanos;
+
+        @Override
+        public long NanoTime()
+        {
+            return mNanos;
+        }
+    }
+
+    @Test
+    public void bucket_holdsItsValuesWithin1Of32() throws Exception
+    {
+        long[] values = {0, 1, 63, 64, 65, 100, 1000, 16666666, 123456789012L, Long.MAX_VALUE};
+        int lastBucket = -1;
+        for (long value : values)
+        {
+            int bucket = FrameStats.Metric.Bucket(value);
+            assertTrue(bucket >= lastBucket && bucket < FrameStats.Metric.NUM_BUCKETS);
+            long top = FrameStats.Metric.BucketTop(bucket);
+            assertTrue(value + " in bucket up to " + top, top >= value);
+            assertTrue(value + " in bucket up to " + top, top - value <= value / 32);
+            if (bucket > 0)
+                assertTrue(FrameStats.Metric.BucketTop(bucket - 1) < value);
+            lastBucket = bucket;
+        }
+    }
+
+    @Test
+    public void percentile_ofTheWindow() throws Exception
+    {
+        FrameStats.Metric metric = new FrameStats.Metric(100);
+        assertEquals(0, metric.Percentile(0.5));
+
+        for (int i = 1; i <= 100; i++)
+            metric.Add(i * 1000000L);       // 1 to 100 ms
+        assertEquals(100, metric.Size());
+        assertEquals(50e6, metric.Percentile(0.50), 50e6 / 32);
+        assertEquals(95e6, metric.Percentile(0.95), 95e6 / 32);
+        assertEquals(99e6, metric.Percentile(0.99), 99e6 / 32);
+        assertEquals(100000000L, metric.Percentile(1.0));       // never past the largest
+        assertEquals(50.5e6, metric.GetMean(), 1);
+        assertEquals(100000000L, metric.GetLast());
+        assertEquals(99000000L, metric.Get(1));
+
+        // the old values leave the window, and the histogram
+        for (int i = 0; i < 100; i++)
+            metric.Add(5);
+        assertEquals(100, metric.Size());
+        assertEquals(5, metric.Percentile(0.99));
+        assertEquals(5, metric.GetMax());
+        assertEquals(200, metric.GetTotal());
+    }
+
+    @Test
+    public void phases_nestedOnesPauseTheOuterOne() throws Exception
+    {
+        FakeClock clock = new FakeClock();
+        FrameStats stats = new FrameStats(8, clock);
+
+        clock.mNanos = 1000;
+        stats.BeginFrame();
+        stats.BeginPhase(FrameStats.UPDATE);
+        clock.mNanos += 300;
+        stats.EndPhase();
+        stats.BeginPhase(FrameStats.DRAW);
+        for (int object = 0; object < 3; object++)
+        {
+            clock.mNanos += 100;
+            stats.BeginPhase(FrameStats.CULL);
+            clock.mNanos += 20;
+            stats.EndPhase();
+        }
+        clock.mNanos += 200;
+        stats.EndPhase();
+        clock.mNanos += 50;         // in no phase
+        stats.EndFrame(12, 3400, 4096);
+
+        assertEquals(1, stats.GetNumFrames());
+        assertEquals(300 + 300 + 60 + 200 + 50, stats.Get(FrameStats.FRAME).GetLast());
+        assertEquals(0, stats.Get(FrameStats.INTERVAL).GetLast());
+        assertEquals(300, stats.Get(FrameStats.UPDATE).GetLast());
+        assertEquals(60, stats.Get(FrameStats.CULL).GetLast());
+        assertEquals(500, stats.Get(FrameStats.DRAW).GetLast());
+        assertEquals(12, stats.Get(FrameStats.DRAW_CALLS).GetLast());
+        assertEquals(3400, stats.Get(FrameStats.TRIANGLES).GetLast());
+        assertEquals(4096, stats.Get(FrameStats.BYTES_UPLOADED).GetLast());
+
+        // the next frame, 16 ms later, with a phase left open
+        clock.mNanos = 1000 + 16000000;
+        stats.BeginFrame();
+        stats.BeginPhase(FrameStats.DRAW);
+        clock.mNanos += 700;
+        stats.EndFrame(1, 2, 0);
+        assertEquals(16000000, stats.Get(FrameStats.INTERVAL).GetLast());
+        assertEquals(700, stats.Get(FrameStats.DRAW).GetLast());
+        assertEquals(0, stats.Get(FrameStats.UPDATE).GetLast());
+        assertTrue(stats.Report().startsWith("2 frames"));
+    }
+
+    @Test
+    public void recording_allocatesNothing() throws Exception
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        FrameStats stats = new FrameStats(240);
+        final int frames = 20000;
+        for (int warmup = 0; warmup < 3; warmup++)
+            RecordFrames(stats, frames);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        RecordFrames(stats, frames);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals("bytes allocated over " + frames + " frames", 0, allocated);
+    }
+
+    // what the renderer records and reads per frame
+    private static void RecordFrames(FrameStats stats, int frames)
+    {
+        for (int frame = 0; frame < frames; frame++)
+        {
+            stats.BeginFrame();
+            stats.BeginPhase(FrameStats.UPDATE);
+            stats.EndPhase();
+            stats.BeginPhase(FrameStats.DRAW);
+            stats.BeginPhase(FrameStats.CULL);
+            stats.EndPhase();
+            stats.EndPhase();
+            stats.EndFrame(frame % 50, frame * 100, 0);
+            stats.Get(FrameStats.FRAME).Percentile(0.99);
+        }
+    }
+
+    @Test
+    public void countingGLApi_countsTrianglesAndUploads() throws Exception
+    {
+        CountingGLApi gl = new CountingGLApi(new RecordingGLApi());
+        gl.BeginFrame();
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, 1200, ByteBuffer.allocateDirect(1200), GLES20.GL_STATIC_DRAW);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 4, 4, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                ByteBuffer.allocateDirect(64));
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
+        gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        gl.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2);
+        gl.glDrawElements(GLES20.GL_TRIANGLES, 300, GLES20.GL_UNSIGNED_SHORT, 0);
+        gl.EndFrame();
+
+        assertEquals(12 + 2 + 100, gl.GetTrianglesLastFrame());
+        assertEquals(1200 + 64, gl.GetBytesUploadedLastFrame());
+        assertEquals(4, gl.GetDrawCallsLastFrame());
+    }
+}
@@ -0,0 +1,132 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the frustum plane extraction and the sphere tests used for culling, and the culling of
+ * scene nodes. Runs on the development machine (host).
+ */
+public class FrustumTest
+{
+    private static final float EPSILON = 1e-4f;
+
+    // the app's projection (near 3, far 20, square viewport), camera at the origin looking down -z
+    private static Frustum CreateFrustum()
+    {
+        float[] projection = new float[16];
+        MatrixMath.SetFrustum(projection, -1, 1, -1, 1, 3, 20);
+        Frustum frustum = new Frustum();
+        frustum.SetViewProjection(projection);
+        return frustum;
+    }
+
+    private static Bounds UnitSphere()
+    {
+        Bounds bounds = new Bounds();
+        bounds.SetBox(-1, -1, -1, 1, 1, 1);
+        bounds.SetSphere(0, 0, 0, 1);
+        return bounds;
+    }
+
+    private static float[] Translation(float x, float y, float z)
+    {
+        float[] m = new float[16];
+        MatrixMath.SetIdentity(m);
+        MatrixMath.Translate(m, x, y, z);
+        return m;
+    }
+
+    @Test
+    public void planes_areNormalizedDistances() throws Exception
+    {
+        Frustum frustum = CreateFrustum();
+
+        assertEquals(7, frustum.Distance(Frustum.NEAR, 0, 0, -10), EPSILON);
+        assertEquals(10, frustum.Distance(Frustum.FAR, 0, 0, -10), EPSILON);
+        // the side planes go through the eye at 45 degrees off the x / y axes (width 2 at depth 3 ... )
+        float expected = (float) ((10.0 / 3.0 - 1) * Math.cos(Math.atan(1.0 / 3.0)));
+        assertEquals(expected, frustum.Distance(Frustum.RIGHT, 1, 0, -10), EPSILON);
+        assertEquals(expected, frustum.Distance(Frustum.TOP, 0, 1, -10), EPSILON);
+    }
+
+    @Test
+    public void sphere_insideOutsideAndStraddling() throws Exception
+    {
+        Frustum frustum = CreateFrustum();
+
+        assertTrue(frustum.IsSphereVisible(0, 0, -10, 1));
+        assertFalse(frustum.IsSphereVisible(0, 0, -1, 1));      // in front of the near plane
+        assertFalse(frustum.IsSphereVisible(0, 0, -25, 1));     // past the far plane
+        assertFalse(frustum.IsSphereVisible(0, 0, 10, 1));      // behind the camera
+        assertFalse(frustum.IsSphereVisible(100, 0, -10, 1));
+        assertTrue(frustum.IsSphereVisible(0, 0, -2.5f, 1));    // straddles the near plane
+        assertTrue(frustum.IsSphereVisible(0, 0, -20.5f, 1));   // straddles the far plane
+    }
+
+    @Test
+    public void isVisible_usesModelMatrixScale() throws Exception
+    {
+        Frustum frustum = CreateFrustum();
+        Bounds bounds = UnitSphere();
+
+        // half width at depth 10 is 3.33
+        float[] m = Translation(4, 0, -10);
+        assertTrue(frustum.IsVisible(bounds, m));
+
+        for (int i = 0; i < 12; i++)
+            m[i] *= 0.5f;
+        assertFalse(frustum.IsVisible(bounds, m));
+
+        assertEquals(2, frustum.GetNumTested());
+        assertEquals(1, frustum.GetNumCulled());
+
+        frustum.SetViewProjection(new float[16]);
+        assertEquals(0, frustum.GetNumTested());
+    }
+
+    @Test
+    public void sceneDraw_skipsNodesOutsideFrustum() throws Exception
+    {
+        final Bounds bounds = UnitSphere();
+        final int[] numDrawn = new int[1];
+        Renderable renderable = new Renderable()
+        {
+            @Override
+            public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+            {
+                numDrawn[0]++;
+            }
+
+            @Override
+            public Bounds GetBounds()
+            {
+                return bounds;
+            }
+        };
+
+        // a row of 10 along x at depth 10, spaced 2 apart: x = 0, 2 ... 18
+        SceneNode root = new SceneNode();
+        root.SetPosition(0, 0, -10);
+        for (int i = 0; i < 10; i++)
+        {
+            SceneNode node = new SceneNode(renderable);
+            node.SetPosition(i * 2, 0, 0);
+            root.AddChild(node);
+        }
+        root.UpdateWorldMatrices();
+
+        Frustum frustum = CreateFrustum();
+        root.Draw(null, frustum);
+
+        // x = 0, 2, 4 reach into the 3.33 half width
+        assertEquals(3, numDrawn[0]);
+        assertEquals(10, frustum.GetNumTested());
+        assertEquals(7, frustum.GetNumCulled());
+
+        numDrawn[0] = 0;
+        root.Draw(null, null);
+        assertEquals(10, numDrawn[0]);
+    }
+}
@@ -0,0 +1,319 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that GLStateCache drops the calls that wouldn't change the GL state and makes the
+ * others, in time for the draws that need them, against a recording fake GL. Runs on the
+ * development machine (host).
+ */
+public class GLStateCacheTest
+{
+    private RecordingGLApi mRecording;
+    private GLStateCache mCache;
+
+    @Before
+    public void setUp()
+    {
+        mRecording = new RecordingGLApi();
+        mCache = new GLStateCache(mRecording);
+    }
+
+    private static FloatBuffer Floats(int count)
+    {
+        return ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Test
+    public void useProgram_onlyWhenItChanges() throws Exception
+    {
+        mCache.glUseProgram(3);
+        mCache.glUseProgram(3);
+        mCache.glUseProgram(4);
+        mCache.glUseProgram(3);
+
+        assertEquals(3, mRecording.CountCalls("glUseProgram"));
+        assertEquals(3, mCache.GetNumIssued());
+        assertEquals(1, mCache.GetNumElided());
+    }
+
+    @Test
+    public void uniforms_keptPerProgram() throws Exception
+    {
+        float[] matrix = new float[16];
+        matrix[0] = 1;
+
+        mCache.glUseProgram(3);
+        mCache.glUniform3f(5, 1, 2, 3);
+        mCache.glUniform3f(5, 1, 2, 3);
+        mCache.glUniformMatrix4fv(6, 1, false, matrix, 0);
+        mCache.glUniformMatrix4fv(6, 1, false, matrix, 0);
+        assertEquals(1, mRecording.CountCalls("glUniform3f"));
+        assertEquals(1, mRecording.CountCalls("glUniformMatrix4fv"));
+
+        // another program has its own values, and the first one keeps them
+        mCache.glUseProgram(4);
+        mCache.glUniform3f(5, 1, 2, 3);
+        mCache.glUseProgram(3);
+        mCache.glUniform3f(5, 1, 2, 3);
+        assertEquals(2, mRecording.CountCalls("glUniform3f"));
+
+        matrix[5] = 2;
+        mCache.glUniformMatrix4fv(6, 1, false, matrix, 0);
+        mCache.glUniform3f(5, 1, 2, 4);
+        assertEquals(2, mRecording.CountCalls("glUniformMatrix4fv"));
+        assertEquals(3, mRecording.CountCalls("glUniform3f"));
+
+        // relinking resets them
+        mCache.glLinkProgram(3);
+        mCache.glUniform3f(5, 1, 2, 4);
+        assertEquals(4, mRecording.CountCalls("glUniform3f"));
+    }
+
+    @Test
+    public void uniforms_intsAndRemovedLocations() throws Exception
+    {
+        mCache.glUseProgram(3);
+        mCache.glUniform1i(1, 0);
+        mCache.glUniform1i(2, 1);
+        mCache.glUniform1i(1, 0);
+        mCache.glUniform1f(2, 1.0f);        // another type at the same location isn't the same value
+        mCache.glUniform4f(-1, 1, 1, 1, 1);
+        mCache.glUniform4f(1000, 1, 1, 1, 1);   // past the tracked locations
+        mCache.glUniform4f(1000, 1, 1, 1, 1);
+
+        assertEquals(2, mRecording.CountCalls("glUniform1i"));
+        assertEquals(1, mRecording.CountCalls("glUniform1f"));
+        assertEquals(2, mRecording.CountCalls("glUniform4f"));
+    }
+
+    @Test
+    public void uniforms_shorterArraysReuseTheirShadow() throws Exception
+    {
+        // the instance rows: full batches, then a partial last one, every frame
+        float[] rows = new float[96 * 4];
+        mCache.glUseProgram(3);
+        for (int frame = 0; frame < 3; frame++)
+        {
+            mCache.glUniform4fv(7, 96, rows, 0);
+            mCache.glUniform4fv(7, 96, rows, 0);
+            mCache.glUniform4fv(7, 30, rows, 0);
+        }
+        assertEquals(6, mRecording.CountCalls("glUniform4fv"));
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // a driver that doesn't build the recorded call strings
+        GLStateCache cache = new GLStateCache(new RecordingGLApi()
+        {
+            @Override
+            public void glUniform4fv(int location, int count, float[] value, int offset)
+            {
+            }
+        });
+        cache.glUseProgram(3);
+        for (int warmup = 0; warmup < 3; warmup++)
+            UploadBatches(cache, rows, 20000);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        UploadBatches(cache, rows, 20000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals("bytes allocated over 20000 frames", 0, allocated);
+    }
+
+    private static void UploadBatches(GLStateCache cache, float[] rows, int frames)
+    {
+        for (int frame = 0; frame < frames; frame++)
+        {
+            rows[0] = frame;
+            cache.glUniform4fv(7, 96, rows, 0);
+            cache.glUniform4fv(7, 30, rows, 0);
+        }
+    }
+
+    @Test
+    public void uniforms_unknownProgramGoThrough() throws Exception
+    {
+        mCache.glUniform1f(1, 0.5f);
+        mCache.glUniform1f(1, 0.5f);
+        assertEquals(2, mRecording.CountCalls("glUniform1f"));
+
+        // the program in use is deleted, its name can come back
+        mCache.glUseProgram(3);
+        mCache.glUniform1f(1, 0.5f);
+        mCache.glDeleteProgram(3);
+        mCache.glUseProgram(3);
+        mCache.glUniform1f(1, 0.5f);
+        assertEquals(2, mRecording.CountCalls("glUseProgram"));
+        assertEquals(4, mRecording.CountCalls("glUniform1f"));
+    }
+
+    @Test
+    public void arrays_disableThenEnableBetweenDrawsIsDropped() throws Exception
+    {
+        // two objects, each enabling and disabling the same arrays around its draw
+        for (int object = 0; object < 2; object++)
+        {
+            mCache.glEnableVertexAttribArray(0);
+            mCache.glEnableVertexAttribArray(1);
+            mCache.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+            mCache.glDisableVertexAttribArray(0);
+            mCache.glDisableVertexAttribArray(1);
+        }
+        assertEquals(2, mRecording.CountCalls("glEnableVertexAttribArray"));
+        assertEquals(0, mRecording.CountCalls("glDisableVertexAttribArray"));
+        assertEquals(2, mCache.GetNumIssued());
+        assertEquals(4, mCache.GetNumElided());
+
+        // an object without normals: the array is disabled before its draw
+        mCache.glEnableVertexAttribArray(0);
+        mCache.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+        assertEquals(1, mRecording.CountCalls("glDisableVertexAttribArray"));
+        int draw = mRecording.GetCalls().lastIndexOf("glDrawArrays(4,0,3)");
+        assertEquals("glDisableVertexAttribArray(1)", mRecording.GetCalls().get(draw - 1));
+    }
+
+    @Test
+    public void buffers_unbindThenBindIsDropped() throws Exception
+    {
+        // the same mesh drawn twice, as VertexBufferMesh.Draw() does
+        for (int copy = 0; copy < 2; copy++)
+        {
+            mCache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 7);
+            mCache.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+            mCache.glEnableVertexAttribArray(0);
+            mCache.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 8);
+            mCache.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, 0);
+            mCache.glDisableVertexAttribArray(0);
+            mCache.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            mCache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        }
+        assertEquals(2, mRecording.CountCalls("glBindBuffer"));
+        assertEquals(1, mRecording.CountCalls("glVertexAttribPointer"));
+        assertEquals(1, mRecording.CountCalls("glEnableVertexAttribArray"));
+        assertEquals(2, mRecording.GetDrawCalls());
+
+        // client side arrays and indices get the buffers unbound first
+        mCache.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 0, Floats(9));
+        assertEquals(0, mRecording.GetBoundArrayBuffer());
+        mCache.glEnableVertexAttribArray(0);
+        mCache.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, ByteBuffer.allocateDirect(6));
+        assertEquals(4, mRecording.CountCalls("glBindBuffer"));
+        assertTrue(mRecording.GetCalls().contains("glBindBuffer(" + GLES20.GL_ELEMENT_ARRAY_BUFFER + ",0)"));
+    }
+
+    @Test
+    public void buffers_deletedOnesAreForgotten() throws Exception
+    {
+        mCache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 7);
+        mCache.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+        mCache.glDeleteBuffers(1, new int[] {7}, 0);
+
+        // a new buffer with the same name
+        mCache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 7);
+        mCache.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+        assertEquals(2, mRecording.CountCalls("glBindBuffer"));
+        assertEquals(2, mRecording.CountCalls("glVertexAttribPointer"));
+
+        // uploads bind first
+        mCache.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 9);
+        mCache.glBufferData(GLES20.GL_ARRAY_BUFFER, 12, Floats(3), GLES20.GL_STATIC_DRAW);
+        assertEquals(9, mRecording.GetBoundArrayBuffer());
+    }
+
+    @Test
+    public void textures_perUnit() throws Exception
+    {
+        mCache.glActiveTexture(GLES20.GL_TEXTURE0);
+        mCache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+        mCache.glActiveTexture(GLES20.GL_TEXTURE1);
+        mCache.glBindTexture(GLES20.GL_TEXTURE_2D, 6);
+        mCache.glActiveTexture(GLES20.GL_TEXTURE0);
+        mCache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+        assertEquals(3, mRecording.CountCalls("glActiveTexture"));
+        assertEquals(2, mRecording.CountCalls("glBindTexture"));
+
+        // deleting a bound texture unbinds it, the name can come back with a new texture
+        mCache.glDeleteTextures(1, new int[] {5}, 0);
+        mCache.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+        assertEquals(3, mRecording.CountCalls("glBindTexture"));
+    }
+
+    @Test
+    public void caps_onlyWhenTheyChange() throws Exception
+    {
+        mCache.glEnable(GLES20.GL_DEPTH_TEST);
+        mCache.glEnable(GLES20.GL_DEPTH_TEST);
+        mCache.glEnable(GLES20.GL_CULL_FACE);
+        mCache.glDisable(GLES20.GL_CULL_FACE);
+        mCache.glDisable(GLES20.GL_CULL_FACE);
+        mCache.glEnable(GLES20.GL_DITHER);      // not tracked
+        mCache.glEnable(GLES20.GL_DITHER);
+
+        assertEquals(4, mRecording.CountCalls("glEnable"));
+        assertEquals(1, mRecording.CountCalls("glDisable"));
+    }
+
+    @Test
+    public void reset_forgetsEverything() throws Exception
+    {
+        mCache.glUseProgram(3);
+        mCache.glUniform1f(1, 0.5f);
+        mCache.glEnable(GLES20.GL_DEPTH_TEST);
+        mCache.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        mCache.Reset();
+        mCache.glUseProgram(3);
+        mCache.glUniform1f(1, 0.5f);
+        mCache.glEnable(GLES20.GL_DEPTH_TEST);
+        mCache.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        assertEquals(2, mRecording.CountCalls("glUseProgram"));
+        assertEquals(2, mRecording.CountCalls("glUniform1f"));
+        assertEquals(2, mRecording.CountCalls("glEnable"));
+        assertEquals(2, mRecording.CountCalls("glActiveTexture"));
+    }
+
+    @Test
+    public void frames_countTheirOwnCalls() throws Exception
+    {
+        MeshData meshData = MeshTestUtil.Build("v 0 0 0\nv 1 0 0\nv 1 1 0\nvn 0 0 1\nf 1//1 2//1 3//1\n",
+                new ObjMaterial[] {new ObjMaterial()});
+        VertexLayout layout = VertexLayout.ForMesh(meshData);
+        VertexBufferMesh mesh = new VertexBufferMesh(layout, layout.Interleave(meshData),
+                meshData.GetIndices().ToDirectShortBuffer(), GLES20.GL_UNSIGNED_SHORT, meshData.GetNumElements());
+        mesh.Upload(mCache);
+        int[] attribLocations = {0, 1, -1};
+
+        for (int frame = 0; frame < 2; frame++)
+        {
+            mCache.BeginFrame();
+            mCache.glUseProgram(3);
+            for (int copy = 0; copy < 10; copy++)
+                mesh.Draw(mCache, attribLocations);
+            mCache.EndFrame();
+        }
+
+        // the second frame only has the draws to make
+        assertEquals(0, mCache.GetIssuedLastFrame());
+        assertTrue(mCache.GetElidedLastFrame() > 0);
+        assertEquals(20, mRecording.GetDrawCalls());
+        assertEquals(2, mRecording.CountCalls("glEnableVertexAttribArray"));
+    }
+}
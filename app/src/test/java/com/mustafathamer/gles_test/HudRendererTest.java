@@ -0,0 +1,84 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the frame time graph of the HUD: the bars are stacked by phase at the height of their
+ * time, and it's drawn in one call. Runs on the development machine (host).
+ */
+public class HudRendererTest
+{
+    private static final long MS = 1000000;
+
+    // frames of the given update and draw times, and otherMs in no phase
+    private static FrameStats Frames(long[] updateMs, long[] drawMs, long otherMs)
+    {
+        final long[] now = {0};
+        FrameStats stats = new FrameStats(16, new FrameStats.Clock()
+        {
+            @Override
+            public long NanoTime()
+            {
+                return now[0];
+            }
+        });
+        for (int frame = 0; frame < updateMs.length; frame++)
+        {
+            stats.BeginFrame();
+            stats.BeginPhase(FrameStats.UPDATE);
+            now[0] += updateMs[frame] * MS;
+            stats.EndPhase();
+            stats.BeginPhase(FrameStats.DRAW);
+            now[0] += drawMs[frame] * MS;
+            stats.EndPhase();
+            now[0] += otherMs * MS;
+            stats.EndFrame(1, 1, 0);
+        }
+        return stats;
+    }
+
+    @Test
+    public void build_stacksThePhasesOfEachFrame() throws Exception
+    {
+        FrameStats stats = Frames(new long[] {2, 4}, new long[] {6, 8}, 1);
+        HudRenderer hud = new HudRenderer(null, 8);
+        int numVertices = hud.Build(stats);
+
+        // 2 bars of update, draw and the rest (no cull), budget and 3 percentile lines
+        assertEquals((2 * 3 + 4) * 6, numVertices);
+
+        // the newest frame is on the right: its update segment, then draw on top of it
+        FloatBuffer vertices = hud.GetVertices();
+        float bottom = vertices.get(1);
+        float updateTop = vertices.get(2 * HudRenderer.FLOATS_PER_VERTEX + 1);
+        float drawTop = vertices.get(8 * HudRenderer.FLOATS_PER_VERTEX + 1);
+        assertEquals(0.95f, vertices.get(HudRenderer.FLOATS_PER_VERTEX), 1e-6f);
+        assertEquals(8 / 4.0f, (drawTop - updateTop) / (updateTop - bottom), 1e-4f);
+
+        // the budget line is at half the height of the graph
+        float graphHeight = 0.4f;
+        float budgetPerNanos = graphHeight / 2 / HudRenderer.BUDGET_NANOS;
+        assertEquals(4 * MS * budgetPerNanos, updateTop - bottom, 1e-4f);
+    }
+
+    @Test
+    public void draw_isOneCall() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ShaderProgram program = new ShaderProgram(gl, "vertex", "fragment", HudRenderer.ATTRIBUTES,
+                HudRenderer.UNIFORMS);
+        HudRenderer hud = new HudRenderer(program, 8);
+
+        gl.BeginFrame();
+        hud.Draw(gl, new FrameStats(16));       // nothing to show yet
+        assertEquals(0, gl.GetDrawCalls());
+
+        hud.Draw(gl, Frames(new long[] {30}, new long[] {30}, 30));
+        assertEquals(1, gl.GetDrawCalls());
+        assertTrue(gl.GetCalls().contains("glDrawArrays(4,0," + hud.GetNumVertices() + ")"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * JVM benchmark of building the instance batches: packing the world matrices of 1k and 10k copies
+ * of a small bundled model into uniform rows, every frame, median of the timed frames. Also prints
+ * the draw calls the copies take when instanced, against one per material per copy when every copy
+ * is drawn on its own, and the uniform data uploaded per frame.
+ */
+
+public class InstanceBatchBenchmark
+{
+    private static final String[] MODELS = {"cube", "caution_cube", "torus"};
+    private static final int[] NUM_INSTANCES = {1000, 10000};
+    private static final int WARMUP_FRAMES = 200;
+    private static final int TIMED_FRAMES = 200;
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-14s %6s %9s %8s %11s %12s %12s %12s", "model", "verts", "instances",
+                "per draw", "draw calls", "per object", "rows KB", "build/frame"));
+        for (String model : MODELS)
+        {
+            MeshData mesh = MeshTestUtil.Build(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"), null);
+            VertexLayout layout = VertexLayout.ForMesh(mesh);
+            int numRanges = mesh.GetRanges().size();
+            InstancedMesh instancedMesh = new InstancedMesh(layout, layout.Interleave(mesh),
+                    mesh.GetIndices().ToDirectShortBuffer(), mesh.GetNumVerts(), mesh.GetRanges(),
+                    new float[numRanges * 4], new float[numRanges * 4]);
+
+            for (int numInstances : NUM_INSTANCES)
+            {
+                // the world matrices of a scene, as the scene graph hands them out
+                SceneNode root = new SceneNode();
+                for (int i = 0; i < numInstances; i++)
+                {
+                    SceneNode node = new SceneNode();
+                    node.SetPosition(i % 100, 0, i / 100);
+                    node.SetRotation(0, i);
+                    root.AddChild(node);
+                }
+                root.UpdateWorldMatrices();
+
+                InstanceBatch batch = new InstanceBatch(instancedMesh);
+                long[] times = new long[TIMED_FRAMES];
+                for (int frame = 0; frame < WARMUP_FRAMES + TIMED_FRAMES; frame++)
+                {
+                    batch.Clear();
+                    long start = System.nanoTime();
+                    for (int i = 0; i < numInstances; i++)
+                        batch.Add(root.GetChild(i).GetWorldMatrix());
+                    long end = System.nanoTime();
+                    if (frame >= WARMUP_FRAMES)
+                        times[frame - WARMUP_FRAMES] = end - start;
+                }
+
+                System.out.println(String.format("%-14s %6d %9d %8d %11d %12d %12.1f %9.1f us", model,
+                        mesh.GetNumVerts(), numInstances, instancedMesh.GetInstancesPerBatch(),
+                        batch.GetNumDrawCalls(), numInstances * numRanges,
+                        numInstances * InstanceBatch.FLOATS_PER_INSTANCE * 4 / 1024.0,
+                        BenchmarkUtil.Median(times) / 1e3));
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the instanced drawing emulation: the mesh repeated per copy, the model matrices packed as
+ * uniform rows, and the number of draw calls for many copies, against a recording fake GL.
+ * Runs on the development machine (host).
+ */
+public class InstanceRendererTest
+{
+    private static final float EPSILON = 1e-5f;
+
+    // a quad with a different material on each triangle
+    private static MeshData BuildQuad()
+    {
+        return MeshTestUtil.Build(MeshTestUtil.TWO_MATERIAL_QUAD_OBJ, null);
+    }
+
+    private static InstancedMesh CreateInstancedMesh(MeshData mesh)
+    {
+        VertexLayout layout = VertexLayout.ForMesh(mesh);
+        int numRanges = mesh.GetRanges().size();
+        return new InstancedMesh(layout, layout.Interleave(mesh), mesh.GetIndices().ToDirectShortBuffer(),
+                mesh.GetNumVerts(), mesh.GetRanges(), new float[numRanges * 4], new float[numRanges * 4]);
+    }
+
+    private static InstanceRenderer CreateRenderer(GLApi gl)
+    {
+        return new InstanceRenderer(new ShaderProgram(gl, "", "", InstanceRenderer.ATTRIBUTES, InstanceRenderer.UNIFORMS));
+    }
+
+    @Test
+    public void instancesPerBatch_boundedByShortIndices() throws Exception
+    {
+        assertEquals(InstancedMesh.MAX_INSTANCES_PER_BATCH, InstancedMesh.InstancesPerBatch(24));
+        assertEquals(21, InstancedMesh.InstancesPerBatch(3000));
+        assertEquals(2, InstancedMesh.InstancesPerBatch(32768));
+        assertEquals(0, InstancedMesh.InstancesPerBatch(32769));   // not worth it, drawn per object
+        assertEquals(0, InstancedMesh.InstancesPerBatch(0));
+    }
+
+    @Test
+    public void mesh_isRepeatedPerCopy() throws Exception
+    {
+        MeshData quad = BuildQuad();
+        int numVerts = quad.GetNumVerts();
+        InstancedMesh mesh = CreateInstancedMesh(quad);
+        int copies = mesh.GetInstancesPerBatch();
+        assertEquals(InstancedMesh.MAX_INSTANCES_PER_BATCH, copies);
+        assertEquals(2, mesh.GetNumRanges());
+
+        // position, normal and copy number, for every vertex of every copy
+        FloatBuffer vertices = mesh.GetVertices().asFloatBuffer();
+        assertEquals(numVerts * copies * 7, vertices.capacity());
+        float[] positions = quad.GetPositions().GetData();
+        for (int copy = 0; copy < copies; copy++)
+        {
+            for (int v = 0; v < numVerts; v++)
+            {
+                int base = (copy * numVerts + v) * 7;
+                assertEquals(positions[v * 3], vertices.get(base), 0);
+                assertEquals(positions[v * 3 + 1], vertices.get(base + 1), 0);
+                assertEquals(1, vertices.get(base + 5), 0);      // normal z
+                assertEquals(copy, vertices.get(base + 6), 0);
+            }
+        }
+
+        // each range's triangle once per copy, offset to the copy's vertices, ranges one after the other
+        ShortBuffer indices = mesh.GetIndices();
+        assertEquals(quad.GetNumElements() * copies, mesh.GetNumIndices());
+        int[] source = quad.GetIndices().GetData();
+        int i = 0;
+        for (MeshRange range : quad.GetRanges())
+        {
+            for (int copy = 0; copy < copies; copy++)
+            {
+                for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e++)
+                    assertEquals(source[e] + copy * numVerts, indices.get(i++));
+            }
+        }
+    }
+
+    @Test
+    public void batch_packsMatrixRows() throws Exception
+    {
+        float[] model = new float[16];
+        MatrixMath.SetRotate(model, 30, 0, 1, 0);
+        MatrixMath.Translate(model, 1, 2, 3);
+
+        InstanceBatch batch = new InstanceBatch(CreateInstancedMesh(BuildQuad()));
+        for (int i = 0; i < 100; i++)
+            batch.Add(model);
+        assertEquals(100, batch.GetNumInstances());
+
+        // what the shader does with the rows of the last copy: dot(row, position)
+        float[] point = {0.5f, -2, 4, 1};
+        float[] expected = new float[4];
+        MatrixMath.MultiplyMV(expected, model, point);
+        float[] rows = batch.GetRows();
+        for (int row = 0; row < 3; row++)
+        {
+            int r = 99 * InstanceBatch.FLOATS_PER_INSTANCE + row * 4;
+            float dot = rows[r] * point[0] + rows[r + 1] * point[1] + rows[r + 2] * point[2] + rows[r + 3];
+            assertEquals(expected[row], dot, EPSILON);
+        }
+
+        batch.Clear();
+        assertEquals(0, batch.GetNumInstances());
+    }
+
+    @Test
+    public void flush_drawsManyCopiesPerCall() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        InstanceRenderer renderer = CreateRenderer(gl);
+        assertTrue(renderer.IsAvailable());
+
+        MeshData quad = BuildQuad();
+        InstanceBatch batch = new InstanceBatch(CreateInstancedMesh(quad));
+        float[] model = new float[16];
+        MatrixMath.SetIdentity(model);
+        for (int i = 0; i < 100; i++)
+            renderer.Add(batch, model);
+
+        float[] identity = new float[16];
+        MatrixMath.SetIdentity(identity);
+        gl.BeginFrame();
+        renderer.Flush(gl, identity, identity, new float[4]);
+
+        // 100 copies: batches of 32, 32, 32 and 4, times 2 materials, instead of 200 draws per object
+        assertEquals(8, gl.GetDrawCalls());
+        assertEquals(8, renderer.GetNumDrawCalls());
+        assertEquals(100, renderer.GetNumInstances());
+        assertEquals(4, gl.CountCalls("glUniform4fv"));
+        // the buffers are bound once to upload, then once for all the batches
+        assertEquals(2, Collections.frequency(gl.GetCalls(), "glBindBuffer(" + GLES20.GL_ARRAY_BUFFER + ",1)"));
+
+        // the last batch draws 4 copies of each range's 3 indices
+        int lastCount = 0;
+        for (String call : gl.GetCalls())
+        {
+            if (call.startsWith("glDrawElements("))
+                lastCount = Integer.parseInt(call.split(",")[1]);
+        }
+        assertEquals(4 * 3, lastCount);
+        assertEquals(0, batch.GetNumInstances());
+
+        // nothing queued: no GL calls at all
+        gl.BeginFrame();
+        renderer.Flush(gl, identity, identity, new float[4]);
+        assertEquals(0, gl.GetCalls().size());
+        assertEquals(0, renderer.GetNumInstances());
+    }
+
+    @Test
+    public void noProgram_isUnavailable() throws Exception
+    {
+        InstanceRenderer renderer = new InstanceRenderer(null);
+        assertFalse(renderer.IsAvailable());
+
+        RecordingGLApi gl = new RecordingGLApi();
+        renderer.Flush(gl, new float[16], new float[16], new float[4]);
+        assertEquals(0, gl.GetCalls().size());
+    }
+
+    @Test
+    public void countingGL_countsDrawCallsPerFrame() throws Exception
+    {
+        CountingGLApi gl = new CountingGLApi(new RecordingGLApi());
+        InstanceRenderer renderer = CreateRenderer(gl);
+        InstanceBatch batch = new InstanceBatch(CreateInstancedMesh(BuildQuad()));
+        float[] identity = new float[16];
+        MatrixMath.SetIdentity(identity);
+
+        gl.BeginFrame();
+        for (int i = 0; i < 64; i++)
+            renderer.Add(batch, identity);
+        renderer.Flush(gl, identity, identity, new float[4]);
+        gl.EndFrame();
+
+        assertEquals(4, gl.GetDrawCallsLastFrame());
+        assertTrue(gl.GetCallsLastFrame() > gl.GetDrawCallsLastFrame());
+    }
+}
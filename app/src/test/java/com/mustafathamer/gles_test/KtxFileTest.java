@@ -0,0 +1,102 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the KTX files written for the compressed textures: round trip, the header as the format
+ * defines it, and rejected input. Runs on the development machine (host).
+ */
+public class KtxFileTest
+{
+    private static ByteBuffer Bytes(int size, int value)
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++)
+            bytes.put((byte) (value + i));
+        bytes.position(0);
+        return bytes;
+    }
+
+    private static byte[] WriteAndRead(KtxFile ktx) throws IOException
+    {
+        File file = File.createTempFile("texture", ".ktx");
+        try
+        {
+            ktx.Write(file);
+            return Files.readAllBytes(file.toPath());
+        } finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void write_readsBackTheLevels() throws Exception
+    {
+        KtxFile ktx = new KtxFile(Etc1.GL_ETC1_RGB8_OES, 0x1907, 8, 4,
+                new ByteBuffer[] {Bytes(16, 1), Bytes(8, 50), Bytes(8, 90), Bytes(8, 120)});
+        byte[] data = WriteAndRead(ktx);
+
+        assertEquals(KtxFile.HEADER_SIZE + 4 * 4 + 16 + 8 * 3, data.length);
+        KtxFile read = KtxFile.Read(ByteBuffer.wrap(data));
+        assertEquals(Etc1.GL_ETC1_RGB8_OES, read.GetInternalFormat());
+        assertEquals(8, read.GetWidth());
+        assertEquals(4, read.GetHeight());
+        assertEquals(4, read.GetNumLevels());
+        assertEquals(40, read.GetDataSize());
+        assertEquals(Bytes(16, 1), read.GetLevel(0));
+        assertEquals(Bytes(8, 120), read.GetLevel(3));
+    }
+
+    @Test
+    public void write_standardHeader() throws Exception
+    {
+        byte[] data = WriteAndRead(new KtxFile(Etc1.GL_ETC1_RGB8_OES, 0x1907, 4, 4, new ByteBuffer[] {Bytes(8, 0)}));
+
+        assertEquals((byte) 0xAB, data[0]);
+        assertEquals("KTX 11", new String(data, 1, 6, "US-ASCII"));
+        ByteBuffer header = ByteBuffer.wrap(data).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x04030201, header.getInt(12));
+        assertEquals(Etc1.GL_ETC1_RGB8_OES, header.getInt(28));     // glInternalFormat
+        assertEquals(1, header.getInt(56));                         // numberOfMipmapLevels
+        assertEquals(8, header.getInt(64));                         // imageSize of level 0
+    }
+
+    @Test
+    public void read_rejectsOtherFiles() throws Exception
+    {
+        byte[] data = WriteAndRead(new KtxFile(Etc1.GL_ETC1_RGB8_OES, 0x1907, 4, 4, new ByteBuffer[] {Bytes(8, 0)}));
+
+        try
+        {
+            KtxFile.Read(ByteBuffer.wrap("not a texture at all, just some text".getBytes("US-ASCII")));
+            fail("read text");
+        } catch (IOException e)
+        {
+            // expected
+        }
+        try
+        {
+            KtxFile.Read(ByteBuffer.wrap(data, 0, data.length - 4));
+            fail("read a truncated file");
+        } catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void assetName_replacesTheExtension() throws Exception
+    {
+        assertEquals("earth_texture.ktx", KtxFile.AssetName("earth_texture.jpg"));
+        assertEquals("textures/checker.ktx", KtxFile.AssetName("textures/checker.png"));
+        assertEquals("dir.v2/image.ktx", KtxFile.AssetName("dir.v2/image"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reports the vertex buffer bytes saved on every bundled model by setting the material colors
+ * once per range instead of storing Kd / Ka (6 floats) in every vertex.
+ * Before: vertices were deduplicated on (v, vt, vn, material) and carried 24 bytes of color.
+ * After: vertices are deduplicated on (v, vt, vn) only and carry no color.
+ */
+
+public class MaterialBatchingReport
+{
+    private static final int COLOR_BYTES = (3 + 3) * 4;
+
+    //
+    // The vertex count of the old indexed build, where the material was part of the vertex key:
+    // the corners are deduplicated per material, slot 0 is NO_MATERIAL
+    //
+    private static int CountVertsWithMaterialKey(ObjParser parser)
+    {
+        VertexHashMap[] maps = new VertexHashMap[parser.GetMaterialNames().size() + 1];
+        int[] corners = parser.GetCorners().GetData();
+        int[] faceSizes = parser.GetFaceSizes().GetData();
+        int[] faceMaterials = parser.GetFaceMaterials().GetData();
+        boolean hasMaterials = !parser.GetMaterialNames().isEmpty();
+
+        int corner = 0;
+        for (int face = 0; face < parser.GetNumFaces(); face++)
+        {
+            int material = hasMaterials ? faceMaterials[face] : ObjParser.NO_MATERIAL;
+            VertexHashMap map = maps[material + 1];
+            if (map == null)
+            {
+                map = new VertexHashMap(parser.GetNumCorners());
+                maps[material + 1] = map;
+            }
+            for (int j = 0; j < faceSizes[face]; j++, corner++)
+            {
+                int c = corner * 3;
+                map.PutIfAbsent(corners[c], corners[c + 1], corners[c + 2], map.Size());
+            }
+        }
+
+        int numVerts = 0;
+        for (VertexHashMap map : maps)
+            numVerts += map != null ? map.Size() : 0;
+        return numVerts;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-14s %8s %8s %12s %8s %8s %12s %8s %8s",
+                "model", "ranges", "verts", "vbo bytes", "stride", "verts", "vbo bytes", "stride", "saved"));
+        long totalBefore = 0;
+        long totalAfter = 0;
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+            ObjParser parser = new ObjParser();
+            parser.Parse(data, 0, data.length);
+
+            MeshData mesh = new ObjMeshBuilder(parser, null).BuildIndexed();
+            int strideAfter = VertexLayout.ForMesh(mesh).GetStride();
+            boolean hadColors = !parser.GetMaterialNames().isEmpty();
+            int strideBefore = strideAfter + (hadColors ? COLOR_BYTES : 0);
+            int vertsBefore = CountVertsWithMaterialKey(parser);
+
+            long before = (long) vertsBefore * strideBefore;
+            long after = (long) mesh.GetNumVerts() * strideAfter;
+            totalBefore += before;
+            totalAfter += after;
+            System.out.println(String.format("%-14s %8d %8d %12d %8d %8d %12d %8d %7.1f%%",
+                    model, mesh.GetRanges().size(), vertsBefore, before, strideBefore,
+                    mesh.GetNumVerts(), after, strideAfter, 100.0 * (before - after) / before));
+        }
+        System.out.println(String.format("total: %s -> %s", BenchmarkUtil.Kb(totalBefore), BenchmarkUtil.Kb(totalAfter)));
+    }
+}
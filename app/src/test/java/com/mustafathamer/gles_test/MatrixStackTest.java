@@ -0,0 +1,181 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per frame matrix path (MatrixMath, MatrixStack, Transform): the results, the dirty
+ * flag, and that a steady state frame doesn't allocate. Runs on the development machine (host).
+ */
+public class MatrixStackTest
+{
+    private static final float EPSILON = 1e-5f;
+
+    private static void AssertMatrixEquals(float[] expected, float[] actual)
+    {
+        for (int i = 0; i < 16; i++)
+            assertEquals("element " + i, expected[i], actual[i], EPSILON);
+    }
+
+    // translate * rotateY * rotateX * scale, built one step at a time like the old rotateM code
+    private static float[] Compose(float x, float y, float z, float xAngle, float yAngle, float scale)
+    {
+        float[] m = new float[16];
+        float[] rotation = new float[16];
+        float[] temp = new float[16];
+
+        MatrixMath.SetIdentity(m);
+        MatrixMath.Translate(m, x, y, z);
+        MatrixMath.SetRotate(rotation, yAngle, 0, 1, 0);
+        MatrixMath.Multiply(temp, m, rotation);
+        MatrixMath.SetRotate(rotation, xAngle, 1, 0, 0);
+        MatrixMath.Multiply(m, temp, rotation);
+        for (int i = 0; i < 12; i++)
+            m[i] *= scale;
+        return m;
+    }
+
+    @Test
+    public void rotate_matchesKnownMatrix() throws Exception
+    {
+        float[] m = new float[16];
+        MatrixMath.SetRotate(m, 90, 0, 0, 1);
+
+        // x axis goes to y
+        float[] v = {1, 0, 0, 1};
+        float[] result = new float[4];
+        MatrixMath.MultiplyMV(result, m, v);
+        assertEquals(0, result[0], EPSILON);
+        assertEquals(1, result[1], EPSILON);
+        assertEquals(0, result[2], EPSILON);
+        assertEquals(1, result[3], EPSILON);
+    }
+
+    @Test
+    public void translate_postMultiplies() throws Exception
+    {
+        float[] m = new float[16];
+        MatrixMath.SetRotate(m, 90, 0, 1, 0);
+        MatrixMath.Translate(m, 0, 0, -2);
+
+        // translation is in the rotated frame: -z rotated 90 degrees around y is -x
+        assertEquals(-2, m[12], EPSILON);
+        assertEquals(0, m[13], EPSILON);
+        assertEquals(0, m[14], EPSILON);
+    }
+
+    @Test
+    public void transform_matchesComposedMatrix() throws Exception
+    {
+        Transform transform = new Transform();
+        transform.SetPosition(1, 2, 3);
+        transform.SetRotation(30, -75);
+        transform.SetScale(0.5f);
+
+        AssertMatrixEquals(Compose(1, 2, 3, 30, -75, 0.5f), transform.GetMatrix());
+    }
+
+    @Test
+    public void transform_onlyRecomputesWhenChanged() throws Exception
+    {
+        Transform transform = new Transform();
+        assertTrue(transform.IsDirty());
+        transform.GetMatrix();
+        assertFalse(transform.IsDirty());
+
+        transform.SetRotation(0, 0);        // same angles, nothing to do
+        assertFalse(transform.IsDirty());
+
+        transform.SetRotation(10, 0);
+        assertTrue(transform.IsDirty());
+        AssertMatrixEquals(Compose(0, 0, 0, 10, 0, 1), transform.GetMatrix());
+        assertFalse(transform.IsDirty());
+    }
+
+    @Test
+    public void stack_pushMultiplyPop() throws Exception
+    {
+        float[] view = Compose(0, 0, -8, 20, 0, 1);
+        float[] model = Compose(1, 0, 0, 0, 45, 1);
+        float[] expected = new float[16];
+        MatrixMath.Multiply(expected, view, model);
+
+        MatrixStack stack = new MatrixStack(4);
+        stack.Load(view);
+        stack.Push();
+        stack.MultiplyTop(model);
+        assertEquals(2, stack.GetDepth());
+        AssertMatrixEquals(expected, stack.GetTop());
+
+        stack.Pop();
+        AssertMatrixEquals(view, stack.GetTop());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stack_overflowThrows() throws Exception
+    {
+        MatrixStack stack = new MatrixStack(2);
+        stack.Push();
+        stack.Push();
+    }
+
+    @Test
+    public void steadyStateFrame_doesNotAllocate() throws Exception
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // what the renderer and the models hold across frames
+        MatrixStack stack = new MatrixStack(16);
+        float[] view = Compose(0, -4, -8, 30, 180, 1);
+        float[] projection = Compose(0, 0, 0, 0, 0, 0.5f);
+        float[] mvp = new float[16];
+        float[] lightModel = new float[16];
+        float[] lightPos = {0, 0, 0, 1};
+        float[] lightPosWorld = new float[4];
+        float[] lightPosEye = new float[4];
+        Transform[] objects = new Transform[10];
+        for (int i = 0; i < objects.length; i++)
+            objects[i] = new Transform();
+
+        float checksum = 0;
+        long before = 0;
+        final int warmupFrames = 20000;
+        final int frames = 20000;
+        for (int frame = 0; frame < warmupFrames + frames; frame++)
+        {
+            if (frame == warmupFrames)
+                before = threadBean.getThreadAllocatedBytes(threadId);
+
+            stack.Load(view);
+            MatrixMath.SetRotate(lightModel, frame * 0.036f, 0, 1, 0);
+            MatrixMath.Translate(lightModel, 0, 0, -2);
+            MatrixMath.MultiplyMV(lightPosWorld, lightModel, lightPos);
+            MatrixMath.MultiplyMV(lightPosEye, view, lightPosWorld);
+
+            // the user only drags now and then, most frames the angles don't change
+            float angle = (frame / 30) * 2.0f;
+            for (Transform object : objects)
+            {
+                object.SetRotation(angle, -angle);
+                stack.Push();
+                stack.MultiplyTop(object.GetMatrix());
+                MatrixMath.Multiply(mvp, projection, stack.GetTop());
+                stack.Pop();
+                checksum += mvp[0];
+            }
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertFalse(Float.isNaN(checksum));
+        assertEquals("bytes allocated over " + frames + " frames", 0, allocated);
+    }
+}
@@ -0,0 +1,125 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that splitting a mesh for short indices keeps every triangle with its material and keeps
+ * each part under the vertex limit. Runs on the development machine (host).
+ */
+public class MeshDataTest
+{
+    // size x size grid of quads, the left half in material 0 and the right half in material 1
+    private static MeshData BuildGrid(int size)
+    {
+        FloatArray positions = new FloatArray();
+        FloatArray normals = new FloatArray();
+        FloatArray uvs = new FloatArray();
+        for (int y = 0; y <= size; y++)
+        {
+            for (int x = 0; x <= size; x++)
+            {
+                positions.Add(x, y, 0);
+                normals.Add(0, 0, 1);
+                uvs.Add(x / (float) size);
+                uvs.Add(y / (float) size);
+            }
+        }
+
+        IntArray indices = new IntArray();
+        List<MeshRange> ranges = new ArrayList<>();
+        for (int half = 0; half < 2; half++)
+        {
+            int first = indices.Size();
+            for (int y = 0; y < size; y++)
+            {
+                for (int x = half * size / 2; x < (half + 1) * size / 2; x++)
+                {
+                    int v = y * (size + 1) + x;
+                    indices.Add(v, v + 1, v + size + 2);
+                    indices.Add(v, v + size + 2, v + size + 1);
+                }
+            }
+            ranges.add(new MeshRange(half, first, indices.Size() - first));
+        }
+        return new MeshData(positions, normals, uvs, indices, true, ranges,
+                new ObjMaterial[] {new ObjMaterial(), new ObjMaterial()});
+    }
+
+    // "material: x,y,u,v x,y,u,v x,y,u,v" per triangle, in order
+    private static void AddTriangles(MeshData mesh, List<String> triangles)
+    {
+        float[] p = mesh.GetPositions().GetData();
+        float[] uv = mesh.GetUVs().GetData();
+        for (MeshRange range : mesh.GetRanges())
+        {
+            for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e += 3)
+            {
+                StringBuilder triangle = new StringBuilder().append(range.GetMaterial()).append(':');
+                for (int c = 0; c < 3; c++)
+                {
+                    int v = mesh.GetIndices().Get(e + c);
+                    triangle.append(' ').append(p[v * 3]).append(',').append(p[v * 3 + 1])
+                            .append(',').append(uv[v * 2]).append(',').append(uv[v * 2 + 1]);
+                }
+                triangles.add(triangle.toString());
+            }
+        }
+    }
+
+    @Test
+    public void split_keepsTrianglesAndMaterials() throws Exception
+    {
+        MeshData mesh = BuildGrid(20);
+        List<String> expected = new ArrayList<>();
+        AddTriangles(mesh, expected);
+
+        for (int maxVerts : new int[] {3, 50, 100, 300})
+        {
+            List<MeshData> parts = mesh.Split(maxVerts);
+            assertTrue(parts.size() > 1);
+            List<String> actual = new ArrayList<>();
+            for (MeshData part : parts)
+            {
+                assertTrue(part.GetNumVerts() <= maxVerts);
+                for (int e = 0; e < part.GetNumElements(); e++)
+                    assertTrue(part.GetIndices().Get(e) < part.GetNumVerts());
+
+                // ranges back to back, one per material
+                int next = 0;
+                for (MeshRange range : part.GetRanges())
+                {
+                    assertEquals(next, range.GetFirstElement());
+                    assertTrue(range.GetNumElements() > 0);
+                    next += range.GetNumElements();
+                }
+                assertEquals(part.GetNumElements(), next);
+                AddTriangles(part, actual);
+            }
+            // same triangles in the same order, nothing left out or drawn twice
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void split_fillsPartsBeforeStartingAnother() throws Exception
+    {
+        // a part is only closed when the next triangle's new vertices (3 at most) don't fit
+        List<MeshData> parts = BuildGrid(20).Split(100);
+        for (int i = 0; i < parts.size() - 1; i++)
+            assertTrue("part " + i + ": " + parts.get(i).GetNumVerts(), parts.get(i).GetNumVerts() >= 98);
+    }
+
+    @Test
+    public void splitForShortIndices_leavesSmallMeshAlone() throws Exception
+    {
+        MeshData mesh = BuildGrid(4);
+        assertEquals(Collections.singletonList(mesh), mesh.SplitForShortIndices());
+        assertFalse(mesh.NeedsIntIndices());
+    }
+}
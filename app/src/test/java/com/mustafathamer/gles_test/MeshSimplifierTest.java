@@ -0,0 +1,278 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the levels of detail MeshSimplifier builds: how many triangles are left, how far they are
+ * from the original surface, and that material boundaries and borders stay in place. Also tests
+ * the level switching of LodSelector. Runs on the development machine (host).
+ */
+public class MeshSimplifierTest
+{
+    private static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+
+    // unit sphere: an octahedron with each triangle split in 4, numSplits times, pushed onto the sphere
+    private static MeshData BuildSphere(int numSplits)
+    {
+        FloatArray positions = new FloatArray();
+        positions.Add(1, 0, 0);
+        positions.Add(-1, 0, 0);
+        positions.Add(0, 1, 0);
+        positions.Add(0, -1, 0);
+        positions.Add(0, 0, 1);
+        positions.Add(0, 0, -1);
+        IntArray triangles = new IntArray();
+        triangles.Add(0, 2, 4);
+        triangles.Add(2, 1, 4);
+        triangles.Add(1, 3, 4);
+        triangles.Add(3, 0, 4);
+        triangles.Add(2, 0, 5);
+        triangles.Add(1, 2, 5);
+        triangles.Add(3, 1, 5);
+        triangles.Add(0, 3, 5);
+
+        for (int split = 0; split < numSplits; split++)
+        {
+            Map<Long, Integer> midpoints = new HashMap<>();
+            IntArray split4 = new IntArray();
+            for (int t = 0; t < triangles.Size(); t += 3)
+            {
+                int a = triangles.Get(t), b = triangles.Get(t + 1), c = triangles.Get(t + 2);
+                int ab = Midpoint(positions, midpoints, a, b);
+                int bc = Midpoint(positions, midpoints, b, c);
+                int ca = Midpoint(positions, midpoints, c, a);
+                split4.Add(a, ab, ca);
+                split4.Add(ab, b, bc);
+                split4.Add(ca, bc, c);
+                split4.Add(ab, bc, ca);
+            }
+            triangles = split4;
+        }
+
+        // on the unit sphere, the normal is the position
+        FloatArray normals = new FloatArray();
+        normals.AddAll(positions.GetData(), 0, positions.Size());
+        FloatArray uvs = new FloatArray();
+        uvs.Resize(positions.Size() / 3 * 2);
+        List<MeshRange> ranges = new ArrayList<>();
+        ranges.add(new MeshRange(0, 0, triangles.Size()));
+        return new MeshData(positions, normals, uvs, triangles, false, ranges, new ObjMaterial[] {new ObjMaterial()});
+    }
+
+    private static int Midpoint(FloatArray positions, Map<Long, Integer> midpoints, int a, int b)
+    {
+        long key = Math.min(a, b) * 1000000L + Math.max(a, b);
+        Integer midpoint = midpoints.get(key);
+        if (midpoint != null)
+            return midpoint;
+        float x = positions.Get(a * 3) + positions.Get(b * 3);
+        float y = positions.Get(a * 3 + 1) + positions.Get(b * 3 + 1);
+        float z = positions.Get(a * 3 + 2) + positions.Get(b * 3 + 2);
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        positions.Add(x / length, y / length, z / length);
+        midpoints.put(key, positions.Size() / 3 - 1);
+        return positions.Size() / 3 - 1;
+    }
+
+    // size x size flat grid of unit quads in z = 0, the left half one material, the right half another
+    private static MeshData BuildTwoMaterialGrid(int size)
+    {
+        FloatArray positions = new FloatArray();
+        IntArray indices = new IntArray();
+        List<MeshRange> ranges = new ArrayList<>();
+        int half = size / 2;
+        for (int material = 0; material < 2; material++)
+        {
+            // each half has its own vertices, as ObjMeshBuilder splits them by material
+            int base = positions.Size() / 3;
+            int first = indices.Size();
+            for (int y = 0; y <= size; y++)
+            {
+                for (int x = 0; x <= half; x++)
+                    positions.Add(material * half + x, y, 0);
+            }
+            for (int y = 0; y < size; y++)
+            {
+                for (int x = 0; x < half; x++)
+                {
+                    int v = base + y * (half + 1) + x;
+                    indices.Add(v, v + 1, v + half + 2);
+                    indices.Add(v, v + half + 2, v + half + 1);
+                }
+            }
+            ranges.add(new MeshRange(material, first, indices.Size() - first));
+        }
+
+        int numVerts = positions.Size() / 3;
+        FloatArray normals = new FloatArray();
+        for (int v = 0; v < numVerts; v++)
+            normals.Add(0, 0, 1);
+        FloatArray uvs = new FloatArray();
+        uvs.Resize(numVerts * 2);
+        return new MeshData(positions, normals, uvs, indices, false, ranges,
+                new ObjMaterial[] {new ObjMaterial(), new ObjMaterial()});
+    }
+
+    // twice the signed area of triangle e of mesh projected on z = 0
+    private static float DoubleAreaZ(MeshData mesh, int e)
+    {
+        float[] p = mesh.GetPositions().GetData();
+        int a = mesh.GetIndices().Get(e) * 3, b = mesh.GetIndices().Get(e + 1) * 3, c = mesh.GetIndices().Get(e + 2) * 3;
+        return (p[b] - p[a]) * (p[c + 1] - p[a + 1]) - (p[b + 1] - p[a + 1]) * (p[c] - p[a]);
+    }
+
+    @Test
+    public void buildLods_reachesTargetTriangleCounts() throws Exception
+    {
+        MeshData sphere = BuildSphere(4);
+        int numTriangles = sphere.GetNumElements() / 3;
+        assertEquals(2048, numTriangles);
+
+        List<MeshData> lods = MeshSimplifier.BuildLods(sphere, LOD_RATIOS);
+        assertEquals(LOD_RATIOS.length, lods.size());
+        for (int i = 0; i < LOD_RATIOS.length; i++)
+        {
+            int target = (int) (numTriangles * LOD_RATIOS[i]);
+            int lodTriangles = lods.get(i).GetNumElements() / 3;
+            // a collapse removes two triangles of a closed mesh
+            assertTrue(lodTriangles <= target);
+            assertTrue(lodTriangles >= target - 2);
+            // the merged vertices are shared, not copied per corner
+            assertTrue(lods.get(i).GetNumVerts() <= sphere.GetNumVerts() * LOD_RATIOS[i] + 8);
+        }
+    }
+
+    @Test
+    public void buildLods_skipsTinyLevels() throws Exception
+    {
+        // 128 triangles: 64 and 32, no 12
+        List<MeshData> lods = MeshSimplifier.BuildLods(BuildSphere(2), LOD_RATIOS);
+        assertEquals(2, lods.size());
+        assertEquals(32, lods.get(1).GetNumElements() / 3);
+    }
+
+    @Test
+    public void simplify_staysCloseToTheSurface() throws Exception
+    {
+        MeshSimplifier simplifier = new MeshSimplifier(BuildSphere(4));
+        double lastError = 0;
+        // vertices off the unit sphere, and triangle middles inside it (how flat the facets are)
+        float[] maxVertexError = {0.01f, 0.02f, 0.05f};
+        float[] minCenterRadius = {0.97f, 0.95f, 0.85f};
+        for (int i = 0; i < LOD_RATIOS.length; i++)
+        {
+            simplifier.Simplify((int) (2048 * LOD_RATIOS[i]));
+            MeshData lod = simplifier.BuildMesh();
+            float[] p = lod.GetPositions().GetData();
+            for (int v = 0; v < lod.GetNumVerts(); v++)
+            {
+                double radius = Math.sqrt(p[v * 3] * p[v * 3] + p[v * 3 + 1] * p[v * 3 + 1] + p[v * 3 + 2] * p[v * 3 + 2]);
+                assertEquals(1.0, radius, maxVertexError[i]);
+            }
+            for (int e = 0; e < lod.GetNumElements(); e += 3)
+            {
+                float[] center = new float[3];
+                for (int c = 0; c < 3; c++)
+                {
+                    int v = lod.GetIndices().Get(e + c);
+                    for (int axis = 0; axis < 3; axis++)
+                        center[axis] += p[v * 3 + axis] / 3;
+                }
+                double radius = Math.sqrt(center[0] * center[0] + center[1] * center[1] + center[2] * center[2]);
+                assertTrue("level " + i + " center at " + radius, radius > minCenterRadius[i]);
+            }
+
+            // coarser levels cost more
+            assertTrue(simplifier.GetMaxError() >= lastError);
+            lastError = simplifier.GetMaxError();
+        }
+    }
+
+    @Test
+    public void simplify_keepsMaterialBoundariesAndBorders() throws Exception
+    {
+        MeshData grid = BuildTwoMaterialGrid(20);
+        MeshSimplifier simplifier = new MeshSimplifier(grid);
+        simplifier.Simplify(80);
+        MeshData lod = simplifier.BuildMesh();
+
+        // flat, so many fewer triangles are enough
+        assertTrue(lod.GetNumElements() / 3 <= 80);
+        assertEquals(2, lod.GetRanges().size());
+        float[] p = lod.GetPositions().GetData();
+        for (int material = 0; material < 2; material++)
+        {
+            MeshRange range = lod.GetRanges().get(material);
+            assertEquals(material, range.GetMaterial());
+            float area = 0;
+            for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e += 3)
+            {
+                float doubleArea = DoubleAreaZ(lod, e);
+                assertTrue(doubleArea > 0);     // not flipped
+                area += doubleArea / 2;
+                for (int c = 0; c < 3; c++)
+                {
+                    int v = lod.GetIndices().Get(e + c);
+                    assertEquals(0, p[v * 3 + 2], 1e-5f);
+                    // each material stays on its side of the boundary, inside the border
+                    assertTrue(p[v * 3] >= material * 10 - 1e-4f && p[v * 3] <= material * 10 + 10 + 1e-4f);
+                    assertTrue(p[v * 3 + 1] >= -1e-4f && p[v * 3 + 1] <= 20 + 1e-4f);
+                }
+            }
+            // so each half is still fully covered
+            assertEquals(200, area, 1e-2f);
+        }
+    }
+
+    @Test
+    public void lodSelector_switchesWithHysteresis() throws Exception
+    {
+        LodSelector selector = new LodSelector(new float[] {0.4f, 0.2f, 0.1f}, 0.1f);
+        assertEquals(4, selector.GetNumLevels());
+        assertEquals(0, selector.Select(1.0f));
+
+        // just below a threshold isn't enough, past the hysteresis is
+        assertEquals(0, selector.Select(0.38f));
+        assertEquals(1, selector.Select(0.35f));
+
+        // and back up only past the threshold by the hysteresis
+        assertEquals(1, selector.Select(0.42f));
+        assertEquals(0, selector.Select(0.45f));
+
+        // big jumps skip levels
+        assertEquals(3, selector.Select(0.01f));
+        assertEquals(3, selector.Select(0.105f));
+        assertEquals(2, selector.Select(0.12f));
+        assertEquals(0, selector.Select(Float.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void lodSelector_projectedSize() throws Exception
+    {
+        Bounds bounds = new Bounds();
+        bounds.SetSphere(0, 0, 0, 1);
+        float[] view = new float[16];
+        MatrixMath.SetIdentity(view);
+        float[] projection = new float[16];
+        MatrixMath.SetFrustum(projection, -1, 1, -1, 1, 3, 20);
+        LodSelector selector = new LodSelector(new float[] {0.5f}, 0.1f);
+
+        // radius 1 at distance 10, seen through near 3 / half height 1: 3 / 10 of the screen
+        Transform transform = new Transform();
+        transform.SetPosition(0, 0, -10);
+        assertEquals(0.3f, selector.ProjectedSize(bounds, transform.GetMatrix(), view, projection), 1e-5f);
+        transform.SetScale(2);
+        assertEquals(0.6f, selector.ProjectedSize(bounds, transform.GetMatrix(), view, projection), 1e-5f);
+
+        // eye inside the sphere
+        transform.SetPosition(0, 0, -1);
+        assertEquals(Float.POSITIVE_INFINITY, selector.ProjectedSize(bounds, transform.GetMatrix(), view, projection), 0);
+    }
+}
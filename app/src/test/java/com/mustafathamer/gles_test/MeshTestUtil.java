@@ -0,0 +1,42 @@
+package com.mustafathamer.gles_test;
+
+import java.nio.charset.Charset;
+
+/**
+ * Meshes shared by the unit tests, parsed and indexed the way ObjFileLoader does it.
+ */
+
+public class MeshTestUtil
+{
+    // a textured quad, both triangles with the one material
+    public static final String QUAD_OBJ =
+            "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n" +
+            "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n" +
+            "vn 0 0 1\n" +
+            "usemtl red\n" +
+            "f 1/1/1 2/2/1 3/3/1\nf 1/1/1 3/3/1 4/4/1\n";
+
+    // a quad without texture coordinates, with a different material on each triangle
+    public static final String TWO_MATERIAL_QUAD_OBJ =
+            "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n" +
+            "vn 0 0 1\n" +
+            "usemtl red\n" +
+            "f 1//1 2//1 3//1\n" +
+            "usemtl blue\n" +
+            "f 1//1 3//1 4//1\n";
+
+    //
+    // The indexed mesh of an OBJ file, materials: one per usemtl name in order of appearance, or null
+    //
+    public static MeshData Build(byte[] obj, ObjMaterial[] materials)
+    {
+        ObjParser parser = new ObjParser();
+        parser.Parse(obj, 0, obj.length);
+        return new ObjMeshBuilder(parser, materials).BuildIndexed();
+    }
+
+    public static MeshData Build(String obj, ObjMaterial[] materials)
+    {
+        return Build(obj.getBytes(Charset.forName("US-ASCII")), materials);
+    }
+}
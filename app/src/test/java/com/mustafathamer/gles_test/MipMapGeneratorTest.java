@@ -0,0 +1,105 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the CPU mipmap chain: level sizes, the 2x2 averages, and the power of two resize of the
+ * texture images. Runs on the development machine (host).
+ */
+public class MipMapGeneratorTest
+{
+    private static int[] Fill(int size, int argb)
+    {
+        int[] pixels = new int[size];
+        java.util.Arrays.fill(pixels, argb);
+        return pixels;
+    }
+
+    @Test
+    public void numLevels_downTo1x1() throws Exception
+    {
+        assertEquals(1, MipMapGenerator.NumLevels(1, 1));
+        assertEquals(9, MipMapGenerator.NumLevels(256, 256));
+        assertEquals(12, MipMapGenerator.NumLevels(1024, 2048));   // 2048 high, the width reaches 1 first
+        assertEquals(4, MipMapGenerator.NumLevels(8, 1));
+    }
+
+    @Test
+    public void byteSize_sumsAllLevels() throws Exception
+    {
+        // 4x4 + 2x2 + 1x1 texels
+        assertEquals((16 + 4 + 1) * 4, MipMapGenerator.ByteSize(4, 4));
+        // 4x1 + 2x1 + 1x1
+        assertEquals((4 + 2 + 1) * 4, MipMapGenerator.ByteSize(4, 1));
+    }
+
+    @Test
+    public void generate_averagesEachChannelRounded() throws Exception
+    {
+        int[] pixels = {
+                0xFF000000, 0xFF0000FF,
+                0x00FF0000, 0xFF00FF01};
+        int[][] levels = MipMapGenerator.Generate(pixels, 2, 2);
+
+        assertEquals(2, levels.length);
+        assertSame(pixels, levels[0]);
+        // a: (255 * 3 + 0) / 4 = 191.25, r: 63.75, g: 63.75, b: (255 + 1) / 4 = 64
+        assertArrayEquals(new int[] {0xBF404040}, levels[1]);
+    }
+
+    @Test
+    public void generate_nonSquareKeepsOneTexelSide() throws Exception
+    {
+        int[][] levels = MipMapGenerator.Generate(new int[] {0x10, 0x20, 0x30, 0x50}, 4, 1);
+
+        assertEquals(3, levels.length);
+        assertArrayEquals(new int[] {0x18, 0x40}, levels[1]);
+        assertArrayEquals(new int[] {0x2C}, levels[2]);
+    }
+
+    @Test
+    public void generate_uniformImageStaysUniform() throws Exception
+    {
+        int[][] levels = MipMapGenerator.Generate(Fill(64 * 32, 0x80C0FFEE), 64, 32);
+
+        for (int level = 0; level < levels.length; level++)
+        {
+            assertEquals(Math.max(1, 64 >> level) * Math.max(1, 32 >> level), levels[level].length);
+            for (int texel : levels[level])
+                assertEquals(0x80C0FFEE, texel);
+        }
+    }
+
+    @Test
+    public void toPowerOfTwo_nearestAndClamped() throws Exception
+    {
+        assertEquals(256, MipMapGenerator.ToPowerOfTwo(256, 2048));
+        assertEquals(1024, MipMapGenerator.ToPowerOfTwo(1350, 2048));
+        assertEquals(2048, MipMapGenerator.ToPowerOfTwo(1600, 2048));
+        assertEquals(2048, MipMapGenerator.ToPowerOfTwo(2700, 2048));
+        assertEquals(1, MipMapGenerator.ToPowerOfTwo(1, 2048));
+    }
+
+    @Test
+    public void resize_halvesAndFilters() throws Exception
+    {
+        // exact halving is the mip average
+        int[] pixels = {0x00, 0x04, 0x08, 0x0C};
+        assertArrayEquals(new int[] {0x02, 0x0A}, MipMapGenerator.Resize(pixels, 4, 1, 2, 1));
+
+        // same size is untouched
+        assertSame(pixels, MipMapGenerator.Resize(pixels, 4, 1, 4, 1));
+
+        // up: the ends stay, the middle is interpolated
+        int[] up = MipMapGenerator.Resize(new int[] {0x00, 0x40}, 2, 1, 4, 1);
+        assertArrayEquals(new int[] {0x00, 0x10, 0x30, 0x40}, up);
+
+        // a uniform image of any size stays uniform
+        int[] down = MipMapGenerator.Resize(Fill(27 * 54, 0xFF336699), 27, 54, 16, 32);
+        assertEquals(16 * 32, down.length);
+        for (int texel : down)
+            assertEquals(0xFF336699, texel);
+    }
+}
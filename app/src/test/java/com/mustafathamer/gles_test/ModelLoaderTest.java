@@ -0,0 +1,235 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that models load on the worker, and reach GL only on the GL thread, in order, at the
+ * start of a frame. A single thread executor plays the GL thread. Runs on the development
+ * machine (host).
+ */
+public class ModelLoaderTest
+{
+    //
+    // Fails any GL call made from another thread than the GL thread
+    //
+    private static class GLThreadOnlyApi extends RecordingGLApi
+    {
+        private volatile Thread mGLThread;
+        private final List<String> mViolations = Collections.synchronizedList(new ArrayList<String>());
+
+        void SetGLThread(Thread thread)     { mGLThread = thread; }
+        List<String> GetViolations()        { return mViolations; }
+
+        @Override
+        protected void Record(String call)
+        {
+            if (Thread.currentThread() != mGLThread)
+                mViolations.add(call + " on " + Thread.currentThread().getName());
+            super.Record(call);
+        }
+    }
+
+    private static MeshData BuildTriangle()
+    {
+        return MeshTestUtil.Build("v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nf 1//1 2//1 3//1\n", null);
+    }
+
+    //
+    // Builds the CPU side buffers on the worker, uploads them when delivered
+    //
+    private static class MeshJob implements ModelLoader.Job<VertexBufferMesh>
+    {
+        private final CountDownLatch mGo;
+        private final Thread[] mLoadThread = new Thread[1];
+
+        MeshJob(CountDownLatch go)
+        {
+            mGo = go;
+        }
+
+        @Override
+        public VertexBufferMesh Load() throws Exception
+        {
+            mLoadThread[0] = Thread.currentThread();
+            mGo.await();
+            MeshData mesh = BuildTriangle();
+            VertexLayout layout = VertexLayout.ForMesh(mesh);
+            return new VertexBufferMesh(layout, layout.Interleave(mesh), mesh.GetIndices().ToDirectShortBuffer(),
+                    GLES20.GL_UNSIGNED_SHORT, mesh.GetNumElements());
+        }
+    }
+
+    private static class UploadListener implements ModelLoader.Listener<VertexBufferMesh>
+    {
+        private final String mName;
+        private final List<String> mDelivered;
+
+        UploadListener(String name, List<String> delivered)
+        {
+            mName = name;
+            mDelivered = delivered;
+        }
+
+        @Override
+        public void OnLoaded(GLApi gl, VertexBufferMesh mesh)
+        {
+            mesh.Upload(gl);
+            mDelivered.add(mName);
+        }
+
+        @Override
+        public void OnFailed(Exception e)
+        {
+            mDelivered.add(mName + " failed: " + e.getMessage());
+        }
+    }
+
+    private static int RunFrame(ExecutorService glThread, final ModelLoader loader, final GLApi gl) throws Exception
+    {
+        return glThread.submit(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws Exception
+            {
+                return loader.DeliverFinished(gl);
+            }
+        }).get();
+    }
+
+    private static void WaitUntilFinished(ExecutorService worker) throws Exception
+    {
+        // a no-op queued behind the jobs on the single worker thread
+        worker.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void submit_returnsBeforeTheLoadFinishes() throws Exception
+    {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ExecutorService glThread = Executors.newSingleThreadExecutor();
+        GLThreadOnlyApi gl = new GLThreadOnlyApi();
+        gl.SetGLThread(glThread.submit(new Callable<Thread>()
+        {
+            @Override
+            public Thread call()
+            {
+                return Thread.currentThread();
+            }
+        }).get());
+
+        ModelLoader loader = new ModelLoader(worker);
+        CountDownLatch go = new CountDownLatch(1);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        MeshJob job = new MeshJob(go);
+        loader.Submit(job, new UploadListener("model", delivered));
+
+        // the load is stuck, frames still run (drawing the placeholder)
+        for (int frame = 0; frame < 3; frame++)
+            assertEquals(0, RunFrame(glThread, loader, gl));
+        assertEquals(1, loader.GetNumPending());
+        assertTrue(delivered.isEmpty());
+
+        go.countDown();
+        WaitUntilFinished(worker);
+        assertTrue(delivered.isEmpty());        // nothing is delivered until the next frame
+        assertEquals(0, gl.CountCalls("glBufferData"));
+
+        assertEquals(1, RunFrame(glThread, loader, gl));
+        assertEquals(Collections.singletonList("model"), delivered);
+        assertEquals(0, loader.GetNumPending());
+        assertEquals(2, gl.CountCalls("glBufferData"));
+        assertNotSame(job.mLoadThread[0], Thread.currentThread());
+        assertTrue(gl.GetViolations().toString(), gl.GetViolations().isEmpty());
+
+        worker.shutdown();
+        glThread.shutdown();
+    }
+
+    @Test
+    public void deliverFinished_keepsSubmissionOrderAndGLThread() throws Exception
+    {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ExecutorService glThread = Executors.newSingleThreadExecutor();
+        GLThreadOnlyApi gl = new GLThreadOnlyApi();
+        gl.SetGLThread(glThread.submit(new Callable<Thread>()
+        {
+            @Override
+            public Thread call()
+            {
+                return Thread.currentThread();
+            }
+        }).get());
+
+        ModelLoader loader = new ModelLoader(worker);
+        CountDownLatch go = new CountDownLatch(0);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 5; i++)
+            loader.Submit(new MeshJob(go), new UploadListener("model" + i, delivered));
+        loader.Submit(new ModelLoader.Job<VertexBufferMesh>()
+        {
+            @Override
+            public VertexBufferMesh Load() throws Exception
+            {
+                throw new java.io.IOException("missing.obj");
+            }
+        }, new UploadListener("broken", delivered));
+
+        WaitUntilFinished(worker);
+        assertEquals(6, RunFrame(glThread, loader, gl));
+
+        assertEquals(6, delivered.size());
+        for (int i = 0; i < 5; i++)
+            assertEquals("model" + i, delivered.get(i));
+        assertEquals("broken failed: missing.obj", delivered.get(5));
+        assertEquals(10, gl.CountCalls("glBufferData"));
+        assertTrue(gl.GetViolations().toString(), gl.GetViolations().isEmpty());
+
+        worker.shutdown();
+        glThread.shutdown();
+    }
+
+    @Test
+    public void glThreadOnlyApi_catchesUploadsFromTheWorker() throws Exception
+    {
+        // sanity check of the fake: an upload done inside the job is reported
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        final GLThreadOnlyApi gl = new GLThreadOnlyApi();
+        gl.SetGLThread(Thread.currentThread());
+
+        ModelLoader loader = new ModelLoader(worker);
+        final MeshJob job = new MeshJob(new CountDownLatch(0));
+        loader.Submit(new ModelLoader.Job<VertexBufferMesh>()
+        {
+            @Override
+            public VertexBufferMesh Load() throws Exception
+            {
+                VertexBufferMesh mesh = job.Load();
+                mesh.Upload(gl);
+                return mesh;
+            }
+        }, new UploadListener("model", new ArrayList<String>()));
+        WaitUntilFinished(worker);
+
+        assertFalse(gl.GetViolations().isEmpty());
+        worker.shutdown();
+    }
+}
@@ -0,0 +1,99 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JVM benchmark of NormalGenerator on every bundled model, with the vn records of the file
+ * ignored: time on 1 thread and on all cores, the number of normals made, and how far they are
+ * from the normals of the file when it has some (median and 95th percentile of the angle per
+ * corner, in degrees). Ex:
+ * java -cp ... com.mustafathamer.gles_test.NormalGeneratorBenchmark [assetsDir]
+ */
+
+public class NormalGeneratorBenchmark
+{
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 11;
+
+    private static ObjParser Parse(byte[] data)
+    {
+        ObjParser parser = new ObjParser();
+        parser.Parse(data, 0, data.length);
+        return parser;
+    }
+
+    // forget the vn records, as if the file had none
+    private static void DropNormals(ObjParser parser)
+    {
+        int[] corners = parser.GetCorners().GetData();
+        for (int c = 0; c < parser.GetNumCorners(); c++)
+            corners[c * 3 + 2] = ObjParser.NO_INDEX;
+        parser.GetNormals().Clear();
+    }
+
+    private static long Measure(byte[] data, ExecutorService executor, int numThreads) throws IOException
+    {
+        long[] times = new long[TIMED_RUNS];
+        for (int i = 0; i < WARMUP_RUNS + TIMED_RUNS; i++)
+        {
+            ObjParser parser = Parse(data);
+            DropNormals(parser);
+            long start = System.nanoTime();
+            new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).GenerateParallel(parser, executor, numThreads);
+            if (i >= WARMUP_RUNS)
+                times[i - WARMUP_RUNS] = System.nanoTime() - start;
+        }
+        return BenchmarkUtil.Median(times);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+        int numCores = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(numCores);
+        System.out.println("cores: " + numCores);
+
+        System.out.println(String.format("%-14s %7s %8s %8s %10s %10s %7s %9s %9s", "model", "faces", "corners",
+                "normals", "1 thr ms", numCores + " thr ms", "speedup", "med deg", "p95 deg"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+            long sequential = Measure(data, null, 1);
+            long parallel = Measure(data, executor, numCores);
+
+            // against the normals of the file
+            ObjParser original = Parse(data);
+            ObjParser generated = Parse(data);
+            DropNormals(generated);
+            int numNormals = new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(generated);
+            String median = "-", p95 = "-";
+            if (original.GetNumNormals() > 0)
+            {
+                int numCorners = original.GetNumCorners();
+                long[] millidegrees = new long[numCorners];
+                float[] a = original.GetNormals().GetData();
+                float[] b = generated.GetNormals().GetData();
+                for (int c = 0; c < numCorners; c++)
+                {
+                    int i = original.GetCorners().Get(c * 3 + 2) * 3;
+                    int j = generated.GetCorners().Get(c * 3 + 2) * 3;
+                    double dot = a[i] * b[j] + a[i + 1] * b[j + 1] + a[i + 2] * b[j + 2];
+                    double length = Math.sqrt(a[i] * a[i] + a[i + 1] * a[i + 1] + a[i + 2] * a[i + 2]);
+                    millidegrees[c] = Math.round(Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, dot / length)))) * 1000);
+                }
+                Arrays.sort(millidegrees);
+                median = String.format("%.2f", millidegrees[numCorners / 2] / 1000.0);
+                p95 = String.format("%.2f", millidegrees[numCorners * 95 / 100] / 1000.0);
+            }
+
+            System.out.println(String.format("%-14s %7d %8d %8d %10.2f %10.2f %6.1fx %9s %9s", model,
+                    original.GetNumFaces(), original.GetNumCorners(), numNormals, sequential / 1e6, parallel / 1e6,
+                    (double) sequential / parallel, median, p95));
+        }
+        executor.shutdown();
+    }
+}
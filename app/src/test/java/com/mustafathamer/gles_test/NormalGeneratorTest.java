@@ -0,0 +1,194 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the normals NormalGenerator makes up for OBJ files without vn, on synthetic geometry: a
+ * cube made of triangles (sharp edges, angle weighting) and a UV sphere (smooth). Runs on the
+ * development machine (host).
+ */
+public class NormalGeneratorTest
+{
+    // unit cube around the origin, each side split in 2 triangles, no normals
+    private static final String CUBE =
+            "v -1 -1 -1\nv 1 -1 -1\nv 1 1 -1\nv -1 1 -1\n" +
+            "v -1 -1 1\nv 1 -1 1\nv 1 1 1\nv -1 1 1\n" +
+            "f 1 4 3\nf 1 3 2\n" +         // -z
+            "f 5 6 7\nf 5 7 8\n" +         // +z
+            "f 1 2 6\nf 1 6 5\n" +         // -y
+            "f 4 8 7\nf 4 7 3\n" +         // +y
+            "f 1 5 8\nf 1 8 4\n" +         // -x
+            "f 2 3 7\nf 2 7 6\n";          // +x
+
+    private static ObjParser Parse(String obj)
+    {
+        byte[] data = obj.getBytes(Charset.forName("US-ASCII"));
+        ObjParser parser = new ObjParser();
+        parser.Parse(data, 0, data.length);
+        assertEquals(0, parser.GetNumErrors());
+        return parser;
+    }
+
+    // UV sphere of radius 1, rings x segments quads with triangle fans at the poles, no normals
+    private static String BuildSphere(int rings, int segments)
+    {
+        StringBuilder obj = new StringBuilder();
+        obj.append("v 0 1 0\n");
+        for (int ring = 1; ring < rings; ring++)
+        {
+            double theta = Math.PI * ring / rings;
+            for (int segment = 0; segment < segments; segment++)
+            {
+                double phi = 2 * Math.PI * segment / segments;
+                obj.append("v ").append((float) (Math.sin(theta) * Math.cos(phi))).append(' ')
+                        .append((float) Math.cos(theta)).append(' ')
+                        .append((float) (-Math.sin(theta) * Math.sin(phi))).append('\n');
+            }
+        }
+        obj.append("v 0 -1 0\n");
+        int south = 2 + (rings - 1) * segments;
+        for (int segment = 0; segment < segments; segment++)
+        {
+            int next = (segment + 1) % segments;
+            obj.append("f 1 ").append(2 + segment).append(' ').append(2 + next).append('\n');
+            for (int ring = 1; ring < rings - 1; ring++)
+            {
+                int a = 2 + (ring - 1) * segments;
+                int b = a + segments;
+                obj.append("f ").append(a + segment).append(' ').append(b + segment).append(' ')
+                        .append(b + next).append(' ').append(a + next).append('\n');
+            }
+            int last = 2 + (rings - 2) * segments;
+            obj.append("f ").append(last + segment).append(' ').append(south).append(' ')
+                    .append(last + next).append('\n');
+        }
+        return obj.toString();
+    }
+
+    private static float[] CornerNormal(ObjParser parser, int corner)
+    {
+        int n = parser.GetCorners().Get(corner * 3 + 2);
+        assertTrue(n != ObjParser.NO_INDEX);
+        float[] normals = parser.GetNormals().GetData();
+        return new float[] {normals[n * 3], normals[n * 3 + 1], normals[n * 3 + 2]};
+    }
+
+    @Test
+    public void generate_keepsCubeEdgesSharp() throws Exception
+    {
+        ObjParser parser = Parse(CUBE);
+        assertEquals(24, new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(parser));
+
+        // every corner gets the normal of its side
+        int[] faceSizes = parser.GetFaceSizes().GetData();
+        int corner = 0;
+        for (int face = 0; face < parser.GetNumFaces(); face++)
+        {
+            int side = face / 2;
+            float sign = side % 2 == 0 ? -1 : 1;
+            int axis = side / 2 == 0 ? 2 : side / 2 == 1 ? 1 : 0;
+            for (int j = 0; j < faceSizes[face]; j++, corner++)
+            {
+                float[] normal = CornerNormal(parser, corner);
+                for (int c = 0; c < 3; c++)
+                    assertEquals(c == axis ? sign : 0, normal[c], 1e-6f);
+            }
+        }
+
+        // the builder splits the vertices along the edges: 4 per side
+        assertEquals(24, new ObjMeshBuilder(parser, null).BuildIndexed().GetNumVerts());
+    }
+
+    @Test
+    public void generate_weighsFacesByAngle() throws Exception
+    {
+        // with no crease, each corner averages its 3 sides: the diagonal, although one side has
+        // 2 triangles at some corners and 1 at others
+        ObjParser parser = Parse(CUBE);
+        assertEquals(8, new NormalGenerator(180).Generate(parser));
+        float[] positions = parser.GetPositions().GetData();
+        float diagonal = 1 / (float) Math.sqrt(3);
+        for (int corner = 0; corner < parser.GetNumCorners(); corner++)
+        {
+            int p = parser.GetCorners().Get(corner * 3);
+            float[] normal = CornerNormal(parser, corner);
+            for (int c = 0; c < 3; c++)
+                assertEquals(positions[p * 3 + c] * diagonal, normal[c], 1e-6f);
+        }
+        assertEquals(8, new ObjMeshBuilder(parser, null).BuildIndexed().GetNumVerts());
+    }
+
+    @Test
+    public void generate_smoothsSphere() throws Exception
+    {
+        ObjParser parser = Parse(BuildSphere(16, 24));
+        int numPositions = parser.GetNumPositions();
+        // one normal per position, none split
+        assertEquals(numPositions, new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(parser));
+
+        // on the unit sphere, the normal is the position
+        float[] positions = parser.GetPositions().GetData();
+        for (int corner = 0; corner < parser.GetNumCorners(); corner++)
+        {
+            int p = parser.GetCorners().Get(corner * 3);
+            float[] normal = CornerNormal(parser, corner);
+            float dot = 0;
+            for (int c = 0; c < 3; c++)
+                dot += positions[p * 3 + c] * normal[c];
+            assertTrue("corner " + corner + " off by " + Math.toDegrees(Math.acos(Math.min(1, dot))) + " degrees",
+                    dot > Math.cos(Math.toRadians(1)));
+        }
+        assertEquals(numPositions, new ObjMeshBuilder(parser, null).BuildIndexed().GetNumVerts());
+    }
+
+    @Test
+    public void generate_keepsExistingNormals() throws Exception
+    {
+        // the first triangle has a (wrong on purpose) vn, the second none
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\nvn 1 0 0\n" +
+                "f 1//1 2//1 3//1\nf 2 4 3\n");
+        assertEquals(3, new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(parser));
+        assertEquals(4, parser.GetNumNormals());
+        for (int corner = 0; corner < 3; corner++)
+            assertEquals(0, parser.GetCorners().Get(corner * 3 + 2));
+        for (int corner = 3; corner < 6; corner++)
+            assertArrayEquals(new float[] {0, 0, 1}, CornerNormal(parser, corner), 1e-6f);
+
+        // nothing left to do
+        assertEquals(0, new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(parser));
+    }
+
+    @Test
+    public void generateParallel_matchesSequential() throws Exception
+    {
+        String obj = BuildSphere(24, 32);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            // smooth, and with a crease small enough to split the normals near the poles
+            for (float creaseAngle : new float[] {NormalGenerator.DEFAULT_CREASE_ANGLE, 10})
+            {
+                ObjParser sequential = Parse(obj);
+                new NormalGenerator(creaseAngle).Generate(sequential);
+                for (int numChunks = 2; numChunks <= 7; numChunks++)
+                {
+                    ObjParser parallel = Parse(obj);
+                    new NormalGenerator(creaseAngle).GenerateParallel(parallel, executor, numChunks);
+                    assertArrayEquals(sequential.GetCorners().ToArray(), parallel.GetCorners().ToArray());
+                    assertEquals(sequential.GetNumNormals(), parallel.GetNumNormals());
+                    for (int i = 0; i < sequential.GetNumNormals() * 3; i++)
+                        assertEquals(sequential.GetNormals().Get(i), parallel.GetNormals().Get(i), 0);
+                }
+            }
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * JVM benchmark comparing the old Scanner / String.split OBJ loading pipeline against the
+ * streaming ObjParser, on every bundled model.
+ * Reports median load time and bytes allocated by the loading thread.
+ */
+
+public class ObjLoaderBenchmark
+{
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    private interface Loader
+    {
+        FloatBuffer Load(File assetsDir, String model) throws IOException;
+    }
+
+    //
+    // The original ObjFileLoader pipeline: every line becomes a String, every face is split twice
+    // and every coordinate is boxed into a List<Float>.
+    //
+    private static class LegacyLoader implements Loader
+    {
+        @Override
+        public FloatBuffer Load(File assetsDir, String model) throws IOException
+        {
+            List<String> verticesList = new ArrayList<>();
+            List<String> normalsList = new ArrayList<>();
+            List<String> facesList = new ArrayList<>();
+
+            Scanner scanner = new Scanner(BenchmarkUtil.Open(assetsDir, model + ".obj"));
+            while (scanner.hasNextLine())
+            {
+                String line = scanner.nextLine();
+                if (line.startsWith("v "))
+                    verticesList.add(line);
+                else if (line.startsWith("f "))
+                    facesList.add(line);
+                else if (line.startsWith("vn "))
+                    normalsList.add(line);
+            }
+            scanner.close();
+
+            int numVerts = 0;
+            for (String face : facesList)
+                numVerts += face.split(" ").length - 1;
+
+            FloatBuffer vertices = CreateFloatBuffer(numVerts * 3);
+            FloatBuffer normals = CreateFloatBuffer(numVerts * 3);
+            List<Float> origVerts = new ArrayList<>();
+            List<Float> origNormals = new ArrayList<>();
+
+            for (String vertex : verticesList)
+            {
+                String coords[] = vertex.split(" ");
+                for (int i = 1; i < 4; i++)
+                    origVerts.add(Float.parseFloat(coords[i]));
+            }
+            for (String normal : normalsList)
+            {
+                String coords[] = normal.split(" ");
+                for (int i = 1; i < 4; i++)
+                    origNormals.add(Float.parseFloat(coords[i]));
+            }
+
+            for (String face : facesList)
+            {
+                String vertexIndices[] = face.split(" ");
+                for (int i = 1; i < vertexIndices.length; i++)
+                {
+                    String tmp[] = vertexIndices[i].split("//");
+                    if (tmp.length == 1)
+                        tmp = vertexIndices[i].split("/");
+
+                    int idx = Integer.parseInt(tmp[0]) - 1;
+                    vertices.put(origVerts.get(idx * 3));
+                    vertices.put(origVerts.get(idx * 3 + 1));
+                    vertices.put(origVerts.get(idx * 3 + 2));
+
+                    if (tmp.length >= 2)
+                    {
+                        idx = Integer.parseInt(tmp[tmp.length - 1]) - 1;
+                        normals.put(origNormals.get(idx * 3));
+                        normals.put(origNormals.get(idx * 3 + 1));
+                        normals.put(origNormals.get(idx * 3 + 2));
+                    }
+                }
+            }
+            vertices.position(0);
+            return vertices;
+        }
+    }
+
+    //
+    // The streaming parser, expanded into the same per-corner buffers as ObjFileLoader
+    //
+    private static class StreamingLoader implements Loader
+    {
+        @Override
+        public FloatBuffer Load(File assetsDir, String model) throws IOException
+        {
+            ObjParser parser = new ObjParser();
+            InputStream in = BenchmarkUtil.Open(assetsDir, model + ".obj");
+            try
+            {
+                parser.Parse(in);
+            } finally
+            {
+                in.close();
+            }
+
+            int numVerts = parser.GetNumCorners();
+            FloatBuffer vertices = CreateFloatBuffer(numVerts * 3);
+            FloatBuffer normals = CreateFloatBuffer(numVerts * 3);
+            int[] corners = parser.GetCorners().GetData();
+            for (int corner = 0; corner < numVerts; corner++)
+            {
+                vertices.put(parser.GetPositions().GetData(), corners[corner * 3] * 3, 3);
+                int vn = corners[corner * 3 + 2];
+                if (vn != ObjParser.NO_INDEX)
+                    normals.put(parser.GetNormals().GetData(), vn * 3, 3);
+                else
+                    normals.position(normals.position() + 3);
+            }
+            vertices.position(0);
+            return vertices;
+        }
+    }
+
+    private static FloatBuffer CreateFloatBuffer(int numFloats)
+    {
+        return ByteBuffer.allocateDirect(numFloats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    private static long[] Measure(Loader loader, File assetsDir, String model) throws IOException
+    {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            loader.Load(assetsDir, model);
+
+        long[] times = new long[TIMED_RUNS];
+        long[] allocs = new long[TIMED_RUNS];
+        for (int i = 0; i < TIMED_RUNS; i++)
+        {
+            long alloc = BenchmarkUtil.AllocatedBytes();
+            long start = System.nanoTime();
+            loader.Load(assetsDir, model);
+            times[i] = System.nanoTime() - start;
+            allocs[i] = BenchmarkUtil.AllocatedBytes() - alloc;
+        }
+        return new long[]{BenchmarkUtil.Median(times), BenchmarkUtil.Median(allocs)};
+    }
+
+    private static float MaxDifference(FloatBuffer a, FloatBuffer b)
+    {
+        float max = 0.0f;
+        for (int i = 0; i < a.limit(); i++)
+            max = Math.max(max, Math.abs(a.get(i) - b.get(i)));
+        return max;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+        Loader legacy = new LegacyLoader();
+        Loader streaming = new StreamingLoader();
+
+        System.out.println(String.format("%-14s %12s %14s %12s %14s %8s %10s",
+                "model", "legacy", "legacy alloc", "streaming", "stream alloc", "speedup", "max diff"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            long[] l = Measure(legacy, assetsDir, model);
+            long[] s = Measure(streaming, assetsDir, model);
+            float diff = MaxDifference(legacy.Load(assetsDir, model), streaming.Load(assetsDir, model));
+            System.out.println(String.format("%-14s %12s %14s %12s %14s %7.1fx %10g",
+                    model, BenchmarkUtil.Millis(l[0]), BenchmarkUtil.Kb(l[1]),
+                    BenchmarkUtil.Millis(s[0]), BenchmarkUtil.Kb(s[1]), (double) l[0] / s[0], diff));
+        }
+    }
+}
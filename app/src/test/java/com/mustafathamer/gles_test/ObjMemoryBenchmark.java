@@ -0,0 +1,94 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM benchmark measuring the heap held by the parsed vertex coordinates while faces are being
+ * expanded, which is the peak of the OBJ loading path: boxed List<Float> origVerts /
+ * origNormals / origUVs, as the old ObjFileLoader kept them, versus ObjParser's FloatArrays.
+ */
+
+public class ObjMemoryBenchmark
+{
+    private static final String[] MODELS = {"fidget2", "capsule", "bowser2"};
+    private static final int COPIES = 8;
+
+    private static long UsedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep(50);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<Float> Box(FloatArray array)
+    {
+        List<Float> list = new ArrayList<>();
+        for (int i = 0; i < array.Size(); i++)
+            list.add(array.Get(i));
+        return list;
+    }
+
+    private static ObjParser Parse(byte[] data)
+    {
+        ObjParser parser = new ObjParser();
+        parser.Parse(data, 0, data.length);
+        return parser;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-10s %10s %14s %14s %10s",
+                "model", "floats", "boxed heap", "primitive heap", "reduction"));
+        for (String model : MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+
+            // boxed: origVerts / origNormals / origUVs as List<Float>
+            // (several copies are held at once to get above the GC measurement noise)
+            long before = UsedHeap();
+            List<Object> held = new ArrayList<>();
+            int numFloats = 0;
+            for (int i = 0; i < COPIES; i++)
+            {
+                ObjParser parser = Parse(data);
+                held.add(Box(parser.GetPositions()));
+                held.add(Box(parser.GetNormals()));
+                held.add(Box(parser.GetUVs()));
+                numFloats = parser.GetPositions().Size() + parser.GetNormals().Size() + parser.GetUVs().Size();
+            }
+            long boxedBytes = (UsedHeap() - before) / COPIES;
+            held.clear();
+
+            // primitive: the parser's own FloatArrays
+            before = UsedHeap();
+            for (int i = 0; i < COPIES; i++)
+            {
+                ObjParser parser = Parse(data);
+                held.add(parser.GetPositions());
+                held.add(parser.GetNormals());
+                held.add(parser.GetUVs());
+            }
+            long primitiveBytes = (UsedHeap() - before) / COPIES;
+            held.clear();
+
+            System.out.println(String.format("%-10s %10d %14s %14s %9.1fx",
+                    model, numFloats, BenchmarkUtil.Kb(boxedBytes), BenchmarkUtil.Kb(primitiveBytes),
+                    (double) boxedBytes / primitiveBytes));
+        }
+    }
+}
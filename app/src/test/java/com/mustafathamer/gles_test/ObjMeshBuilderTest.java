@@ -0,0 +1,303 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the indexed (deduplicated) mesh draws exactly the same triangles as the expanded
+ * one, runs on the development machine (host).
+ */
+public class ObjMeshBuilderTest
+{
+    private static ObjParser Parse(byte[] data)
+    {
+        ObjParser parser = new ObjParser();
+        parser.Parse(data, 0, data.length);
+        return parser;
+    }
+
+    private static ObjParser Parse(String obj)
+    {
+        return Parse(obj.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    // a distinct made up material per usemtl name
+    private static ObjMaterial[] MakeMaterials(ObjParser parser)
+    {
+        ObjMaterial[] materials = new ObjMaterial[parser.GetMaterialNames().size()];
+        for (int i = 0; i < materials.length; i++)
+        {
+            materials[i] = new ObjMaterial();
+            materials[i].setKd(new float[]{i, 0.5f, 1.0f});
+            materials[i].setKa(new float[]{0.1f, i, 0.2f});
+        }
+        return materials;
+    }
+
+    private static void AssertAttributeMatches(String what, FloatArray expanded, FloatArray indexed,
+                                               IntArray indices, int numComponents)
+    {
+        assertEquals(what + " size", expanded.Size(), indices.Size() * numComponents);
+        for (int i = 0; i < indices.Size(); i++)
+        {
+            for (int c = 0; c < numComponents; c++)
+            {
+                float e = expanded.Get(i * numComponents + c);
+                float x = indexed.Get(indices.Get(i) * numComponents + c);
+                if (Float.floatToIntBits(e) != Float.floatToIntBits(x))
+                    fail(what + " differs at corner " + i + ": " + e + " vs " + x);
+            }
+        }
+    }
+
+    private static void AssertSameTriangles(MeshData expanded, MeshData indexed)
+    {
+        assertFalse(expanded.IsIndexed());
+        assertTrue(indexed.IsIndexed());
+        assertEquals(expanded.GetNumElements(), indexed.GetNumElements());
+
+        IntArray indices = indexed.GetIndices();
+        AssertAttributeMatches("position", expanded.GetPositions(), indexed.GetPositions(), indices, 3);
+        AssertAttributeMatches("normal", expanded.GetNormals(), indexed.GetNormals(), indices, 3);
+        AssertAttributeMatches("uv", expanded.GetUVs(), indexed.GetUVs(), indices, 2);
+
+        assertEquals(expanded.GetRanges().size(), indexed.GetRanges().size());
+        for (int i = 0; i < expanded.GetRanges().size(); i++)
+        {
+            MeshRange e = expanded.GetRanges().get(i);
+            MeshRange x = indexed.GetRanges().get(i);
+            assertEquals(e.GetMaterial(), x.GetMaterial());
+            assertEquals(e.GetFirstElement(), x.GetFirstElement());
+            assertEquals(e.GetNumElements(), x.GetNumElements());
+        }
+    }
+
+    //
+    // Ranges must be back to back, cover every element, and not repeat a material
+    //
+    private static void AssertRangesCoverMesh(MeshData mesh)
+    {
+        int next = 0;
+        int prevMaterial = Integer.MIN_VALUE;
+        for (MeshRange range : mesh.GetRanges())
+        {
+            assertEquals(next, range.GetFirstElement());
+            assertTrue(range.GetNumElements() > 0);
+            assertTrue(range.GetMaterial() > prevMaterial);
+            prevMaterial = range.GetMaterial();
+            next += range.GetNumElements();
+        }
+        assertEquals(mesh.GetNumElements(), next);
+    }
+
+    @Test
+    public void indexed_matchesExpandedOnBundledModels() throws Exception
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            ObjParser parser = Parse(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"));
+            ObjMaterial[] materials = parser.GetMaterialNames().isEmpty() ? null : MakeMaterials(parser);
+            ObjMeshBuilder builder = new ObjMeshBuilder(parser, materials);
+
+            MeshData expanded = builder.BuildExpanded();
+            MeshData indexed = builder.BuildIndexed();
+
+            AssertSameTriangles(expanded, indexed);
+            AssertRangesCoverMesh(indexed);
+            assertTrue(model + " should not add vertices", indexed.GetNumVerts() <= expanded.GetNumVerts());
+        }
+    }
+
+    @Test
+    public void indexed_sharesCornersWithSameAttributes() throws Exception
+    {
+        // a cube with one normal per side: 8 positions x 3 sides each = 24 unique verts
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        ObjParser parser = Parse(BenchmarkUtil.ReadAsset(assetsDir, "cube.obj"));
+        MeshData indexed = new ObjMeshBuilder(parser, null).BuildIndexed();
+
+        assertEquals(24, indexed.GetNumVerts());
+        assertEquals(36, indexed.GetIndices().Size());
+        assertFalse(indexed.NeedsIntIndices());
+    }
+
+    @Test
+    public void indexed_sharesVerticesBetweenMaterials() throws Exception
+    {
+        // colors are per range now, so a vertex used by two materials is stored once
+        String obj = "v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\n" +
+                "usemtl red\nf 1 2 3\n" +
+                "usemtl blue\nf 2 4 3\n";
+        ObjParser parser = Parse(obj);
+        ObjMeshBuilder builder = new ObjMeshBuilder(parser, MakeMaterials(parser));
+
+        MeshData indexed = builder.BuildIndexed();
+        assertEquals(4, indexed.GetNumVerts());
+        assertEquals(2, indexed.GetRanges().size());
+        AssertSameTriangles(builder.BuildExpanded(), indexed);
+    }
+
+    @Test
+    public void ranges_groupFacesByMaterial() throws Exception
+    {
+        // red and blue faces interleaved in the file, plus faces before any usemtl
+        String obj = "v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\n" +
+                "f 1 2 3\n" +
+                "usemtl red\nf 1 2 3\n" +
+                "usemtl blue\nf 2 4 3\nf 1 2 4\n" +
+                "usemtl red\nf 3 2 1\n";
+        ObjParser parser = Parse(obj);
+        ObjMaterial[] materials = MakeMaterials(parser);
+        MeshData mesh = new ObjMeshBuilder(parser, materials).BuildIndexed();
+
+        assertEquals(3, mesh.GetRanges().size());
+        AssertRangesCoverMesh(mesh);
+
+        MeshRange none = mesh.GetRanges().get(0);
+        MeshRange red = mesh.GetRanges().get(1);
+        MeshRange blue = mesh.GetRanges().get(2);
+        assertEquals(ObjParser.NO_MATERIAL, none.GetMaterial());
+        assertNull(mesh.GetMaterial(none));
+        assertEquals(3, none.GetNumElements());
+        assertSame(materials[0], mesh.GetMaterial(red));
+        assertEquals(6, red.GetNumElements());
+        assertSame(materials[1], mesh.GetMaterial(blue));
+        assertEquals(6, blue.GetNumElements());
+
+        // file order is kept within a material: the second red face comes after the first
+        IntArray indices = mesh.GetIndices();
+        FloatArray positions = mesh.GetPositions();
+        assertEquals(0.0f, positions.Get(indices.Get(red.GetFirstElement() + 3) * 3 + 0), 0.0f);
+        assertEquals(1.0f, positions.Get(indices.Get(red.GetFirstElement() + 3) * 3 + 1), 0.0f);
+    }
+
+    //
+    // Builds a single polygon face through the (x, y) points, in the plane across axis, and checks its triangles: each faces the side of the polygon and they add up to its area
+    //
+    private static void AssertTriangulates(float[] xy, int axis, boolean reverse)
+    {
+        int n = xy.length / 2;
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < n; i++)
+        {
+            float[] p = new float[3];
+            p[(axis + 1) % 3] = xy[i * 2];
+            p[(axis + 2) % 3] = xy[i * 2 + 1];
+            obj.append("v ").append(p[0]).append(' ').append(p[1]).append(' ').append(p[2]).append('\n');
+        }
+        obj.append('f');
+        for (int i = 0; i < n; i++)
+            obj.append(' ').append(reverse ? n - i : i + 1);
+        obj.append('\n');
+        MeshData mesh = new ObjMeshBuilder(Parse(obj.toString()), null).BuildExpanded();
+        assertEquals(3 * (n - 2), mesh.GetNumVerts());
+
+        float area = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int j = (i + 1) % n;
+            area += (xy[i * 2] * xy[j * 2 + 1] - xy[j * 2] * xy[i * 2 + 1]) / 2;
+        }
+        float sign = reverse ? -1 : 1;
+        float[] p = mesh.GetPositions().GetData();
+        float sum = 0;
+        for (int t = 0; t < n - 2; t++)
+        {
+            int a = t * 9, b = a + 3, c = a + 6;
+            int u = (axis + 1) % 3, v = (axis + 2) % 3;
+            float triangle = ((p[b + u] - p[a + u]) * (p[c + v] - p[a + v]) - (p[c + u] - p[a + u]) * (p[b + v] - p[a + v])) / 2;
+            assertTrue("triangle " + t + " flipped", triangle * sign * area > 0);
+            sum += triangle;
+        }
+        assertEquals(area * sign, sum, 1e-4f);
+    }
+
+    @Test
+    public void triangulate_splitsQuadsAndConvexPolygons() throws Exception
+    {
+        MeshData quad = new ObjMeshBuilder(Parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nf 1 2 3 4\n"), null).BuildIndexed();
+        assertEquals(4, quad.GetNumVerts());
+        assertEquals(6, quad.GetNumElements());
+
+        float[] pentagon = new float[10];
+        for (int i = 0; i < 5; i++)
+        {
+            pentagon[i * 2] = (float) Math.cos(2 * Math.PI * i / 5);
+            pentagon[i * 2 + 1] = (float) Math.sin(2 * Math.PI * i / 5);
+        }
+        for (int axis = 0; axis < 3; axis++)
+        {
+            AssertTriangulates(pentagon, axis, false);
+            AssertTriangulates(pentagon, axis, true);
+        }
+    }
+
+    @Test
+    public void triangulate_clipsEarsOfConcavePolygons() throws Exception
+    {
+        // a fan from the first corner would cover the notch: (0,0) (4,4) (2,1) is backwards
+        float[] notched = {0, 0, 4, 0, 4, 4, 2, 1, 0, 4};
+        // an L, and a comb with 3 teeth
+        float[] l = {0, 0, 3, 0, 3, 1, 1, 1, 1, 3, 0, 3};
+        float[] comb = {0, 0, 5, 0, 5, 3, 4, 3, 4, 1, 3, 1, 3, 3, 2, 3, 2, 1, 1, 1, 1, 3, 0, 3};
+        for (float[] polygon : new float[][] {notched, l, comb})
+        {
+            for (int axis = 0; axis < 3; axis++)
+            {
+                AssertTriangulates(polygon, axis, false);
+                AssertTriangulates(polygon, axis, true);
+            }
+        }
+    }
+
+    @Test
+    public void badIndices_dropTheirFaceBeforeBuilding() throws Exception
+    {
+        // past the last record, 0, before the first record (relative), past the last without vn
+        String[] badFaces = {"f 1//1 2//1 9//1", "f 1//1 2//1 0//1", "f 1//1 -7//1 3//1", "f 1 2 9"};
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (String badFace : badFaces)
+        {
+            for (boolean parallel : new boolean[] {false, true})
+            {
+                ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\n" + badFace + "\nf 1 2 3\n");
+                assertEquals(badFace, 1, parser.GetNumErrors());
+                assertEquals(badFace, 1, parser.GetNumFaces());
+
+                // what ObjFileLoader does with it
+                NormalGenerator normalGenerator = new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE);
+                int numGenerated = parallel ? normalGenerator.GenerateParallel(parser, executor, 2)
+                        : normalGenerator.Generate(parser);
+                MeshData mesh = new ObjMeshBuilder(parser, MakeMaterials(parser)).BuildIndexed();
+
+                assertEquals(badFace, 3, numGenerated);
+                assertEquals(badFace, 3, mesh.GetNumVerts());
+                assertEquals(badFace, 3, mesh.GetNumElements());
+                assertEquals(badFace, 1.0f, mesh.GetPositions().Get(3), 0.0f);
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void hashMap_growsAndFindsAllKeys() throws Exception
+    {
+        VertexHashMap map = new VertexHashMap(4);
+        for (int i = 0; i < 10000; i++)
+            assertEquals(VertexHashMap.NOT_FOUND, map.PutIfAbsent(i, i % 7, i % 3, i));
+        assertEquals(10000, map.Size());
+        for (int i = 0; i < 10000; i++)
+        {
+            assertEquals(i, map.Get(i, i % 7, i % 3));
+            assertEquals(i, map.PutIfAbsent(i, i % 7, i % 3, -5));
+        }
+        assertEquals(VertexHashMap.NOT_FOUND, map.Get(1, 1, 2));
+    }
+}
@@ -0,0 +1,49 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the material statements read from .mtl files, the texture maps in particular. Runs on
+ * the development machine (host).
+ */
+public class ObjMtlParserTest
+{
+    private static ObjMtlParser Parse(String mtl)
+    {
+        ObjMtlParser parser = new ObjMtlParser();
+        parser.Parse(new ByteArrayInputStream(mtl.getBytes(Charset.forName("US-ASCII"))));
+        return parser;
+    }
+
+    @Test
+    public void parse_textureMaps() throws Exception
+    {
+        ObjMtlParser parser = Parse("newmtl plain\nKd 1 0 0\n\n"
+                + "newmtl textured\nKd 1 1 1\nmap_Kd caution.jpg\nmap_Ka -s 2 2 1 dirt.png\n");
+
+        ObjMaterial plain = parser.GetMtlMap().get("plain");
+        assertNull(plain.GetMapKd());
+        assertFalse(plain.HasTextures());
+
+        // options before the file name are skipped
+        ObjMaterial textured = parser.GetMtlMap().get("textured");
+        assertEquals("caution.jpg", textured.GetMapKd());
+        assertEquals("dirt.png", textured.GetMapKa());
+        assertTrue(textured.HasTextures());
+    }
+
+    @Test
+    public void parse_indentedStatements() throws Exception
+    {
+        ObjMtlParser parser = Parse("newmtl cube\n\tKd 0.5 0.25 1\n    map_Kd caution.jpg\n");
+
+        ObjMaterial cube = parser.GetMtlMap().get("cube");
+        assertArrayEquals(new float[] {0.5f, 0.25f, 1}, cube.GetKd(), 0);
+        assertEquals("caution.jpg", cube.GetMapKd());
+    }
+}
@@ -0,0 +1,307 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the byte level OBJ tokenizer, runs on the development machine (host).
+ */
+public class ObjParserTest
+{
+    private static ObjParser Parse(String obj)
+    {
+        byte[] data = obj.getBytes(Charset.forName("US-ASCII"));
+        ObjParser parser = new ObjParser();
+        parser.Parse(data, 0, data.length);
+        return parser;
+    }
+
+    @Test
+    public void parse_readsVertexRecords() throws Exception
+    {
+        ObjParser parser = Parse("# comment\nv 0.2332653 -0.1349314 -0.7298675\nvn 0 1 0\nvt 0.5 0.25 0.0\nv 1 2 3\n");
+
+        assertEquals(2, parser.GetNumPositions());
+        assertEquals(1, parser.GetNumNormals());
+        assertEquals(1, parser.GetNumUVs());
+        assertEquals(0.2332653f, parser.GetPositions().Get(0), 0.0f);
+        assertEquals(-0.1349314f, parser.GetPositions().Get(1), 0.0f);
+        assertEquals(-0.7298675f, parser.GetPositions().Get(2), 0.0f);
+        assertEquals(3.0f, parser.GetPositions().Get(5), 0.0f);
+        assertEquals(1.0f, parser.GetNormals().Get(1), 0.0f);
+        assertEquals(0.25f, parser.GetUVs().Get(1), 0.0f);
+    }
+
+    @Test
+    public void parse_floatsMatchParseFloat() throws Exception
+    {
+        String[] values = {"0", "-0.000000", "1.5e3", "-2.25E-2", "+7", "123456.789", "0.1234567890123456789", "3.", ".5"};
+        StringBuilder obj = new StringBuilder();
+        for (String value : values)
+            obj.append("v ").append(value).append(' ').append(value).append(' ').append(value).append('\n');
+
+        ObjParser parser = Parse(obj.toString());
+
+        assertEquals(values.length, parser.GetNumPositions());
+        for (int i = 0; i < values.length; i++)
+            assertEquals(values[i], Float.parseFloat(values[i]), parser.GetPositions().Get(i * 3), 0.0f);
+    }
+
+    @Test
+    public void parse_readsAllFaceCornerFormats() throws Exception
+    {
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < 9; i++)
+            obj.append(i < 3 ? "v 0 0 0\n" : "").append(i < 6 ? "vt 0 0\n" : "").append("vn 0 0 1\n");
+        ObjParser parser = Parse(obj + "f 1 2 3\nf 1/4 2/5 3/6\nf 1//7 2//8 3//9\nf 1/4/7 2/5/8 3/6/9\n");
+
+        assertEquals(4, parser.GetNumFaces());
+        assertEquals(12, parser.GetNumCorners());
+        int[] c = parser.GetCorners().GetData();
+        assertArrayEquals(new int[]{0, -1, -1}, new int[]{c[0], c[1], c[2]});
+        assertArrayEquals(new int[]{0, 3, -1}, new int[]{c[9], c[10], c[11]});
+        assertArrayEquals(new int[]{0, -1, 6}, new int[]{c[18], c[19], c[20]});
+        assertArrayEquals(new int[]{2, 5, 8}, new int[]{c[33], c[34], c[35]});
+    }
+
+    @Test
+    public void parse_resolvesNegativeIndicesInAllFormats() throws Exception
+    {
+        // -1 is the last record read so far, of its own kind
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0 0\nvt 1 0\nvn 0 0 1\n" +
+                "f -3 -2 -1\nf -3/-2 -2/-1 -1/-1\nf -3//-1 -2//-1 -1//-1\nf -3/-2/-1 -2/-1/-1 -1/-1/-1\n" +
+                "v 1 1 0\nf -4/1/1 2/-2/-1 -1/-1/1\n");
+
+        assertEquals(0, parser.GetNumErrors());
+        assertEquals(5, parser.GetNumFaces());
+        int[] c = parser.GetCorners().GetData();
+        assertArrayEquals(new int[]{0, -1, -1, 1, -1, -1, 2, -1, -1}, Arrays.copyOfRange(c, 0, 9));
+        assertArrayEquals(new int[]{0, 0, -1, 1, 1, -1, 2, 1, -1}, Arrays.copyOfRange(c, 9, 18));
+        assertArrayEquals(new int[]{0, -1, 0, 1, -1, 0, 2, -1, 0}, Arrays.copyOfRange(c, 18, 27));
+        assertArrayEquals(new int[]{0, 0, 0, 1, 1, 0, 2, 1, 0}, Arrays.copyOfRange(c, 27, 36));
+        // after the 4th v, -1 is that one, and relative and absolute indices mix
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0, 0, 3, 1, 0}, Arrays.copyOfRange(c, 36, 45));
+    }
+
+    @Test
+    public void parse_reportsNegativeIndicesBeforeTheirRecords() throws Exception
+    {
+        // -4 with only 3 positions, and a uv before any vt
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nf -4 -2 -1\nf -3/-1 -2/-1 -1/-1\nf -3 -2 -1\n");
+
+        assertEquals(1, parser.GetNumFaces());          // the faces with bad corners are dropped
+        assertEquals(4, parser.GetNumErrors());        // one per bad corner
+        assertEquals("face corner 0: index out of range", parser.GetFirstError());
+        assertArrayEquals(new int[]{0, -1, -1, 1, -1, -1, 2, -1, -1}, parser.GetCorners().ToArray());
+    }
+
+    @Test
+    public void parse_handlesCrLfTabsAndQuads() throws Exception
+    {
+        ObjParser parser = Parse("v\t1 2 3\r\nv 0 0 0\r\nv 0 0 0\r\nv 0 0 0\r\nv 0 0 0\r\nv 0 0 0\r\nv 0 0 0\r\n"
+                + "vn 0 0 1\r\nf 1 2 3 4\r\nf  5//1\t6//1 7//1  \r\n");
+
+        assertEquals(7, parser.GetNumPositions());
+        assertEquals(3.0f, parser.GetPositions().Get(2), 0.0f);
+        assertEquals(2, parser.GetNumFaces());
+        assertEquals(4, parser.GetFaceSizes().Get(0));
+        assertEquals(3, parser.GetFaceSizes().Get(1));
+        assertEquals(4, parser.GetCorners().Get(4 * 3));
+        assertEquals(0, parser.GetCorners().Get(4 * 3 + 2));
+    }
+
+    @Test
+    public void parse_tracksMaterialsAndMtlLib() throws Exception
+    {
+        ObjParser parser = Parse("mtllib bowser2.mtl\nv 0 0 0\nv 1 0 0\nv 0 1 0\n"
+                + "f 1 2 3\nusemtl mat10.001\nf 1 2 3\nusemtl mat12.001\nf 1 2 3\nusemtl mat10.001\nf 1 2 3\n");
+
+        assertEquals("bowser2.mtl", parser.GetMtlLibName());
+        assertEquals(2, parser.GetMaterialNames().size());
+        assertEquals("mat12.001", parser.GetMaterialNames().get(1));
+        assertEquals(ObjParser.NO_MATERIAL, parser.GetFaceMaterials().Get(0));
+        assertEquals(0, parser.GetFaceMaterials().Get(1));
+        assertEquals(1, parser.GetFaceMaterials().Get(2));
+        assertEquals(0, parser.GetFaceMaterials().Get(3));
+    }
+
+    @Test
+    public void parse_supportsIndicesAboveShortRange() throws Exception
+    {
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            obj.append("v 0 0 0\n");
+        ObjParser parser = Parse(obj + "f 40000 65536 100000\n");
+
+        assertEquals(0, parser.GetNumErrors());
+
+        assertEquals(39999, parser.GetCorners().Get(0));
+        assertEquals(65535, parser.GetCorners().Get(3));
+        assertEquals(99999, parser.GetCorners().Get(6));
+    }
+
+    @Test
+    public void parse_reportsMalformedRecords() throws Exception
+    {
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 x 0\nf 1 2\nf 1 2 3\n");
+
+        assertEquals(4, parser.GetNumPositions());
+        assertEquals(0.0f, parser.GetPositions().Get(10), 0.0f);
+        assertEquals(1, parser.GetNumFaces());      // the 2 corner face is dropped
+        assertEquals(2, parser.GetNumErrors());
+        assertEquals("line 4: bad number", parser.GetFirstError());
+    }
+
+    @Test
+    public void parse_reportsIndicesOutOfRange() throws Exception
+    {
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nf 1//1 2//1 3//1\nf 1//1 2//2 4//1\n");
+
+        assertEquals(2, parser.GetNumErrors());
+        assertEquals("face corner 4: index out of range", parser.GetFirstError());
+    }
+
+    @Test
+    public void parse_acceptsWellFormedFiles() throws Exception
+    {
+        ObjParser parser = Parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0.5\nf 1/1 2/1 3/1\n");
+
+        assertEquals(0, parser.GetNumErrors());
+        assertNull(parser.GetFirstError());
+        assertEquals(0.0f, parser.GetUVs().Get(1), 0.0f);
+    }
+
+    @Test
+    public void parse_computesBounds() throws Exception
+    {
+        ObjParser parser = Parse("v -1 0 2\nv 3 -4 2\nv 1 2 6\nf 1 2 3\n");
+        Bounds bounds = parser.GetBounds();
+
+        assertEquals(-1, bounds.GetMinX(), 0.0f);
+        assertEquals(-4, bounds.GetMinY(), 0.0f);
+        assertEquals(2, bounds.GetMinZ(), 0.0f);
+        assertEquals(3, bounds.GetMaxX(), 0.0f);
+        assertEquals(2, bounds.GetMaxY(), 0.0f);
+        assertEquals(6, bounds.GetMaxZ(), 0.0f);
+
+        // centered on the box (1, -1, 4), reaching the farthest vertex (3, -4, 2)
+        assertEquals(1, bounds.GetCenterX(), 0.0f);
+        assertEquals(-1, bounds.GetCenterY(), 0.0f);
+        assertEquals(4, bounds.GetCenterZ(), 0.0f);
+        assertEquals((float) Math.sqrt(4 + 9 + 4), bounds.GetRadius(), 1e-6f);
+        assertTrue(Parse("# nothing\n").GetBounds().IsEmpty());
+    }
+
+    private static void AssertSameFloats(String what, FloatArray expected, FloatArray actual)
+    {
+        assertEquals(what + " size", expected.Size(), actual.Size());
+        for (int i = 0; i < expected.Size(); i++)
+        {
+            if (Float.floatToRawIntBits(expected.Get(i)) != Float.floatToRawIntBits(actual.Get(i)))
+                fail(what + " differs at " + i);
+        }
+    }
+
+    private static void AssertSameInts(String what, IntArray expected, IntArray actual)
+    {
+        assertEquals(what + " size", expected.Size(), actual.Size());
+        for (int i = 0; i < expected.Size(); i++)
+            assertEquals(what + " at " + i, expected.Get(i), actual.Get(i));
+    }
+
+    private static void AssertSameParse(ObjParser expected, ObjParser actual)
+    {
+        AssertSameFloats("positions", expected.GetPositions(), actual.GetPositions());
+        AssertSameFloats("normals", expected.GetNormals(), actual.GetNormals());
+        AssertSameFloats("uvs", expected.GetUVs(), actual.GetUVs());
+        AssertSameInts("corners", expected.GetCorners(), actual.GetCorners());
+        AssertSameInts("face sizes", expected.GetFaceSizes(), actual.GetFaceSizes());
+        AssertSameInts("face materials", expected.GetFaceMaterials(), actual.GetFaceMaterials());
+        assertEquals(expected.GetMaterialNames(), actual.GetMaterialNames());
+        assertEquals(expected.GetMtlLibName(), actual.GetMtlLibName());
+        assertEquals(expected.GetNumErrors(), actual.GetNumErrors());
+        assertEquals(expected.GetFirstError(), actual.GetFirstError());
+        AssertSameBounds(expected.GetBounds(), actual.GetBounds());
+    }
+
+    private static void AssertSameBounds(Bounds expected, Bounds actual)
+    {
+        assertEquals(expected.GetMinX(), actual.GetMinX(), 0.0f);
+        assertEquals(expected.GetMinY(), actual.GetMinY(), 0.0f);
+        assertEquals(expected.GetMinZ(), actual.GetMinZ(), 0.0f);
+        assertEquals(expected.GetMaxX(), actual.GetMaxX(), 0.0f);
+        assertEquals(expected.GetMaxY(), actual.GetMaxY(), 0.0f);
+        assertEquals(expected.GetMaxZ(), actual.GetMaxZ(), 0.0f);
+        assertEquals(expected.GetRadius(), actual.GetRadius(), 0.0f);
+    }
+
+    private static void AssertParallelMatches(byte[] data, ExecutorService executor) throws Exception
+    {
+        ObjParser sequential = new ObjParser();
+        sequential.Parse(data, 0, data.length);
+        for (int numChunks : new int[]{2, 3, 4, 7, 16, 64})
+        {
+            ObjParser parallel = new ObjParser();
+            parallel.ParseParallel(data, 0, data.length, executor, numChunks);
+            AssertSameParse(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void parseParallel_matchesSequentialOnBundledModels() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        for (String model : BenchmarkUtil.MODELS)
+            AssertParallelMatches(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"), executor);
+        executor.shutdown();
+    }
+
+    @Test
+    public void parseParallel_resolvesNegativeIndicesAcrossChunks() throws Exception
+    {
+        // every face refers back to records of earlier chunks, some of them too far
+        StringBuilder obj = new StringBuilder("vt 0 0\nvn 0 0 1\n");
+        for (int i = 0; i < 200; i++)
+        {
+            obj.append("v ").append(i).append(" 0 0\nvt ").append(i).append(" 1\n");
+            if (i % 3 == 2)
+                obj.append("vn 1 0 0\n");
+            obj.append("f -1/-1/-1 -2//-1 -").append(i % 50 + 1).append("/-").append(i % 7 + 1).append('\n');
+        }
+        obj.append("f -300 -1 -2\n");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        AssertParallelMatches(obj.toString().getBytes(Charset.forName("US-ASCII")), executor);
+        executor.shutdown();
+    }
+
+    @Test
+    public void parseParallel_carriesMaterialsAndLinesAcrossChunks() throws Exception
+    {
+        // lots of short lines, so most chunks start in the middle of a usemtl group
+        StringBuilder obj = new StringBuilder("mtllib a.mtl\nv 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n");
+        String[] materials = {"red", "blue", "red", "green", "blue"};
+        for (int group = 0; group < materials.length; group++)
+        {
+            obj.append("usemtl ").append(materials[group]).append('\n');
+            for (int i = 0; i < 10; i++)
+                obj.append("v ").append(group).append(' ').append(i).append(" 0\nf 1 2 ").append(4 + group * 10 + i).append('\n');
+        }
+        obj.append("v 1 bad 0\nf 1 2\nmtllib b.mtl\nf 1 2 999\n");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        AssertParallelMatches(obj.toString().getBytes(Charset.forName("US-ASCII")), executor);
+
+        // more chunks than lines, and no trailing newline
+        AssertParallelMatches("v 0 0 0\nv 1 0 0\nv 0 1 0\nusemtl red\nf 1 2 3".getBytes(Charset.forName("US-ASCII")), executor);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,68 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JVM benchmark of ObjParser.ParseParallel on the largest bundled models, from 1 thread (the
+ * sequential Parse) up to the number of cores, one chunk per thread. Ex:
+ * java -cp ... com.mustafathamer.gles_test.ParallelParseBenchmark [assetsDir [maxThreads]]
+ */
+
+public class ParallelParseBenchmark
+{
+    private static final String[] MODELS = {"fidget2", "capsule", "bowser2"};
+    private static final int WARMUP_RUNS = 10;
+    private static final int TIMED_RUNS = 15;
+
+    private static long Measure(byte[] data, ExecutorService executor, int numThreads) throws IOException
+    {
+        long[] times = new long[TIMED_RUNS];
+        for (int i = 0; i < WARMUP_RUNS + TIMED_RUNS; i++)
+        {
+            ObjParser parser = new ObjParser();
+            long start = System.nanoTime();
+            if (numThreads == 1)
+                parser.Parse(data, 0, data.length);
+            else
+                parser.ParseParallel(data, 0, data.length, executor, numThreads);
+            if (i >= WARMUP_RUNS)
+                times[i - WARMUP_RUNS] = System.nanoTime() - start;
+        }
+        return BenchmarkUtil.Median(times);
+    }
+
+    // 1, 2, 4, ... and always maxThreads last
+    private static int NextThreadCount(int numThreads, int maxThreads)
+    {
+        if (numThreads == maxThreads)
+            return maxThreads + 1;
+        return Math.min(numThreads * 2, maxThreads);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+        int numCores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : numCores;
+        System.out.println("cores: " + numCores);
+
+        for (String model : MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+            long sequential = 0;
+            for (int numThreads = 1; numThreads <= maxThreads; numThreads = NextThreadCount(numThreads, maxThreads))
+            {
+                ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+                long time = Measure(data, executor, numThreads);
+                executor.shutdown();
+                if (numThreads == 1)
+                    sequential = time;
+                System.out.println(String.format("%-10s %2d threads %10s %6.2fx",
+                        model, numThreads, BenchmarkUtil.Millis(time), (double) sequential / time));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the program binaries kept on disk: round trip, and the files that must read as a miss
+ * (another key, damaged). Runs on the development machine (host).
+ */
+public class ProgramBinaryCacheTest
+{
+    private static final byte[] KEY = {1, 2, 3, 4, 5};
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        mDir = new File(Files.createTempDirectory("shaders").toFile(), "cache");     // not there yet
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = mDir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+        mDir.getParentFile().delete();
+    }
+
+    private static ByteBuffer Bytes(String text)
+    {
+        return ByteBuffer.wrap(text.getBytes());
+    }
+
+    private static String Text(ByteBuffer data)
+    {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return new String(bytes);
+    }
+
+    @Test
+    public void save_loadsBack() throws Exception
+    {
+        ProgramBinaryCache cache = new ProgramBinaryCache(mDir);
+        assertNull(cache.Load("object", KEY));
+
+        cache.Save("object", KEY, 42, Bytes("object binary"));
+        cache.Save("point", KEY, 43, Bytes("point binary"));
+
+        ProgramBinaryCache.Binary binary = new ProgramBinaryCache(mDir).Load("object", KEY);
+        assertNotNull(binary);
+        assertEquals(42, binary.mFormat);
+        assertEquals("object binary", Text(binary.mData));
+        assertTrue("glProgramBinary needs a direct buffer", binary.mData.isDirect());
+        assertEquals("point binary", Text(cache.Load("point", KEY).mData));
+        assertFalse("no temporary file left", new File(mDir, "object.prog.tmp").exists());
+    }
+
+    @Test
+    public void save_replacesTheOldBinary() throws Exception
+    {
+        ProgramBinaryCache cache = new ProgramBinaryCache(mDir);
+        cache.Save("object", KEY, 42, Bytes("old binary, longer than the new one"));
+        cache.Save("object", KEY, 42, Bytes("new binary"));
+
+        assertEquals("new binary", Text(cache.Load("object", KEY).mData));
+    }
+
+    @Test
+    public void load_otherKeyIsAMiss() throws Exception
+    {
+        ProgramBinaryCache cache = new ProgramBinaryCache(mDir);
+        cache.Save("object", KEY, 42, Bytes("object binary"));
+
+        assertNull(cache.Load("object", new byte[] {1, 2, 3, 4, 6}));
+        assertNull(cache.Load("object", new byte[] {1, 2, 3, 4}));
+    }
+
+    @Test
+    public void load_damagedFileIsAMiss() throws Exception
+    {
+        ProgramBinaryCache cache = new ProgramBinaryCache(mDir);
+        cache.Save("object", KEY, 42, Bytes("object binary"));
+        File file = new File(mDir, "object.prog");
+
+        // cut in the middle of the binary
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        assertNull(cache.Load("object", KEY));
+
+        // cut in the middle of the header
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(6);
+        raf.close();
+        assertNull(cache.Load("object", KEY));
+
+        // not a binary at all
+        Files.write(file.toPath(), "#version 300 es".getBytes());
+        assertNull(cache.Load("object", KEY));
+    }
+}
@@ -0,0 +1,72 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reports what quantizing the vertices (VertexLayout.ForMeshQuantized) saves on every bundled
+ * model: vertex buffer bytes, and the vertex fetch bandwidth of drawing the model once a frame at
+ * 60 fps, against floats. Also prints the largest error of each attribute: positions as a
+ * fraction of the bounding box diagonal, normals in degrees, UVs in UV units.
+ */
+
+public class QuantizationReport
+{
+    private static final int FRAMES_PER_SECOND = 60;
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-14s %7s %7s %10s %10s %6s %12s %12s %10s %10s %9s", "model", "verts",
+                "stride", "float KB", "quant KB", "saved", "float MB/s", "quant MB/s", "pos error", "normal deg", "uv error"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+            ObjParser parser = new ObjParser();
+            parser.Parse(data, 0, data.length);
+            MeshData mesh = new ObjMeshBuilder(parser, null).BuildIndexed();
+            int numVerts = mesh.GetNumVerts();
+
+            VertexLayout floatLayout = VertexLayout.ForMesh(mesh);
+            VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+            ByteBuffer vertices = layout.Interleave(mesh);
+
+            // largest errors
+            double positionError = 0, normalDegrees = 0, uvError = 0;
+            float[] positions = mesh.GetPositions().GetData();
+            float[] normals = mesh.GetNormals().GetData();
+            float[] uvs = mesh.GetUVs().GetData();
+            for (int v = 0; v < numVerts; v++)
+            {
+                double nx = normals[v * 3], ny = normals[v * 3 + 1], nz = normals[v * 3 + 2];
+                double qx = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 0);
+                double qy = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 1);
+                double qz = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 2);
+                double lengths = Math.sqrt(nx * nx + ny * ny + nz * nz) * Math.sqrt(qx * qx + qy * qy + qz * qz);
+                if (lengths > 0)
+                    normalDegrees = Math.max(normalDegrees,
+                            Math.toDegrees(Math.acos(Math.min(1, (nx * qx + ny * qy + nz * qz) / lengths))));
+                for (int c = 0; c < 3; c++)
+                    positionError = Math.max(positionError,
+                            Math.abs(layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, c) - positions[v * 3 + c]));
+                for (int c = 0; c < 2 && mesh.HasUVs(); c++)
+                    uvError = Math.max(uvError, Math.abs(layout.Read(vertices, v, VertexLayout.ATTRIB_UV, c) - uvs[v * 2 + c]));
+            }
+            Bounds bounds = mesh.ComputeBounds();
+            double dx = bounds.GetMaxX() - bounds.GetMinX(), dy = bounds.GetMaxY() - bounds.GetMinY(),
+                    dz = bounds.GetMaxZ() - bounds.GetMinZ();
+            double diagonal = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+            long floatBytes = (long) numVerts * floatLayout.GetStride();
+            long quantizedBytes = (long) numVerts * layout.GetStride();
+            System.out.println(String.format("%-14s %7d %3d/%-3d %10.1f %10.1f %5.0f%% %12.2f %12.2f %10.2e %10.3f %9s",
+                    model, numVerts, floatLayout.GetStride(), layout.GetStride(), floatBytes / 1024.0,
+                    quantizedBytes / 1024.0, 100.0 * (floatBytes - quantizedBytes) / floatBytes,
+                    floatBytes * FRAMES_PER_SECOND / 1e6, quantizedBytes * FRAMES_PER_SECOND / 1e6,
+                    positionError / diagonal, normalDegrees,
+                    mesh.HasUVs() ? String.format("%.2e", uvError) : "-"));
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fake GLApi for JVM tests: records every call, and tracks how many bytes would have been sent
+ * from Java memory to the driver (buffer uploads, plus client side arrays copied at draw time).
+ * Shaders always compile; programs link unless SetLinkFails(true). Attributes get the location
+ * they were bound to (-1 if not bound), uniforms get a location per name. GL_EXTENSIONS lists
+ * GL_OES_element_index_uint unless changed with SetExtensions(), GL_VERSION and GL_RENDERER are
+ * "OpenGL ES 2.0" unless changed with SetVersion(). A program's binary is the text "binary of
+ * program N"; binaries load back unless SetRejectBinaries(true).
+ */
+
+public class RecordingGLApi implements GLApi
+{
+    public static final int FAKE_BINARY_FORMAT = 0x1234;
+
+    private List<String> mCalls = new ArrayList<>();
+    private long mBytesUploaded;
+    private int mNextBufferId = 1;
+    private int mNextTextureId = 1;
+    private int mDrawCalls;
+
+    private Map<Integer, Buffer> mClientPointers = new HashMap<>();
+    private Set<Integer> mEnabledArrays = new HashSet<>();
+    private int mBoundArrayBuffer;
+    private int mBoundElementBuffer;
+
+    private int mNextObjectId = 1;
+    private boolean mLinkFails;
+    private boolean mRejectBinaries;
+    private Set<Integer> mBinaryPrograms = new HashSet<>();
+    private String mVersion = "OpenGL ES 2.0";
+    private String mExtensions = VertexBufferMesh.OES_ELEMENT_INDEX_UINT;
+    private Map<String, Integer> mBoundAttribs = new HashMap<>();
+    private Map<String, Integer> mUniformLocations = new HashMap<>();
+
+    public List<String> GetCalls()      { return mCalls; }
+    public long GetBytesUploaded()      { return mBytesUploaded; }
+    public int GetDrawCalls()           { return mDrawCalls; }
+    public int GetBoundArrayBuffer()    { return mBoundArrayBuffer; }
+
+    public void SetLinkFails(boolean linkFails)
+    {
+        mLinkFails = linkFails;
+    }
+
+    public void SetExtensions(String extensions)
+    {
+        mExtensions = extensions;
+    }
+
+    public void SetVersion(String version)
+    {
+        mVersion = version;
+    }
+
+    public void SetRejectBinaries(boolean rejectBinaries)
+    {
+        mRejectBinaries = rejectBinaries;
+    }
+
+    private static byte[] FakeBinary(int program)
+    {
+        return ("binary of program " + program).getBytes();
+    }
+
+    //
+    // Reset the per frame counters and call log (GL state is kept)
+    //
+    public void BeginFrame()
+    {
+        mCalls.clear();
+        mBytesUploaded = 0;
+        mDrawCalls = 0;
+    }
+
+    public int CountCalls(String name)
+    {
+        int count = 0;
+        for (String call : mCalls)
+        {
+            if (call.startsWith(name + "("))
+                count++;
+        }
+        return count;
+    }
+
+    private static int SizeInBytes(Buffer buffer)
+    {
+        if (buffer instanceof ByteBuffer)
+            return buffer.capacity();
+        if (buffer instanceof FloatBuffer || buffer instanceof IntBuffer)
+            return buffer.capacity() * 4;
+        return buffer.capacity() * 2;
+    }
+
+    protected void Record(String call)
+    {
+        mCalls.add(call);
+    }
+
+    // client side arrays get copied by the driver on every draw
+    private void CopyClientArrays()
+    {
+        for (Integer index : mEnabledArrays)
+        {
+            Buffer pointer = mClientPointers.get(index);
+            if (pointer != null)
+                mBytesUploaded += SizeInBytes(pointer);
+        }
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        Record("glClear(" + mask + ")");
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        Record("glEnable(" + cap + ")");
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        Record("glDisable(" + cap + ")");
+    }
+
+    @Override
+    public String glGetString(int name)
+    {
+        Record("glGetString(" + name + ")");
+        if (name == GLES20.GL_EXTENSIONS)
+            return mExtensions;
+        return name == GLES20.GL_VERSION || name == GLES20.GL_RENDERER ? mVersion : "";
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        Record("glCreateShader(" + type + ")");
+        return mNextObjectId++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source)
+    {
+        Record("glShaderSource(" + shader + ")");
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        Record("glCompileShader(" + shader + ")");
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        params[offset] = GLES20.GL_TRUE;
+        Record("glGetShaderiv(" + shader + "," + pname + ")");
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        Record("glGetShaderInfoLog(" + shader + ")");
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        Record("glDeleteShader(" + shader + ")");
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        Record("glCreateProgram()");
+        return mNextObjectId++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        Record("glAttachShader(" + program + "," + shader + ")");
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name)
+    {
+        mBoundAttribs.put(program + ":" + name, index);
+        Record("glBindAttribLocation(" + program + "," + index + "," + name + ")");
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        Record("glLinkProgram(" + program + ")");
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        if (pname == ShaderProgram.GL_PROGRAM_BINARY_LENGTH)
+            params[offset] = FakeBinary(program).length;
+        else if (mBinaryPrograms.contains(program))
+            params[offset] = mRejectBinaries ? GLES20.GL_FALSE : GLES20.GL_TRUE;
+        else
+            params[offset] = mLinkFails ? GLES20.GL_FALSE : GLES20.GL_TRUE;
+        Record("glGetProgramiv(" + program + "," + pname + ")");
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        Record("glGetProgramInfoLog(" + program + ")");
+        return mLinkFails ? "link failed" : "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        Record("glDeleteProgram(" + program + ")");
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value)
+    {
+        Record("glProgramParameteri(" + program + "," + pname + "," + value + ")");
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat,
+                                   int binaryFormatOffset, Buffer binary)
+    {
+        byte[] bytes = FakeBinary(program);
+        int size = Math.min(bytes.length, bufSize);
+        ((ByteBuffer) binary).duplicate().put(bytes, 0, size);
+        length[lengthOffset] = size;
+        binaryFormat[binaryFormatOffset] = FAKE_BINARY_FORMAT;
+        Record("glGetProgramBinary(" + program + ")");
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length)
+    {
+        byte[] bytes = new byte[length];
+        ((ByteBuffer) binary).duplicate().get(bytes);
+        mBinaryPrograms.add(program);
+        Record("glProgramBinary(" + program + "," + binaryFormat + "," + new String(bytes) + ")");
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        Record("glUseProgram(" + program + ")");
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        Record("glGetAttribLocation(" + program + "," + name + ")");
+        Integer location = mBoundAttribs.get(program + ":" + name);
+        return location != null ? location : -1;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        Record("glGetUniformLocation(" + program + "," + name + ")");
+        String key = program + ":" + name;
+        Integer location = mUniformLocations.get(key);
+        if (location == null)
+        {
+            location = mUniformLocations.size();
+            mUniformLocations.put(key, location);
+        }
+        return location;
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        for (int i = 0; i < n; i++)
+            buffers[offset + i] = mNextBufferId++;
+        Record("glGenBuffers(" + n + ")");
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        Record("glDeleteBuffers(" + n + ")");
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        if (target == GLES20.GL_ARRAY_BUFFER)
+            mBoundArrayBuffer = buffer;
+        else
+            mBoundElementBuffer = buffer;
+        Record("glBindBuffer(" + target + "," + buffer + ")");
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        mBytesUploaded += size;
+        Record("glBufferData(" + target + "," + size + "," + usage + ")");
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        for (int i = 0; i < n; i++)
+            textures[offset + i] = mNextTextureId++;
+        Record("glGenTextures(" + n + ")");
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            names.append(",").append(textures[offset + i]);
+        Record("glDeleteTextures(" + n + names + ")");
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        Record("glActiveTexture(" + texture + ")");
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        Record("glBindTexture(" + target + "," + texture + ")");
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        Record("glTexParameteri(" + target + "," + pname + "," + param + ")");
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                             int type, Buffer pixels)
+    {
+        mBytesUploaded += pixels.remaining();     // a ByteBuffer of exactly the level
+        Record("glTexImage2D(" + level + "," + width + "," + height + ")");
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                       int imageSize, Buffer data)
+    {
+        if (data.remaining() < imageSize)
+            throw new IllegalArgumentException("compressed level needs " + imageSize + " bytes, has " + data.remaining());
+        mBytesUploaded += imageSize;
+        Record("glCompressedTexImage2D(" + level + "," + internalformat + "," + width + "," + height + ")");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        if (mBoundArrayBuffer == 0)
+            throw new IllegalStateException("offset attribute pointer without a bound buffer");
+        mClientPointers.remove(index);
+        Record("glVertexAttribPointer(" + index + "," + size + "," + type + "," + stride + "," + offset + ")");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        mClientPointers.put(index, ptr);
+        Record("glVertexAttribPointer(" + index + "," + size + "," + type + "," + stride + ",client)");
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        mEnabledArrays.add(index);
+        Record("glEnableVertexAttribArray(" + index + ")");
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        mEnabledArrays.remove(index);
+        Record("glDisableVertexAttribArray(" + index + ")");
+    }
+
+    @Override
+    public void glVertexAttrib3f(int index, float x, float y, float z)
+    {
+        Record("glVertexAttrib3f(" + index + ")");
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        Record("glUniform1i(" + location + "," + x + ")");
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        Record("glUniform1f(" + location + "," + x + ")");
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y)
+    {
+        Record("glUniform2f(" + location + "," + x + "," + y + ")");
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z)
+    {
+        Record("glUniform3f(" + location + "," + x + "," + y + "," + z + ")");
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] value, int offset)
+    {
+        Record("glUniform4fv(" + location + "," + count + ")");
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        Record("glUniformMatrix4fv(" + location + "," + count + ")");
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        Record("glUniform4f(" + location + "," + x + "," + y + "," + z + "," + w + ")");
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count)
+    {
+        CopyClientArrays();
+        mDrawCalls++;
+        Record("glDrawArrays(" + mode + "," + first + "," + count + ")");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset)
+    {
+        if (mBoundElementBuffer == 0)
+            throw new IllegalStateException("offset draw without a bound index buffer");
+        CopyClientArrays();
+        mDrawCalls++;
+        Record("glDrawElements(" + mode + "," + count + "," + type + "," + offset + ")");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices)
+    {
+        CopyClientArrays();
+        mBytesUploaded += count * (type == GLES20.GL_UNSIGNED_INT ? 4 : 2);
+        mDrawCalls++;
+        Record("glDrawElements(" + mode + "," + count + "," + type + ",client)");
+    }
+}
@@ -0,0 +1,183 @@
+package com.mustafathamer.gles_test;
+
+/**
+ * JVM benchmark of the scene graph with 10k nodes (100 groups of 100 instances, all sharing one
+ * renderable): world matrix update time when nothing, one node, 10% of the nodes, or the root
+ * changed, and the time of a draw traversal, without and with frustum culling. The culled
+ * traversal is also run with FrameStats, for the percentiles of its cull and draw phases.
+ * Each scenario is timed per frame, median of the timed frames.
+ */
+
+public class SceneGraphBenchmark
+{
+    private static final int NUM_GROUPS = 100;
+    private static final int NODES_PER_GROUP = 100;
+    private static final int WARMUP_FRAMES = 200;
+    private static final int TIMED_FRAMES = 200;
+
+    // counts the draws, stands in for a mesh
+    private static class CountingRenderable implements Renderable
+    {
+        long mNumDraws;
+        float mChecksum;
+        Bounds mBounds = new Bounds();
+
+        CountingRenderable()
+        {
+            mBounds.SetBox(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f);
+            mBounds.SetSphere(0, 0, 0, 0.87f);
+        }
+
+        @Override
+        public Bounds GetBounds()
+        {
+            return mBounds;
+        }
+
+        @Override
+        public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+        {
+            mNumDraws++;
+            mChecksum += modelMatrix[12];
+        }
+    }
+
+    private interface Scenario
+    {
+        // change the scene for this frame
+        void Change(int frame);
+    }
+
+    private static SceneNode BuildScene(Renderable renderable)
+    {
+        SceneNode root = new SceneNode();
+        for (int group = 0; group < NUM_GROUPS; group++)
+        {
+            SceneNode groupNode = new SceneNode();
+            groupNode.SetPosition(group % 10 * 10, 0, group / 10 * 10);
+            for (int i = 0; i < NODES_PER_GROUP; i++)
+            {
+                SceneNode node = new SceneNode(renderable);
+                node.SetPosition(i % 10, 0, i / 10);
+                node.SetRotation(0, i * 3.6f);
+                groupNode.AddChild(node);
+            }
+            root.AddChild(groupNode);
+        }
+        root.UpdateWorldMatrices();
+        return root;
+    }
+
+    private static void Run(String name, SceneNode root, Scenario scenario)
+    {
+        long[] times = new long[TIMED_FRAMES];
+        int numUpdated = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + TIMED_FRAMES; frame++)
+        {
+            scenario.Change(frame);
+            long start = System.nanoTime();
+            numUpdated = root.UpdateWorldMatrices();
+            long end = System.nanoTime();
+            if (frame >= WARMUP_FRAMES)
+                times[frame - WARMUP_FRAMES] = end - start;
+        }
+        System.out.println(String.format("%-22s %10d %12.1f us", name, numUpdated, BenchmarkUtil.Median(times) / 1e3));
+    }
+
+    public static void main(String[] args)
+    {
+        CountingRenderable renderable = new CountingRenderable();
+        final SceneNode root = BuildScene(renderable);
+        int numNodes = 1 + NUM_GROUPS * (1 + NODES_PER_GROUP);
+        System.out.println(numNodes + " nodes");
+
+        System.out.println(String.format("%-22s %10s %15s", "update", "recomputed", "time/frame"));
+        Run("nothing changed", root, new Scenario()
+        {
+            @Override
+            public void Change(int frame)
+            {
+            }
+        });
+        Run("one leaf moved", root, new Scenario()
+        {
+            @Override
+            public void Change(int frame)
+            {
+                root.GetChild(42).GetChild(7).SetPosition(frame, 0, 0);
+            }
+        });
+        Run("10% of leaves moved", root, new Scenario()
+        {
+            @Override
+            public void Change(int frame)
+            {
+                for (int group = 0; group < NUM_GROUPS; group++)
+                {
+                    for (int i = 0; i < NODES_PER_GROUP; i += 10)
+                        root.GetChild(group).GetChild(i).SetRotation(0, frame);
+                }
+            }
+        });
+        Run("root rotated (all)", root, new Scenario()
+        {
+            @Override
+            public void Change(int frame)
+            {
+                root.SetRotation(0, frame);
+            }
+        });
+
+        DrawTraversal("draw traversal", root, renderable, null, null);
+
+        // camera at the edge of the 100x100 grid looking into it, with the app's projection
+        float[] projection = new float[16];
+        float[] view = new float[16];
+        float[] viewProjection = new float[16];
+        MatrixMath.SetFrustum(projection, -1, 1, -1, 1, 3, 20);
+        MatrixMath.SetRotate(view, 180, 0, 1, 0);
+        MatrixMath.Translate(view, -50, 0, 5);
+        MatrixMath.Multiply(viewProjection, projection, view);
+        Frustum frustum = new Frustum();
+        DrawTraversal("draw traversal, culled", root, renderable, frustum, viewProjection);
+        System.out.println(String.format("culled %d of %d objects per frame", frustum.GetNumCulled(), frustum.GetNumTested()));
+
+        // the same frames with the renderer's instrumentation, cull timed apart from the rest of the draw
+        FrameStats stats = new FrameStats(TIMED_FRAMES);
+        frustum.SetFrameStats(stats);
+        for (int frame = 0; frame < WARMUP_FRAMES + TIMED_FRAMES; frame++)
+        {
+            if (frame == WARMUP_FRAMES)
+                stats.Clear();
+            long numDraws = renderable.mNumDraws;
+            stats.BeginFrame();
+            stats.BeginPhase(FrameStats.DRAW);
+            frustum.SetViewProjection(viewProjection);
+            root.Draw(null, frustum);
+            stats.EndPhase();
+            stats.EndFrame((int) (renderable.mNumDraws - numDraws), 0, 0);
+        }
+        frustum.SetFrameStats(null);
+        System.out.println("culled traversal, instrumented (ms):");
+        System.out.println(stats.Report());
+    }
+
+    private static void DrawTraversal(String name, SceneNode root, CountingRenderable renderable,
+                                      Frustum frustum, float[] viewProjection)
+    {
+        long[] times = new long[TIMED_FRAMES];
+        renderable.mNumDraws = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + TIMED_FRAMES; frame++)
+        {
+            long start = System.nanoTime();
+            if (frustum != null)
+                frustum.SetViewProjection(viewProjection);
+            root.Draw(null, frustum);
+            long end = System.nanoTime();
+            if (frame >= WARMUP_FRAMES)
+                times[frame - WARMUP_FRAMES] = end - start;
+        }
+        System.out.println(String.format("%-22s %10d %12.1f us", name,
+                renderable.mNumDraws / (WARMUP_FRAMES + TIMED_FRAMES), BenchmarkUtil.Median(times) / 1e3));
+    }
+}
@@ -0,0 +1,156 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the scene graph world matrices, that only dirty subtrees are recomputed, and that drawing
+ * hands every node's world matrix to its (possibly shared) renderable.
+ * Runs on the development machine (host).
+ */
+public class SceneNodeTest
+{
+    private static final float EPSILON = 1e-5f;
+
+    // records the matrices it was drawn with
+    private static class RecordingRenderable implements Renderable
+    {
+        List<float[]> mDrawn = new ArrayList<>();
+        Bounds mBounds;
+
+        @Override
+        public Bounds GetBounds()
+        {
+            return mBounds;
+        }
+
+        @Override
+        public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+        {
+            mDrawn.add(modelMatrix.clone());
+        }
+    }
+
+    private static void AssertMatrixEquals(float[] expected, float[] actual)
+    {
+        for (int i = 0; i < 16; i++)
+            assertEquals("element " + i, expected[i], actual[i], EPSILON);
+    }
+
+    private static float[] Times(float[] lhs, float[] rhs)
+    {
+        float[] result = new float[16];
+        MatrixMath.Multiply(result, lhs, rhs);
+        return result;
+    }
+
+    @Test
+    public void worldMatrix_isParentTimesLocal() throws Exception
+    {
+        SceneNode root = new SceneNode();
+        SceneNode child = new SceneNode();
+        SceneNode grandChild = new SceneNode();
+        root.AddChild(child);
+        child.AddChild(grandChild);
+        root.SetRotation(0, 90);
+        child.SetPosition(0, 0, -5);
+        grandChild.SetScale(2);
+
+        assertEquals(3, root.UpdateWorldMatrices());
+
+        float[] expected = Times(Times(root.GetTransform().GetMatrix(), child.GetTransform().GetMatrix()),
+                grandChild.GetTransform().GetMatrix());
+        AssertMatrixEquals(expected, grandChild.GetWorldMatrix());
+        // -z rotated 90 degrees around y is -x
+        assertEquals(-5, child.GetWorldMatrix()[12], EPSILON);
+    }
+
+    @Test
+    public void staticScene_recomputesNothing() throws Exception
+    {
+        SceneNode root = new SceneNode();
+        for (int i = 0; i < 10; i++)
+            root.AddChild(new SceneNode());
+        assertEquals(11, root.UpdateWorldMatrices());
+
+        assertEquals(0, root.UpdateWorldMatrices());
+        root.GetChild(3).SetPosition(0, 0, 0);        // no actual change
+        assertEquals(0, root.UpdateWorldMatrices());
+    }
+
+    @Test
+    public void onlyDirtySubtreeIsRecomputed() throws Exception
+    {
+        SceneNode root = new SceneNode();
+        SceneNode left = new SceneNode();
+        SceneNode right = new SceneNode();
+        root.AddChild(left);
+        root.AddChild(right);
+        for (int i = 0; i < 5; i++)
+        {
+            left.AddChild(new SceneNode());
+            right.AddChild(new SceneNode());
+        }
+        root.UpdateWorldMatrices();
+
+        // a leaf: just itself
+        right.GetChild(2).SetPosition(1, 0, 0);
+        assertEquals(1, root.UpdateWorldMatrices());
+
+        // an inner node: itself and its 5 children, not the other branch
+        left.SetRotation(0, 45);
+        assertEquals(6, root.UpdateWorldMatrices());
+        AssertMatrixEquals(Times(left.GetWorldMatrix(), left.GetChild(0).GetTransform().GetMatrix()),
+                left.GetChild(0).GetWorldMatrix());
+
+        // the root: everything
+        root.SetScale(3);
+        assertEquals(13, root.UpdateWorldMatrices());
+    }
+
+    @Test
+    public void reparenting_updatesWorldMatrix() throws Exception
+    {
+        SceneNode root = new SceneNode();
+        SceneNode a = new SceneNode();
+        SceneNode b = new SceneNode();
+        SceneNode leaf = new SceneNode();
+        root.AddChild(a);
+        root.AddChild(b);
+        a.AddChild(leaf);
+        a.SetPosition(1, 0, 0);
+        b.SetPosition(0, 2, 0);
+        root.UpdateWorldMatrices();
+        assertEquals(1, leaf.GetWorldMatrix()[12], EPSILON);
+
+        b.AddChild(leaf);
+        assertEquals(0, a.GetNumChildren());
+        assertSame(b, leaf.GetParent());
+        assertEquals(1, root.UpdateWorldMatrices());
+        assertEquals(0, leaf.GetWorldMatrix()[12], EPSILON);
+        assertEquals(2, leaf.GetWorldMatrix()[13], EPSILON);
+    }
+
+    @Test
+    public void draw_sharesRenderableBetweenInstances() throws Exception
+    {
+        RecordingRenderable mesh = new RecordingRenderable();
+        SceneNode root = new SceneNode();
+        for (int i = 0; i < 3; i++)
+        {
+            SceneNode instance = new SceneNode(mesh);
+            instance.SetPosition(i, 0, 0);
+            root.AddChild(instance);
+        }
+        root.UpdateWorldMatrices();
+        root.Draw(null, null);
+
+        assertEquals(3, mesh.mDrawn.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals(i, mesh.mDrawn.get(i)[12], EPSILON);
+    }
+}
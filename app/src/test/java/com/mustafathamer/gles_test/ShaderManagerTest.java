@@ -0,0 +1,184 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests ShaderManager against a recording fake GL: the sources are read whole, variants get
+ * their #defines, and programs come from the binary cache when it has them for the same sources
+ * and driver, compiled otherwise. Runs on the development machine (host).
+ */
+public class ShaderManagerTest
+{
+    private static final String[] ATTRIBUTES = {"a_Position", "a_Normal"};
+    private static final String[] UNIFORMS = {"u_MVPMatrix", "u_DifColor"};
+    private static final String[] NO_DEFINES = {};
+
+    private Map<String, String> mFiles = new HashMap<>();
+    private Map<String, Integer> mOpens = new HashMap<>();
+    private ShaderManager.Source mSource = new ShaderManager.Source()
+    {
+        @Override
+        public InputStream Open(String fileName) throws IOException
+        {
+            String text = mFiles.get(fileName);
+            if (text == null)
+                throw new IOException("no " + fileName);
+            mOpens.put(fileName, mOpens.containsKey(fileName) ? mOpens.get(fileName) + 1 : 1);
+            return new ByteArrayInputStream(text.getBytes("UTF-8"));
+        }
+    };
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        mFiles.put("vertex.txt", "attribute vec4 a_Position;\n// a comment\nvoid main() { gl_Position = a_Position; }\n");
+        mFiles.put("fragment.txt", "precision mediump float;\n#ifdef TEXTURED\nuniform sampler2D u_Tex;\n#endif\n"
+                + "void main() { gl_FragColor = vec4(1.0); }\n");
+        mDir = Files.createTempDirectory("shaders").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = mDir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    private static RecordingGLApi Es3()
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        gl.SetVersion("OpenGL ES 3.2");
+        return gl;
+    }
+
+    private ShaderProgram Load(ShaderManager manager, String name, String[] defines) throws IOException
+    {
+        return manager.Load(name, "vertex.txt", "fragment.txt", defines, ATTRIBUTES, UNIFORMS);
+    }
+
+    @Test
+    public void readSource_keepsTheLineBreaks() throws Exception
+    {
+        StringBuilder longSource = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            longSource.append("// line ").append(i).append('\n');       // more than one read
+
+        for (String source : new String[] {mFiles.get("vertex.txt"), longSource.toString(), ""})
+            assertEquals(source, ShaderManager.ReadSource(new ByteArrayInputStream(source.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void addDefines_goAfterTheVersion() throws Exception
+    {
+        String[] defines = {"TEXTURED", "LIGHTS 4"};
+        assertEquals("#define TEXTURED\n#define LIGHTS 4\nvoid main() {}\n",
+                ShaderManager.AddDefines("void main() {}\n", defines));
+        assertEquals("#version 300 es\n#define TEXTURED\n#define LIGHTS 4\nvoid main() {}\n",
+                ShaderManager.AddDefines("#version 300 es\nvoid main() {}\n", defines));
+        assertEquals("void main() {}\n", ShaderManager.AddDefines("void main() {}\n", NO_DEFINES));
+    }
+
+    @Test
+    public void load_compilesWithTheDefines() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ShaderManager manager = new ShaderManager(gl, mSource, null);
+        Load(manager, "plain", NO_DEFINES);
+        Load(manager, "textured", new String[] {"TEXTURED"});
+
+        assertEquals(4, gl.CountCalls("glCompileShader"));
+        assertEquals("a source is read once", 1, (int) mOpens.get("fragment.txt"));
+        assertEquals(0, gl.CountCalls("glProgramParameteri"));
+        assertEquals(2, manager.GetStats().size());
+        assertEquals("textured", manager.GetStats().get(1).mName);
+        assertFalse(manager.GetStats().get(1).mFromBinary);
+    }
+
+    @Test
+    public void load_savesThenUsesTheBinary() throws Exception
+    {
+        RecordingGLApi gl = Es3();
+        assertTrue(ShaderManager.SupportsProgramBinaries(gl));
+        ShaderManager manager = new ShaderManager(gl, mSource, new ProgramBinaryCache(mDir));
+        int handle = Load(manager, "object", NO_DEFINES).GetHandle();
+
+        assertEquals(1, gl.CountCalls("glProgramParameteri"));
+        assertEquals(1, gl.CountCalls("glGetProgramBinary"));
+        assertTrue(new File(mDir, "object.prog").isFile());
+
+        // the next start
+        RecordingGLApi gl2 = Es3();
+        ShaderManager manager2 = new ShaderManager(gl2, mSource, new ProgramBinaryCache(mDir));
+        ShaderProgram program = Load(manager2, "object", NO_DEFINES);
+
+        assertEquals(0, gl2.CountCalls("glCompileShader"));
+        assertEquals(0, gl2.CountCalls("glLinkProgram"));
+        assertTrue(gl2.GetCalls().contains("glProgramBinary(" + program.GetHandle() + ","
+                + RecordingGLApi.FAKE_BINARY_FORMAT + ",binary of program " + handle + ")"));
+        assertTrue(manager2.GetStats().get(0).mFromBinary);
+        assertNotEquals(-1, program.GetUniformLocation("u_DifColor"));
+    }
+
+    @Test
+    public void load_otherSourcesOrDriverCompile() throws Exception
+    {
+        Load(new ShaderManager(Es3(), mSource, new ProgramBinaryCache(mDir)), "object", NO_DEFINES);
+
+        // another variant under the same name
+        RecordingGLApi gl = Es3();
+        Load(new ShaderManager(gl, mSource, new ProgramBinaryCache(mDir)), "object", new String[] {"TEXTURED"});
+        assertEquals(0, gl.CountCalls("glProgramBinary"));
+        assertEquals(2, gl.CountCalls("glCompileShader"));
+
+        // a driver update
+        gl = Es3();
+        gl.SetVersion("OpenGL ES 3.2 build 2");
+        Load(new ShaderManager(gl, mSource, new ProgramBinaryCache(mDir)), "object", new String[] {"TEXTURED"});
+        assertEquals(0, gl.CountCalls("glProgramBinary"));
+        assertEquals(2, gl.CountCalls("glCompileShader"));
+    }
+
+    @Test
+    public void load_rejectedBinaryCompiles() throws Exception
+    {
+        Load(new ShaderManager(Es3(), mSource, new ProgramBinaryCache(mDir)), "object", NO_DEFINES);
+
+        RecordingGLApi gl = Es3();
+        gl.SetRejectBinaries(true);
+        ShaderManager manager = new ShaderManager(gl, mSource, new ProgramBinaryCache(mDir));
+        ShaderProgram program = Load(manager, "object", NO_DEFINES);
+
+        assertEquals(1, gl.CountCalls("glProgramBinary"));
+        assertEquals(1, gl.CountCalls("glDeleteProgram"));
+        assertEquals(2, gl.CountCalls("glCompileShader"));
+        assertFalse(manager.GetStats().get(0).mFromBinary);
+        assertNotEquals(-1, program.GetUniformLocation("u_DifColor"));
+    }
+
+    @Test
+    public void supportsProgramBinaries_onlyOnEs3() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        assertFalse(ShaderManager.SupportsProgramBinaries(gl));
+        gl.SetVersion("OpenGL ES 3.0 V@1.2");
+        assertTrue(ShaderManager.SupportsProgramBinaries(gl));
+    }
+}
@@ -0,0 +1,122 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that ShaderProgram resolves its locations once at link time, and that CountingGLApi
+ * counts the calls of a frame, against a recording fake GL. Runs on the development machine (host).
+ */
+public class ShaderProgramTest
+{
+    private static final String[] ATTRIBUTES = {"a_Position", "a_Normal"};
+    private static final String[] UNIFORMS = {"u_MVPMatrix", "u_MVMatrix", "u_LightPos", "u_DifColor", "u_AmbColor"};
+
+    private static ShaderProgram CreateProgram(GLApi gl)
+    {
+        return new ShaderProgram(gl, "vertex code", "fragment code", ATTRIBUTES, UNIFORMS);
+    }
+
+    // what the renderer does per frame with the object program, minus the draw itself
+    private static void DrawFrame(GLApi gl, ShaderProgram program)
+    {
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        program.Use(gl);
+        gl.glUniform3f(program.GetUniformLocation("u_LightPos"), 0, 0, -2);
+        gl.glUniformMatrix4fv(program.GetUniformLocation("u_MVMatrix"), 1, false, new float[16], 0);
+        gl.glUniformMatrix4fv(program.GetUniformLocation("u_MVPMatrix"), 1, false, new float[16], 0);
+        gl.glUniform4f(program.GetUniformLocation("u_DifColor"), 1, 0, 0, 1);
+        gl.glUniform4f(program.GetUniformLocation("u_AmbColor"), 0.1f, 0, 0, 1);
+        gl.glEnableVertexAttribArray(program.GetAttribLocation("a_Position"));
+        gl.glEnableVertexAttribArray(program.GetAttribLocation("a_Normal"));
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
+    }
+
+    @Test
+    public void attributesAreBoundInOrder() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ShaderProgram program = CreateProgram(gl);
+
+        assertNotEquals(0, program.GetHandle());
+        assertEquals(0, program.GetAttribLocation("a_Position"));
+        assertEquals(1, program.GetAttribLocation("a_Normal"));
+        assertEquals(1, gl.CountCalls("glLinkProgram"));
+        assertEquals(2, gl.CountCalls("glDeleteShader"));     // the program keeps the code
+    }
+
+    @Test
+    public void locationsAreResolvedOnceAtLinkTime() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ShaderProgram program = CreateProgram(gl);
+
+        assertEquals(ATTRIBUTES.length, gl.CountCalls("glGetAttribLocation"));
+        assertEquals(UNIFORMS.length, gl.CountCalls("glGetUniformLocation"));
+        int mvp = program.GetUniformLocation("u_MVPMatrix");
+        assertNotEquals(mvp, program.GetUniformLocation("u_MVMatrix"));
+
+        gl.BeginFrame();
+        for (int frame = 0; frame < 100; frame++)
+            DrawFrame(gl, program);
+
+        assertEquals(0, gl.CountCalls("glGetAttribLocation"));
+        assertEquals(0, gl.CountCalls("glGetUniformLocation"));
+        assertEquals(mvp, program.GetUniformLocation("u_MVPMatrix"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unresolvedName_throws() throws Exception
+    {
+        CreateProgram(new RecordingGLApi()).GetUniformLocation("u_Typo");
+    }
+
+    @Test
+    public void linkFailure_throwsAndDeletesProgram() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        gl.SetLinkFails(true);
+        try
+        {
+            CreateProgram(gl);
+            fail("expected link failure");
+        } catch (RuntimeException e)
+        {
+            assertTrue(e.getMessage().contains("link failed"));
+        }
+        assertEquals(1, gl.CountCalls("glDeleteProgram"));
+        assertEquals(0, gl.CountCalls("glGetUniformLocation"));
+    }
+
+    @Test
+    public void countingApi_countsOnlyTheFrame() throws Exception
+    {
+        RecordingGLApi recording = new RecordingGLApi();
+        CountingGLApi gl = new CountingGLApi(recording);
+        ShaderProgram program = CreateProgram(gl);     // setup, outside of any frame
+
+        gl.BeginFrame();
+        recording.BeginFrame();
+        DrawFrame(gl, program);
+        gl.EndFrame();
+
+        assertEquals(recording.GetCalls().size(), gl.GetCallsLastFrame());
+        assertEquals(10, gl.GetCallsLastFrame());
+
+        // the renderer used to look up 7 object and 2 point locations every frame
+        gl.BeginFrame();
+        for (String attribute : ATTRIBUTES)
+            gl.glGetAttribLocation(program.GetHandle(), attribute);
+        for (String uniform : UNIFORMS)
+            gl.glGetUniformLocation(program.GetHandle(), uniform);
+        gl.glGetAttribLocation(program.GetHandle(), "a_Position");
+        gl.glGetUniformLocation(program.GetHandle(), "u_MVPMatrix");
+        DrawFrame(gl, program);
+        gl.EndFrame();
+
+        assertEquals(10 + 9, gl.GetCallsLastFrame());
+    }
+}
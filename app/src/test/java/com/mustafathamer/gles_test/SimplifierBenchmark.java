@@ -0,0 +1,53 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * JVM benchmark of building the levels of detail of the bundled models with MeshSimplifier: the
+ * triangles and vertices left at 50%, 25% and 10%, the error of the coarsest level, and the input
+ * triangles simplified per second (whole chain, best of a few runs). Models too small for a
+ * 10% level are skipped.
+ */
+
+public class SimplifierBenchmark
+{
+    private static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+    private static final int NUM_RUNS = 3;
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-14s %8s %7s %22s %22s %10s %9s %12s", "model", "tris", "verts",
+                "tris 50/25/10%", "verts 50/25/10%", "max error", "time", "tris/s"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            MeshData mesh = MeshTestUtil.Build(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"), null);
+            int numTriangles = mesh.GetNumElements() / 3;
+            if (numTriangles * LOD_RATIOS[LOD_RATIOS.length - 1] < MeshSimplifier.MIN_LOD_TRIANGLES)
+                continue;
+
+            long best = Long.MAX_VALUE;
+            MeshSimplifier simplifier = null;
+            MeshData[] lods = new MeshData[LOD_RATIOS.length];
+            for (int run = 0; run < NUM_RUNS; run++)
+            {
+                long start = System.nanoTime();
+                simplifier = new MeshSimplifier(mesh);
+                for (int i = 0; i < LOD_RATIOS.length; i++)
+                {
+                    simplifier.Simplify((int) (numTriangles * LOD_RATIOS[i]));
+                    lods[i] = simplifier.BuildMesh();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.println(String.format("%-14s %8d %7d %22s %22s %10.4f %6d ms %12.0f", model, numTriangles,
+                    mesh.GetNumVerts(),
+                    lods[0].GetNumElements() / 3 + "/" + lods[1].GetNumElements() / 3 + "/" + lods[2].GetNumElements() / 3,
+                    lods[0].GetNumVerts() + "/" + lods[1].GetNumVerts() + "/" + lods[2].GetNumVerts(),
+                    simplifier.GetMaxError(), best / 1000000, numTriangles / (best / 1e9)));
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that merging static geometry gives the same world space triangles, with the same
+ * materials, as drawing every object on its own, and that the merged mesh is only rebuilt when
+ * the static nodes change. Runs on the development machine (host).
+ */
+public class StaticBatcherTest
+{
+    private static final ObjMaterial RED = new ObjMaterial();
+    private static final ObjMaterial BLUE = new ObjMaterial();
+
+    // counts how often it is drawn on its own, and how often its mesh is fetched
+    private static class TestGeometry implements Renderable, StaticGeometry
+    {
+        final MeshData mMesh;
+        boolean mReady = true;
+        int mNumDraws;
+        int mNumFetches;
+
+        TestGeometry(MeshData mesh)
+        {
+            mMesh = mesh;
+        }
+
+        @Override
+        public void Draw(MyGLRenderer renderer, float[] modelMatrix)
+        {
+            mNumDraws++;
+        }
+
+        @Override
+        public Bounds GetBounds()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean HasStaticMesh()
+        {
+            return mReady;
+        }
+
+        @Override
+        public MeshData GetStaticMesh()
+        {
+            mNumFetches++;
+            return mMesh;
+        }
+    }
+
+    // a quad with a different material on each triangle
+    private static MeshData BuildQuad()
+    {
+        return MeshTestUtil.Build(MeshTestUtil.TWO_MATERIAL_QUAD_OBJ, new ObjMaterial[] {RED, BLUE});
+    }
+
+    private static float[] Matrix(float x, float y, float z, float yAngle, float scale)
+    {
+        Transform transform = new Transform();
+        transform.SetPosition(x, y, z);
+        transform.SetRotation(0, yAngle);
+        transform.SetScale(scale);
+        return transform.GetMatrix().clone();
+    }
+
+    // one entry per triangle corner: material, world position and normal
+    private static String Corner(ObjMaterial material, float[] position, float[] normal)
+    {
+        return String.format(Locale.US, "%d %.4f %.4f %.4f %.4f %.4f %.4f", System.identityHashCode(material),
+                position[0], position[1], position[2], normal[0], normal[1], normal[2]);
+    }
+
+    // what drawing the mesh on its own with matrix puts on screen
+    private static void AddIndividualCorners(List<String> corners, MeshData mesh, float[] matrix)
+    {
+        float[] position = new float[4];
+        float[] normal = new float[4];
+        float[] world = new float[4];
+        float[] worldNormal = new float[4];
+        float[] positions = mesh.GetPositions().GetData();
+        float[] normals = mesh.GetNormals().GetData();
+        for (MeshRange range : mesh.GetRanges())
+        {
+            for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e++)
+            {
+                int v = mesh.IsIndexed() ? mesh.GetIndices().Get(e) : e;
+                position[0] = positions[v * 3];
+                position[1] = positions[v * 3 + 1];
+                position[2] = positions[v * 3 + 2];
+                position[3] = 1;
+                normal[0] = normals[v * 3];
+                normal[1] = normals[v * 3 + 1];
+                normal[2] = normals[v * 3 + 2];
+                normal[3] = 0;
+                MatrixMath.MultiplyMV(world, matrix, position);
+                MatrixMath.MultiplyMV(worldNormal, matrix, normal);
+                float length = (float) Math.sqrt(worldNormal[0] * worldNormal[0] + worldNormal[1] * worldNormal[1]
+                        + worldNormal[2] * worldNormal[2]);
+                for (int i = 0; i < 3; i++)
+                    worldNormal[i] /= length;
+                corners.add(Corner(mesh.GetMaterial(range), world, worldNormal));
+            }
+        }
+    }
+
+    private static List<String> MergedCorners(MeshData merged)
+    {
+        List<String> corners = new ArrayList<>();
+        float[] positions = merged.GetPositions().GetData();
+        float[] normals = merged.GetNormals().GetData();
+        for (MeshRange range : merged.GetRanges())
+        {
+            for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e++)
+            {
+                int v = merged.GetIndices().Get(e);
+                corners.add(Corner(merged.GetMaterial(range), Arrays.copyOfRange(positions, v * 3, v * 3 + 3),
+                        Arrays.copyOfRange(normals, v * 3, v * 3 + 3)));
+            }
+        }
+        return corners;
+    }
+
+    @Test
+    public void merge_matchesIndividualDraws() throws Exception
+    {
+        List<MeshData> meshes = Arrays.asList(BuildQuad(), new Cube().GetStaticMesh(), BuildQuad(),
+                new Cube().GetStaticMesh());
+        List<float[]> matrices = Arrays.asList(Matrix(1, 2, 3, 30, 1), Matrix(-4, 0, 2, 90, 0.5f),
+                Matrix(0, 0, -5, -45, 2), Matrix(10, 10, 10, 0, 1));
+
+        List<String> individual = new ArrayList<>();
+        for (int i = 0; i < meshes.size(); i++)
+            AddIndividualCorners(individual, meshes.get(i), matrices.get(i));
+        List<String> merged = MergedCorners(StaticBatcher.Merge(meshes, matrices));
+
+        // the same corners, with the same materials
+        assertEquals(individual.size(), merged.size());
+        Collections.sort(individual);
+        Collections.sort(merged);
+        assertEquals(individual, merged);
+    }
+
+    @Test
+    public void merge_groupsTrianglesByMaterial() throws Exception
+    {
+        MeshData cube = new Cube().GetStaticMesh();
+        List<MeshData> meshes = Arrays.asList(BuildQuad(), cube, BuildQuad(), cube);
+        float[] identity = Matrix(0, 0, 0, 0, 1);
+        MeshData merged = StaticBatcher.Merge(meshes, Arrays.asList(identity, identity, identity, identity));
+
+        // red, blue, cube color: 3 draws instead of 2 + 1 + 2 + 1
+        assertEquals(3, merged.GetRanges().size());
+        assertSame(RED, merged.GetMaterial(merged.GetRanges().get(0)));
+        assertSame(BLUE, merged.GetMaterial(merged.GetRanges().get(1)));
+        assertEquals(6, merged.GetRanges().get(0).GetNumElements());
+        assertEquals(72, merged.GetRanges().get(2).GetNumElements());
+        assertEquals(4 + 36 + 4 + 36, merged.GetNumVerts());
+    }
+
+    @Test
+    public void update_rebuildsOnlyWhenStaticNodesChange() throws Exception
+    {
+        TestGeometry geometry = new TestGeometry(BuildQuad());
+        SceneNode root = new SceneNode();
+        SceneNode moving = new SceneNode(geometry);
+        root.AddChild(moving);
+        List<SceneNode> props = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            SceneNode prop = new SceneNode(geometry);
+            prop.SetPosition(i * 2, 0, 0);
+            prop.SetStatic(true);
+            root.AddChild(prop);
+            props.add(prop);
+        }
+        root.UpdateWorldMatrices();
+
+        StaticBatcher batcher = new StaticBatcher();
+        RecordingGLApi gl = new RecordingGLApi();
+        assertTrue(batcher.Update(gl, root));
+        assertEquals(3, batcher.GetNumMergedNodes());
+        assertEquals(2, batcher.GetNumDrawCalls());
+        assertEquals(1, geometry.mNumFetches);      // shared mesh fetched once
+
+        // merged nodes are drawn by the batcher only
+        root.Draw(null, null);
+        assertEquals(1, geometry.mNumDraws);
+
+        // nothing changed, or only a dynamic node moved
+        assertFalse(batcher.Update(gl, root));
+        moving.SetPosition(5, 0, 0);
+        root.UpdateWorldMatrices();
+        assertFalse(batcher.Update(gl, root));
+        assertEquals(1, batcher.GetNumBuilds());
+
+        // a static node moved
+        props.get(0).SetPosition(0, 1, 0);
+        root.UpdateWorldMatrices();
+        assertTrue(batcher.Update(gl, root));
+
+        // a static node is no longer static: drawn on its own again
+        props.get(1).SetStatic(false);
+        root.UpdateWorldMatrices();
+        assertTrue(batcher.Update(gl, root));
+        assertEquals(2, batcher.GetNumMergedNodes());
+        assertFalse(props.get(1).IsMerged());
+        geometry.mNumDraws = 0;
+        root.Draw(null, null);
+        assertEquals(2, geometry.mNumDraws);
+
+        // a static node removed
+        root.RemoveChild(props.get(2));
+        assertTrue(batcher.Update(gl, root));
+        assertEquals(1, batcher.GetNumMergedNodes());
+        assertEquals(4, batcher.GetNumBuilds());
+    }
+
+    @Test
+    public void update_mergesMeshOnceLoaded() throws Exception
+    {
+        TestGeometry geometry = new TestGeometry(BuildQuad());
+        geometry.mReady = false;
+        SceneNode root = new SceneNode();
+        SceneNode prop = new SceneNode(geometry);
+        prop.SetStatic(true);
+        root.AddChild(prop);
+        root.UpdateWorldMatrices();
+
+        StaticBatcher batcher = new StaticBatcher();
+        RecordingGLApi gl = new RecordingGLApi();
+        assertTrue(batcher.Update(gl, root));
+        assertEquals(0, batcher.GetNumMergedNodes());
+        assertFalse(prop.IsMerged());
+        assertFalse(batcher.Update(gl, root));
+
+        geometry.mReady = true;
+        assertTrue(batcher.Update(gl, root));
+        assertEquals(1, batcher.GetNumMergedNodes());
+        assertTrue(prop.IsMerged());
+        assertFalse(batcher.Update(gl, root));
+    }
+
+    @Test
+    public void update_splitsBigMeshWithoutIntIndices() throws Exception
+    {
+        // 257 x 257 grid, more vertices than short indices can reach
+        int size = 256;
+        FloatArray positions = new FloatArray();
+        FloatArray normals = new FloatArray();
+        for (int y = 0; y <= size; y++)
+        {
+            for (int x = 0; x <= size; x++)
+            {
+                positions.Add(x, y, 0);
+                normals.Add(0, 0, 1);
+            }
+        }
+        FloatArray uvs = new FloatArray();
+        uvs.Resize(positions.Size() / 3 * 2);
+        IntArray indices = new IntArray();
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int v = y * (size + 1) + x;
+                indices.Add(v, v + 1, v + size + 2);
+                indices.Add(v, v + size + 2, v + size + 1);
+            }
+        }
+        MeshData grid = new MeshData(positions, normals, uvs, indices, false,
+                Collections.singletonList(new MeshRange(ObjParser.NO_MATERIAL, 0, indices.Size())), null);
+        assertTrue(grid.NeedsIntIndices());
+
+        SceneNode root = new SceneNode();
+        SceneNode prop = new SceneNode(new TestGeometry(grid));
+        prop.SetStatic(true);
+        root.AddChild(prop);
+        root.UpdateWorldMatrices();
+
+        RecordingGLApi gl = new RecordingGLApi();
+        StaticBatcher batcher = new StaticBatcher();
+        batcher.Update(gl, root);
+        assertEquals(1, batcher.GetNumDrawCalls());
+
+        gl.SetExtensions("GL_OES_depth24 GL_OES_rgb8_rgba8");
+        prop.SetPosition(1, 0, 0);
+        root.UpdateWorldMatrices();
+        batcher.Update(gl, root);
+        assertEquals(2, batcher.GetNumDrawCalls());
+    }
+}
@@ -0,0 +1,136 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the LRU eviction of the texture cache under its budget, the protection of the textures
+ * used in the current frame, and the counters. Runs on the development machine (host).
+ */
+public class TextureCacheTest
+{
+    private static class EvictionLog implements TextureCache.Listener
+    {
+        final List<String> mEvicted = new ArrayList<>();
+
+        @Override
+        public void OnEvicted(String path, int texture)
+        {
+            mEvicted.add(path + ":" + texture);
+        }
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() throws Exception
+    {
+        TextureCache cache = new TextureCache(1000, new EvictionLog());
+
+        assertEquals(TextureCache.NOT_CACHED, cache.Get("a.png"));
+        cache.Put("a.png", 7, 100);
+        assertEquals(7, cache.Get("a.png"));
+        assertEquals(7, cache.Get("a.png"));
+
+        assertEquals(2, cache.GetNumHits());
+        assertEquals(1, cache.GetNumMisses());
+        assertEquals(100, cache.GetUsedBytes());
+        assertEquals(1, cache.Size());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() throws Exception
+    {
+        EvictionLog log = new EvictionLog();
+        TextureCache cache = new TextureCache(300, log);
+        cache.Put("a", 1, 100);
+        cache.Put("b", 2, 100);
+        cache.Put("c", 3, 100);
+
+        // a is used again, b is now the oldest
+        cache.BeginFrame();
+        cache.Get("a");
+        cache.Put("d", 4, 100);
+
+        assertEquals(1, log.mEvicted.size());
+        assertEquals("b:2", log.mEvicted.get(0));
+        assertEquals(TextureCache.NOT_CACHED, cache.Get("b"));
+        assertEquals(300, cache.GetUsedBytes());
+        assertEquals(1, cache.GetNumEvictions());
+    }
+
+    @Test
+    public void put_evictsUntilTheNewTextureFits() throws Exception
+    {
+        EvictionLog log = new EvictionLog();
+        TextureCache cache = new TextureCache(300, log);
+        cache.Put("a", 1, 100);
+        cache.Put("b", 2, 100);
+        cache.Put("c", 3, 100);
+
+        cache.BeginFrame();
+        cache.Put("big", 4, 250);
+
+        assertEquals("[a:1, b:2, c:3]", log.mEvicted.toString());
+        assertEquals(250, cache.GetUsedBytes());
+        assertEquals(1, cache.Size());
+    }
+
+    @Test
+    public void put_keepsTexturesUsedThisFrameOverBudget() throws Exception
+    {
+        EvictionLog log = new EvictionLog();
+        TextureCache cache = new TextureCache(200, log);
+        cache.Put("a", 1, 100);
+        cache.Put("b", 2, 100);
+
+        // all three drawn in the same frame: nothing can go
+        cache.BeginFrame();
+        cache.Get("a");
+        cache.Get("b");
+        cache.Put("c", 3, 100);
+
+        assertTrue(log.mEvicted.isEmpty());
+        assertEquals(300, cache.GetUsedBytes());
+
+        // next frame only c is drawn, the oldest of the others goes
+        cache.BeginFrame();
+        cache.Get("c");
+        cache.SetBudgetBytes(200);
+
+        assertEquals("[a:1]", log.mEvicted.toString());
+        assertEquals(200, cache.GetUsedBytes());
+    }
+
+    @Test
+    public void put_replacingDeletesTheOldTexture() throws Exception
+    {
+        EvictionLog log = new EvictionLog();
+        TextureCache cache = new TextureCache(1000, log);
+        cache.Put("a", 1, 100);
+        cache.Put("a", 2, 50);
+
+        assertEquals("[a:1]", log.mEvicted.toString());
+        assertEquals(50, cache.GetUsedBytes());
+        assertEquals(0, cache.GetNumEvictions());       // not for lack of memory
+        assertEquals(2, cache.Get("a"));
+    }
+
+    @Test
+    public void setBudget_shrinkingEvicts() throws Exception
+    {
+        EvictionLog log = new EvictionLog();
+        TextureCache cache = new TextureCache(1000, log);
+        for (int i = 0; i < 5; i++)
+            cache.Put("t" + i, i + 1, 100);
+        cache.BeginFrame();
+
+        cache.SetBudgetBytes(250);
+
+        assertEquals("[t0:1, t1:2, t2:3]", log.mEvicted.toString());
+        assertEquals(2, cache.Size());
+        assertEquals(3, cache.GetNumEvictions());
+    }
+}
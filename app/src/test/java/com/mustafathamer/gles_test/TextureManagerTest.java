@@ -0,0 +1,216 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that material textures are decoded once, shared by path, uploaded with all their mip
+ * levels when delivered, and deleted when evicted, and that ETC1 files are used when the GPU
+ * supports them. The worker runs the jobs right away, the decoder makes images of the size in
+ * their name. Runs on the development machine (host).
+ */
+public class TextureManagerTest
+{
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    // "WxH.png" decodes to a W x H image, anything else fails. Files are only the ones added.
+    private static class SizeDecoder implements TextureManager.Decoder
+    {
+        final List<String> mDecoded = new ArrayList<>();
+        final Map<String, ByteBuffer> mFiles = new HashMap<>();
+
+        @Override
+        public ByteBuffer Read(String path) throws Exception
+        {
+            return mFiles.get(path);
+        }
+
+        @Override
+        public int[] Decode(String path, int[] size) throws Exception
+        {
+            mDecoded.add(path);
+            String[] wh = path.replace(".png", "").split("x");
+            size[0] = Integer.parseInt(wh[0]);
+            size[1] = Integer.parseInt(wh[1]);
+            return new int[size[0] * size[1]];
+        }
+    }
+
+    @Test
+    public void getTexture_loadsOnceAndShares() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ModelLoader loader = new ModelLoader(DIRECT);
+        SizeDecoder decoder = new SizeDecoder();
+        TextureManager textures = new TextureManager(gl, loader, decoder, 1 << 20);
+
+        // loading, not drawable yet
+        assertEquals(TextureManager.NO_TEXTURE, textures.GetTexture("4x4.png"));
+        assertEquals(TextureManager.NO_TEXTURE, textures.GetTexture("4x4.png"));
+        assertEquals(1, textures.GetNumPending());
+        assertEquals(0, gl.CountCalls("glGenTextures"));
+
+        loader.DeliverFinished(gl);
+        int texture = textures.GetTexture("4x4.png");
+
+        assertNotEquals(TextureManager.NO_TEXTURE, texture);
+        assertEquals(texture, textures.GetTexture("4x4.png"));
+        assertEquals(1, decoder.mDecoded.size());
+        assertEquals(1, gl.CountCalls("glGenTextures"));
+        assertEquals(0, textures.GetNumPending());
+    }
+
+    @Test
+    public void upload_allLevelsOfThePowerOfTwoSize() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ModelLoader loader = new ModelLoader(DIRECT);
+        TextureManager textures = new TextureManager(gl, loader, new SizeDecoder(), 1 << 20);
+
+        textures.GetTexture("5x6.png");
+        loader.DeliverFinished(gl);
+
+        // 4x4, 2x2, 1x1
+        assertEquals(3, gl.CountCalls("glTexImage2D"));
+        assertTrue(gl.GetCalls().contains("glTexImage2D(0,4,4)"));
+        assertTrue(gl.GetCalls().contains("glTexImage2D(2,1,1)"));
+        assertEquals(MipMapGenerator.ByteSize(4, 4), gl.GetBytesUploaded());
+        assertEquals(MipMapGenerator.ByteSize(4, 4), textures.GetCache().GetUsedBytes());
+    }
+
+    // the KTX file TextureCompiler would write for a gray width x height image
+    private static ByteBuffer Etc1Ktx(int width, int height) throws Exception
+    {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFF808080);
+        int[][] levels = MipMapGenerator.Generate(pixels, width, height);
+        ByteBuffer[] encoded = new ByteBuffer[levels.length];
+        for (int level = 0; level < levels.length; level++)
+            encoded[level] = ByteBuffer.wrap(Etc1.Encode(levels[level], Math.max(1, width >> level), Math.max(1, height >> level)));
+
+        File file = File.createTempFile("texture", ".ktx");
+        try
+        {
+            new KtxFile(Etc1.GL_ETC1_RGB8_OES, 0x1907, width, height, encoded).Write(file);
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void etc1_uploadsTheCompressedLevels() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        gl.SetExtensions("GL_OES_element_index_uint " + Etc1.EXTENSION);
+        ModelLoader loader = new ModelLoader(DIRECT);
+        SizeDecoder decoder = new SizeDecoder();
+        decoder.mFiles.put("8x8.ktx", Etc1Ktx(8, 8));
+        TextureManager textures = new TextureManager(gl, loader, decoder, 1 << 20);
+
+        textures.GetTexture("8x8.png");
+        loader.DeliverFinished(gl);
+
+        // 8x8, 4x4, 2x2, 1x1: a block each but the first
+        assertTrue(decoder.mDecoded.isEmpty());
+        assertEquals(0, gl.CountCalls("glTexImage2D"));
+        assertEquals(4, gl.CountCalls("glCompressedTexImage2D"));
+        assertTrue(gl.GetCalls().contains("glCompressedTexImage2D(3," + Etc1.GL_ETC1_RGB8_OES + ",1,1)"));
+        assertEquals((4 + 1 + 1 + 1) * 8, gl.GetBytesUploaded());
+        assertEquals((4 + 1 + 1 + 1) * 8, textures.GetCache().GetUsedBytes());
+        assertEquals(1, textures.GetNumCompressed());
+    }
+
+    @Test
+    public void etc1_fallsBackToTheImage() throws Exception
+    {
+        // no ETC1 support: the file is ignored
+        RecordingGLApi gl = new RecordingGLApi();
+        ModelLoader loader = new ModelLoader(DIRECT);
+        SizeDecoder decoder = new SizeDecoder();
+        decoder.mFiles.put("8x8.ktx", Etc1Ktx(8, 8));
+        TextureManager textures = new TextureManager(gl, loader, decoder, 1 << 20);
+        textures.GetTexture("8x8.png");
+        loader.DeliverFinished(gl);
+
+        assertFalse(textures.UsesEtc1());
+        assertEquals(0, gl.CountCalls("glCompressedTexImage2D"));
+        assertEquals(4, gl.CountCalls("glTexImage2D"));
+
+        // ETC1 support, but no file for this image
+        gl = new RecordingGLApi();
+        gl.SetExtensions(Etc1.EXTENSION);
+        textures = new TextureManager(gl, loader, decoder, 1 << 20);
+        textures.GetTexture("4x4.png");
+        loader.DeliverFinished(gl);
+
+        assertTrue(textures.UsesEtc1());
+        assertEquals(0, gl.CountCalls("glCompressedTexImage2D"));
+        assertEquals(3, gl.CountCalls("glTexImage2D"));
+        assertEquals(0, textures.GetNumCompressed());
+    }
+
+    @Test
+    public void failedLoad_isNotRetried() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ModelLoader loader = new ModelLoader(DIRECT);
+        SizeDecoder decoder = new SizeDecoder();
+        TextureManager textures = new TextureManager(gl, loader, decoder, 1 << 20);
+
+        textures.GetTexture("missing.png");
+        loader.DeliverFinished(gl);
+
+        assertEquals(TextureManager.NO_TEXTURE, textures.GetTexture("missing.png"));
+        assertEquals(1, decoder.mDecoded.size());
+        assertEquals(1, textures.GetNumFailed());
+        assertEquals(0, gl.CountCalls("glGenTextures"));
+    }
+
+    @Test
+    public void overBudget_deletesLeastRecentlyUsed() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        ModelLoader loader = new ModelLoader(DIRECT);
+        // room for the first two
+        TextureManager textures = new TextureManager(gl, loader, new SizeDecoder(),
+                MipMapGenerator.ByteSize(8, 8) + MipMapGenerator.ByteSize(8, 4));
+
+        textures.GetTexture("8x8.png");
+        loader.DeliverFinished(gl);
+        textures.BeginFrame();
+        int first = textures.GetTexture("8x8.png");
+        textures.GetTexture("8x4.png");
+        loader.DeliverFinished(gl);
+        assertEquals(0, gl.CountCalls("glDeleteTextures"));
+
+        // a frame later, the first one isn't drawn anymore
+        textures.BeginFrame();
+        textures.GetTexture("4x8.png");
+        loader.DeliverFinished(gl);
+
+        assertTrue(gl.GetCalls().contains("glDeleteTextures(1," + first + ")"));
+        assertEquals(1, textures.GetCache().GetNumEvictions());
+        assertEquals(TextureManager.NO_TEXTURE, textures.GetTexture("8x8.png"));   // loads again
+        assertEquals(1, textures.GetNumPending());
+    }
+}
@@ -0,0 +1,177 @@
+package com.mustafathamer.gles_test;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the interleaved vertex layout and the VBO upload / draw path against a recording fake GL,
+ * runs on the development machine (host).
+ */
+public class VertexBufferMeshTest
+{
+    private static final int[] ATTRIB_LOCATIONS = {0, 3, -1};
+
+    private static MeshData BuildQuad()
+    {
+        ObjMaterial red = new ObjMaterial();
+        red.setKd(new float[]{1, 0, 0});
+        red.setKa(new float[]{0.1f, 0, 0});
+        return MeshTestUtil.Build(MeshTestUtil.QUAD_OBJ, new ObjMaterial[]{red});
+    }
+
+    private static VertexBufferMesh CreateVBOMesh(MeshData mesh)
+    {
+        VertexLayout layout = VertexLayout.ForMesh(mesh);
+        return new VertexBufferMesh(layout, layout.Interleave(mesh), mesh.GetIndices().ToDirectShortBuffer(),
+                GLES20.GL_UNSIGNED_SHORT, mesh.GetNumElements());
+    }
+
+    @Test
+    public void layout_packsAttributesBackToBack() throws Exception
+    {
+        VertexLayout layout = VertexLayout.ForMesh(BuildQuad());
+
+        assertEquals((3 + 3 + 2) * 4, layout.GetStride());
+        assertEquals(0, layout.GetOffset(VertexLayout.ATTRIB_POSITION));
+        assertEquals(12, layout.GetOffset(VertexLayout.ATTRIB_NORMAL));
+        assertEquals(24, layout.GetOffset(VertexLayout.ATTRIB_UV));
+    }
+
+    @Test
+    public void layout_skipsMissingAttributes() throws Exception
+    {
+        VertexLayout layout = VertexLayout.ForMesh(MeshTestUtil.Build("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n", null));
+
+        assertEquals(24, layout.GetStride());
+        assertFalse(layout.Has(VertexLayout.ATTRIB_UV));
+    }
+
+    @Test
+    public void interleave_copiesEveryAttributeToItsOffset() throws Exception
+    {
+        MeshData mesh = BuildQuad();
+        VertexLayout layout = VertexLayout.ForMesh(mesh);
+        ByteBuffer packed = layout.Interleave(mesh);
+
+        assertEquals(mesh.GetNumVerts() * layout.GetStride(), packed.capacity());
+        FloatBuffer floats = packed.asFloatBuffer();
+        int floatsPerVertex = layout.GetStride() / 4;
+        for (int v = 0; v < mesh.GetNumVerts(); v++)
+        {
+            int base = v * floatsPerVertex;
+            assertEquals(mesh.GetPositions().Get(v * 3), floats.get(base), 0.0f);
+            assertEquals(mesh.GetNormals().Get(v * 3 + 2), floats.get(base + 5), 0.0f);
+            assertEquals(mesh.GetUVs().Get(v * 2 + 1), floats.get(base + 7), 0.0f);
+        }
+    }
+
+    @Test
+    public void draw_uploadsOnceThenCopiesNothingPerFrame() throws Exception
+    {
+        MeshData mesh = BuildQuad();
+        VertexBufferMesh vboMesh = CreateVBOMesh(mesh);
+        RecordingGLApi gl = new RecordingGLApi();
+
+        gl.BeginFrame();
+        vboMesh.Draw(gl, ATTRIB_LOCATIONS);
+        long expectedUpload = mesh.GetNumVerts() * vboMesh.GetLayout().GetStride() + mesh.GetNumElements() * 2;
+        assertEquals(expectedUpload, gl.GetBytesUploaded());
+        assertEquals(2, gl.CountCalls("glBufferData"));
+
+        for (int frame = 0; frame < 3; frame++)
+        {
+            gl.BeginFrame();
+            vboMesh.Draw(gl, ATTRIB_LOCATIONS);
+
+            assertEquals(0, gl.GetBytesUploaded());
+            assertEquals(0, gl.CountCalls("glBufferData"));
+            assertEquals(1, gl.GetDrawCalls());
+            assertEquals(2, gl.CountCalls("glVertexAttribPointer"));   // UV has no location
+            assertTrue(gl.GetCalls().contains("glDrawElements(" + GLES20.GL_TRIANGLES + ",6," + GLES20.GL_UNSIGNED_SHORT + ",0)"));
+            assertEquals(0, gl.GetBoundArrayBuffer());
+        }
+    }
+
+    @Test
+    public void draw_pointsQuantizedAttributesAtTheirTypes() throws Exception
+    {
+        MeshData mesh = BuildQuad();
+        VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+        VertexBufferMesh vboMesh = new VertexBufferMesh(layout, layout.Interleave(mesh),
+                mesh.GetIndices().ToDirectShortBuffer(), GLES20.GL_UNSIGNED_SHORT, mesh.GetNumElements());
+        RecordingGLApi gl = new RecordingGLApi();
+
+        gl.BeginFrame();
+        vboMesh.Draw(gl, ATTRIB_LOCATIONS);
+        assertEquals(mesh.GetNumVerts() * 16 + mesh.GetNumElements() * 2, gl.GetBytesUploaded());
+        assertTrue(gl.GetCalls().contains("glVertexAttribPointer(0,3," + GLES20.GL_SHORT + ",16,0)"));
+        assertTrue(gl.GetCalls().contains("glVertexAttribPointer(3,3," + GLES20.GL_BYTE + ",16,8)"));
+    }
+
+    @Test
+    public void drawRange_offsetsIntoTheIndexBuffer() throws Exception
+    {
+        VertexBufferMesh vboMesh = CreateVBOMesh(BuildQuad());
+        RecordingGLApi gl = new RecordingGLApi();
+        vboMesh.Upload(gl);
+
+        gl.BeginFrame();
+        vboMesh.Bind(gl, ATTRIB_LOCATIONS);
+        vboMesh.DrawRange(gl, 3, 3);
+        vboMesh.Unbind(gl, ATTRIB_LOCATIONS);
+
+        assertEquals(1, gl.GetDrawCalls());
+        assertTrue(gl.GetCalls().contains("glDrawElements(" + GLES20.GL_TRIANGLES + ",3," + GLES20.GL_UNSIGNED_SHORT + ",6)"));
+    }
+
+    @Test
+    public void draw_clientSideBuffersCopyEveryFrame() throws Exception
+    {
+        // the pre VBO path, for comparison: every draw sends the whole mesh again
+        MeshData mesh = BuildQuad();
+        RecordingGLApi gl = new RecordingGLApi();
+
+        for (int frame = 0; frame < 2; frame++)
+        {
+            gl.BeginFrame();
+            gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 0, mesh.GetPositions().ToDirectBuffer());
+            gl.glEnableVertexAttribArray(0);
+            gl.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, mesh.GetIndices().ToDirectShortBuffer());
+            gl.glDisableVertexAttribArray(0);
+
+            assertEquals(mesh.GetNumVerts() * 12 + 6 * 2, gl.GetBytesUploaded());
+        }
+    }
+
+    @Test
+    public void release_deletesBuffers() throws Exception
+    {
+        VertexBufferMesh vboMesh = CreateVBOMesh(BuildQuad());
+        RecordingGLApi gl = new RecordingGLApi();
+
+        vboMesh.Upload(gl);
+        assertTrue(vboMesh.IsUploaded());
+        vboMesh.Release(gl);
+        assertFalse(vboMesh.IsUploaded());
+        assertEquals(1, gl.CountCalls("glDeleteBuffers"));
+    }
+
+    @Test
+    public void supportsIntIndices_looksForTheWholeExtensionName() throws Exception
+    {
+        RecordingGLApi gl = new RecordingGLApi();
+        assertTrue(VertexBufferMesh.SupportsIntIndices(gl));
+        gl.SetExtensions("GL_OES_depth24 GL_OES_element_index_uint GL_OES_rgb8_rgba8");
+        assertTrue(VertexBufferMesh.SupportsIntIndices(gl));
+        gl.SetExtensions("GL_OES_depth24 GL_OES_element_index_uint_x");
+        assertFalse(VertexBufferMesh.SupportsIntIndices(gl));
+        gl.SetExtensions("");
+        assertFalse(VertexBufferMesh.SupportsIntIndices(gl));
+    }
+}
@@ -0,0 +1,165 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that VertexCacheOptimizer only reorders (same triangles, same winding, same ranges), that
+ * it lowers the simulated cache miss ratio, and that vertices end up in first use order. Runs on
+ * the development machine (host).
+ */
+public class VertexCacheOptimizerTest
+{
+    // size x size grid of quads, triangles shuffled, split in two ranges (left and right half)
+    private static MeshData BuildShuffledGrid(int size, long seed)
+    {
+        FloatArray positions = new FloatArray();
+        FloatArray normals = new FloatArray();
+        FloatArray uvs = new FloatArray();
+        for (int y = 0; y <= size; y++)
+        {
+            for (int x = 0; x <= size; x++)
+            {
+                positions.Add(x, y, 0);
+                normals.Add(0, 0, 1);
+                uvs.Add(x / (float) size);
+                uvs.Add(y / (float) size);
+            }
+        }
+
+        IntArray indices = new IntArray();
+        List<MeshRange> ranges = new ArrayList<>();
+        Random random = new Random(seed);
+        for (int half = 0; half < 2; half++)
+        {
+            List<int[]> triangles = new ArrayList<>();
+            for (int y = 0; y < size; y++)
+            {
+                for (int x = half * size / 2; x < (half + 1) * size / 2; x++)
+                {
+                    int v = y * (size + 1) + x;
+                    triangles.add(new int[] {v, v + 1, v + size + 2});
+                    triangles.add(new int[] {v, v + size + 2, v + size + 1});
+                }
+            }
+            Collections.shuffle(triangles, random);
+            int first = indices.Size();
+            for (int[] triangle : triangles)
+                indices.Add(triangle[0], triangle[1], triangle[2]);
+            ranges.add(new MeshRange(half, first, indices.Size() - first));
+        }
+        return new MeshData(positions, normals, uvs, indices, true, ranges,
+                new ObjMaterial[] {new ObjMaterial(), new ObjMaterial()});
+    }
+
+    // triangles of range as sorted "x,y x,y x,y" strings, rotated so winding is kept
+    private static List<String> Triangles(MeshData mesh, MeshRange range)
+    {
+        float[] p = mesh.GetPositions().GetData();
+        List<String> triangles = new ArrayList<>();
+        for (int e = range.GetFirstElement(); e < range.GetFirstElement() + range.GetNumElements(); e += 3)
+        {
+            String[] corners = new String[3];
+            for (int c = 0; c < 3; c++)
+            {
+                int v = mesh.GetIndices().Get(e + c);
+                corners[c] = (int) p[v * 3] + "," + (int) p[v * 3 + 1];
+            }
+            // start at the smallest corner, the same triangle in another rotation gives the same string
+            int start = 0;
+            for (int c = 1; c < 3; c++)
+            {
+                if (corners[c].compareTo(corners[start]) < 0)
+                    start = c;
+            }
+            triangles.add(corners[start] + " " + corners[(start + 1) % 3] + " " + corners[(start + 2) % 3]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    @Test
+    public void optimize_keepsTrianglesWindingAndRanges() throws Exception
+    {
+        MeshData mesh = BuildShuffledGrid(16, 1);
+        MeshData optimized = VertexCacheOptimizer.Optimize(mesh);
+
+        assertEquals(mesh.GetNumVerts(), optimized.GetNumVerts());
+        assertEquals(mesh.GetNumElements(), optimized.GetNumElements());
+        assertEquals(mesh.GetRanges(), optimized.GetRanges());
+        for (MeshRange range : mesh.GetRanges())
+            assertEquals(Triangles(mesh, range), Triangles(optimized, range));
+
+        // the attributes moved with their vertex
+        float[] p = optimized.GetPositions().GetData();
+        float[] uv = optimized.GetUVs().GetData();
+        for (int v = 0; v < optimized.GetNumVerts(); v++)
+        {
+            assertEquals(p[v * 3] / 16, uv[v * 2], 1e-6f);
+            assertEquals(p[v * 3 + 1] / 16, uv[v * 2 + 1], 1e-6f);
+        }
+    }
+
+    @Test
+    public void optimize_lowersCacheMissRatio() throws Exception
+    {
+        MeshData mesh = BuildShuffledGrid(32, 2);
+        float before = VertexCacheOptimizer.ComputeAcmr(mesh, 16);
+        float after = VertexCacheOptimizer.ComputeAcmr(VertexCacheOptimizer.Optimize(mesh), 16);
+
+        // shuffled, almost every corner misses
+        assertTrue("before " + before, before > 2.5f);
+        // a grid can't go under 0.5, a good order comes close
+        assertTrue("after " + after, after < 0.8f);
+    }
+
+    @Test
+    public void optimize_numbersVerticesInFirstUseOrder() throws Exception
+    {
+        MeshData optimized = VertexCacheOptimizer.Optimize(BuildShuffledGrid(8, 3));
+        int next = 0;
+        for (int e = 0; e < optimized.GetNumElements(); e++)
+        {
+            int v = optimized.GetIndices().Get(e);
+            assertTrue(v <= next);
+            if (v == next)
+                next++;
+        }
+        assertEquals(optimized.GetNumVerts(), next);
+    }
+
+    @Test
+    public void optimize_leavesUnindexedMeshAlone() throws Exception
+    {
+        MeshData mesh = new MeshData(new FloatArray(), new FloatArray(), new FloatArray(), null, false,
+                new ArrayList<MeshRange>(), new ObjMaterial[0]);
+        assertSame(mesh, VertexCacheOptimizer.Optimize(mesh));
+    }
+
+    @Test
+    public void computeAcmr_simulatesFifo() throws Exception
+    {
+        // a strip of 4 triangles: 6 vertices, each transformed once with a big enough cache
+        int[] strip = {0, 1, 2, 2, 1, 3, 2, 3, 4, 4, 3, 5};
+        assertEquals(6 / 4.0f, VertexCacheOptimizer.ComputeAcmr(strip, 0, strip.length, 6, 16), 1e-6f);
+
+        // with 3 entries, 0 1 2 | 3 evicts 0 | 4 evicts 1 | 5 evicts 2: still no repeat miss
+        assertEquals(6 / 4.0f, VertexCacheOptimizer.ComputeAcmr(strip, 0, strip.length, 6, 3), 1e-6f);
+
+        // a FIFO doesn't move hits to the front: 3 evicts 0 although it was just used, then 0
+        // evicts 1 and 1 misses too
+        int[] fan = {0, 1, 2, 0, 2, 3, 0, 3, 1};
+        assertEquals(6 / 3.0f, VertexCacheOptimizer.ComputeAcmr(fan, 0, fan.length, 4, 3), 1e-6f);
+        assertEquals(4 / 3.0f, VertexCacheOptimizer.ComputeAcmr(fan, 0, fan.length, 4, 4), 1e-6f);
+
+        // only the given range counts
+        assertEquals(3, VertexCacheOptimizer.ComputeAcmr(strip, 3, 3, 6, 16), 1e-6f);
+        assertEquals(0, VertexCacheOptimizer.ComputeAcmr(strip, 0, 0, 6, 16), 0);
+    }
+}
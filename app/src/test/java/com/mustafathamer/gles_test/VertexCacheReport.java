@@ -0,0 +1,52 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reports what VertexCacheOptimizer does to every bundled model: the average cache miss ratio
+ * (vertices transformed per triangle) of a FIFO post-transform cache of 16 and 32 vertices, in the
+ * OBJ file order and after the optimization, and how long the optimization takes. The best a
+ * regular grid can do is 0.5, every vertex transformed once; 3 is no reuse at all.
+ */
+
+public class VertexCacheReport
+{
+    private static final int[] CACHE_SIZES = {16, 32};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(args);
+
+        System.out.println(String.format("%-14s %7s %7s %10s %10s %10s %10s %7s %10s", "model", "tris", "verts",
+                "fifo16", "optimized", "fifo32", "optimized", "ideal", "ms"));
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            byte[] data = BenchmarkUtil.ReadAsset(assetsDir, model + ".obj");
+            ObjParser parser = new ObjParser();
+            parser.Parse(data, 0, data.length);
+            MeshData mesh = new ObjMeshBuilder(parser, null).BuildIndexed();
+
+            MeshData optimized = null;
+            long[] times = new long[RUNS];
+            for (int run = 0; run < RUNS; run++)
+            {
+                long start = System.nanoTime();
+                optimized = VertexCacheOptimizer.Optimize(mesh);
+                times[run] = System.nanoTime() - start;
+            }
+
+            int numTriangles = mesh.GetNumElements() / 3;
+            StringBuilder acmr = new StringBuilder();
+            for (int cacheSize : CACHE_SIZES)
+            {
+                acmr.append(String.format(" %10.3f %10.3f", VertexCacheOptimizer.ComputeAcmr(mesh, cacheSize),
+                        VertexCacheOptimizer.ComputeAcmr(optimized, cacheSize)));
+            }
+            // every vertex transformed once
+            System.out.println(String.format("%-14s %7d %7d%s %7.3f %10.2f", model, numTriangles, mesh.GetNumVerts(),
+                    acmr, mesh.GetNumVerts() / (float) numTriangles, BenchmarkUtil.Median(times) / 1e6));
+        }
+    }
+}
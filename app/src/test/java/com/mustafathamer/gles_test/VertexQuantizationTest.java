@@ -0,0 +1,131 @@
+package com.mustafathamer.gles_test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the error bounds of the quantized vertex layout against the float data of the bundled
+ * models: positions within half a step of their box, normals within half a degree, UVs within
+ * half a step of their range. Runs on the development machine (host).
+ */
+public class VertexQuantizationTest
+{
+    private static final double MAX_NORMAL_DEGREES = 0.5;
+
+    private static MeshData Load(File assetsDir, String model) throws Exception
+    {
+        return MeshTestUtil.Build(BenchmarkUtil.ReadAsset(assetsDir, model + ".obj"), null);
+    }
+
+    // largest difference from the float data of one attribute, in decode steps
+    private static double MaxStepError(MeshData mesh, VertexLayout layout, ByteBuffer vertices, int attrib,
+                                       FloatArray values)
+    {
+        int size = layout.GetSize(attrib);
+        double maxError = 0;
+        for (int v = 0; v < mesh.GetNumVerts(); v++)
+        {
+            for (int c = 0; c < size; c++)
+            {
+                double error = Math.abs(layout.Read(vertices, v, attrib, c) - values.Get(v * size + c));
+                maxError = Math.max(maxError, error / layout.GetDecodeScale(attrib)[c]);
+            }
+        }
+        return maxError;
+    }
+
+    // largest angle between the float and the decoded normals, in degrees
+    private static double MaxNormalDegrees(MeshData mesh, VertexLayout layout, ByteBuffer vertices)
+    {
+        double maxDegrees = 0;
+        float[] normals = mesh.GetNormals().GetData();
+        for (int v = 0; v < mesh.GetNumVerts(); v++)
+        {
+            double x = normals[v * 3], y = normals[v * 3 + 1], z = normals[v * 3 + 2];
+            double length = Math.sqrt(x * x + y * y + z * z);
+            if (length == 0)
+                continue;
+            double qx = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 0);
+            double qy = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 1);
+            double qz = layout.Read(vertices, v, VertexLayout.ATTRIB_NORMAL, 2);
+            double cos = (x * qx + y * qy + z * qz) / (length * Math.sqrt(qx * qx + qy * qy + qz * qz));
+            maxDegrees = Math.max(maxDegrees, Math.toDegrees(Math.acos(Math.min(1, cos))));
+        }
+        return maxDegrees;
+    }
+
+    @Test
+    public void quantized_halvesTheVertexSize() throws Exception
+    {
+        MeshData mesh = Load(BenchmarkUtil.AssetsDir(new String[0]), "capsule");
+        VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+
+        assertTrue(mesh.HasUVs());
+        assertEquals(8 + 4 + 4, layout.GetStride());
+        assertEquals(VertexLayout.ForMesh(mesh).GetStride(), layout.GetStride() * 2);
+        assertEquals(0, layout.GetOffset(VertexLayout.ATTRIB_POSITION));
+        assertEquals(8, layout.GetOffset(VertexLayout.ATTRIB_NORMAL));
+        assertEquals(12, layout.GetOffset(VertexLayout.ATTRIB_UV));
+        assertEquals(VertexLayout.TYPE_SHORT, layout.GetType(VertexLayout.ATTRIB_POSITION));
+        assertEquals(VertexLayout.TYPE_BYTE, layout.GetType(VertexLayout.ATTRIB_NORMAL));
+        assertEquals(VertexLayout.TYPE_SHORT, layout.GetType(VertexLayout.ATTRIB_UV));
+        assertTrue(layout.IsQuantized());
+        assertFalse(VertexLayout.ForMesh(mesh).IsQuantized());
+        assertEquals(mesh.GetNumVerts() * 16, layout.Interleave(mesh).capacity());
+    }
+
+    @Test
+    public void quantized_staysWithinErrorBoundsOnBundledModels() throws Exception
+    {
+        File assetsDir = BenchmarkUtil.AssetsDir(new String[0]);
+        for (String model : BenchmarkUtil.MODELS)
+        {
+            MeshData mesh = Load(assetsDir, model);
+            VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+            ByteBuffer vertices = layout.Interleave(mesh);
+
+            // half a step from rounding, and a little float rounding in the decode
+            assertTrue(model, MaxStepError(mesh, layout, vertices, VertexLayout.ATTRIB_POSITION,
+                    mesh.GetPositions()) <= 0.51);
+            assertTrue(model, MaxNormalDegrees(mesh, layout, vertices) <= MAX_NORMAL_DEGREES);
+            if (mesh.HasUVs())
+                assertTrue(model, MaxStepError(mesh, layout, vertices, VertexLayout.ATTRIB_UV, mesh.GetUVs()) <= 0.51);
+
+            // a step is 1/65534 of the box
+            Bounds bounds = mesh.ComputeBounds();
+            float[] scale = layout.GetDecodeScale(VertexLayout.ATTRIB_POSITION);
+            assertEquals(model, (bounds.GetMaxX() - bounds.GetMinX()) / 65534, scale[0], 1e-6 * bounds.GetRadius());
+        }
+    }
+
+    @Test
+    public void quantized_keepsTheBoxCornersExact() throws Exception
+    {
+        FloatArray positions = new FloatArray();
+        positions.Add(-3, 10, 0.5f);
+        positions.Add(5, 12, 0.5f);        // flat in z
+        positions.Add(1, 11, 0.5f);
+        FloatArray normals = new FloatArray();
+        normals.Add(0, 0, 2);               // not unit length
+        normals.Add(1, 0, 0);
+        normals.Add(0, -1, 0);
+        MeshData mesh = new MeshData(positions, normals, new FloatArray(), null, false,
+                new ArrayList<MeshRange>(), null);
+
+        VertexLayout layout = VertexLayout.ForMeshQuantized(mesh);
+        ByteBuffer vertices = layout.Interleave(mesh);
+        assertFalse(layout.Has(VertexLayout.ATTRIB_UV));
+        for (int v = 0; v < 3; v++)
+        {
+            for (int c = 0; c < 3; c++)
+                assertEquals(positions.Get(v * 3 + c), layout.Read(vertices, v, VertexLayout.ATTRIB_POSITION, c), 1e-5f);
+        }
+        assertEquals(1, layout.Read(vertices, 0, VertexLayout.ATTRIB_NORMAL, 2), 1e-6f);
+        assertEquals(-1, layout.Read(vertices, 2, VertexLayout.ATTRIB_NORMAL, 1), 1e-6f);
+    }
+}
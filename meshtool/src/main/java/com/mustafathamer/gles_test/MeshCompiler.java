@@ -0,0 +1,180 @@
+package com.mustafathamer.gles_test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline converter from the text OBJ / MTL assets to ready to map BinaryMesh files, so the
+ * device never parses text at startup.
+ * It runs on the build machine with the same parsing and mesh building code as ObjFileLoader,
+ * see the compileMeshes task in app/build.gradle. Ex:
+ * java -cp ... com.mustafathamer.gles_test.MeshCompiler [--no-dedup] [--quantize] src/main/assets build/generated/assets/meshes
+ * <p>
+ * --quantize writes the vertices as shorts and bytes (VertexLayout.ForMeshQuantized), half the
+ * size of floats. --no-dedup writes expanded meshes without indices, to compare sizes, the app
+ * doesn't use them and parses the OBJ files again.
+ * <p>
+ * Faces without normals get generated ones (NormalGenerator), and indexed meshes are reordered
+ * for the vertex caches (VertexCacheOptimizer), like on the device.
+ * <p>
+ * Every model is converted and reported, then the exit code is 1 if any OBJ or MTL file was
+ * malformed, which fails the build. A missing mtllib is only a warning, like on the device.
+ */
+
+public class MeshCompiler
+{
+    private boolean mDeduplicate = true;
+    private boolean mQuantize;
+    private List<String> mFailures = new ArrayList<>();
+
+    public List<String> GetFailures()   { return mFailures; }
+
+    public void SetDeduplicate(boolean deduplicate)
+    {
+        mDeduplicate = deduplicate;
+    }
+
+    public void SetQuantize(boolean quantize)
+    {
+        mQuantize = quantize;
+    }
+
+    //
+    // Convert every .obj file in assetsDir, returns false if any of them failed
+    //
+    public boolean CompileAll(File assetsDir, File outDir) throws IOException
+    {
+        if (!outDir.isDirectory() && !outDir.mkdirs())
+            throw new IOException("Can't create " + outDir);
+
+        String[] fileNames = assetsDir.list();
+        if (fileNames == null)
+            throw new IOException("Can't list " + assetsDir);
+        Arrays.sort(fileNames);
+
+        System.out.println(String.format("%-14s %10s %10s %10s %10s", "model", "input", "output", "verts", "time"));
+        for (String fileName : fileNames)
+        {
+            if (!fileName.endsWith(".obj"))
+                continue;
+            String model = fileName.substring(0, fileName.length() - ".obj".length());
+            try
+            {
+                Compile(assetsDir, model, new File(outDir, model + ".mesh"));
+            } catch (IOException e)
+            {
+                Fail(model, e.getMessage());
+            } catch (RuntimeException e)
+            {
+                Fail(model, e.toString());
+            }
+        }
+        return mFailures.isEmpty();
+    }
+
+    public void Compile(File assetsDir, String model, File outFile) throws IOException
+    {
+        long start = System.nanoTime();
+
+        File objFile = new File(assetsDir, model + ".obj");
+        ObjParser parser = new ObjParser();
+        InputStream in = new FileInputStream(objFile);
+        try
+        {
+            parser.Parse(in);
+        } finally
+        {
+            in.close();
+        }
+        if (parser.GetNumErrors() > 0)
+            throw new IOException(parser.GetNumErrors() + " malformed records, first at " + parser.GetFirstError());
+        if (parser.GetNumFaces() == 0)
+            throw new IOException("no faces");
+
+        long inputBytes = objFile.length();
+        ObjMaterial[] materials = null;
+        if (parser.GetMtlLibName() != null)
+        {
+            File mtlFile = new File(assetsDir, parser.GetMtlLibName());
+            if (mtlFile.isFile())
+            {
+                ObjMtlParser mtlParser = new ObjMtlParser();
+                in = new FileInputStream(mtlFile);
+                try
+                {
+                    mtlParser.Parse(in);
+                } finally
+                {
+                    in.close();
+                }
+                materials = ObjMtlParser.LookUp(parser.GetMaterialNames(), mtlParser.GetMtlMap());
+                inputBytes += mtlFile.length();
+            } else
+            {
+                System.out.println("warning: " + model + ": missing " + parser.GetMtlLibName());
+            }
+        }
+
+        new NormalGenerator(NormalGenerator.DEFAULT_CREASE_ANGLE).Generate(parser);
+        ObjMeshBuilder builder = new ObjMeshBuilder(parser, materials);
+        MeshData mesh = mDeduplicate ? builder.BuildIndexed() : builder.BuildExpanded();
+        mesh = VertexCacheOptimizer.Optimize(mesh);
+        VertexLayout layout = mQuantize ? VertexLayout.ForMeshQuantized(mesh) : VertexLayout.ForMesh(mesh);
+        ByteBuffer vertices = layout.Interleave(mesh);
+        boolean intIndices = mesh.NeedsIntIndices();
+        Buffer indices = null;
+        if (mesh.IsIndexed())
+            indices = intIndices ? mesh.GetIndices().ToDirectBuffer() : mesh.GetIndices().ToDirectShortBuffer();
+
+        new BinaryMesh(layout, vertices, indices, intIndices, mesh.GetNumVerts(), mesh.GetNumElements(),
+                mesh.GetRanges(), mesh.GetMaterials(), parser.GetBounds()).Write(outFile, BinaryMesh.APK_SOURCE_STAMP);
+
+        System.out.println(String.format("%-14s %10s %10s %10d %7.1f ms", model, Kb(inputBytes), Kb(outFile.length()),
+                mesh.GetNumVerts(), (System.nanoTime() - start) / 1e6));
+    }
+
+    private void Fail(String model, String why)
+    {
+        mFailures.add(model + ": " + why);
+        System.out.println(String.format("%-14s FAILED: %s", model, why));
+    }
+
+    private static String Kb(long bytes)
+    {
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        MeshCompiler compiler = new MeshCompiler();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.equals("--no-dedup"))
+                compiler.SetDeduplicate(false);
+            else if (arg.equals("--quantize"))
+                compiler.SetQuantize(true);
+            else
+                paths.add(arg);
+        }
+        if (paths.size() != 2)
+        {
+            System.err.println("usage: MeshCompiler [--no-dedup] [--quantize] <assetsDir> <outDir>");
+            System.exit(2);
+        }
+
+        if (!compiler.CompileAll(new File(paths.get(0)), new File(paths.get(1))))
+        {
+            for (String failure : compiler.GetFailures())
+                System.err.println("error: " + failure);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.mustafathamer.gles_test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Offline converter from the JPEG / PNG texture assets to ETC1 KTX files with their whole mip
+ * chain, so the device uploads them as they are (see TextureManager) instead of decoding,
+ * scaling and mipmapping the image at startup, and keeps 1/8 of the GPU memory.
+ * It runs on the build machine, see the compileTextures task in app/build.gradle. Ex:
+ * java -cp ... com.mustafathamer.gles_test.TextureCompiler [--threads N] src/main/assets build/generated/assets/textures
+ * <p>
+ * The image goes through the same steps as on the device (power of two size, flipped rows, box
+ * filtered mip levels), then the blocks of each level are encoded on a fork/join pool of N
+ * threads, all the cores by default.
+ * <p>
+ * Each texture is reported with its sizes (file, RGBA with mips as the device would upload it,
+ * ETC1), the time the device no longer spends (decode, scale and mipmap, measured here) against
+ * reading the KTX file, and the quality of the compression (PSNR of the full size level).
+ * The exit code is 1 if any image couldn't be read, which fails the build.
+ */
+
+public class TextureCompiler
+{
+    // the largest side, as TextureManager.MAX_SIZE
+    private static final int MAX_SIZE = 2048;
+    private static final int GL_RGB = 0x1907;       // GLES20.GL_RGB, there is no GLES20 on the build machine
+
+    private final ForkJoinPool mPool;
+    private final int mNumThreads;
+    private List<String> mFailures = new ArrayList<>();
+
+    //
+    // CTOR
+    //
+    public TextureCompiler(int numThreads)
+    {
+        mNumThreads = numThreads;
+        mPool = new ForkJoinPool(numThreads);
+    }
+
+    public List<String> GetFailures()   { return mFailures; }
+
+    //
+    // Convert every .jpg and .png file in assetsDir, returns false if any of them failed
+    //
+    public boolean CompileAll(File assetsDir, File outDir) throws IOException
+    {
+        if (!outDir.isDirectory() && !outDir.mkdirs())
+            throw new IOException("Can't create " + outDir);
+
+        String[] fileNames = assetsDir.list();
+        if (fileNames == null)
+            throw new IOException("Can't list " + assetsDir);
+        Arrays.sort(fileNames);
+
+        System.out.println("ETC1 encoding on " + mNumThreads + " threads");
+        System.out.println(String.format("%-18s %9s %10s %10s %10s %6s %10s %10s %10s %8s", "texture", "size",
+                "input", "RGBA", "ETC1", "ratio", "decode", "load", "encode", "PSNR"));
+        for (String fileName : fileNames)
+        {
+            if (!fileName.endsWith(".jpg") && !fileName.endsWith(".png"))
+                continue;
+            try
+            {
+                Compile(new File(assetsDir, fileName), new File(outDir, KtxFile.AssetName(fileName)));
+            } catch (IOException e)
+            {
+                Fail(fileName, e.getMessage());
+            } catch (RuntimeException e)
+            {
+                Fail(fileName, e.toString());
+            }
+        }
+        mPool.shutdown();
+        return mFailures.isEmpty();
+    }
+
+    public void Compile(File imageFile, File outFile) throws IOException
+    {
+        // what the device does without the KTX file
+        long start = System.nanoTime();
+        BufferedImage bufferedImage = ImageIO.read(imageFile);
+        if (bufferedImage == null)
+            throw new IOException("unsupported image format");
+        int srcWidth = bufferedImage.getWidth();
+        int srcHeight = bufferedImage.getHeight();
+        int[] pixels = bufferedImage.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+        int width = MipMapGenerator.ToPowerOfTwo(srcWidth, MAX_SIZE);
+        int height = MipMapGenerator.ToPowerOfTwo(srcHeight, MAX_SIZE);
+        pixels = MipMapGenerator.Resize(pixels, srcWidth, srcHeight, width, height);
+        pixels = MipMapGenerator.FlipRows(pixels, width, height);
+        int[][] levels = MipMapGenerator.Generate(pixels, width, height);
+        long decodeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ByteBuffer[] encoded = new ByteBuffer[levels.length];
+        for (int level = 0; level < levels.length; level++)
+        {
+            encoded[level] = ByteBuffer.wrap(Etc1.EncodeParallel(levels[level], Math.max(1, width >> level),
+                    Math.max(1, height >> level), mPool, mNumThreads * 4));
+        }
+        long encodeTime = System.nanoTime() - start;
+
+        new KtxFile(Etc1.GL_ETC1_RGB8_OES, GL_RGB, width, height, encoded).Write(outFile);
+
+        // what the device does with it
+        start = System.nanoTime();
+        KtxFile ktx = Load(outFile);
+        long loadTime = System.nanoTime() - start;
+        if (ktx.GetNumLevels() != levels.length)
+            throw new IOException("wrote " + levels.length + " levels, read " + ktx.GetNumLevels());
+
+        long rgbaBytes = MipMapGenerator.ByteSize(width, height);
+        System.out.println(String.format("%-18s %9s %10s %10s %10s %5.1fx %7.1f ms %7.1f ms %7.1f ms %5.1f dB",
+                imageFile.getName(), width + "x" + height, Kb(imageFile.length()), Kb(rgbaBytes),
+                Kb(outFile.length()), (double) rgbaBytes / outFile.length(), decodeTime / 1e6, loadTime / 1e6,
+                encodeTime / 1e6, Psnr(levels[0], encoded[0].array(), width, height)));
+    }
+
+    // map it as the device does
+    private static KtxFile Load(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            return KtxFile.Read(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally
+        {
+            raf.close();
+        }
+    }
+
+    //
+    // Peak signal to noise ratio of the compressed RGB against the original, in dB
+    //
+    private static double Psnr(int[] original, byte[] encoded, int width, int height)
+    {
+        int[] decoded = Etc1.Decode(encoded, 0, width, height);
+        double sum = 0;
+        for (int i = 0; i < original.length; i++)
+        {
+            for (int shift = 0; shift < 24; shift += 8)
+            {
+                int d = ((original[i] >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+                sum += d * d;
+            }
+        }
+        double mse = sum / (original.length * 3.0);
+        return mse == 0 ? 99 : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private void Fail(String image, String why)
+    {
+        mFailures.add(image + ": " + why);
+        System.out.println(String.format("%-18s FAILED: %s", image, why));
+    }
+
+    private static String Kb(long bytes)
+    {
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                numThreads = Math.max(1, Integer.parseInt(args[++i]));
+            else
+                paths.add(args[i]);
+        }
+        if (paths.size() != 2)
+        {
+            System.err.println("usage: TextureCompiler [--threads N] <assetsDir> <outDir>");
+            System.exit(2);
+        }
+
+        TextureCompiler compiler = new TextureCompiler(numThreads);
+        if (!compiler.CompileAll(new File(paths.get(0)), new File(paths.get(1))))
+        {
+            for (String failure : compiler.GetFailures())
+                System.err.println("error: " + failure);
+            System.exit(1);
+        }
+    }
+}